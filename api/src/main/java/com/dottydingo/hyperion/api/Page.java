@@ -5,12 +5,14 @@ import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 /**
  * Response paging information
  */
-@JsonPropertyOrder({"start","responseCount","totalCount"})
+@JsonPropertyOrder({"start","responseCount","totalCount","totalCountExact","continuation"})
 public class Page
 {
     private Integer start;
     private Integer responseCount;
     private Long totalCount;
+    private Boolean totalCountExact;
+    private String continuation;
 
     /**
      * Return the start position
@@ -65,4 +67,42 @@ public class Page
     {
         this.totalCount = totalCount;
     }
+
+    /**
+     * Return the flag indicating if the total count is exact. A value of false indicates the total count is an
+     * estimate or a lower bound.
+     * @return The flag, null if no total count was calculated
+     */
+    public Boolean getTotalCountExact()
+    {
+        return totalCountExact;
+    }
+
+    /**
+     * Set the flag indicating if the total count is exact
+     * @param totalCountExact the flag
+     */
+    public void setTotalCountExact(Boolean totalCountExact)
+    {
+        this.totalCountExact = totalCountExact;
+    }
+
+    /**
+     * Return the continuation token for the next page. This is only populated for continuation (keyset) paging
+     * when more results are available.
+     * @return The continuation token
+     */
+    public String getContinuation()
+    {
+        return continuation;
+    }
+
+    /**
+     * Set the continuation token for the next page
+     * @param continuation the continuation token
+     */
+    public void setContinuation(String continuation)
+    {
+        this.continuation = continuation;
+    }
 }
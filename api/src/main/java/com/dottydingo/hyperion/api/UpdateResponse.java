@@ -0,0 +1,27 @@
+package com.dottydingo.hyperion.api;
+
+/**
+ * The response from an update by query operation
+ */
+public class UpdateResponse
+{
+    private int count;
+
+    /**
+     * Return the number of items updated
+     * @return The number of items
+     */
+    public int getCount()
+    {
+        return count;
+    }
+
+    /**
+     * Set the number of items updated
+     * @param count The number of items
+     */
+    public void setCount(int count)
+    {
+        this.count = count;
+    }
+}
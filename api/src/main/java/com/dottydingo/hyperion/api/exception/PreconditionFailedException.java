@@ -0,0 +1,16 @@
+package com.dottydingo.hyperion.api.exception;
+
+/**
+ * A precondition failed (412) error
+ */
+public class PreconditionFailedException extends HyperionException
+{
+    /**
+     * Create a new exception using the supplied parameters
+     * @param message The error message
+     */
+    public PreconditionFailedException(String message)
+    {
+        super(412,message);
+    }
+}
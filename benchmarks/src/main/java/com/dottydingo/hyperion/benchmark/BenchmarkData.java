@@ -0,0 +1,113 @@
+package com.dottydingo.hyperion.benchmark;
+
+import com.dottydingo.hyperion.benchmark.model.WideApiObject;
+import com.dottydingo.hyperion.benchmark.model.WidePersistentObject;
+import com.dottydingo.hyperion.core.translation.TypeMapper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Builds the sample data used by the benchmarks. The entity width is the number of fields populated on each
+ * object, taken in order from {@link #FIELD_NAMES} so that every width mixes string and numeric fields.
+ */
+public class BenchmarkData
+{
+    public static final String[] FIELD_NAMES = {
+            "text01", "number01", "value01", "text02",
+            "number02", "value02", "text03", "text04",
+            "number03", "value03", "text05", "text06",
+            "number04", "value04", "text07", "text08"
+    };
+
+    private static final TypeMapper clientMapper = new TypeMapper(WideApiObject.class);
+    private static final TypeMapper persistentMapper = new TypeMapper(WidePersistentObject.class);
+
+    public static List<String> getFieldNames(int width)
+    {
+        return Arrays.asList(FIELD_NAMES).subList(0, Math.min(width, FIELD_NAMES.length));
+    }
+
+    /**
+     * Return the fields a client would request for the specified width, including the id
+     * @param width The entity width
+     * @return The requested fields
+     */
+    public static Set<String> getRequestedFields(int width)
+    {
+        Set<String> fields = new LinkedHashSet<String>();
+        fields.add("id");
+        fields.addAll(getFieldNames(width));
+        return fields;
+    }
+
+    public static WideApiObject createClient(long id, int width)
+    {
+        WideApiObject client = new WideApiObject();
+        client.setId(id);
+        populate(client, clientMapper, id, width);
+        return client;
+    }
+
+    public static WidePersistentObject createPersistent(Long id, int width)
+    {
+        WidePersistentObject persistent = new WidePersistentObject();
+        persistent.setId(id);
+        populate(persistent, persistentMapper, id == null ? 0L : id, width);
+        return persistent;
+    }
+
+    public static List<WideApiObject> createClients(int count, int width)
+    {
+        List<WideApiObject> list = new ArrayList<WideApiObject>(count);
+        for (int i = 1; i <= count; i++)
+        {
+            list.add(createClient(i, width));
+        }
+        return list;
+    }
+
+    public static List<WidePersistentObject> createPersistents(int count, int width)
+    {
+        List<WidePersistentObject> list = new ArrayList<WidePersistentObject>(count);
+        for (int i = 1; i <= count; i++)
+        {
+            list.add(createPersistent((long) i, width));
+        }
+        return list;
+    }
+
+    /**
+     * Build a comma separated list of ids
+     * @param count The number of ids
+     * @return The id list
+     */
+    public static String createIdList(int count)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 1; i <= count; i++)
+        {
+            if(sb.length() > 0)
+                sb.append(",");
+            sb.append(i);
+        }
+        return sb.toString();
+    }
+
+    private static void populate(Object bean, TypeMapper typeMapper, long id, int width)
+    {
+        for (String field : getFieldNames(width))
+        {
+            Class type = typeMapper.getFieldType(field);
+            if(type == String.class)
+                typeMapper.setValue(bean, field, field + "-" + id);
+            else if(type == Integer.class)
+                typeMapper.setValue(bean, field, (int) (id % 1000));
+            else
+                typeMapper.setValue(bean, field, id * 1000L);
+        }
+    }
+}
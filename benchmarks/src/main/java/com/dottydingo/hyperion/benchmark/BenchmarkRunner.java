@@ -0,0 +1,34 @@
+package com.dottydingo.hyperion.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks using the standard JMH command line options. Unless a result format is specified the results
+ * are written as JSON to jmh-result.json in the working directory so they can be compared across commits.
+ */
+public class BenchmarkRunner
+{
+    public static final String DEFAULT_RESULT_FILE = "jmh-result.json";
+
+    public static void main(String[] args) throws Exception
+    {
+        CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        if(commandLineOptions.shouldHelp())
+        {
+            commandLineOptions.showHelp();
+            return;
+        }
+
+        ChainedOptionsBuilder builder = new OptionsBuilder().parent(commandLineOptions);
+        if(!commandLineOptions.getResultFormat().hasValue())
+            builder.resultFormat(ResultFormatType.JSON);
+        if(!commandLineOptions.getResult().hasValue())
+            builder.result(DEFAULT_RESULT_FILE);
+
+        new Runner(builder.build()).run();
+    }
+}
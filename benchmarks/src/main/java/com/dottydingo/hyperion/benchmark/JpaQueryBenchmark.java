@@ -0,0 +1,162 @@
+package com.dottydingo.hyperion.benchmark;
+
+import com.dottydingo.hyperion.benchmark.model.WideApiObject;
+import com.dottydingo.hyperion.benchmark.model.WidePersistentObject;
+import com.dottydingo.hyperion.core.message.HyperionMessageSource;
+import com.dottydingo.hyperion.core.persistence.PersistenceContext;
+import com.dottydingo.hyperion.core.persistence.dao.PersistentQueryResult;
+import com.dottydingo.hyperion.core.registry.ApiVersionPlugin;
+import com.dottydingo.hyperion.jpa.configuration.JpaEntityQueryBuilderFactoryBean;
+import com.dottydingo.hyperion.jpa.persistence.JpaDao;
+import com.dottydingo.hyperion.jpa.persistence.query.JpaPersistentQueryBuilder;
+import com.dottydingo.hyperion.jpa.persistence.query.JpaPersistentQueryBuilderFactory;
+import cz.jirutka.rsql.parser.RSQLParser;
+import org.openjdk.jmh.annotations.*;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the persistence side of a request against an in-memory H2 database: building criteria predicates from
+ * RSQL, running a paged query through {@link JpaDao} and loading a list of ids.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JpaQueryBenchmark
+{
+    private static final int ROW_COUNT = 5000;
+    private static final String QUERY = "number01=ge=10;(text01==text01*,value01=gt=0)";
+
+    @Param({"1", "50", "500"})
+    private int pageSize;
+
+    private EntityManagerFactory entityManagerFactory;
+    private EntityManager em;
+    private JpaDao<WidePersistentObject,Long> dao;
+    private JpaPersistentQueryBuilderFactory queryBuilderFactory;
+    private PersistenceContext context;
+    private List<Long> ids;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() throws Exception
+    {
+        entityManagerFactory = Persistence.createEntityManagerFactory("hyperionBenchmark");
+        em = entityManagerFactory.createEntityManager();
+
+        em.getTransaction().begin();
+        for (int i = 0; i < ROW_COUNT; i++)
+        {
+            WidePersistentObject persistent = BenchmarkData.createPersistent(i + 1L, BenchmarkData.FIELD_NAMES.length);
+            persistent.setId(null);
+            em.persist(persistent);
+            if(i % 100 == 0)
+            {
+                em.flush();
+                em.clear();
+            }
+        }
+        em.getTransaction().commit();
+        em.clear();
+
+        dao = new JpaDao<WidePersistentObject,Long>();
+        dao.setEm(em);
+
+        JpaEntityQueryBuilderFactoryBean factoryBean = new JpaEntityQueryBuilderFactoryBean();
+        factoryBean.setApiClass(WideApiObject.class);
+
+        ApiVersionPlugin versionPlugin = new ApiVersionPlugin();
+        versionPlugin.setApiClass(WideApiObject.class);
+        versionPlugin.setQueryBuilders((Map) factoryBean.getObject());
+
+        queryBuilderFactory = new JpaPersistentQueryBuilderFactory();
+        context = new PersistenceContext();
+        context.setLocale(Locale.US);
+        context.setMessageSource(new HyperionMessageSource());
+        context.setApiVersionPlugin(versionPlugin);
+
+        ids = new ArrayList<Long>();
+        for (long i = 1; i <= pageSize; i++)
+        {
+            ids.add(i * (ROW_COUNT / pageSize));
+        }
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        em.close();
+        entityManagerFactory.close();
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public Predicate buildPredicate()
+    {
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        CriteriaQuery<WidePersistentObject> query = cb.createQuery(WidePersistentObject.class);
+        Root<WidePersistentObject> root = query.from(WidePersistentObject.class);
+        return createQueryBuilder().buildPredicate(root, query, cb);
+    }
+
+    @Benchmark
+    public PersistentQueryResult<WidePersistentObject> query()
+    {
+        try
+        {
+            return dao.query(WidePersistentObject.class, 0, pageSize, null,
+                    Collections.singletonList(createQueryBuilder()), false, null);
+        }
+        finally
+        {
+            em.clear();
+        }
+    }
+
+    @Benchmark
+    public PersistentQueryResult<WidePersistentObject> queryWithCount()
+    {
+        try
+        {
+            return dao.query(WidePersistentObject.class, 0, pageSize, null,
+                    Collections.singletonList(createQueryBuilder()), true, null);
+        }
+        finally
+        {
+            em.clear();
+        }
+    }
+
+    @Benchmark
+    public List<WidePersistentObject> findAll()
+    {
+        try
+        {
+            return dao.findAll(WidePersistentObject.class, ids);
+        }
+        finally
+        {
+            em.clear();
+        }
+    }
+
+    private JpaPersistentQueryBuilder createQueryBuilder()
+    {
+        return queryBuilderFactory.createQueryBuilder(new RSQLParser().parse(QUERY), context);
+    }
+}
@@ -0,0 +1,84 @@
+package com.dottydingo.hyperion.benchmark;
+
+import com.dottydingo.hyperion.api.EntityList;
+import com.dottydingo.hyperion.benchmark.model.WideApiObject;
+import com.dottydingo.hyperion.core.configuration.HyperionEndpointConfiguration;
+import com.dottydingo.hyperion.core.endpoint.marshall.EndpointMarshaller;
+import com.dottydingo.hyperion.core.endpoint.marshall.RequestContext;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures serializing a page of results and deserializing a collection for a write, with and without provided
+ * field tracking.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MarshallerBenchmark
+{
+    @Param({"4", "8", "16"})
+    private int width;
+
+    @Param({"1", "50", "500"})
+    private int pageSize;
+
+    private EndpointMarshaller marshaller;
+    private EndpointMarshaller trackingMarshaller;
+    private EntityList<WideApiObject> page;
+    private byte[] pageJson;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        marshaller = createMarshaller(false);
+        trackingMarshaller = createMarshaller(true);
+
+        page = new EntityList<WideApiObject>();
+        page.setEntries(BenchmarkData.createClients(pageSize, width));
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        marshaller.marshall(outputStream, page);
+        pageJson = outputStream.toByteArray();
+    }
+
+    @Benchmark
+    public int marshall() throws Exception
+    {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(pageJson.length);
+        marshaller.marshall(outputStream, page);
+        return outputStream.size();
+    }
+
+    @Benchmark
+    public List<WideApiObject> unmarshallCollection() throws Exception
+    {
+        return marshaller.unmarshallCollection(new ByteArrayInputStream(pageJson), WideApiObject.class);
+    }
+
+    @Benchmark
+    public RequestContext<List<WideApiObject>> unmarshallCollectionTracking() throws Exception
+    {
+        return trackingMarshaller.unmarshallCollectionWithContext(new ByteArrayInputStream(pageJson),
+                WideApiObject.class);
+    }
+
+    private EndpointMarshaller createMarshaller(boolean trackProvidedFields)
+    {
+        HyperionEndpointConfiguration configuration = new HyperionEndpointConfiguration();
+        configuration.setWriteLimit(Integer.MAX_VALUE);
+        configuration.setTrackProvidedFieldsOnUpdate(trackProvidedFields);
+
+        EndpointMarshaller endpointMarshaller = new EndpointMarshaller();
+        endpointMarshaller.setConfiguration(configuration);
+        endpointMarshaller.init();
+        return endpointMarshaller;
+    }
+}
@@ -0,0 +1,94 @@
+package com.dottydingo.hyperion.benchmark;
+
+import com.dottydingo.hyperion.core.key.LongKeyConverter;
+import com.dottydingo.hyperion.core.message.HyperionMessageSource;
+import com.dottydingo.hyperion.core.persistence.PersistenceContext;
+import com.dottydingo.hyperion.core.persistence.query.DefaultArgumentParser;
+import cz.jirutka.rsql.parser.RSQLParser;
+import cz.jirutka.rsql.parser.ast.Node;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the request parsing done before a query is run: RSQL parsing, argument conversion and id list
+ * conversion.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParsingBenchmark
+{
+    @Param({"1", "50", "500"})
+    private int pageSize;
+
+    private RSQLParser rsqlParser;
+    private String simpleQuery;
+    private String complexQuery;
+    private DefaultArgumentParser argumentParser;
+    private PersistenceContext context;
+    private List<String> numericArguments;
+    private LongKeyConverter keyConverter;
+    private String idList;
+
+    @Setup
+    public void setup()
+    {
+        rsqlParser = new RSQLParser();
+        simpleQuery = "text01==value-1";
+        complexQuery = "(text01==value-1*,text02!=value-2);number01=ge=10;value01=in=(1000,2000,3000);" +
+                "(number02=lt=500,text03==abc)";
+
+        argumentParser = new DefaultArgumentParser();
+        context = new PersistenceContext();
+        context.setLocale(Locale.US);
+        context.setMessageSource(new HyperionMessageSource());
+        numericArguments = Arrays.asList(BenchmarkData.createIdList(pageSize).split(","));
+
+        keyConverter = new LongKeyConverter();
+        idList = BenchmarkData.createIdList(pageSize);
+    }
+
+    @Benchmark
+    public Node parseSimpleQuery()
+    {
+        return rsqlParser.parse(simpleQuery);
+    }
+
+    @Benchmark
+    public Node parseComplexQuery()
+    {
+        return rsqlParser.parse(complexQuery);
+    }
+
+    @Benchmark
+    public Integer parseInteger()
+    {
+        return argumentParser.parse("12345", Integer.class, context);
+    }
+
+    @Benchmark
+    public Date parseDate()
+    {
+        return argumentParser.parse("2015-06-01T12:30:00.000Z", Date.class, context);
+    }
+
+    @Benchmark
+    public List<Long> parseArgumentList()
+    {
+        return argumentParser.parse(numericArguments, Long.class, context);
+    }
+
+    @Benchmark
+    public List<Long> convertKeys()
+    {
+        return keyConverter.covertKeys(idList);
+    }
+}
@@ -0,0 +1,77 @@
+package com.dottydingo.hyperion.benchmark;
+
+import com.dottydingo.hyperion.benchmark.model.WideApiObject;
+import com.dottydingo.hyperion.benchmark.model.WidePersistentObject;
+import com.dottydingo.hyperion.core.endpoint.pipeline.auth.NoOpAuthorizationContext;
+import com.dottydingo.hyperion.core.persistence.PersistenceContext;
+import com.dottydingo.hyperion.core.registry.EntityPlugin;
+import com.dottydingo.hyperion.core.translation.DefaultTranslator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures converting persistent objects to API objects for a page of results and copying an API object onto a
+ * persistent object for an update.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TranslationBenchmark
+{
+    @Param({"4", "8", "16"})
+    private int width;
+
+    @Param({"1", "50", "500"})
+    private int pageSize;
+
+    private DefaultTranslator<WideApiObject,WidePersistentObject> translator;
+    private List<WidePersistentObject> persistentPage;
+    private WideApiObject client;
+    private Set<String> requestedFields;
+
+    @Setup
+    public void setup()
+    {
+        translator = new DefaultTranslator<WideApiObject,WidePersistentObject>(WideApiObject.class,
+                WidePersistentObject.class);
+        translator.init();
+
+        persistentPage = BenchmarkData.createPersistents(pageSize, width);
+        client = BenchmarkData.createClient(1L, width);
+        requestedFields = BenchmarkData.getRequestedFields(width);
+    }
+
+    @Benchmark
+    public List<WideApiObject> convertPersistent()
+    {
+        return translator.convertPersistent(persistentPage, createContext(null));
+    }
+
+    @Benchmark
+    public List<WideApiObject> convertPersistentRequestedFields()
+    {
+        return translator.convertPersistent(persistentPage, createContext(requestedFields));
+    }
+
+    @Benchmark
+    public boolean copyClient()
+    {
+        return translator.copyClient(client, new WidePersistentObject(), createContext(null));
+    }
+
+    // a new context is used for each invocation since each request gets its own context
+    private PersistenceContext createContext(Set<String> requestedFields)
+    {
+        PersistenceContext context = new PersistenceContext();
+        context.setRequestedFields(requestedFields);
+        context.setAuthorizationContext(new NoOpAuthorizationContext(null));
+        context.setEntityPlugin(new EntityPlugin());
+        return context;
+    }
+}
@@ -0,0 +1,111 @@
+package com.dottydingo.hyperion.benchmark;
+
+import com.dottydingo.hyperion.benchmark.model.WideApiObject;
+import com.dottydingo.hyperion.core.translation.PropertyAccessor;
+import com.dottydingo.hyperion.core.translation.TypeMapper;
+import net.sf.cglib.beans.BeanMap;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures reading and writing properties through {@link TypeMapper}, both by name and through pre-resolved
+ * accessors, against a cglib {@link BeanMap} baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TypeMapperBenchmark
+{
+    @Param({"4", "8", "16"})
+    private int width;
+
+    private TypeMapper typeMapper;
+    private String[] fieldNames;
+    private PropertyAccessor[] accessors;
+    private WideApiObject source;
+    private WideApiObject target;
+    private BeanMap sourceMap;
+    private BeanMap targetMap;
+
+    @Setup
+    public void setup()
+    {
+        typeMapper = new TypeMapper(WideApiObject.class);
+
+        List<String> names = BenchmarkData.getFieldNames(width);
+        fieldNames = names.toArray(new String[names.size()]);
+        accessors = new PropertyAccessor[fieldNames.length];
+        for (int i = 0; i < fieldNames.length; i++)
+        {
+            accessors[i] = typeMapper.getAccessor(fieldNames[i]);
+        }
+
+        source = BenchmarkData.createClient(1L, width);
+        target = new WideApiObject();
+        sourceMap = BeanMap.create(source);
+        targetMap = BeanMap.create(target);
+    }
+
+    @Benchmark
+    public void getValueByBeanMap(Blackhole blackhole)
+    {
+        for (String fieldName : fieldNames)
+        {
+            blackhole.consume(sourceMap.get(fieldName));
+        }
+    }
+
+    @Benchmark
+    public void getValueByName(Blackhole blackhole)
+    {
+        for (String fieldName : fieldNames)
+        {
+            blackhole.consume(typeMapper.getValue(source, fieldName));
+        }
+    }
+
+    @Benchmark
+    public void getValueByAccessor(Blackhole blackhole)
+    {
+        for (PropertyAccessor accessor : accessors)
+        {
+            blackhole.consume(accessor.getValue(source));
+        }
+    }
+
+    @Benchmark
+    public WideApiObject copyByName()
+    {
+        for (String fieldName : fieldNames)
+        {
+            typeMapper.setValue(target, fieldName, typeMapper.getValue(source, fieldName));
+        }
+        return target;
+    }
+
+    @Benchmark
+    public WideApiObject copyByBeanMap()
+    {
+        for (String fieldName : fieldNames)
+        {
+            targetMap.put(fieldName, sourceMap.get(fieldName));
+        }
+        return target;
+    }
+
+    @Benchmark
+    public WideApiObject copyByAccessor()
+    {
+        for (PropertyAccessor accessor : accessors)
+        {
+            accessor.setValue(target, accessor.getValue(source));
+        }
+        return target;
+    }
+}
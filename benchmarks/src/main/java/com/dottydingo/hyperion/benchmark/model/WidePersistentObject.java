@@ -0,0 +1,209 @@
+package com.dottydingo.hyperion.benchmark.model;
+
+import com.dottydingo.hyperion.jpa.model.BasePersistentObject;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * The persistent counterpart of {@link WideApiObject}.
+ */
+@Entity
+@Table(name = "wide_entity")
+public class WidePersistentObject extends BasePersistentObject<Long>
+{
+    private Long id;
+    private String text01;
+    private String text02;
+    private String text03;
+    private String text04;
+    private String text05;
+    private String text06;
+    private String text07;
+    private String text08;
+    private Integer number01;
+    private Integer number02;
+    private Integer number03;
+    private Integer number04;
+    private Long value01;
+    private Long value02;
+    private Long value03;
+    private Long value04;
+
+    @Override
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    public Long getId()
+    {
+        return id;
+    }
+
+    @Override
+    public void setId(Long id)
+    {
+        this.id = id;
+    }
+
+    public String getText01()
+    {
+        return text01;
+    }
+
+    public void setText01(String text01)
+    {
+        this.text01 = text01;
+    }
+
+    public String getText02()
+    {
+        return text02;
+    }
+
+    public void setText02(String text02)
+    {
+        this.text02 = text02;
+    }
+
+    public String getText03()
+    {
+        return text03;
+    }
+
+    public void setText03(String text03)
+    {
+        this.text03 = text03;
+    }
+
+    public String getText04()
+    {
+        return text04;
+    }
+
+    public void setText04(String text04)
+    {
+        this.text04 = text04;
+    }
+
+    public String getText05()
+    {
+        return text05;
+    }
+
+    public void setText05(String text05)
+    {
+        this.text05 = text05;
+    }
+
+    public String getText06()
+    {
+        return text06;
+    }
+
+    public void setText06(String text06)
+    {
+        this.text06 = text06;
+    }
+
+    public String getText07()
+    {
+        return text07;
+    }
+
+    public void setText07(String text07)
+    {
+        this.text07 = text07;
+    }
+
+    public String getText08()
+    {
+        return text08;
+    }
+
+    public void setText08(String text08)
+    {
+        this.text08 = text08;
+    }
+
+    public Integer getNumber01()
+    {
+        return number01;
+    }
+
+    public void setNumber01(Integer number01)
+    {
+        this.number01 = number01;
+    }
+
+    public Integer getNumber02()
+    {
+        return number02;
+    }
+
+    public void setNumber02(Integer number02)
+    {
+        this.number02 = number02;
+    }
+
+    public Integer getNumber03()
+    {
+        return number03;
+    }
+
+    public void setNumber03(Integer number03)
+    {
+        this.number03 = number03;
+    }
+
+    public Integer getNumber04()
+    {
+        return number04;
+    }
+
+    public void setNumber04(Integer number04)
+    {
+        this.number04 = number04;
+    }
+
+    public Long getValue01()
+    {
+        return value01;
+    }
+
+    public void setValue01(Long value01)
+    {
+        this.value01 = value01;
+    }
+
+    public Long getValue02()
+    {
+        return value02;
+    }
+
+    public void setValue02(Long value02)
+    {
+        this.value02 = value02;
+    }
+
+    public Long getValue03()
+    {
+        return value03;
+    }
+
+    public void setValue03(Long value03)
+    {
+        this.value03 = value03;
+    }
+
+    public Long getValue04()
+    {
+        return value04;
+    }
+
+    public void setValue04(Long value04)
+    {
+        this.value04 = value04;
+    }
+}
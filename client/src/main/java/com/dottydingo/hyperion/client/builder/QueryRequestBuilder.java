@@ -61,6 +61,18 @@ public class QueryRequestBuilder<T extends ApiObject<ID>,ID extends Serializable
         return this;
     }
 
+    /**
+     * Request continuation (keyset) paging. The first page is requested with a null token, subsequent pages are
+     * requested with the continuation token returned in the previous page. This can not be combined with start.
+     * @param continuation The continuation token from the previous page or null for the first page
+     * @return THe request builder
+     */
+    public QueryRequestBuilder<T, ID> continuation(String continuation)
+    {
+        setParameter("continuation",continuation == null ? "" : continuation);
+        return this;
+    }
+
     /**
      * Set the limit for the request
      * @param limit The limit
@@ -8,6 +8,8 @@ import com.dottydingo.hyperion.core.key.StringKeyConverter;
 import com.dottydingo.hyperion.core.model.PersistentHistoryEntry;
 import com.dottydingo.hyperion.core.model.PersistentObject;
 import com.dottydingo.hyperion.core.persistence.*;
+import com.dottydingo.hyperion.core.persistence.cache.EntityCache;
+import com.dottydingo.hyperion.core.persistence.cache.EntityResponseCache;
 import com.dottydingo.hyperion.core.persistence.dao.Dao;
 import com.dottydingo.hyperion.core.persistence.event.EntityChangeListener;
 import com.dottydingo.hyperion.core.persistence.event.PersistentChangeListener;
@@ -40,6 +42,21 @@ public class EntityPluginBuilder
     protected HttpMethod[] limitMethods;
     protected int cacheMaxAge = 0;
 
+    protected CountMode countMode;
+    protected Integer maxCount;
+    protected CountEstimator countEstimator;
+
+    protected int entityCacheMaxSize = 0;
+    protected long entityCacheTimeToLive = 0;
+    protected int responseCacheMaxSize = 0;
+    protected long responseCacheTimeToLive = 0;
+
+    protected boolean useManagedInstances = false;
+    protected boolean strictTimestamps = false;
+    protected boolean queryDeleteEnabled = false;
+    protected boolean queryUpdateEnabled = false;
+    protected boolean projectionEnabled = false;
+
     protected PersistenceOperations persistenceOperations;
     protected Dao dao;
     protected PersistenceFilter<PersistentObject> persistenceFilter;
@@ -94,6 +111,11 @@ public class EntityPluginBuilder
 
         entityPlugin.setCacheMaxAge(cacheMaxAge);
 
+        if(countMode != null)
+            entityPlugin.setCountMode(countMode);
+        entityPlugin.setMaxCount(maxCount);
+        entityPlugin.setCountEstimator(countEstimator);
+
         entityPlugin.setPersistenceOperations(persistenceOperations);
         entityPlugin.setDao(dao);
         entityPlugin.setPersistenceFilter(getPersistenceFilter(persistenceFilter));
@@ -108,11 +130,29 @@ public class EntityPluginBuilder
         List<PersistentChangeListener> persistentListeners = new ArrayList<>();
         persistentListeners.addAll(serviceRegistryBuilder.getPersistentChangeListeners());
         persistentListeners.addAll(persistentChangeListeners);
-        entityPlugin.setPersistentChangeListeners(persistentListeners);
 
         List<EntityChangeListener> entityListeners = new ArrayList<>();
         entityListeners.addAll(serviceRegistryBuilder.getEntityChangeListeners());
         entityListeners.addAll(entityChangeListeners);
+
+        if(entityCacheMaxSize > 0)
+        {
+            EntityCache entityCache = new EntityCache(entityCacheMaxSize, entityCacheTimeToLive);
+            entityPlugin.setEntityCache(entityCache);
+            if(serviceRegistryBuilder.getEntityCacheRegistry() != null)
+                serviceRegistryBuilder.getEntityCacheRegistry().register(endpointName, entityCache);
+        }
+
+        if(responseCacheMaxSize > 0)
+            entityPlugin.setResponseCache(new EntityResponseCache(responseCacheMaxSize, responseCacheTimeToLive));
+
+        entityPlugin.setUseManagedInstances(useManagedInstances);
+        entityPlugin.setStrictTimestamps(strictTimestamps);
+        entityPlugin.setQueryDeleteEnabled(queryDeleteEnabled);
+        entityPlugin.setQueryUpdateEnabled(queryUpdateEnabled);
+        entityPlugin.setProjectionEnabled(projectionEnabled);
+
+        entityPlugin.setPersistentChangeListeners(persistentListeners);
         entityPlugin.setEntityChangeListeners(entityListeners);
 
 
@@ -270,6 +310,201 @@ public class EntityPluginBuilder
         return this;
     }
 
+    protected CountMode getCountMode()
+    {
+        return countMode;
+    }
+
+    /**
+     * Set the default count mode for queries on this entity. Defaults to EXACT. This can be overridden
+     * using the count request parameter.
+     * @param countMode the count mode
+     */
+    public EntityPluginBuilder setCountMode(CountMode countMode)
+    {
+        this.countMode = countMode;
+        return this;
+    }
+
+    protected Integer getMaxCount()
+    {
+        return maxCount;
+    }
+
+    /**
+     * Set the maximum number of rows that will be counted for a query. Counts that exceed this value are
+     * reported as inexact. Not setting this counts all rows.
+     * @param maxCount the maximum count
+     */
+    public EntityPluginBuilder setMaxCount(Integer maxCount)
+    {
+        this.maxCount = maxCount;
+        return this;
+    }
+
+    protected CountEstimator getCountEstimator()
+    {
+        return countEstimator;
+    }
+
+    /**
+     * Set the count estimator used when the ESTIMATE count mode is requested
+     * @param countEstimator the count estimator
+     */
+    public EntityPluginBuilder setCountEstimator(CountEstimator countEstimator)
+    {
+        this.countEstimator = countEstimator;
+        return this;
+    }
+
+    protected int getEntityCacheMaxSize()
+    {
+        return entityCacheMaxSize;
+    }
+
+    /**
+     * Set the maximum number of items to hold in the entity cache used when loading items by id. Defaults to 0 which
+     * disables the cache. Cached items are detached and shared between requests so this should only be enabled for
+     * entities whose translation only uses associations declared as fetch paths.
+     * @param entityCacheMaxSize the maximum number of cached items
+     */
+    public EntityPluginBuilder setEntityCacheMaxSize(int entityCacheMaxSize)
+    {
+        this.entityCacheMaxSize = entityCacheMaxSize;
+        return this;
+    }
+
+    protected long getEntityCacheTimeToLive()
+    {
+        return entityCacheTimeToLive;
+    }
+
+    /**
+     * Set the time in milliseconds that an item is held in the entity cache. Defaults to 0 which keeps items until
+     * they are evicted or invalidated by a change.
+     * @param entityCacheTimeToLive the time to live in milliseconds
+     */
+    public EntityPluginBuilder setEntityCacheTimeToLive(long entityCacheTimeToLive)
+    {
+        this.entityCacheTimeToLive = entityCacheTimeToLive;
+        return this;
+    }
+
+    protected int getResponseCacheMaxSize()
+    {
+        return responseCacheMaxSize;
+    }
+
+    /**
+     * Set the maximum number of items to hold serialized responses for when loading items by id. Defaults to 0 which
+     * disables the cache. Responses are only cached for authorization contexts that supply a view key and make row
+     * independent decisions, and persistence filters that show every item without checking it.
+     * @param responseCacheMaxSize the maximum number of cached items
+     */
+    public EntityPluginBuilder setResponseCacheMaxSize(int responseCacheMaxSize)
+    {
+        this.responseCacheMaxSize = responseCacheMaxSize;
+        return this;
+    }
+
+    protected long getResponseCacheTimeToLive()
+    {
+        return responseCacheTimeToLive;
+    }
+
+    /**
+     * Set the time in milliseconds that serialized responses are held. Defaults to 0 which keeps responses until
+     * they are evicted or invalidated by a change.
+     * @param responseCacheTimeToLive the time to live in milliseconds
+     */
+    public EntityPluginBuilder setResponseCacheTimeToLive(long responseCacheTimeToLive)
+    {
+        this.responseCacheTimeToLive = responseCacheTimeToLive;
+        return this;
+    }
+
+    protected boolean isUseManagedInstances()
+    {
+        return useManagedInstances;
+    }
+
+    /**
+     * Set to true to return the written instances after a create or update instead of reloading them. This only takes
+     * effect when the dao reports the instances are authoritative, entities with database generated fields are still
+     * reloaded. Defaults to false.
+     * @param useManagedInstances true to skip the reload
+     */
+    public EntityPluginBuilder setUseManagedInstances(boolean useManagedInstances)
+    {
+        this.useManagedInstances = useManagedInstances;
+        return this;
+    }
+
+    protected boolean isStrictTimestamps()
+    {
+        return strictTimestamps;
+    }
+
+    /**
+     * Set to true to read the database time on every write instead of using the time tracked by the dao clock. Use
+     * this when audit and history timestamps must exactly match the database time. Defaults to false.
+     * @param strictTimestamps true to read the database time on every write
+     */
+    public EntityPluginBuilder setStrictTimestamps(boolean strictTimestamps)
+    {
+        this.strictTimestamps = strictTimestamps;
+        return this;
+    }
+
+    protected boolean isQueryDeleteEnabled()
+    {
+        return queryDeleteEnabled;
+    }
+
+    /**
+     * Set to true to allow deleting all items matching a query (DELETE without ids and a query parameter).
+     * Defaults to false.
+     * @param queryDeleteEnabled true to allow deletes by query
+     */
+    public EntityPluginBuilder setQueryDeleteEnabled(boolean queryDeleteEnabled)
+    {
+        this.queryDeleteEnabled = queryDeleteEnabled;
+        return this;
+    }
+
+    protected boolean isQueryUpdateEnabled()
+    {
+        return queryUpdateEnabled;
+    }
+
+    /**
+     * Set to true to allow applying a single sparse item to all items matching a query (PUT with a query parameter).
+     * Defaults to false.
+     * @param queryUpdateEnabled true to allow updates by query
+     */
+    public EntityPluginBuilder setQueryUpdateEnabled(boolean queryUpdateEnabled)
+    {
+        this.queryUpdateEnabled = queryUpdateEnabled;
+        return this;
+    }
+
+    protected boolean isProjectionEnabled()
+    {
+        return projectionEnabled;
+    }
+
+    /**
+     * Set to true to load only the requested fields when a query limits the fields returned. This applies when the
+     * requested fields are mapped directly to persistent properties and the dao supports projections, otherwise
+     * whole entities are loaded. Defaults to false.
+     * @param projectionEnabled true to load only the requested fields
+     */
+    public EntityPluginBuilder setProjectionEnabled(boolean projectionEnabled)
+    {
+        this.projectionEnabled = projectionEnabled;
+        return this;
+    }
+
     protected PersistenceOperations getPersistenceOperations()
     {
         return persistenceOperations;
@@ -13,6 +13,7 @@ public class HyperionEndpointConfiguration extends EndpointConfiguration
     protected int accessControlMaxAge = 0;
     protected int defaultLimit = 500;
     protected int maxLimit = 1000;
+    protected int maxStreamingLimit = 0;
     protected boolean includeErrorDetail = false;
     protected boolean trackProvidedFieldsOnUpdate = false;
     protected boolean requireValidVersion = false;
@@ -89,6 +90,22 @@ public class HyperionEndpointConfiguration extends EndpointConfiguration
         this.maxLimit = maxLimit;
     }
 
+    public int getMaxStreamingLimit()
+    {
+        return maxStreamingLimit;
+    }
+
+    /**
+     * Set the maximum limit for queries requested with stream=true. Streamed queries write each entry to the
+     * response as it is read. If the query fails after the first entry was written the entries are followed by an
+     * error object instead of the page. A value of 0 disables streaming.
+     * @param maxStreamingLimit the maximum limit
+     */
+    public void setMaxStreamingLimit(int maxStreamingLimit)
+    {
+        this.maxStreamingLimit = maxStreamingLimit;
+    }
+
     public boolean getIncludeErrorDetail()
     {
         return includeErrorDetail;
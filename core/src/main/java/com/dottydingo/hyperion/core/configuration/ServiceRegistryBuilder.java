@@ -4,6 +4,7 @@ import com.dottydingo.hyperion.core.key.KeyConverter;
 import com.dottydingo.hyperion.core.model.PersistentHistoryEntry;
 import com.dottydingo.hyperion.core.persistence.event.EntityChangeListener;
 import com.dottydingo.hyperion.core.persistence.PersistenceOperations;
+import com.dottydingo.hyperion.core.persistence.cache.EntityCacheRegistry;
 import com.dottydingo.hyperion.core.persistence.dao.Dao;
 import com.dottydingo.hyperion.core.persistence.event.PersistentChangeListener;
 import com.dottydingo.hyperion.core.registry.EntityPlugin;
@@ -25,6 +26,7 @@ public class ServiceRegistryBuilder
     private Class<? extends PersistentHistoryEntry> defaultHistoryType;
     private List<PersistentChangeListener> persistentChangeListeners = new ArrayList<>();
     private List<EntityChangeListener> entityChangeListeners = new ArrayList<>();
+    private EntityCacheRegistry entityCacheRegistry;
 
     private List<EntityPluginBuilder> entities = new ArrayList<>();
 
@@ -139,6 +141,21 @@ public class ServiceRegistryBuilder
         return entityChangeListeners;
     }
 
+    /**
+     * Set the registry the entity caches are added to for monitoring
+     * @param entityCacheRegistry the registry
+     */
+    public ServiceRegistryBuilder setEntityCacheRegistry(EntityCacheRegistry entityCacheRegistry)
+    {
+        this.entityCacheRegistry = entityCacheRegistry;
+        return this;
+    }
+
+    protected EntityCacheRegistry getEntityCacheRegistry()
+    {
+        return entityCacheRegistry;
+    }
+
     protected Boolean getDefaultHistoryEnabled()
     {
         return defaultHistoryEnabled;
@@ -2,6 +2,7 @@ package com.dottydingo.hyperion.core.endpoint;
 
 import com.dottydingo.hyperion.core.registry.ApiVersionPlugin;
 import com.dottydingo.hyperion.core.registry.EntityPlugin;
+import com.dottydingo.hyperion.core.endpoint.pipeline.AdaptiveConcurrencyLimiter;
 import com.dottydingo.hyperion.core.endpoint.pipeline.auth.AuthorizationContext;
 import com.dottydingo.service.endpoint.context.EndpointContext;
 import com.dottydingo.service.endpoint.context.UserContext;
@@ -24,6 +25,8 @@ public class HyperionContext extends EndpointContext<HyperionRequest,HyperionRes
     private boolean showErrorDetail;
     private Locale locale;
     private boolean legacyClient;
+    private boolean entityTagFromBody;
+    private AdaptiveConcurrencyLimiter.Permit concurrencyPermit;
 
     public EntityPlugin getEntityPlugin()
     {
@@ -145,4 +148,33 @@ public class HyperionContext extends EndpointContext<HyperionRequest,HyperionRes
     {
         this.legacyClient = legacyClient;
     }
+
+    public boolean isEntityTagFromBody()
+    {
+        return entityTagFromBody;
+    }
+
+    public void setEntityTagFromBody(boolean entityTagFromBody)
+    {
+        this.entityTagFromBody = entityTagFromBody;
+    }
+
+    public AdaptiveConcurrencyLimiter.Permit getConcurrencyPermit()
+    {
+        return concurrencyPermit;
+    }
+
+    public void setConcurrencyPermit(AdaptiveConcurrencyLimiter.Permit concurrencyPermit)
+    {
+        this.concurrencyPermit = concurrencyPermit;
+    }
+
+    /**
+     * Release the concurrency permit held by this request, if any
+     */
+    public void releaseConcurrencyPermit()
+    {
+        if(concurrencyPermit != null)
+            concurrencyPermit.release();
+    }
 }
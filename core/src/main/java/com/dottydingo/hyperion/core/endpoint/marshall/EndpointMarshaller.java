@@ -2,9 +2,11 @@ package com.dottydingo.hyperion.core.endpoint.marshall;
 
 import com.dottydingo.hyperion.core.configuration.HyperionEndpointConfiguration;
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
@@ -82,6 +84,18 @@ public class EndpointMarshaller
         }
     }
 
+    public <T> T unmarshall(String value, Class<T> type) throws MarshallingException
+    {
+        try
+        {
+            return objectMapper.readValue(value,type);
+        }
+        catch (Exception e)
+        {
+            throw new MarshallingException(e);
+        }
+    }
+
     public <T> List<T> unmarshallCollection(InputStream inputStream, Class<T> type) throws MarshallingException
     {
 
@@ -229,4 +243,109 @@ public class EndpointMarshaller
         }
 
     }
+
+    /**
+     * Serialize a value to a JSON string using the same configuration as
+     * {@link #marshall(java.io.OutputStream, Object)}.
+     * @param value The value
+     * @return The serialized value
+     */
+    public String marshallToString(Object value) throws MarshallingException
+    {
+        try
+        {
+            return objectMapper.writeValueAsString(value);
+        }
+        catch(Exception e)
+        {
+            throw new MarshallingException(e);
+        }
+    }
+
+    /**
+     * Convert a value to a JSON tree using the same configuration as {@link #marshall(java.io.OutputStream, Object)}.
+     * @param value The value
+     * @return The tree
+     */
+    public JsonNode valueToTree(Object value) throws MarshallingException
+    {
+        try
+        {
+            return objectMapper.valueToTree(value);
+        }
+        catch(Exception e)
+        {
+            throw new MarshallingException(e);
+        }
+    }
+
+    /**
+     * Parse a JSON string into a tree.
+     * @param value The JSON string
+     * @return The tree
+     */
+    public JsonNode readTree(String value) throws MarshallingException
+    {
+        try
+        {
+            return objectMapper.readTree(value);
+        }
+        catch(Exception e)
+        {
+            throw new MarshallingException(e);
+        }
+    }
+
+    /**
+     * Parse UTF-8 encoded JSON into a tree.
+     * @param value The JSON bytes
+     * @return The tree
+     */
+    public JsonNode readTree(byte[] value) throws MarshallingException
+    {
+        try
+        {
+            return objectMapper.readTree(value);
+        }
+        catch(Exception e)
+        {
+            throw new MarshallingException(e);
+        }
+    }
+
+    /**
+     * Convert a JSON tree to a value.
+     * @param node The tree
+     * @param type The type to create
+     * @return The value
+     */
+    public <T> T treeToValue(JsonNode node, Class<T> type) throws MarshallingException
+    {
+        try
+        {
+            return objectMapper.treeToValue(node,type);
+        }
+        catch(Exception e)
+        {
+            throw new MarshallingException(e);
+        }
+    }
+
+    /**
+     * Create a generator for writing a response incrementally. Objects written with the generator use the same
+     * configuration as {@link #marshall(java.io.OutputStream, Object)}.
+     * @param outputStream The output stream
+     * @return The generator
+     */
+    public JsonGenerator createGenerator(OutputStream outputStream) throws MarshallingException
+    {
+        try
+        {
+            return objectMapper.getFactory().createGenerator(outputStream);
+        }
+        catch(Exception e)
+        {
+            throw new MarshallingException(e);
+        }
+    }
 }
@@ -0,0 +1,113 @@
+package com.dottydingo.hyperion.core.endpoint.marshall;
+
+import com.dottydingo.hyperion.api.ErrorResponse;
+import com.dottydingo.hyperion.api.Page;
+import com.dottydingo.hyperion.core.persistence.ResultHandler;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes an entity response one entry at a time with the page information following the entries. Nothing is
+ * written to the output stream until the first entry is received so that errors raised before then can still
+ * be reported normally. Once output has started the status can no longer change, so a failure is reported by
+ * following the entries with an error object instead of the page. A streamed response without a page is
+ * incomplete.
+ */
+public class EntityStreamWriter<T> implements ResultHandler<T>
+{
+    private EndpointMarshaller marshaller;
+    private OutputStream outputStream;
+    private JsonGenerator generator;
+
+    public EntityStreamWriter(EndpointMarshaller marshaller, OutputStream outputStream)
+    {
+        this.marshaller = marshaller;
+        this.outputStream = outputStream;
+    }
+
+    @Override
+    public void handleResult(T item)
+    {
+        try
+        {
+            start();
+            generator.writeObject(item);
+        }
+        catch (IOException e)
+        {
+            throw new MarshallingException(e);
+        }
+    }
+
+    /**
+     * Complete the response
+     * @param page The page information
+     */
+    public void complete(Page page)
+    {
+        try
+        {
+            start();
+            generator.writeEndArray();
+            generator.writeObjectField("page", page);
+            generator.writeEndObject();
+            generator.close();
+        }
+        catch (IOException e)
+        {
+            throw new MarshallingException(e);
+        }
+    }
+
+    /**
+     * Complete a response that failed after output started. The entries written so far are followed by the error
+     * in place of the page.
+     * @param error The error
+     */
+    public void fail(ErrorResponse error)
+    {
+        if(generator == null)
+            return;
+
+        try
+        {
+            generator.writeEndArray();
+            generator.writeObjectField("error", error);
+            generator.writeEndObject();
+            generator.close();
+        }
+        catch (IOException e)
+        {
+            // the client has most likely gone away, there is nothing left to report to
+        }
+    }
+
+    /**
+     * Called before the first output is written, for example to set the response status and headers.
+     */
+    protected void onStart()
+    {
+    }
+
+    /**
+     * Return true if any output has been written
+     * @return the flag
+     */
+    public boolean isStarted()
+    {
+        return generator != null;
+    }
+
+    private void start() throws IOException
+    {
+        if(generator != null)
+            return;
+
+        onStart();
+        generator = marshaller.createGenerator(outputStream);
+        generator.writeStartObject();
+        generator.writeArrayFieldStart("entries");
+    }
+}
@@ -0,0 +1,26 @@
+package com.dottydingo.hyperion.core.endpoint.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Forwards phase timings to multiple {@link PipelineMetrics} instances.
+ */
+public class CompositePipelineMetrics implements PipelineMetrics
+{
+    private List<PipelineMetrics> delegates = new ArrayList<PipelineMetrics>();
+
+    public void setDelegates(List<PipelineMetrics> delegates)
+    {
+        this.delegates = delegates;
+    }
+
+    @Override
+    public void recordPhase(PhaseMetricKey key, long queueWaitNanos, long executionNanos)
+    {
+        for (PipelineMetrics delegate : delegates)
+        {
+            delegate.recordPhase(key, queueWaitNanos, executionNanos);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.dottydingo.hyperion.core.endpoint.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps queue wait and execution time histograms for each phase, entity, method and version.
+ */
+public class HistogramPipelineMetrics implements PipelineMetrics
+{
+    private final ConcurrentMap<PhaseMetricKey,PhaseHistograms> histograms =
+            new ConcurrentHashMap<PhaseMetricKey, PhaseHistograms>();
+
+    @Override
+    public void recordPhase(PhaseMetricKey key, long queueWaitNanos, long executionNanos)
+    {
+        PhaseHistograms phaseHistograms = histograms.get(key);
+        if(phaseHistograms == null)
+        {
+            phaseHistograms = new PhaseHistograms();
+            PhaseHistograms existing = histograms.putIfAbsent(key, phaseHistograms);
+            if(existing != null)
+                phaseHistograms = existing;
+        }
+
+        phaseHistograms.queueWait.record(queueWaitNanos);
+        phaseHistograms.execution.record(executionNanos);
+    }
+
+    public Set<PhaseMetricKey> getKeys()
+    {
+        return Collections.unmodifiableSet(histograms.keySet());
+    }
+
+    public LatencyHistogram getQueueWait(PhaseMetricKey key)
+    {
+        PhaseHistograms phaseHistograms = histograms.get(key);
+        return phaseHistograms == null ? null : phaseHistograms.queueWait;
+    }
+
+    public LatencyHistogram getExecution(PhaseMetricKey key)
+    {
+        PhaseHistograms phaseHistograms = histograms.get(key);
+        return phaseHistograms == null ? null : phaseHistograms.execution;
+    }
+
+    /**
+     * Return a one line summary of the queue wait times for each key
+     * @return The summaries, sorted by key
+     */
+    public List<String> getQueueWaitSummary()
+    {
+        List<String> summary = new ArrayList<String>();
+        for (PhaseMetricKey key : getSortedKeys())
+        {
+            summary.add(summarize(key, histograms.get(key).queueWait));
+        }
+        return summary;
+    }
+
+    /**
+     * Return a one line summary of the execution times for each key
+     * @return The summaries, sorted by key
+     */
+    public List<String> getExecutionSummary()
+    {
+        List<String> summary = new ArrayList<String>();
+        for (PhaseMetricKey key : getSortedKeys())
+        {
+            summary.add(summarize(key, histograms.get(key).execution));
+        }
+        return summary;
+    }
+
+    public void reset()
+    {
+        histograms.clear();
+    }
+
+    private List<PhaseMetricKey> getSortedKeys()
+    {
+        List<PhaseMetricKey> keys = new ArrayList<PhaseMetricKey>(histograms.keySet());
+        Collections.sort(keys, new Comparator<PhaseMetricKey>()
+        {
+            @Override
+            public int compare(PhaseMetricKey o1, PhaseMetricKey o2)
+            {
+                return o1.toString().compareTo(o2.toString());
+            }
+        });
+        return keys;
+    }
+
+    private String summarize(PhaseMetricKey key, LatencyHistogram histogram)
+    {
+        return String.format("%s count=%d mean=%dus p50=%dus p90=%dus p99=%dus max=%dus", key,
+                histogram.getCount(), histogram.getMean(), histogram.getPercentile(50),
+                histogram.getPercentile(90), histogram.getPercentile(99), histogram.getMax());
+    }
+
+    private static class PhaseHistograms
+    {
+        private final LatencyHistogram queueWait = new LatencyHistogram();
+        private final LatencyHistogram execution = new LatencyHistogram();
+    }
+}
@@ -0,0 +1,133 @@
+package com.dottydingo.hyperion.core.endpoint.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed size, lock free latency histogram. Values are recorded in microseconds into log-linear buckets with 16
+ * sub-buckets per power of two, giving a relative error of at most 6.25% for any recorded value.
+ */
+public class LatencyHistogram
+{
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_LIMIT = SUB_BUCKET_COUNT * 2;
+    private static final int FIRST_EXPONENT = SUB_BUCKET_BITS + 1;
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKET_COUNT = LINEAR_LIMIT + (MAX_EXPONENT - FIRST_EXPONENT + 1) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record a latency
+     * @param nanos The latency in nanoseconds
+     */
+    public void record(long nanos)
+    {
+        long micros = Math.max(0L, TimeUnit.NANOSECONDS.toMicros(nanos));
+        counts.incrementAndGet(bucketIndex(micros));
+        count.incrementAndGet();
+        total.addAndGet(micros);
+
+        long current = max.get();
+        while (micros > current && !max.compareAndSet(current, micros))
+        {
+            current = max.get();
+        }
+    }
+
+    public long getCount()
+    {
+        return count.get();
+    }
+
+    /**
+     * Return the mean latency in microseconds
+     * @return The mean
+     */
+    public long getMean()
+    {
+        long c = count.get();
+        return c == 0 ? 0 : total.get() / c;
+    }
+
+    /**
+     * Return the maximum latency in microseconds
+     * @return The maximum
+     */
+    public long getMax()
+    {
+        return max.get();
+    }
+
+    /**
+     * Return the latency in microseconds at the specified percentile
+     * @param percentile The percentile, from 0 to 100
+     * @return The latency
+     */
+    public long getPercentile(double percentile)
+    {
+        long[] snapshot = new long[BUCKET_COUNT];
+        long c = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++)
+        {
+            snapshot[i] = counts.get(i);
+            c += snapshot[i];
+        }
+
+        if(c == 0)
+            return 0;
+
+        long target = Math.max(1L, (long) Math.ceil(c * Math.min(100.0, percentile) / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++)
+        {
+            seen += snapshot[i];
+            if(seen >= target)
+                return Math.min(bucketUpperBound(i), max.get());
+        }
+
+        return max.get();
+    }
+
+    /**
+     * Clear all recorded values
+     */
+    public void reset()
+    {
+        for (int i = 0; i < BUCKET_COUNT; i++)
+        {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        total.set(0);
+        max.set(0);
+    }
+
+    static int bucketIndex(long micros)
+    {
+        if(micros < LINEAR_LIMIT)
+            return (int) micros;
+
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if(exponent > MAX_EXPONENT)
+            return BUCKET_COUNT - 1;
+
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return LINEAR_LIMIT + (exponent - FIRST_EXPONENT) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    static long bucketUpperBound(int index)
+    {
+        if(index < LINEAR_LIMIT)
+            return index;
+
+        int exponent = (index - LINEAR_LIMIT) / SUB_BUCKET_COUNT + FIRST_EXPONENT;
+        int subBucket = (index - LINEAR_LIMIT) % SUB_BUCKET_COUNT;
+        return ((long) (SUB_BUCKET_COUNT + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
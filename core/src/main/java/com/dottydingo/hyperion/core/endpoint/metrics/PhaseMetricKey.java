@@ -0,0 +1,74 @@
+package com.dottydingo.hyperion.core.endpoint.metrics;
+
+/**
+ * Identifies the measurements for a phase executed for a specific entity, method and api version.
+ */
+public class PhaseMetricKey
+{
+    private final String phase;
+    private final String entity;
+    private final String method;
+    private final Integer version;
+
+    public PhaseMetricKey(String phase, String entity, String method, Integer version)
+    {
+        this.phase = phase;
+        this.entity = entity;
+        this.method = method;
+        this.version = version;
+    }
+
+    public String getPhase()
+    {
+        return phase;
+    }
+
+    public String getEntity()
+    {
+        return entity;
+    }
+
+    public String getMethod()
+    {
+        return method;
+    }
+
+    public Integer getVersion()
+    {
+        return version;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        PhaseMetricKey that = (PhaseMetricKey) o;
+
+        if (!phase.equals(that.phase)) return false;
+        if (entity != null ? !entity.equals(that.entity) : that.entity != null) return false;
+        if (method != null ? !method.equals(that.method) : that.method != null) return false;
+        return version != null ? version.equals(that.version) : that.version == null;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        int result = phase.hashCode();
+        result = 31 * result + (entity != null ? entity.hashCode() : 0);
+        result = 31 * result + (method != null ? method.hashCode() : 0);
+        result = 31 * result + (version != null ? version.hashCode() : 0);
+        return result;
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder(phase);
+        sb.append("/").append(entity != null ? entity : "-");
+        sb.append("/").append(method != null ? method : "-");
+        sb.append("/").append(version != null ? "v" + version : "-");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,15 @@
+package com.dottydingo.hyperion.core.endpoint.metrics;
+
+/**
+ * Receives timings for each pipeline phase. Implement this to publish phase timings to an external metrics registry.
+ */
+public interface PipelineMetrics
+{
+    /**
+     * Record the timings for a phase execution
+     * @param key The phase, entity, method and version the timings apply to
+     * @param queueWaitNanos The time the phase waited for an executor thread, 0 when the phase ran synchronously
+     * @param executionNanos The time spent executing the phase
+     */
+    void recordPhase(PhaseMetricKey key, long queueWaitNanos, long executionNanos);
+}
@@ -0,0 +1,336 @@
+package com.dottydingo.hyperion.core.endpoint.pipeline;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An adaptive concurrency limiter using additive increase / multiplicative decrease. The limit grows slowly while
+ * observed latency stays near the lowest latency seen in the current sampling window and is cut back when latency
+ * rises above it by more than the configured tolerance. Requests over the limit are admitted as long as the
+ * estimated wait for a slot stays within the queue wait budget.
+ * <p>
+ * Baseline latency is tracked separately for each request key (such as the endpoint and method) so that a mix of
+ * fast and slow request types is not mistaken for congestion.
+ */
+public class AdaptiveConcurrencyLimiter
+{
+    private static final String DEFAULT_KEY = "default";
+
+    private static final Permit NO_OP_PERMIT = new Permit(null, null, 0)
+    {
+        @Override
+        public void release()
+        {
+        }
+    };
+
+    private volatile boolean enabled = true;
+    private volatile int minLimit = 1;
+    private volatile int maxLimit = 1000;
+    private volatile double tolerance = 2.0;
+    private volatile double backoffRatio = 0.9;
+    private volatile long queueWaitBudget = 500;
+    private volatile int sampleWindow = 1000;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong acceptedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    // guarded by this
+    private double limit = 20;
+    private double averageLatency = 0;
+    private final Map<String,Baseline> baselines = new HashMap<>();
+    private Long nextDecrease;
+
+    /**
+     * Try to acquire a permit for a request
+     * @return The permit, or null if the request should be rejected
+     */
+    public Permit tryAcquire()
+    {
+        return tryAcquire(DEFAULT_KEY);
+    }
+
+    /**
+     * Try to acquire a permit for a request
+     * @param key The key identifying the type of request, latency is compared to the baseline for this key. The
+     *            number of distinct keys must be bounded.
+     * @return The permit, or null if the request should be rejected
+     */
+    public Permit tryAcquire(String key)
+    {
+        if(!enabled)
+            return NO_OP_PERMIT;
+
+        int current = inFlight.incrementAndGet();
+        if(isOverBudget(current))
+        {
+            inFlight.decrementAndGet();
+            rejectedCount.incrementAndGet();
+            return null;
+        }
+
+        acceptedCount.incrementAndGet();
+        return new Permit(this, key, nanoTime());
+    }
+
+    /**
+     * Return the estimated time in milliseconds a new request would wait for a slot
+     * @return The estimated wait
+     */
+    public long getEstimatedWait()
+    {
+        return getEstimatedWait(inFlight.get() + 1);
+    }
+
+    private synchronized boolean isOverBudget(int requests)
+    {
+        return requests > limit && getEstimatedWait(requests) >= queueWaitBudget;
+    }
+
+    private synchronized long getEstimatedWait(int requests)
+    {
+        if(requests <= limit)
+            return 0;
+
+        double waitNanos = averageLatency * (requests - limit) / limit;
+        return TimeUnit.NANOSECONDS.toMillis((long) waitNanos);
+    }
+
+    /**
+     * Return the current time in nanoseconds
+     */
+    protected long nanoTime()
+    {
+        return System.nanoTime();
+    }
+
+    private void release(String key, long startNanos)
+    {
+        long now = nanoTime();
+        int current = inFlight.getAndDecrement();
+        onSample(key, now - startNanos, current, now);
+    }
+
+    private synchronized void onSample(String key, long latency, int requests, long now)
+    {
+        averageLatency = averageLatency == 0 ? latency : averageLatency * 0.9 + latency * 0.1;
+
+        Baseline baseline = baselines.get(key);
+        if(baseline == null)
+        {
+            baseline = new Baseline();
+            baselines.put(key, baseline);
+        }
+
+        if(latency > baseline.addSample(latency, sampleWindow) * tolerance)
+        {
+            // only back off once per average request time so a burst of slow requests is a single decrease
+            if(nextDecrease == null || now - nextDecrease >= 0)
+            {
+                limit = Math.max(minLimit, limit * backoffRatio);
+                nextDecrease = now + (long) averageLatency;
+            }
+        }
+        else if(requests >= limit / 2)
+        {
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+    }
+
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * Set a flag indicating if the limiter is enabled. Defaults to true.
+     * @param enabled the flag
+     */
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    public synchronized int getLimit()
+    {
+        return (int) limit;
+    }
+
+    /**
+     * Set the current limit. The limit will adapt from this value.
+     * @param limit the limit
+     */
+    public synchronized void setLimit(int limit)
+    {
+        this.limit = Math.max(minLimit, Math.min(maxLimit, limit));
+    }
+
+    public int getMinLimit()
+    {
+        return minLimit;
+    }
+
+    public void setMinLimit(int minLimit)
+    {
+        this.minLimit = minLimit;
+    }
+
+    public int getMaxLimit()
+    {
+        return maxLimit;
+    }
+
+    public void setMaxLimit(int maxLimit)
+    {
+        this.maxLimit = maxLimit;
+    }
+
+    public double getTolerance()
+    {
+        return tolerance;
+    }
+
+    /**
+     * Set the ratio of observed latency to baseline latency above which the limit is reduced. Defaults to 2.0.
+     * @param tolerance the tolerance
+     */
+    public void setTolerance(double tolerance)
+    {
+        this.tolerance = tolerance;
+    }
+
+    public double getBackoffRatio()
+    {
+        return backoffRatio;
+    }
+
+    /**
+     * Set the ratio applied to the limit when latency exceeds the tolerance. Defaults to 0.9.
+     * @param backoffRatio the ratio
+     */
+    public void setBackoffRatio(double backoffRatio)
+    {
+        this.backoffRatio = backoffRatio;
+    }
+
+    public long getQueueWaitBudget()
+    {
+        return queueWaitBudget;
+    }
+
+    /**
+     * Set the maximum estimated wait in milliseconds before a request over the limit is rejected. Defaults to 500.
+     * @param queueWaitBudget the budget
+     */
+    public void setQueueWaitBudget(long queueWaitBudget)
+    {
+        this.queueWaitBudget = queueWaitBudget;
+    }
+
+    public int getSampleWindow()
+    {
+        return sampleWindow;
+    }
+
+    /**
+     * Set the number of samples after which the baseline latency is recalculated. Defaults to 1000.
+     * @param sampleWindow the number of samples
+     */
+    public void setSampleWindow(int sampleWindow)
+    {
+        this.sampleWindow = sampleWindow;
+    }
+
+    public int getInFlight()
+    {
+        return inFlight.get();
+    }
+
+    public long getAcceptedCount()
+    {
+        return acceptedCount.get();
+    }
+
+    public long getRejectedCount()
+    {
+        return rejectedCount.get();
+    }
+
+    public synchronized long getAverageLatency()
+    {
+        return TimeUnit.NANOSECONDS.toMillis((long) averageLatency);
+    }
+
+    /**
+     * Return the baseline latency in milliseconds for each request key
+     * @return The baselines keyed by request key
+     */
+    public synchronized Map<String,Long> getBaselineLatencies()
+    {
+        Map<String,Long> latencies = new TreeMap<>();
+        for (Map.Entry<String, Baseline> entry : baselines.entrySet())
+        {
+            latencies.put(entry.getKey(), TimeUnit.NANOSECONDS.toMillis(entry.getValue().getLatency()));
+        }
+        return latencies;
+    }
+
+    /**
+     * The lowest latency seen for a type of request. The minimum of the previous and the current sampling window is
+     * used so that the baseline can adjust to a permanent change in latency.
+     */
+    private static class Baseline
+    {
+        private long baselineLatency = Long.MAX_VALUE;
+        private long windowMinLatency = Long.MAX_VALUE;
+        private int windowSamples = 0;
+
+        private long addSample(long latency, int sampleWindow)
+        {
+            windowMinLatency = Math.min(windowMinLatency, latency);
+            if(++windowSamples >= sampleWindow)
+            {
+                baselineLatency = windowMinLatency;
+                windowMinLatency = Long.MAX_VALUE;
+                windowSamples = 0;
+            }
+            return getLatency();
+        }
+
+        private long getLatency()
+        {
+            return Math.min(baselineLatency, windowMinLatency);
+        }
+    }
+
+    /**
+     * A slot held by a request. The permit must be released when the request completes, releasing more than once
+     * has no effect.
+     */
+    public static class Permit
+    {
+        private final AdaptiveConcurrencyLimiter limiter;
+        private final String key;
+        private final long startNanos;
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        private Permit(AdaptiveConcurrencyLimiter limiter, String key, long startNanos)
+        {
+            this.limiter = limiter;
+            this.key = key;
+            this.startNanos = startNanos;
+        }
+
+        public void release()
+        {
+            if(released.compareAndSet(false, true))
+                limiter.release(key, startNanos);
+        }
+    }
+}
@@ -13,6 +13,7 @@ public class HyperionErrorHandler implements ErrorHandler<HyperionContext>
     {
 
         context.setError(throwable);
+        context.releaseConcurrencyPermit();
         context.requestComplete();
     }
 
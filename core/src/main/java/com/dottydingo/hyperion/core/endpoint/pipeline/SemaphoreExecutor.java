@@ -0,0 +1,227 @@
+package com.dottydingo.hyperion.core.endpoint.pipeline;
+
+import com.dottydingo.hyperion.api.exception.ServiceUnavailableException;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An executor that limits the number of tasks running concurrently with a semaphore instead of a thread pool size.
+ * Tasks run on a shared elastic executor so that a burst on one phase is not limited by the threads sized for it.
+ * When no permit is available the submitting thread waits up to the configured time before the task is rejected
+ * with a {@link ServiceUnavailableException}.
+ */
+public class SemaphoreExecutor extends AbstractExecutorService
+{
+    private final AdjustableSemaphore semaphore;
+    private final ExecutorService executor;
+
+    private volatile int maxConcurrency;
+    private volatile long maxPermitWait = 1000;
+    private volatile boolean shutdown = false;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicLong permitWaitCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong completedTaskCount = new AtomicLong();
+
+    /**
+     * Create an executor
+     * @param executor The shared executor used to run tasks, this executor is not shut down with this instance
+     * @param maxConcurrency The maximum number of tasks that can run at once
+     */
+    public SemaphoreExecutor(ExecutorService executor, int maxConcurrency)
+    {
+        if(maxConcurrency <= 0)
+            throw new IllegalArgumentException("maxConcurrency must be greater than 0");
+
+        this.executor = executor;
+        this.maxConcurrency = maxConcurrency;
+        this.semaphore = new AdjustableSemaphore(maxConcurrency);
+    }
+
+    /**
+     * Set the maximum time in milliseconds to wait for a permit before rejecting a task. Defaults to 1000.
+     * @param maxPermitWait the maximum wait
+     */
+    public void setMaxPermitWait(long maxPermitWait)
+    {
+        this.maxPermitWait = maxPermitWait;
+    }
+
+    public long getMaxPermitWait()
+    {
+        return maxPermitWait;
+    }
+
+    public synchronized void setMaxConcurrency(int maxConcurrency)
+    {
+        if(maxConcurrency <= 0)
+            throw new IllegalArgumentException("maxConcurrency must be greater than 0");
+
+        int delta = maxConcurrency - this.maxConcurrency;
+        if(delta > 0)
+            semaphore.release(delta);
+        else if(delta < 0)
+            semaphore.reducePermits(-delta);
+
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    public int getMaxConcurrency()
+    {
+        return maxConcurrency;
+    }
+
+    public int getAvailablePermits()
+    {
+        return Math.max(0, semaphore.availablePermits());
+    }
+
+    public int getInFlightCount()
+    {
+        return inFlight.get();
+    }
+
+    public int getWaitingCount()
+    {
+        return waiting.get();
+    }
+
+    public long getPermitWaitCount()
+    {
+        return permitWaitCount.get();
+    }
+
+    public long getRejectedCount()
+    {
+        return rejectedCount.get();
+    }
+
+    public long getCompletedTaskCount()
+    {
+        return completedTaskCount.get();
+    }
+
+    @Override
+    public void execute(final Runnable command)
+    {
+        if(shutdown)
+            throw reject();
+
+        if(!acquire())
+            throw reject();
+
+        inFlight.incrementAndGet();
+        try
+        {
+            executor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        command.run();
+                    }
+                    finally
+                    {
+                        inFlight.decrementAndGet();
+                        completedTaskCount.incrementAndGet();
+                        semaphore.release();
+                    }
+                }
+            });
+        }
+        catch (RejectedExecutionException e)
+        {
+            inFlight.decrementAndGet();
+            semaphore.release();
+            throw reject();
+        }
+    }
+
+    private boolean acquire()
+    {
+        if(semaphore.tryAcquire())
+            return true;
+
+        permitWaitCount.incrementAndGet();
+        waiting.incrementAndGet();
+        try
+        {
+            return semaphore.tryAcquire(maxPermitWait, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        finally
+        {
+            waiting.decrementAndGet();
+        }
+    }
+
+    private ServiceUnavailableException reject()
+    {
+        rejectedCount.incrementAndGet();
+        return new ServiceUnavailableException("No resources available.");
+    }
+
+    @Override
+    public void shutdown()
+    {
+        shutdown = true;
+    }
+
+    @Override
+    public List<Runnable> shutdownNow()
+    {
+        shutdown = true;
+        return Collections.emptyList();
+    }
+
+    @Override
+    public boolean isShutdown()
+    {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated()
+    {
+        return shutdown && inFlight.get() == 0;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!isTerminated())
+        {
+            if(System.nanoTime() >= deadline)
+                return false;
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    private static class AdjustableSemaphore extends Semaphore
+    {
+        private AdjustableSemaphore(int permits)
+        {
+            super(permits);
+        }
+
+        @Override
+        protected void reducePermits(int reduction)
+        {
+            super.reducePermits(reduction);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.dottydingo.hyperion.core.endpoint.pipeline;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An executor that measures how long each task waits before it starts running. The wait is made available to the
+ * task's thread through {@link #takeQueueWait()} so that a phase can record it along with its own execution time.
+ */
+public class TimedExecutor extends AbstractExecutorService
+{
+    private static final ThreadLocal<Long> queueWait = new ThreadLocal<Long>();
+
+    private final ExecutorService executor;
+
+    /**
+     * Create an executor
+     * @param executor The executor used to run tasks
+     */
+    public TimedExecutor(ExecutorService executor)
+    {
+        this.executor = executor;
+    }
+
+    /**
+     * Return and clear the queue wait for the task running on the current thread
+     * @return The queue wait in nanoseconds, or 0 if the current task was not run by a timed executor
+     */
+    public static long takeQueueWait()
+    {
+        Long wait = queueWait.get();
+        if(wait == null)
+            return 0L;
+
+        queueWait.remove();
+        return wait;
+    }
+
+    @Override
+    public void execute(final Runnable command)
+    {
+        final long submitted = System.nanoTime();
+        executor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                queueWait.set(System.nanoTime() - submitted);
+                try
+                {
+                    command.run();
+                }
+                finally
+                {
+                    queueWait.remove();
+                }
+            }
+        });
+    }
+
+    @Override
+    public void shutdown()
+    {
+        executor.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow()
+    {
+        return executor.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown()
+    {
+        return executor.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated()
+    {
+        return executor.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        return executor.awaitTermination(timeout, unit);
+    }
+}
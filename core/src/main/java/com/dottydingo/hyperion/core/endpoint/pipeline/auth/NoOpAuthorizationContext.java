@@ -6,7 +6,8 @@ import com.dottydingo.service.endpoint.context.UserContext;
 
 /**
 */
-public class NoOpAuthorizationContext implements AuthorizationContext
+public class NoOpAuthorizationContext implements AuthorizationContext, RowIndependentAuthorization,
+        RowIndependentWriteAuthorization, ViewKeyAuthorization
 {
     private UserContext userContext;
 
@@ -33,6 +34,19 @@ public class NoOpAuthorizationContext implements AuthorizationContext
         return true;
     }
 
+    @Override
+    public Boolean isReadable(String propertyName)
+    {
+        return Boolean.TRUE;
+    }
+
+    @Override
+    public String getViewKey()
+    {
+        // the default context does not know who the user is so responses are never cached for it
+        return null;
+    }
+
     @Override
     public boolean isWritableOnCreate(ApiObject client, String propertyName)
     {
@@ -44,4 +58,10 @@ public class NoOpAuthorizationContext implements AuthorizationContext
     {
         return true;
     }
+
+    @Override
+    public Boolean isWritableOnUpdate(String propertyName)
+    {
+        return Boolean.TRUE;
+    }
 }
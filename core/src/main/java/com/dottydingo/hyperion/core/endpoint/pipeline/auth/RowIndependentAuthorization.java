@@ -0,0 +1,16 @@
+package com.dottydingo.hyperion.core.endpoint.pipeline.auth;
+
+/**
+ * Optional capability for an {@link AuthorizationContext} that can decide if a property is readable without looking
+ * at the persistent object. Decisions reported here are made once per request instead of once per row.
+ */
+public interface RowIndependentAuthorization
+{
+    /**
+     * Return a flag indicating if the supplied property is readable for every row
+     * @param propertyName the API property name
+     * @return True or false if the decision is the same for every row, null if
+     * {@link AuthorizationContext#isReadable} must be called for each row
+     */
+    Boolean isReadable(String propertyName);
+}
@@ -0,0 +1,16 @@
+package com.dottydingo.hyperion.core.endpoint.pipeline.auth;
+
+/**
+ * Optional capability for an {@link AuthorizationContext} that can decide if a property is writable on update
+ * without looking at the persistent object. This allows an update to be applied to many items without loading them.
+ */
+public interface RowIndependentWriteAuthorization
+{
+    /**
+     * Return a flag indicating if the supplied property is writable on an update for every row
+     * @param propertyName the API property name
+     * @return True or false if the decision is the same for every row, null if
+     * {@link AuthorizationContext#isWritableOnUpdate} must be called for each row
+     */
+    Boolean isWritableOnUpdate(String propertyName);
+}
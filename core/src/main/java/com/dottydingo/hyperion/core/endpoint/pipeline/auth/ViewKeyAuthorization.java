@@ -0,0 +1,16 @@
+package com.dottydingo.hyperion.core.endpoint.pipeline.auth;
+
+/**
+ * Optional capability for an {@link AuthorizationContext} that allows translated responses to be cached. Two
+ * authorization contexts that return the same view key must make the same readability decisions for every item and
+ * property and must see the same items through any persistence filter. Responses are only cached when the context
+ * also implements {@link RowIndependentAuthorization}.
+ */
+public interface ViewKeyAuthorization
+{
+    /**
+     * Return the key identifying what the user is allowed to see
+     * @return The view key or null if responses for this user should not be cached
+     */
+    String getViewKey();
+}
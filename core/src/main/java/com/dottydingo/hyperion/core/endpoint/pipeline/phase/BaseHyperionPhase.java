@@ -1,16 +1,25 @@
 package com.dottydingo.hyperion.core.endpoint.pipeline.phase;
 
 import com.dottydingo.hyperion.core.configuration.HyperionEndpointConfiguration;
+import com.dottydingo.hyperion.core.endpoint.HttpMethod;
 import com.dottydingo.hyperion.core.endpoint.HyperionContext;
+import com.dottydingo.hyperion.core.endpoint.metrics.PhaseMetricKey;
+import com.dottydingo.hyperion.core.endpoint.metrics.PipelineMetrics;
+import com.dottydingo.hyperion.core.endpoint.pipeline.TimedExecutor;
 import com.dottydingo.hyperion.core.message.HyperionMessageSource;
+import com.dottydingo.hyperion.core.registry.ApiVersionPlugin;
+import com.dottydingo.hyperion.core.registry.EntityPlugin;
 import com.dottydingo.service.endpoint.pipeline.AbstractEndpointPhase;
 
 /**
  */
 public abstract class BaseHyperionPhase extends AbstractEndpointPhase<HyperionContext>
 {
+    private static final String UNKNOWN = "unknown";
+
     protected HyperionMessageSource messageSource;
     protected HyperionEndpointConfiguration configuration;
+    protected PipelineMetrics pipelineMetrics;
 
     public void setMessageSource(HyperionMessageSource messageSource)
     {
@@ -21,4 +30,53 @@ public abstract class BaseHyperionPhase extends AbstractEndpointPhase<HyperionCo
     {
         this.configuration = configuration;
     }
+
+    public void setPipelineMetrics(PipelineMetrics pipelineMetrics)
+    {
+        this.pipelineMetrics = pipelineMetrics;
+    }
+
+    @Override
+    protected final void executePhase(HyperionContext phaseContext) throws Exception
+    {
+        if(pipelineMetrics == null)
+        {
+            doExecutePhase(phaseContext);
+            return;
+        }
+
+        long queueWait = TimedExecutor.takeQueueWait();
+        long start = System.nanoTime();
+        try
+        {
+            doExecutePhase(phaseContext);
+        }
+        finally
+        {
+            pipelineMetrics.recordPhase(buildMetricKey(phaseContext), queueWait, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Execute the phase, timed when pipeline metrics are configured.
+     * @param phaseContext The context
+     */
+    protected abstract void doExecutePhase(HyperionContext phaseContext) throws Exception;
+
+    /**
+     * Build the key the phase timings are recorded under. Only values resolved against the registry are used so
+     * that the number of keys stays bounded no matter what a request asks for.
+     * @param phaseContext The context
+     * @return The key
+     */
+    protected PhaseMetricKey buildMetricKey(HyperionContext phaseContext)
+    {
+        EntityPlugin plugin = phaseContext.getEntityPlugin();
+        HttpMethod method = phaseContext.getEffectiveMethod();
+        ApiVersionPlugin versionPlugin = phaseContext.getVersionPlugin();
+        return new PhaseMetricKey(getClass().getSimpleName(),
+                plugin != null ? plugin.getEndpointName() : UNKNOWN,
+                method != null ? method.name() : UNKNOWN,
+                versionPlugin != null ? versionPlugin.getVersion() : null);
+    }
 }
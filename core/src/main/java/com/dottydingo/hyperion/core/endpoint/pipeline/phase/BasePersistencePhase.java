@@ -1,19 +1,30 @@
 package com.dottydingo.hyperion.core.endpoint.pipeline.phase;
 
+import com.dottydingo.hyperion.api.EntityList;
 import com.dottydingo.hyperion.api.exception.BadParameterException;
 import com.dottydingo.hyperion.api.exception.BadRequestException;
+import com.dottydingo.hyperion.api.v1.LegacyEntityResponse;
 import com.dottydingo.hyperion.core.endpoint.HyperionContext;
 import com.dottydingo.hyperion.core.endpoint.HyperionRequest;
+import com.dottydingo.hyperion.core.endpoint.pipeline.auth.AuthorizationContext;
+import com.dottydingo.hyperion.core.endpoint.pipeline.auth.ViewKeyAuthorization;
 import com.dottydingo.hyperion.core.key.KeyConverterException;
+import com.dottydingo.hyperion.core.persistence.ConditionalRequest;
 import com.dottydingo.hyperion.core.persistence.event.EntityChangeEvent;
 import com.dottydingo.hyperion.core.persistence.event.EntityChangeListener;
 import com.dottydingo.hyperion.core.persistence.PersistenceContext;
+import com.dottydingo.hyperion.core.persistence.query.QueryPlanCache;
 import com.dottydingo.hyperion.core.registry.EntityPlugin;
+import com.dottydingo.service.endpoint.context.EndpointRequest;
+import com.dottydingo.service.endpoint.context.EndpointResponse;
 import com.dottydingo.service.endpoint.context.MultiMap;
+import cz.jirutka.rsql.parser.RSQLParserException;
+import cz.jirutka.rsql.parser.ast.Node;
 
-import java.util.LinkedHashSet;
-import java.util.List;
-import java.util.Set;
+import java.io.Serializable;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.*;
 
 /**
  */
@@ -25,8 +36,19 @@ public abstract class BasePersistencePhase extends BaseHyperionPhase
     protected static final String BAD_LIMIT_PARAMETER = "ERROR_BAD_LIMIT_PARAMETER";
     protected static final String ERROR_READING_REQUEST = "ERROR_READING_REQUEST";
     protected static final String ERROR_WRITE_LIMIT = "ERROR_WRITE_LIMIT";
+    protected static final String INVALID_QUERY_STRING = "ERROR_INVALID_QUERY_STRING";
+    protected static final String QUERY_REQUIRED = "ERROR_QUERY_REQUIRED";
     public static final String INVALID_ID = "ERROR_INVALID_ID";
 
+    private static final String HTTP_DATE_FORMAT = "EEE, dd MMM yyyy HH:mm:ss zzz";
+
+    private QueryPlanCache queryPlanCache = new QueryPlanCache(0);
+
+    public void setQueryPlanCache(QueryPlanCache queryPlanCache)
+    {
+        this.queryPlanCache = queryPlanCache;
+    }
+
     protected Set<String> buildFieldSet(String fields)
     {
         if(fields == null || fields.length() == 0)
@@ -70,6 +92,19 @@ public abstract class BasePersistencePhase extends BaseHyperionPhase
     protected void processChangeEvents(HyperionContext phaseContext,PersistenceContext persistenceContext)
     {
         EntityPlugin entityPlugin = phaseContext.getEntityPlugin();
+
+        // invalidate the cached items again now that the transaction has committed so that a read that raced with
+        // the change can not leave the previous state cached
+        if(persistenceContext.isCachesCleared())
+            entityPlugin.clearCaches();
+        else
+        {
+            for (Object id : persistenceContext.getInvalidatedIds())
+            {
+                entityPlugin.invalidateCaches((Serializable) id);
+            }
+        }
+
         if(!entityPlugin.hasEntityChangeListeners())
             return;
 
@@ -117,4 +152,159 @@ public abstract class BasePersistencePhase extends BaseHyperionPhase
             throw new BadParameterException(messageSource.getErrorMessage(INVALID_ID,phaseContext.getLocale(),e.getValue()));
         }
     }
+
+    protected Node buildQueryExpression(String query,PersistenceContext persistenceContext)
+    {
+        try
+        {
+            logger.debug("Parsing query: {}", query);
+            return queryPlanCache.parse(query);
+        }
+        catch (RSQLParserException ex)
+        {
+            throw new BadRequestException(persistenceContext.getMessageSource()
+                    .getErrorMessage(INVALID_QUERY_STRING,persistenceContext.getLocale(),query));
+        }
+    }
+
+    /**
+     * Build the key identifying the representation returned for this request
+     * @param phaseContext The phase context
+     * @param persistenceContext The persistence context
+     * @return The key or null if the representation can not be identified without building it
+     */
+    protected String buildRepresentationVariant(HyperionContext phaseContext, PersistenceContext persistenceContext)
+    {
+        AuthorizationContext authorizationContext = persistenceContext.getAuthorizationContext();
+        if(!(authorizationContext instanceof ViewKeyAuthorization))
+            return null;
+
+        String viewKey = ((ViewKeyAuthorization) authorizationContext).getViewKey();
+        if(viewKey == null)
+            return null;
+
+        // additional parameters can change the translated result
+        Set additionalParameters = phaseContext.getEntityPlugin().getAdditionalParameters();
+        if(additionalParameters != null && !additionalParameters.isEmpty())
+            return null;
+
+        return buildVariant(phaseContext, persistenceContext, viewKey);
+    }
+
+    /**
+     * Build the key included in state based entity tags. Unlike the representation variant this does not require a
+     * view key or the absence of additional parameters, an entity tag is only compared with tags issued for the same
+     * URL to the same client.
+     * @param phaseContext The phase context
+     * @param persistenceContext The persistence context
+     * @return The key
+     */
+    protected String buildEntityTagVariant(HyperionContext phaseContext, PersistenceContext persistenceContext)
+    {
+        String viewKey = null;
+        AuthorizationContext authorizationContext = persistenceContext.getAuthorizationContext();
+        if(authorizationContext instanceof ViewKeyAuthorization)
+            viewKey = ((ViewKeyAuthorization) authorizationContext).getViewKey();
+
+        return buildVariant(phaseContext, persistenceContext, viewKey == null ? "" : viewKey);
+    }
+
+    private String buildVariant(HyperionContext phaseContext, PersistenceContext persistenceContext, String viewKey)
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append(phaseContext.getVersionPlugin().getVersion()).append('|');
+
+        Set<String> requestedFields = persistenceContext.getRequestedFields();
+        if(requestedFields == null)
+            sb.append('*');
+        else
+        {
+            List<String> sorted = new ArrayList<String>(requestedFields);
+            Collections.sort(sorted);
+            for (String field : sorted)
+            {
+                sb.append(field).append(',');
+            }
+        }
+
+        sb.append('|').append(viewKey);
+
+        return sb.toString();
+    }
+
+    /**
+     * Build the result returned by a GET for the converted items
+     * @param phaseContext The phase context
+     * @param converted The converted items
+     * @return The result
+     */
+    protected Object buildReadResult(HyperionContext phaseContext, List converted)
+    {
+        if(phaseContext.isLegacyClient())
+        {
+            LegacyEntityResponse entityResponse = new LegacyEntityResponse();
+            entityResponse.setEntries(converted);
+            entityResponse.setResponseCount(converted.size());
+            entityResponse.setStart(1);
+            entityResponse.setTotalCount(new Long(converted.size()));
+            return entityResponse;
+        }
+
+        EntityList entityList = new EntityList();
+        entityList.setEntries(converted);
+        return entityList;
+    }
+
+    /**
+     * Build a conditional request from the validator headers on the request
+     * @param phaseContext The phase context
+     * @param variant The representation variant
+     * @return The conditional request
+     */
+    protected ConditionalRequest buildConditionalRequest(HyperionContext phaseContext, String variant)
+    {
+        EndpointRequest request = phaseContext.getEndpointRequest();
+        ConditionalRequest conditionalRequest = new ConditionalRequest(variant);
+        conditionalRequest.setIfNoneMatch(ConditionalRequest.parseEntityTags(request.getFirstHeader("If-None-Match")));
+        conditionalRequest.setIfMatch(ConditionalRequest.parseEntityTags(request.getFirstHeader("If-Match")));
+        conditionalRequest.setIfModifiedSince(parseHttpDate(request.getFirstHeader("If-Modified-Since")));
+        return conditionalRequest;
+    }
+
+    /**
+     * Set the ETag and Last-Modified headers from a conditional request that has been evaluated
+     * @param response The response
+     * @param conditionalRequest The conditional request
+     */
+    protected void setValidatorHeaders(EndpointResponse response, ConditionalRequest conditionalRequest)
+    {
+        if(conditionalRequest.getEntityTag() != null)
+            response.setHeader("ETag", conditionalRequest.getEntityTag());
+
+        if(conditionalRequest.getLastModified() != null)
+            response.setHeader("Last-Modified", createHttpDateFormat().format(conditionalRequest.getLastModified()));
+    }
+
+    private Date parseHttpDate(String value)
+    {
+        if(value == null)
+            return null;
+
+        try
+        {
+            return createHttpDateFormat().parse(value);
+        }
+        catch (ParseException e)
+        {
+            // an invalid date is ignored
+            return null;
+        }
+    }
+
+    private SimpleDateFormat createHttpDateFormat()
+    {
+        SimpleDateFormat format = new SimpleDateFormat(HTTP_DATE_FORMAT, Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return format;
+    }
 }
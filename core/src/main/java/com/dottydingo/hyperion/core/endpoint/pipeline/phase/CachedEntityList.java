@@ -0,0 +1,44 @@
+package com.dottydingo.hyperion.core.endpoint.pipeline.phase;
+
+import com.dottydingo.hyperion.api.ApiObject;
+import com.dottydingo.hyperion.core.persistence.cache.EntityResponseCache;
+
+import java.util.List;
+
+/**
+ * An entity list where some entries are already serialized. Entries are either a String holding the cached
+ * representation or a translated client object that will be added to the cache when it is written.
+ */
+public class CachedEntityList
+{
+    private List<Object> entries;
+    private EntityResponseCache responseCache;
+    private String variant;
+    private long loadGeneration;
+
+    public CachedEntityList(List<Object> entries, EntityResponseCache responseCache, String variant,
+                            long loadGeneration)
+    {
+        this.entries = entries;
+        this.responseCache = responseCache;
+        this.variant = variant;
+        this.loadGeneration = loadGeneration;
+    }
+
+    public List<Object> getEntries()
+    {
+        return entries;
+    }
+
+    /**
+     * Cache the serialized representation of a translated entry
+     * @param entry The entry
+     * @param representation The serialized representation
+     */
+    @SuppressWarnings("unchecked")
+    public void cache(ApiObject entry, String representation)
+    {
+        if(entry.getId() != null)
+            responseCache.put(entry.getId(), variant, representation, loadGeneration);
+    }
+}
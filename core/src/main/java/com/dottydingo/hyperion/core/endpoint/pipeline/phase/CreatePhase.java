@@ -33,7 +33,7 @@ public class CreatePhase extends BasePersistencePhase
     }
 
     @Override
-    protected void executePhase(HyperionContext hyperionContext) throws Exception
+    protected void doExecutePhase(HyperionContext hyperionContext) throws Exception
     {
         if(hyperionContext.isLegacyClient())
             processLegacyRequest(hyperionContext);
@@ -1,6 +1,8 @@
 package com.dottydingo.hyperion.core.endpoint.pipeline.phase;
 
 import com.dottydingo.hyperion.api.ApiObject;
+import com.dottydingo.hyperion.api.exception.BadRequestException;
+import com.dottydingo.hyperion.api.exception.NotAllowedException;
 import com.dottydingo.hyperion.core.registry.ApiVersionPlugin;
 import com.dottydingo.hyperion.core.registry.EntityPlugin;
 import com.dottydingo.hyperion.api.DeleteResponse;
@@ -14,11 +16,14 @@ import java.io.Serializable;
 import java.util.List;
 
 /**
+ * Perform a delete operation (DELETE by IDs or by query)
  */
 public class DeletePhase extends BasePersistencePhase
 {
+    private static final String QUERY_DELETE_NOT_ALLOWED = "ERROR_QUERY_DELETE_NOT_ALLOWED";
+
     @Override
-    protected void executePhase(HyperionContext phaseContext) throws Exception
+    protected void doExecutePhase(HyperionContext phaseContext) throws Exception
     {
         EndpointRequest request = phaseContext.getEndpointRequest();
         EndpointResponse response = phaseContext.getEndpointResponse();
@@ -28,8 +33,26 @@ public class DeletePhase extends BasePersistencePhase
 
         PersistenceContext persistenceContext = buildPersistenceContext(phaseContext);
 
-        List ids = convertIds(phaseContext, plugin);
-        int deleted = plugin.getPersistenceOperations().deleteItem(ids, persistenceContext);
+        int deleted;
+        if(phaseContext.getId() == null)
+        {
+            if(!plugin.isQueryDeleteEnabled())
+                throw new NotAllowedException(messageSource.getErrorMessage(QUERY_DELETE_NOT_ALLOWED,
+                        phaseContext.getLocale(), plugin.getEndpointName()));
+
+            // an empty query would delete every item so one is always required
+            String query = request.getFirstParameter("query");
+            if(query == null || query.trim().length() == 0)
+                throw new BadRequestException(messageSource.getErrorMessage(QUERY_REQUIRED, phaseContext.getLocale()));
+
+            deleted = plugin.getPersistenceOperations().deleteByQuery(
+                    buildQueryExpression(query, persistenceContext), persistenceContext);
+        }
+        else
+        {
+            List ids = convertIds(phaseContext, plugin);
+            deleted = plugin.getPersistenceOperations().deleteItem(ids, persistenceContext);
+        }
 
         processChangeEvents(phaseContext,persistenceContext);
         DeleteResponse deleteResponse = new DeleteResponse();
@@ -7,6 +7,7 @@ import com.dottydingo.hyperion.core.registry.ServiceRegistry;
 import com.dottydingo.hyperion.core.endpoint.HyperionRequest;
 import com.dottydingo.hyperion.core.endpoint.HyperionResponse;
 import com.dottydingo.hyperion.core.endpoint.HttpMethod;
+import com.dottydingo.hyperion.core.endpoint.pipeline.AdaptiveConcurrencyLimiter;
 import com.dottydingo.hyperion.core.endpoint.pipeline.auth.AuthorizationContext;
 import com.dottydingo.hyperion.core.endpoint.pipeline.auth.AuthorizationProvider;
 import com.dottydingo.hyperion.core.endpoint.HyperionContext;
@@ -28,6 +29,7 @@ public class EndpointValidationPhase extends BaseHyperionPhase
     private static final String INVALID_ENTITY = "ERROR_INVALID_ENTITY";
     private static final String METHOD_NOT_ALLOWED = "ERROR_METHOD_NOT_ALLOWED";
     private static final String READ_ONLY_MODE = "ERROR_READ_ONLY_MODE";
+    private static final String SERVICE_OVERLOADED = "ERROR_SERVICE_OVERLOADED";
     private static final String MISSING_VERSION_PARAMETER = "ERROR_MISSING_VERSION_PARAMETER";
     private static final String INVALID_VERSION = "ERROR_INVALID_VERSION";
     private static final String UNKNOWN_VERSION = "ERROR_UNKNOWN_VERSION";
@@ -40,6 +42,8 @@ public class EndpointValidationPhase extends BaseHyperionPhase
     private AuthorizationProvider authorizationProvider;
     private UriParser uriParser ;
     private ServiceStatus serviceStatus;
+    private AdaptiveConcurrencyLimiter readConcurrencyLimiter;
+    private AdaptiveConcurrencyLimiter writeConcurrencyLimiter;
 
     public void setServiceRegistry(ServiceRegistry serviceRegistry)
     {
@@ -61,8 +65,18 @@ public class EndpointValidationPhase extends BaseHyperionPhase
         this.serviceStatus = serviceStatus;
     }
 
+    public void setReadConcurrencyLimiter(AdaptiveConcurrencyLimiter readConcurrencyLimiter)
+    {
+        this.readConcurrencyLimiter = readConcurrencyLimiter;
+    }
+
+    public void setWriteConcurrencyLimiter(AdaptiveConcurrencyLimiter writeConcurrencyLimiter)
+    {
+        this.writeConcurrencyLimiter = writeConcurrencyLimiter;
+    }
+
     @Override
-    protected void executePhase(HyperionContext phaseContext) throws Exception
+    protected void doExecutePhase(HyperionContext phaseContext) throws Exception
     {
         if(serviceStatus.getForceDown())
             throw new ServiceUnavailableException(messageSource.getErrorMessage(SERVICE_NOT_AVAILABLE,
@@ -97,6 +111,9 @@ public class EndpointValidationPhase extends BaseHyperionPhase
         if(serviceStatus.getReadOnly() && httpMethod.isWriteOperation())
             throw new NotAllowedException(messageSource.getErrorMessage(READ_ONLY_MODE,phaseContext.getLocale()));
 
+        if(httpMethod != HttpMethod.OPTIONS)
+            acquireConcurrencyPermit(httpMethod, phaseContext);
+
         phaseContext.setEffectiveMethod(httpMethod);
 
         if(!uriRequestResult.isHistory())
@@ -169,6 +186,26 @@ public class EndpointValidationPhase extends BaseHyperionPhase
 
     }
 
+    protected void acquireConcurrencyPermit(HttpMethod httpMethod, HyperionContext context)
+    {
+        AdaptiveConcurrencyLimiter limiter = httpMethod.isWriteOperation() ? writeConcurrencyLimiter : readConcurrencyLimiter;
+        if(limiter == null)
+            return;
+
+        // latency is compared per endpoint and method since they can differ widely in cost
+        AdaptiveConcurrencyLimiter.Permit permit = limiter.tryAcquire(
+                context.getEntityPlugin().getEndpointName() + " " + httpMethod);
+        if(permit == null)
+        {
+            long retryAfter = Math.max(1L, (limiter.getEstimatedWait() + 999L) / 1000L);
+            context.getEndpointResponse().setHeader("Retry-After", Long.toString(retryAfter));
+            throw new ServiceUnavailableException(messageSource.getErrorMessage(SERVICE_OVERLOADED,
+                    context.getLocale(), retryAfter));
+        }
+
+        context.setConcurrencyPermit(permit);
+    }
+
     protected HttpMethod getHttpMethod(String methodName, HyperionContext context)
     {
         HttpMethod httpMethod;
@@ -236,7 +273,7 @@ public class EndpointValidationPhase extends BaseHyperionPhase
         switch (method)
         {
             case DELETE:
-                return (requestResult.getId() != null && !requestResult.isHistory());
+                return !requestResult.isHistory();
             case POST:
                 return (requestResult.getId() == null && !requestResult.isHistory());
             case PUT:
@@ -1,14 +1,18 @@
 package com.dottydingo.hyperion.core.endpoint.pipeline.phase;
 
-import com.dottydingo.hyperion.api.EntityList;
-import com.dottydingo.hyperion.api.v1.LegacyEntityResponse;
+import com.dottydingo.hyperion.api.ApiObject;
+import com.dottydingo.hyperion.core.persistence.cache.EntityResponseCache;
 import com.dottydingo.hyperion.core.registry.EntityPlugin;
 import com.dottydingo.hyperion.api.EntityResponse;
 import com.dottydingo.hyperion.core.endpoint.HyperionContext;
+import com.dottydingo.hyperion.core.endpoint.pipeline.auth.RowIndependentAuthorization;
+import com.dottydingo.hyperion.core.persistence.ConditionalRequest;
 import com.dottydingo.hyperion.core.persistence.PersistenceContext;
+import com.dottydingo.hyperion.core.persistence.RowIndependentPersistenceFilter;
 import com.dottydingo.service.endpoint.context.EndpointResponse;
 
-import java.util.List;
+import java.io.Serializable;
+import java.util.*;
 
 /**
  * Perform a find operation (GET by IDs)
@@ -16,32 +20,108 @@ import java.util.List;
 public class GetPhase extends BasePersistencePhase
 {
     @Override
-    protected void executePhase(HyperionContext phaseContext) throws Exception
+    protected void doExecutePhase(HyperionContext phaseContext) throws Exception
     {
         EntityPlugin plugin = phaseContext.getEntityPlugin();
         List ids = convertIds(phaseContext, plugin);
 
         PersistenceContext persistenceContext = buildPersistenceContext(phaseContext);
+        EndpointResponse response = phaseContext.getEndpointResponse();
 
-        List converted = plugin.getPersistenceOperations().findByIds(ids, persistenceContext);
+        String variant = null;
+        if(!phaseContext.isLegacyClient())
+            variant = buildRepresentationVariant(phaseContext, persistenceContext);
 
-        if(phaseContext.isLegacyClient())
+        if(variant != null && plugin.getResponseCache() != null && isResponseCacheable(persistenceContext))
         {
-            LegacyEntityResponse entityResponse = new LegacyEntityResponse();
-            entityResponse.setEntries(converted);
-            entityResponse.setResponseCount(converted.size());
-            entityResponse.setStart(1);
-            entityResponse.setTotalCount(new Long(converted.size()));
-            phaseContext.setResult(entityResponse);
+            // cached responses skip loading so the entity tag has to come from the response body
+            phaseContext.setResult(findCached(ids, plugin, variant, persistenceContext));
+            phaseContext.setEntityTagFromBody(true);
         }
         else
         {
-            EntityList entityList = new EntityList();
-            entityList.setEntries(converted);
-            phaseContext.setResult(entityList);
+            ConditionalRequest conditionalRequest = null;
+            if(!phaseContext.isLegacyClient())
+            {
+                conditionalRequest = buildConditionalRequest(phaseContext,
+                        buildEntityTagVariant(phaseContext, persistenceContext));
+                persistenceContext.setConditionalRequest(conditionalRequest);
+            }
+
+            List converted = plugin.getPersistenceOperations().findByIds(ids, persistenceContext);
+
+            if(conditionalRequest != null && conditionalRequest.getEntityTag() != null)
+            {
+                setValidatorHeaders(response, conditionalRequest);
+                if(conditionalRequest.isNotModified())
+                {
+                    response.setResponseCode(304);
+                    return;
+                }
+            }
+            else
+                phaseContext.setEntityTagFromBody(true);
+
+            phaseContext.setResult(buildReadResult(phaseContext, converted));
         }
 
-        EndpointResponse response = phaseContext.getEndpointResponse();
         response.setResponseCode(200);
     }
+
+    /**
+     * Determine if responses can be served from the response cache. Cached responses skip the per item checks so
+     * the authorization context and persistence filter must make the same decision for every item.
+     * @param persistenceContext The persistence context
+     * @return true if the response cache can be used
+     */
+    protected boolean isResponseCacheable(PersistenceContext persistenceContext)
+    {
+        if(!(persistenceContext.getAuthorizationContext() instanceof RowIndependentAuthorization))
+            return false;
+
+        Object persistenceFilter = persistenceContext.getEntityPlugin().getPersistenceFilter();
+        return persistenceFilter instanceof RowIndependentPersistenceFilter
+                && Boolean.TRUE.equals(((RowIndependentPersistenceFilter) persistenceFilter).isVisible(persistenceContext));
+    }
+
+    @SuppressWarnings("unchecked")
+    protected CachedEntityList findCached(List ids, EntityPlugin plugin, String variant,
+                                          PersistenceContext persistenceContext)
+    {
+        EntityResponseCache responseCache = plugin.getResponseCache();
+
+        // read the generation before anything is loaded so a concurrent change prevents caching the result
+        long generation = responseCache.getGeneration();
+
+        Set<Object> uniqueIds = new LinkedHashSet<Object>(ids);
+        Map<Object,Object> found = new HashMap<Object, Object>();
+        List missing = new ArrayList();
+        for (Object id : uniqueIds)
+        {
+            String cached = responseCache.get((Serializable) id, variant);
+            if(cached != null)
+                found.put(id, cached);
+            else
+                missing.add(id);
+        }
+
+        if(!missing.isEmpty())
+        {
+            List converted = plugin.getPersistenceOperations().findByIds(missing, persistenceContext);
+            for (Object item : converted)
+            {
+                found.put(((ApiObject) item).getId(), item);
+            }
+        }
+
+        List<Object> entries = new ArrayList<Object>(found.size());
+        for (Object id : uniqueIds)
+        {
+            Object entry = found.get(id);
+            if(entry != null)
+                entries.add(entry);
+        }
+
+        return new CachedEntityList(entries, responseCache, variant, generation);
+    }
 }
@@ -23,7 +23,7 @@ public class HistoryPhase extends BasePersistencePhase
 {
 
     @Override
-    protected void executePhase(HyperionContext phaseContext) throws Exception
+    protected void doExecutePhase(HyperionContext phaseContext) throws Exception
     {
         EndpointRequest request = phaseContext.getEndpointRequest();
         EndpointResponse response = phaseContext.getEndpointResponse();
@@ -14,7 +14,7 @@ import java.util.*;
 public class OptionsPhase extends BaseHyperionPhase
 {
     @Override
-    protected void executePhase(HyperionContext phaseContext) throws Exception
+    protected void doExecutePhase(HyperionContext phaseContext) throws Exception
     {
         HyperionRequest request = phaseContext.getEndpointRequest();
         HyperionResponse response = phaseContext.getEndpointResponse();
@@ -45,6 +45,7 @@ public class OptionsPhase extends BaseHyperionPhase
         response.setContentEncoding("UTF-8");
         response.setResponseCode(200);
 
+        phaseContext.releaseConcurrencyPermit();
         phaseContext.requestComplete();
 
     }
@@ -1,17 +1,22 @@
 package com.dottydingo.hyperion.core.endpoint.pipeline.phase;
 
+import com.dottydingo.hyperion.api.ErrorResponse;
 import com.dottydingo.hyperion.api.Page;
 import com.dottydingo.hyperion.api.exception.BadRequestException;
 import com.dottydingo.hyperion.api.EntityResponse;
+import com.dottydingo.hyperion.api.exception.HyperionException;
+import com.dottydingo.hyperion.api.exception.InternalException;
 import com.dottydingo.hyperion.api.v1.LegacyEntityResponse;
 import com.dottydingo.hyperion.core.endpoint.EndpointSort;
+import com.dottydingo.hyperion.core.endpoint.HttpMethod;
+import com.dottydingo.hyperion.core.endpoint.marshall.EndpointMarshaller;
+import com.dottydingo.hyperion.core.endpoint.marshall.EntityStreamWriter;
+import com.dottydingo.hyperion.core.persistence.CountMode;
 import com.dottydingo.hyperion.core.persistence.PersistenceContext;
 import com.dottydingo.hyperion.core.persistence.QueryResult;
 import com.dottydingo.hyperion.core.endpoint.HyperionContext;
 import com.dottydingo.service.endpoint.context.EndpointRequest;
 import com.dottydingo.service.endpoint.context.EndpointResponse;
-import cz.jirutka.rsql.parser.RSQLParser;
-import cz.jirutka.rsql.parser.RSQLParserException;
 import cz.jirutka.rsql.parser.ast.Node;
 
 /**
@@ -19,16 +24,24 @@ import cz.jirutka.rsql.parser.ast.Node;
  */
 public class QueryPhase extends BasePersistencePhase
 {
-    private static final String INVALID_QUERY_STRING = "ERROR_INVALID_QUERY_STRING";
+    private static final String CONTINUATION_NOT_SUPPORTED = "ERROR_CONTINUATION_NOT_SUPPORTED";
+    private static final String CONTINUATION_WITH_START = "ERROR_CONTINUATION_WITH_START";
+    private static final String INVALID_COUNT_PARAMETER = "ERROR_INVALID_COUNT_PARAMETER";
     private EndpointSortBuilder endpointSortBuilder;
+    private EndpointMarshaller marshaller;
 
     public void setEndpointSortBuilder(EndpointSortBuilder endpointSortBuilder)
     {
         this.endpointSortBuilder = endpointSortBuilder;
     }
 
+    public void setMarshaller(EndpointMarshaller marshaller)
+    {
+        this.marshaller = marshaller;
+    }
+
     @Override
-    protected void executePhase(HyperionContext phaseContext) throws Exception
+    protected void doExecutePhase(HyperionContext phaseContext) throws Exception
     {
         EndpointRequest request = phaseContext.getEndpointRequest();
         EndpointResponse response = phaseContext.getEndpointResponse();
@@ -38,6 +51,15 @@ public class QueryPhase extends BasePersistencePhase
 
         String query = request.getFirstParameter("query");
         String sort = request.getFirstParameter("sort");
+        String continuation = request.getFirstParameter("continuation");
+        boolean continuationPaging = continuation != null;
+
+        if(continuationPaging && start != null)
+            throw new BadRequestException(messageSource.getErrorMessage(CONTINUATION_WITH_START,phaseContext.getLocale()));
+
+        if(continuationPaging && phaseContext.isLegacyClient())
+            throw new BadRequestException(messageSource.getErrorMessage(CONTINUATION_NOT_SUPPORTED,
+                    phaseContext.getLocale(),phaseContext.getEntityPlugin().getEndpointName()));
 
         if(start != null && start < 1)
             throw new BadRequestException(messageSource.getErrorMessage(BAD_START_PARAMETER,phaseContext.getLocale()));
@@ -48,9 +70,17 @@ public class QueryPhase extends BasePersistencePhase
         if(limit == null)
             limit = configuration.getDefaultLimit();
 
-        if(limit > configuration.getMaxLimit())
+        // streaming is only available for offset paging of non legacy clients
+        boolean streaming = configuration.getMaxStreamingLimit() > 0 && !continuationPaging
+                && !phaseContext.isLegacyClient() && phaseContext.getRequestMethod() != HttpMethod.HEAD
+                && getBooleanParameter("stream",false,phaseContext);
+
+        int maxLimit = streaming ? configuration.getMaxStreamingLimit() : configuration.getMaxLimit();
+        if(limit > maxLimit)
             throw new BadRequestException(messageSource.getErrorMessage("ERROR_MAX_LIMIT_EXCEEDED",
-                    phaseContext.getLocale(),configuration.getMaxLimit()));
+                    phaseContext.getLocale(),maxLimit));
+
+        CountMode countMode = getCountMode(phaseContext);
 
         PersistenceContext persistenceContext = buildPersistenceContext(phaseContext);
 
@@ -60,9 +90,36 @@ public class QueryPhase extends BasePersistencePhase
         if(query != null && query.trim().length() > 0)
             queryExpression = buildQueryExpression(query, persistenceContext);
 
-        QueryResult queryResult = phaseContext.getEntityPlugin()
-                .getPersistenceOperations()
-                .query(queryExpression, start, limit, requestedSorts, persistenceContext);
+        if(streaming)
+        {
+            streamQuery(phaseContext, queryExpression, start, limit, requestedSorts, countMode, persistenceContext);
+            return;
+        }
+
+        QueryResult queryResult;
+        if(continuationPaging)
+        {
+            // keyset paging requires a total ordering so fall back to the id sort
+            if(requestedSorts == null)
+            {
+                if(!persistenceContext.getApiVersionPlugin().getSortBuilders().containsKey("id"))
+                    throw new BadRequestException(messageSource.getErrorMessage(CONTINUATION_NOT_SUPPORTED,
+                            phaseContext.getLocale(),phaseContext.getEntityPlugin().getEndpointName()));
+
+                requestedSorts = new EndpointSort().addOrder("id");
+            }
+
+            queryResult = phaseContext.getEntityPlugin()
+                    .getPersistenceOperations()
+                    .seek(queryExpression, continuation.trim().length() == 0 ? null : continuation.trim(), limit,
+                            requestedSorts, persistenceContext);
+        }
+        else
+        {
+            queryResult = phaseContext.getEntityPlugin()
+                    .getPersistenceOperations()
+                    .query(queryExpression, start, limit, requestedSorts, countMode, persistenceContext);
+        }
 
         if(phaseContext.isLegacyClient())
         {
@@ -81,31 +138,106 @@ public class QueryPhase extends BasePersistencePhase
 
             Page page = new Page();
             page.setResponseCount(queryResult.getResponseCount());
-            page.setStart(queryResult.getStart());
-            page.setTotalCount(queryResult.getTotalCount());
+            if(continuationPaging)
+            {
+                page.setContinuation(queryResult.getContinuation());
+            }
+            else
+            {
+                page.setStart(queryResult.getStart());
+                page.setTotalCount(queryResult.getTotalCount());
+                if(queryResult.getTotalCount() != null)
+                    page.setTotalCountExact(queryResult.isTotalCountExact());
+            }
 
             entityResponse.setPage(page);
 
             phaseContext.setResult(entityResponse);
         }
 
+        // query results are not tied to the state of individual items so the entity tag comes from the body
+        phaseContext.setEntityTagFromBody(true);
 
         response.setResponseCode(200);
 
 
     }
 
-    protected Node buildQueryExpression(String query,PersistenceContext persistenceContext)
+    /**
+     * Run a query writing each entry to the response as it is read. This runs in the query phase so the database
+     * work stays within the limits of the query executor. The status and headers are only set once the first entry
+     * has been read and translated, errors before that are returned as normal error responses.
+     */
+    protected void streamQuery(final HyperionContext phaseContext, Node query, Integer start, Integer limit,
+                               EndpointSort sort, CountMode countMode, PersistenceContext persistenceContext)
     {
+        final EndpointResponse response = phaseContext.getEndpointResponse();
+        EntityStreamWriter writer = new EntityStreamWriter(marshaller, response.getOutputStream())
+        {
+            @Override
+            protected void onStart()
+            {
+                response.setResponseCode(200);
+                response.setContentType("application/json");
+                response.setContentEncoding("UTF-8");
+                response.setHeader(configuration.getVersionHeaderName(),
+                        phaseContext.getVersionPlugin().getVersion().toString());
+            }
+        };
+
+        try
+        {
+            QueryResult queryResult = phaseContext.getEntityPlugin().getPersistenceOperations()
+                    .streamQuery(query, start, limit, sort, countMode, persistenceContext, writer);
+
+            Page page = new Page();
+            page.setResponseCount(queryResult.getResponseCount());
+            page.setStart(queryResult.getStart());
+            page.setTotalCount(queryResult.getTotalCount());
+            if(queryResult.getTotalCount() != null)
+                page.setTotalCountExact(queryResult.isTotalCountExact());
+
+            writer.complete(page);
+        }
+        catch (RuntimeException e)
+        {
+            // once output has started an error response can no longer be sent
+            if(!writer.isStarted())
+                throw e;
+
+            logger.warn("Error streaming response, the response is incomplete.",e);
+
+            ErrorResponse error = new ErrorResponse();
+            error.setRequestId(phaseContext.getRequestCorrelationId());
+            if(e instanceof HyperionException)
+            {
+                error.setStatusCode(((HyperionException) e).getStatusCode());
+                error.setType(e.getClass().getName());
+            }
+            else
+            {
+                error.setStatusCode(500);
+                error.setType(InternalException.class.getName());
+            }
+            error.setMessage(e.getMessage());
+            writer.fail(error);
+        }
+    }
+
+    protected CountMode getCountMode(HyperionContext phaseContext)
+    {
+        String count = phaseContext.getEndpointRequest().getFirstParameter("count");
+        if(count == null || count.trim().length() == 0)
+            return null;
+
         try
         {
-            logger.debug("Parsing query: {}", query);
-            return new RSQLParser().parse(query);
+            return CountMode.valueOf(count.trim().toUpperCase());
         }
-        catch (RSQLParserException ex)
+        catch (IllegalArgumentException e)
         {
-            throw new BadRequestException(persistenceContext.getMessageSource()
-                    .getErrorMessage(INVALID_QUERY_STRING,persistenceContext.getLocale(),query));
+            throw new BadRequestException(messageSource.getErrorMessage(INVALID_COUNT_PARAMETER,
+                    phaseContext.getLocale(),count));
         }
     }
 }
@@ -1,18 +1,41 @@
 package com.dottydingo.hyperion.core.endpoint.pipeline.phase;
 
+import com.dottydingo.hyperion.api.ApiObject;
 import com.dottydingo.hyperion.api.exception.InternalException;
 import com.dottydingo.hyperion.core.endpoint.HttpMethod;
 import com.dottydingo.hyperion.core.endpoint.marshall.EndpointMarshaller;
 import com.dottydingo.hyperion.core.configuration.HyperionEndpointConfiguration;
 import com.dottydingo.hyperion.core.endpoint.HyperionContext;
 import com.dottydingo.hyperion.core.endpoint.marshall.MarshallingException;
+import com.dottydingo.hyperion.core.persistence.ConditionalRequest;
 import com.dottydingo.service.endpoint.context.EndpointResponse;
 import com.dottydingo.service.endpoint.pipeline.AbstractEndpointPhase;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.Set;
 
 /**
  */
 public class ResponseMarshallerPhase extends BaseHyperionPhase
 {
+    private static final OutputStream DISCARD = new OutputStream()
+    {
+        @Override
+        public void write(int b)
+        {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len)
+        {
+        }
+    };
+
     private EndpointMarshaller marshaller;
 
     public void setMarshaller(EndpointMarshaller marshaller)
@@ -21,7 +44,7 @@ public class ResponseMarshallerPhase extends BaseHyperionPhase
     }
 
     @Override
-    protected void executePhase(HyperionContext phaseContext) throws Exception
+    protected void doExecutePhase(HyperionContext phaseContext) throws Exception
     {
         Object result = phaseContext.getResult();
         if(result != null)
@@ -36,7 +59,12 @@ public class ResponseMarshallerPhase extends BaseHyperionPhase
             try
             {
                 if(phaseContext.getRequestMethod() != HttpMethod.HEAD)
-                    marshaller.marshall(phaseContext.getEndpointResponse().getOutputStream(),result);
+                {
+                    if(phaseContext.isEntityTagFromBody())
+                        marshallWithEntityTag(result, phaseContext);
+                    else
+                        marshall(result, response.getOutputStream());
+                }
             }
             catch(MarshallingException e)
             {
@@ -45,6 +73,99 @@ public class ResponseMarshallerPhase extends BaseHyperionPhase
 
         }
 
+        phaseContext.releaseConcurrencyPermit();
         phaseContext.requestComplete();
     }
+
+    protected void marshall(Object result, OutputStream outputStream) throws IOException
+    {
+        if(result instanceof CachedEntityList)
+            marshallCached((CachedEntityList) result, outputStream);
+        else
+            marshaller.marshall(outputStream, result);
+    }
+
+    /**
+     * Marshall a result whose entity tag comes from the response body. The body is only buffered to compute the tag
+     * when If-None-Match is supplied, cached entries are already serialized so their tag is always computed by
+     * writing them to a digest first.
+     */
+    protected void marshallWithEntityTag(Object result, HyperionContext phaseContext) throws IOException
+    {
+        EndpointResponse response = phaseContext.getEndpointResponse();
+        Set<String> ifNoneMatch = ConditionalRequest.parseEntityTags(
+                phaseContext.getEndpointRequest().getFirstHeader("If-None-Match"));
+
+        if(result instanceof CachedEntityList)
+        {
+            String[] representations = serializeCached((CachedEntityList) result);
+            MessageDigest digest = ConditionalRequest.createBodyDigest();
+            writeCached(representations, new DigestOutputStream(DISCARD, digest));
+            if(writeIfModified(ConditionalRequest.buildEntityTag(digest), ifNoneMatch, response))
+                writeCached(representations, response.getOutputStream());
+            return;
+        }
+
+        if(ifNoneMatch == null)
+        {
+            marshall(result, response.getOutputStream());
+            return;
+        }
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        marshall(result, buffer);
+        byte[] body = buffer.toByteArray();
+
+        if(writeIfModified(ConditionalRequest.buildEntityTag(body), ifNoneMatch, response))
+            response.getOutputStream().write(body);
+    }
+
+    private boolean writeIfModified(String entityTag, Set<String> ifNoneMatch, EndpointResponse response)
+    {
+        response.setHeader("ETag", entityTag);
+        if(ifNoneMatch != null && ConditionalRequest.matches(ifNoneMatch, entityTag, false))
+        {
+            response.setResponseCode(304);
+            return false;
+        }
+        return true;
+    }
+
+    protected void marshallCached(CachedEntityList result, OutputStream outputStream) throws IOException
+    {
+        writeCached(serializeCached(result), outputStream);
+    }
+
+    private String[] serializeCached(CachedEntityList result)
+    {
+        // serialize each entry first so that a failure can still be reported as an error response
+        String[] representations = new String[result.getEntries().size()];
+        int i = 0;
+        for (Object entry : result.getEntries())
+        {
+            if(entry instanceof String)
+                representations[i] = (String) entry;
+            else
+            {
+                representations[i] = marshaller.marshallToString(entry);
+                result.cache((ApiObject) entry, representations[i]);
+            }
+            i++;
+        }
+        return representations;
+    }
+
+    private void writeCached(String[] representations, OutputStream outputStream) throws IOException
+    {
+        JsonGenerator generator = marshaller.createGenerator(outputStream);
+        generator.writeStartObject();
+        generator.writeArrayFieldStart("entries");
+        for (String representation : representations)
+        {
+            generator.writeRawValue(representation);
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+        generator.close();
+    }
 }
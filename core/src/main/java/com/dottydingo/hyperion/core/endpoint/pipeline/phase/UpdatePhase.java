@@ -2,7 +2,9 @@ package com.dottydingo.hyperion.core.endpoint.pipeline.phase;
 
 import com.dottydingo.hyperion.api.ApiObject;
 import com.dottydingo.hyperion.api.EntityList;
+import com.dottydingo.hyperion.api.UpdateResponse;
 import com.dottydingo.hyperion.api.exception.BadRequestException;
+import com.dottydingo.hyperion.api.exception.NotAllowedException;
 import com.dottydingo.hyperion.core.endpoint.marshall.MarshallingException;
 import com.dottydingo.hyperion.core.endpoint.marshall.WriteLimitException;
 import com.dottydingo.hyperion.core.registry.ApiVersionPlugin;
@@ -10,12 +12,17 @@ import com.dottydingo.hyperion.core.registry.EntityPlugin;
 import com.dottydingo.hyperion.core.endpoint.marshall.EndpointMarshaller;
 import com.dottydingo.hyperion.core.endpoint.marshall.RequestContext;
 import com.dottydingo.hyperion.core.model.PersistentObject;
+import com.dottydingo.hyperion.core.endpoint.HttpMethod;
 import com.dottydingo.hyperion.core.endpoint.HyperionContext;
+import com.dottydingo.hyperion.core.persistence.ConditionalRequest;
 import com.dottydingo.hyperion.core.persistence.PersistenceContext;
+import com.dottydingo.hyperion.core.translation.Translator;
 import com.dottydingo.service.endpoint.context.EndpointRequest;
 import com.dottydingo.service.endpoint.context.EndpointResponse;
 
+import java.io.ByteArrayOutputStream;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
@@ -25,6 +32,8 @@ import java.util.Set;
  */
 public class UpdatePhase extends BasePersistencePhase
 {
+    private static final String QUERY_UPDATE_NOT_ALLOWED = "ERROR_QUERY_UPDATE_NOT_ALLOWED";
+
     private EndpointMarshaller marshaller;
 
     public void setMarshaller(EndpointMarshaller marshaller)
@@ -33,10 +42,12 @@ public class UpdatePhase extends BasePersistencePhase
     }
 
     @Override
-    protected void executePhase(HyperionContext hyperionContext) throws Exception
+    protected void doExecutePhase(HyperionContext hyperionContext) throws Exception
     {
         if(hyperionContext.isLegacyClient())
             processLegacyRequest(hyperionContext);
+        else if(hyperionContext.getEndpointRequest().getFirstParameter("query") != null)
+            processQueryRequest(hyperionContext);
         else
             processCollectionRequest(hyperionContext);
     }
@@ -54,6 +65,7 @@ public class UpdatePhase extends BasePersistencePhase
         EntityPlugin plugin = hyperionContext.getEntityPlugin();
 
         PersistenceContext persistenceContext = buildPersistenceContext(hyperionContext);
+        applyPreconditions(hyperionContext, persistenceContext);
 
         Set<String> fieldSet = persistenceContext.getRequestedFields();
         if(fieldSet != null)
@@ -100,6 +112,7 @@ public class UpdatePhase extends BasePersistencePhase
         EntityPlugin plugin = hyperionContext.getEntityPlugin();
 
         PersistenceContext persistenceContext = buildPersistenceContext(hyperionContext);
+        applyPreconditions(hyperionContext, persistenceContext);
 
         Set<String> fieldSet = persistenceContext.getRequestedFields();
         if(fieldSet != null)
@@ -135,4 +148,105 @@ public class UpdatePhase extends BasePersistencePhase
         hyperionContext.setResult(entityResponse);
     }
 
+    /**
+     * Process a request applying a single sparse item to all items matching a query
+     * @param hyperionContext The context
+     */
+    protected void processQueryRequest(HyperionContext hyperionContext)
+    {
+        EndpointRequest request = hyperionContext.getEndpointRequest();
+        EndpointResponse response = hyperionContext.getEndpointResponse();
+
+        ApiVersionPlugin<ApiObject<Serializable>,PersistentObject<Serializable>,Serializable> apiVersionPlugin = hyperionContext.getVersionPlugin();
+        EntityPlugin plugin = hyperionContext.getEntityPlugin();
+
+        if(!plugin.isQueryUpdateEnabled())
+            throw new NotAllowedException(messageSource.getErrorMessage(QUERY_UPDATE_NOT_ALLOWED,
+                    hyperionContext.getLocale(), plugin.getEndpointName()));
+
+        String query = request.getFirstParameter("query");
+        if(query.trim().length() == 0)
+            throw new BadRequestException(messageSource.getErrorMessage(QUERY_REQUIRED, hyperionContext.getLocale()));
+
+        PersistenceContext persistenceContext = buildPersistenceContext(hyperionContext);
+
+        RequestContext<ApiObject<Serializable>> requestContext = null;
+        try
+        {
+            requestContext = marshaller.unmarshallWithContext(request.getInputStream(), apiVersionPlugin.getApiClass());
+        }
+        catch (MarshallingException e)
+        {
+            throw new BadRequestException(messageSource.getErrorMessage(ERROR_READING_REQUEST, hyperionContext.getLocale(),
+                    e.getMessage()),e);
+        }
+
+        persistenceContext.setProvidedFields(requestContext.getProvidedFields());
+
+        int updated = plugin.getPersistenceOperations().updateByQuery(requestContext.getRequestObject(),
+                buildQueryExpression(query, persistenceContext), persistenceContext);
+
+        processChangeEvents(hyperionContext,persistenceContext);
+
+        UpdateResponse updateResponse = new UpdateResponse();
+        updateResponse.setCount(updated);
+        hyperionContext.setResult(updateResponse);
+
+        response.setResponseCode(200);
+    }
+
+    /**
+     * Capture an If-Match precondition. This must be done before the requested fields are modified so that the
+     * entity tag matches the one returned by a GET for the same fields. Tags a GET computed from the response body
+     * are checked by building the same body for the current items.
+     * @param hyperionContext The context
+     * @param persistenceContext The persistence context
+     */
+    protected void applyPreconditions(HyperionContext hyperionContext, PersistenceContext persistenceContext)
+    {
+        if(hyperionContext.getEndpointRequest().getFirstHeader("If-Match") == null)
+            return;
+
+        String variant = null;
+        if(!hyperionContext.isLegacyClient())
+            variant = buildEntityTagVariant(hyperionContext, persistenceContext);
+
+        ConditionalRequest conditionalRequest = buildConditionalRequest(hyperionContext, variant);
+        conditionalRequest.setRepresentationTagger(createRepresentationTagger(hyperionContext));
+        persistenceContext.setConditionalRequest(conditionalRequest);
+    }
+
+    /**
+     * Create a tagger that builds the entity tag of the body a GET for the same fields returns
+     * @param hyperionContext The context
+     * @return The tagger
+     */
+    protected ConditionalRequest.RepresentationTagger createRepresentationTagger(final HyperionContext hyperionContext)
+    {
+        final PersistenceContext readContext = buildPersistenceContext(hyperionContext);
+        readContext.setHttpMethod(HttpMethod.GET);
+
+        return new ConditionalRequest.RepresentationTagger()
+        {
+            @Override
+            @SuppressWarnings("unchecked")
+            public String buildEntityTag(List<? extends PersistentObject> items)
+            {
+                EntityPlugin plugin = hyperionContext.getEntityPlugin();
+                List<PersistentObject> visible = new ArrayList<>(items.size());
+                for (PersistentObject item : items)
+                {
+                    if(plugin.getPersistenceFilter().isVisible(item, readContext))
+                        visible.add(item);
+                }
+
+                Translator translator = hyperionContext.getVersionPlugin().getTranslator();
+                List converted = translator.convertPersistent(visible, readContext);
+
+                ByteArrayOutputStream body = new ByteArrayOutputStream();
+                marshaller.marshall(body, buildReadResult(hyperionContext, converted));
+                return ConditionalRequest.buildEntityTag(body.toByteArray());
+            }
+        };
+    }
 }
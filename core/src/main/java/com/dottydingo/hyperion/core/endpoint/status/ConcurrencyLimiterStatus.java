@@ -0,0 +1,104 @@
+package com.dottydingo.hyperion.core.endpoint.status;
+
+import com.dottydingo.hyperion.core.endpoint.pipeline.AdaptiveConcurrencyLimiter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ */
+public class ConcurrencyLimiterStatus
+{
+    private final AdaptiveConcurrencyLimiter limiter;
+
+    public ConcurrencyLimiterStatus(AdaptiveConcurrencyLimiter limiter)
+    {
+        this.limiter = limiter;
+    }
+
+    public boolean getEnabled()
+    {
+        return limiter.isEnabled();
+    }
+
+    public void setEnabled(boolean enabled)
+    {
+        limiter.setEnabled(enabled);
+    }
+
+    public int getLimit()
+    {
+        return limiter.getLimit();
+    }
+
+    public void setLimit(int limit)
+    {
+        limiter.setLimit(limit);
+    }
+
+    public int getMinLimit()
+    {
+        return limiter.getMinLimit();
+    }
+
+    public void setMinLimit(int minLimit)
+    {
+        limiter.setMinLimit(minLimit);
+    }
+
+    public int getMaxLimit()
+    {
+        return limiter.getMaxLimit();
+    }
+
+    public void setMaxLimit(int maxLimit)
+    {
+        limiter.setMaxLimit(maxLimit);
+    }
+
+    public long getQueueWaitBudget()
+    {
+        return limiter.getQueueWaitBudget();
+    }
+
+    public void setQueueWaitBudget(long queueWaitBudget)
+    {
+        limiter.setQueueWaitBudget(queueWaitBudget);
+    }
+
+    public int getInFlight()
+    {
+        return limiter.getInFlight();
+    }
+
+    public long getEstimatedWait()
+    {
+        return limiter.getEstimatedWait();
+    }
+
+    public long getAverageLatency()
+    {
+        return limiter.getAverageLatency();
+    }
+
+    public List<String> getBaselineLatencies()
+    {
+        List<String> baselines = new ArrayList<>();
+        for (Map.Entry<String, Long> entry : limiter.getBaselineLatencies().entrySet())
+        {
+            baselines.add(String.format("%s baseline=%dms", entry.getKey(), entry.getValue()));
+        }
+        return baselines;
+    }
+
+    public long getAcceptedCount()
+    {
+        return limiter.getAcceptedCount();
+    }
+
+    public long getRejectedCount()
+    {
+        return limiter.getRejectedCount();
+    }
+}
@@ -0,0 +1,92 @@
+package com.dottydingo.hyperion.core.endpoint.status;
+
+import com.dottydingo.hyperion.core.persistence.cache.EntityCache;
+import com.dottydingo.hyperion.core.persistence.cache.EntityCacheRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ */
+public class EntityCacheStatus
+{
+    private final EntityCacheRegistry entityCacheRegistry;
+
+    public EntityCacheStatus(EntityCacheRegistry entityCacheRegistry)
+    {
+        this.entityCacheRegistry = entityCacheRegistry;
+    }
+
+    public List<String> getSummary()
+    {
+        List<String> summary = new ArrayList<>();
+        for (Map.Entry<String, EntityCache> entry : entityCacheRegistry.getEntityCaches().entrySet())
+        {
+            EntityCache entityCache = entry.getValue();
+            summary.add(String.format("%s size=%d maxSize=%d hits=%d misses=%d hitRatio=%.3f evictions=%d " +
+                    "expirations=%d invalidations=%d", entry.getKey(), entityCache.getSize(),
+                    entityCache.getMaxSize(), entityCache.getHitCount(), entityCache.getMissCount(),
+                    getHitRatio(entityCache.getHitCount(), entityCache.getMissCount()),
+                    entityCache.getEvictionCount(), entityCache.getExpirationCount(),
+                    entityCache.getInvalidationCount()));
+        }
+        return summary;
+    }
+
+    public int getSize()
+    {
+        int size = 0;
+        for (EntityCache entityCache : entityCacheRegistry.getEntityCaches().values())
+        {
+            size += entityCache.getSize();
+        }
+        return size;
+    }
+
+    public long getHitCount()
+    {
+        long hits = 0;
+        for (EntityCache entityCache : entityCacheRegistry.getEntityCaches().values())
+        {
+            hits += entityCache.getHitCount();
+        }
+        return hits;
+    }
+
+    public long getMissCount()
+    {
+        long misses = 0;
+        for (EntityCache entityCache : entityCacheRegistry.getEntityCaches().values())
+        {
+            misses += entityCache.getMissCount();
+        }
+        return misses;
+    }
+
+    public double getHitRatio()
+    {
+        return getHitRatio(getHitCount(), getMissCount());
+    }
+
+    public void clear()
+    {
+        for (EntityCache entityCache : entityCacheRegistry.getEntityCaches().values())
+        {
+            entityCache.clear();
+        }
+    }
+
+    public void clear(String entityName)
+    {
+        EntityCache entityCache = entityCacheRegistry.getEntityCaches().get(entityName);
+        if(entityCache != null)
+            entityCache.clear();
+    }
+
+    private double getHitRatio(long hits, long misses)
+    {
+        long total = hits + misses;
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+}
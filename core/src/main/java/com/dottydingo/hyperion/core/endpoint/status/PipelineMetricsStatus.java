@@ -0,0 +1,32 @@
+package com.dottydingo.hyperion.core.endpoint.status;
+
+import com.dottydingo.hyperion.core.endpoint.metrics.HistogramPipelineMetrics;
+
+import java.util.List;
+
+/**
+ */
+public class PipelineMetricsStatus
+{
+    private final HistogramPipelineMetrics pipelineMetrics;
+
+    public PipelineMetricsStatus(HistogramPipelineMetrics pipelineMetrics)
+    {
+        this.pipelineMetrics = pipelineMetrics;
+    }
+
+    public List<String> getQueueWaitSummary()
+    {
+        return pipelineMetrics.getQueueWaitSummary();
+    }
+
+    public List<String> getExecutionSummary()
+    {
+        return pipelineMetrics.getExecutionSummary();
+    }
+
+    public void reset()
+    {
+        pipelineMetrics.reset();
+    }
+}
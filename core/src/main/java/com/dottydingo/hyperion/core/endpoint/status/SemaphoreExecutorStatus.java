@@ -0,0 +1,65 @@
+package com.dottydingo.hyperion.core.endpoint.status;
+
+import com.dottydingo.hyperion.core.endpoint.pipeline.SemaphoreExecutor;
+
+/**
+ */
+public class SemaphoreExecutorStatus
+{
+    private final SemaphoreExecutor executor;
+
+    public SemaphoreExecutorStatus(SemaphoreExecutor executor)
+    {
+        this.executor = executor;
+    }
+
+    public void setMaxConcurrency(int maxConcurrency)
+    {
+        executor.setMaxConcurrency(maxConcurrency);
+    }
+
+    public int getMaxConcurrency()
+    {
+        return executor.getMaxConcurrency();
+    }
+
+    public void setMaxPermitWait(long maxPermitWait)
+    {
+        executor.setMaxPermitWait(maxPermitWait);
+    }
+
+    public long getMaxPermitWait()
+    {
+        return executor.getMaxPermitWait();
+    }
+
+    public int getAvailablePermits()
+    {
+        return executor.getAvailablePermits();
+    }
+
+    public int getInFlightCount()
+    {
+        return executor.getInFlightCount();
+    }
+
+    public int getWaitingCount()
+    {
+        return executor.getWaitingCount();
+    }
+
+    public long getPermitWaitCount()
+    {
+        return executor.getPermitWaitCount();
+    }
+
+    public long getRejectedCount()
+    {
+        return executor.getRejectedCount();
+    }
+
+    public long getCompletedTaskCount()
+    {
+        return executor.getCompletedTaskCount();
+    }
+}
@@ -0,0 +1,16 @@
+package com.dottydingo.hyperion.core.model;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a persistent field whose value is assigned by the database (a trigger, a column default or a computed
+ * column). Entities with generated fields are always reloaded after a write so the returned values are current.
+ */
+@Target({ElementType.FIELD, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface DatabaseGenerated
+{
+}
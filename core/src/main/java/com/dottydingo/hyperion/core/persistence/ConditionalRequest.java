@@ -0,0 +1,318 @@
+package com.dottydingo.hyperion.core.persistence;
+
+import com.dottydingo.hyperion.core.model.AuditablePersistentObject;
+import com.dottydingo.hyperion.core.model.PersistentObject;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * The validators supplied with a conditional request along with the entity tag and last modified date computed
+ * for the items in the response. Entity tags computed from item state require every item to be an
+ * {@link AuditablePersistentObject} with a modified date, otherwise the entity tag is computed from the response body
+ * and If-Match is checked against the body through a {@link RepresentationTagger}.
+ */
+public class ConditionalRequest
+{
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private String variant;
+    private Set<String> ifNoneMatch;
+    private Date ifModifiedSince;
+    private Set<String> ifMatch;
+
+    private RepresentationTagger representationTagger;
+
+    private String entityTag;
+    private Date lastModified;
+    private boolean notModified;
+
+    /**
+     * Create a conditional request
+     * @param variant The key identifying the representation being returned, included in state based entity tags
+     */
+    public ConditionalRequest(String variant)
+    {
+        this.variant = variant;
+    }
+
+    public Set<String> getIfNoneMatch()
+    {
+        return ifNoneMatch;
+    }
+
+    public void setIfNoneMatch(Set<String> ifNoneMatch)
+    {
+        this.ifNoneMatch = ifNoneMatch;
+    }
+
+    public Date getIfModifiedSince()
+    {
+        return ifModifiedSince;
+    }
+
+    public void setIfModifiedSince(Date ifModifiedSince)
+    {
+        this.ifModifiedSince = ifModifiedSince;
+    }
+
+    public Set<String> getIfMatch()
+    {
+        return ifMatch;
+    }
+
+    public void setIfMatch(Set<String> ifMatch)
+    {
+        this.ifMatch = ifMatch;
+    }
+
+    /**
+     * Set the tagger used to check If-Match against entity tags computed from a response body
+     * @param representationTagger The tagger
+     */
+    public void setRepresentationTagger(RepresentationTagger representationTagger)
+    {
+        this.representationTagger = representationTagger;
+    }
+
+    /**
+     * Return the entity tag computed for the response
+     * @return The entity tag or null if one could not be computed
+     */
+    public String getEntityTag()
+    {
+        return entityTag;
+    }
+
+    /**
+     * Return the last modified date computed for the response
+     * @return The date or null if one could not be computed
+     */
+    public Date getLastModified()
+    {
+        return lastModified;
+    }
+
+    /**
+     * Return a flag indicating that the client copy of the response is current
+     * @return True if the response was not modified
+     */
+    public boolean isNotModified()
+    {
+        return notModified;
+    }
+
+    /**
+     * Evaluate If-None-Match and If-Modified-Since against the items being returned. If-Modified-Since is only
+     * evaluated when If-None-Match is not supplied.
+     * @param items The items being returned
+     * @param complete True if every requested item was found, a last modified date is only supplied in this case
+     * @return True if the client copy is current
+     */
+    public boolean evaluateRead(List<? extends PersistentObject> items, boolean complete)
+    {
+        entityTag = buildEntityTag(items);
+        if(entityTag == null)
+            return false;
+
+        if(complete)
+            lastModified = findLastModified(items);
+
+        if(ifNoneMatch != null)
+            notModified = matches(ifNoneMatch, entityTag, false);
+        else if(ifModifiedSince != null && lastModified != null)
+            notModified = lastModified.getTime() / 1000 <= ifModifiedSince.getTime() / 1000;
+
+        return notModified;
+    }
+
+    /**
+     * Evaluate If-Match against the current state of the items being updated. Tags that do not match the state are
+     * compared with the body a GET would return when a representation tagger is set. When neither tag can be built
+     * the precondition can not be evaluated and is ignored.
+     * @param items The current items
+     * @return True if the update can proceed
+     */
+    public boolean evaluateWrite(List<? extends PersistentObject> items)
+    {
+        if(ifMatch == null || ifMatch.contains("*"))
+            return true;
+
+        String current = buildEntityTag(items);
+        if(current != null && matches(ifMatch, current, true))
+            return true;
+
+        // a GET that could not use the item state returned a tag computed from the response body
+        if(representationTagger != null)
+            return matches(ifMatch, representationTagger.buildEntityTag(items), true);
+
+        return current == null;
+    }
+
+    /**
+     * Build a strong entity tag from the id and modified date of each item
+     * @param items The items
+     * @return The entity tag or null if any item does not have a modified date
+     */
+    public String buildEntityTag(List<? extends PersistentObject> items)
+    {
+        if(variant == null)
+            return null;
+
+        // sort so the tag does not depend on the order the items were loaded in
+        List<String> states = new ArrayList<String>(items.size());
+        for (PersistentObject item : items)
+        {
+            if(!(item instanceof AuditablePersistentObject))
+                return null;
+
+            Date modified = ((AuditablePersistentObject) item).getModified();
+            if(modified == null)
+                return null;
+
+            states.add(item.getId() + ":" + modified.getTime());
+        }
+        Collections.sort(states);
+
+        MessageDigest digest = createDigest();
+        digest.update(variant.getBytes(UTF8));
+        for (String state : states)
+        {
+            digest.update((byte) ';');
+            digest.update(state.getBytes(UTF8));
+        }
+
+        return quote(digest.digest());
+    }
+
+    /**
+     * Build a strong entity tag from a serialized response
+     * @param body The response body
+     * @return The entity tag
+     */
+    public static String buildEntityTag(byte[] body)
+    {
+        return quote(createDigest().digest(body));
+    }
+
+    /**
+     * Create a digest for computing the entity tag of a response body as it is written
+     * @return The digest
+     */
+    public static MessageDigest createBodyDigest()
+    {
+        return createDigest();
+    }
+
+    /**
+     * Build a strong entity tag from a digest created by {@link #createBodyDigest()}, the tag is the same as the one
+     * built from the bytes written to the digest.
+     * @param digest The digest
+     * @return The entity tag
+     */
+    public static String buildEntityTag(MessageDigest digest)
+    {
+        return quote(digest.digest());
+    }
+
+    /**
+     * Parse the value of an If-Match or If-None-Match header
+     * @param header The header value
+     * @return The entity tags or null if the header was not supplied
+     */
+    public static Set<String> parseEntityTags(String header)
+    {
+        if(header == null || header.trim().length() == 0)
+            return null;
+
+        Set<String> tags = new HashSet<String>();
+        for (String tag : header.split(","))
+        {
+            String trimmed = tag.trim();
+            if(trimmed.length() > 0)
+                tags.add(trimmed);
+        }
+
+        return tags;
+    }
+
+    /**
+     * Check if an entity tag matches any of the supplied tags
+     * @param tags The supplied tags
+     * @param entityTag The current entity tag
+     * @param strong True to use the strong comparison, where weak tags never match
+     * @return True if there is a match
+     */
+    public static boolean matches(Set<String> tags, String entityTag, boolean strong)
+    {
+        if(tags.contains("*"))
+            return true;
+
+        for (String tag : tags)
+        {
+            if(tag.startsWith("W/"))
+            {
+                if(!strong && tag.substring(2).equals(entityTag))
+                    return true;
+            }
+            else if(tag.equals(entityTag))
+                return true;
+        }
+
+        return false;
+    }
+
+    private Date findLastModified(List<? extends PersistentObject> items)
+    {
+        Date latest = null;
+        for (PersistentObject item : items)
+        {
+            Date modified = ((AuditablePersistentObject) item).getModified();
+            if(latest == null || modified.after(latest))
+                latest = modified;
+        }
+
+        return latest;
+    }
+
+    private static MessageDigest createDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance("MD5");
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String quote(byte[] hash)
+    {
+        char[] chars = new char[hash.length * 2 + 2];
+        chars[0] = '"';
+        for (int i = 0; i < hash.length; i++)
+        {
+            chars[i * 2 + 1] = HEX[(hash[i] >> 4) & 0x0f];
+            chars[i * 2 + 2] = HEX[hash[i] & 0x0f];
+        }
+        chars[chars.length - 1] = '"';
+        return new String(chars);
+    }
+
+    /**
+     * Builds the entity tag of the response body a GET would return for a set of items
+     */
+    public interface RepresentationTagger
+    {
+        /**
+         * Build the entity tag of the response body for the items
+         * @param items The current items
+         * @return The entity tag
+         */
+        String buildEntityTag(List<? extends PersistentObject> items);
+    }
+}
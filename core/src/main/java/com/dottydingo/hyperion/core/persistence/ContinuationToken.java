@@ -0,0 +1,115 @@
+package com.dottydingo.hyperion.core.persistence;
+
+import com.dottydingo.hyperion.core.endpoint.EndpointSort;
+import com.fasterxml.jackson.core.Base64Variants;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An opaque position used for continuation (keyset) paging. The token captures the sort key values of the last
+ * row on a page along with the sort that produced them so that a token can not be replayed against a different
+ * ordering.
+ */
+public class ContinuationToken
+{
+    private static final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS, true);
+
+    private String sortKey;
+    private List<Object> values;
+
+    public ContinuationToken(String sortKey, List<Object> values)
+    {
+        this.sortKey = sortKey;
+        this.values = values;
+    }
+
+    public String getSortKey()
+    {
+        return sortKey;
+    }
+
+    public List<Object> getValues()
+    {
+        return values;
+    }
+
+    /**
+     * Encode this token into a url safe string
+     * @return The encoded token
+     */
+    public String encode()
+    {
+        ObjectNode node = objectMapper.createObjectNode();
+        node.put("s", sortKey);
+        ArrayNode valueNode = node.putArray("v");
+        for (Object value : values)
+        {
+            valueNode.add(objectMapper.valueToTree(value));
+        }
+
+        try
+        {
+            return Base64Variants.MODIFIED_FOR_URL.encode(objectMapper.writeValueAsBytes(node));
+        }
+        catch (Exception e)
+        {
+            throw new IllegalStateException("Error encoding continuation token.", e);
+        }
+    }
+
+    /**
+     * Decode a token previously created by {@link #encode()}
+     * @param token The encoded token
+     * @return The decoded token, or null if the value is not a valid token
+     */
+    public static ContinuationToken decode(String token)
+    {
+        try
+        {
+            JsonNode node = objectMapper.readTree(Base64Variants.MODIFIED_FOR_URL.decode(token));
+            if(node == null || !node.path("s").isTextual() || !node.path("v").isArray())
+                return null;
+
+            List<Object> values = new ArrayList<Object>();
+            for (JsonNode valueNode : node.get("v"))
+            {
+                values.add(objectMapper.treeToValue(valueNode, Object.class));
+            }
+
+            return new ContinuationToken(node.get("s").asText(), values);
+        }
+        catch (Exception e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Build the key used to bind a token to a specific sort
+     * @param sort The sort
+     * @return The sort key
+     */
+    public static String buildSortKey(EndpointSort sort)
+    {
+        StringBuilder sb = new StringBuilder();
+        if(sort != null)
+        {
+            for (EndpointSort.EndpointOrder order : sort.getOrders())
+            {
+                if(sb.length() > 0)
+                    sb.append(",");
+                sb.append(order.getField());
+                if(order.isDescending())
+                    sb.append(":desc");
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,20 @@
+package com.dottydingo.hyperion.core.persistence;
+
+import com.dottydingo.hyperion.core.persistence.query.PersistentQueryBuilder;
+
+import java.util.List;
+
+/**
+ * Provides an estimated total count for a query when an exact count is too expensive, for example by
+ * reading table statistics from the database.
+ */
+public interface CountEstimator
+{
+    /**
+     * Estimate the number of rows matching the supplied query builders
+     * @param queryBuilders The query builders that will be applied to the query
+     * @param persistenceContext The context
+     * @return The estimated count, or null if no estimate is available
+     */
+    Long estimateCount(List<PersistentQueryBuilder> queryBuilders, PersistenceContext persistenceContext);
+}
@@ -0,0 +1,14 @@
+package com.dottydingo.hyperion.core.persistence;
+
+/**
+ * Controls how the total count is calculated for a query.
+ */
+public enum CountMode
+{
+    /** Calculate the total count, limited by the maximum count configured for the entity */
+    EXACT,
+    /** Use the count estimator configured for the entity, falling back to EXACT if none is configured */
+    ESTIMATE,
+    /** Do not calculate a total count */
+    NONE
+}
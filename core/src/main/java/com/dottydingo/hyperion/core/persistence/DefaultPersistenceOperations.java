@@ -1,27 +1,43 @@
 package com.dottydingo.hyperion.core.persistence;
 
 import com.dottydingo.hyperion.api.ApiObject;
+import com.dottydingo.hyperion.api.exception.BadRequestException;
 import com.dottydingo.hyperion.api.exception.NotFoundException;
+import com.dottydingo.hyperion.api.exception.PreconditionFailedException;
 import com.dottydingo.hyperion.api.exception.ValidationException;
+import com.dottydingo.hyperion.core.persistence.cache.EntityCache;
 import com.dottydingo.hyperion.core.persistence.event.*;
 import com.dottydingo.hyperion.core.persistence.history.HistorySerializer;
 import com.dottydingo.hyperion.core.registry.ApiVersionPlugin;
+import com.dottydingo.hyperion.core.registry.ApiVersionRegistry;
 import com.dottydingo.hyperion.api.HistoryEntry;
 import com.dottydingo.hyperion.core.endpoint.EndpointSort;
 import com.dottydingo.hyperion.core.model.PersistentHistoryEntry;
 import com.dottydingo.hyperion.core.model.PersistentObject;
+import com.dottydingo.hyperion.core.persistence.dao.AssociationFetchDao;
 import com.dottydingo.hyperion.core.persistence.dao.Dao;
+import com.dottydingo.hyperion.core.persistence.dao.ManagedInstanceDao;
 import com.dottydingo.hyperion.core.persistence.dao.PersistentQueryResult;
+import com.dottydingo.hyperion.core.persistence.dao.ProjectionDao;
+import com.dottydingo.hyperion.core.persistence.dao.SeekValueException;
+import com.dottydingo.hyperion.core.persistence.dao.SetOperationDao;
 import com.dottydingo.hyperion.core.persistence.query.PersistentQueryBuilder;
 import com.dottydingo.hyperion.core.persistence.query.PersistentQueryBuilderFactory;
 import com.dottydingo.hyperion.core.persistence.sort.PersistentOrderBuilder;
 import com.dottydingo.hyperion.core.persistence.sort.PersistentOrderBuilderFactory;
 import com.dottydingo.hyperion.core.registry.EntityPlugin;
+import com.dottydingo.hyperion.core.translation.BulkUpdateTranslator;
+import com.dottydingo.hyperion.core.translation.FetchPlanTranslator;
+import com.dottydingo.hyperion.core.translation.ProjectionTranslator;
 import com.dottydingo.hyperion.core.translation.Translator;
+import com.dottydingo.hyperion.core.validation.DefaultValidator;
 import com.dottydingo.hyperion.core.validation.Validator;
 import cz.jirutka.rsql.parser.ast.Node;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.Serializable;
+import java.lang.reflect.Method;
 import java.util.*;
 
 /**
@@ -29,13 +45,22 @@ import java.util.*;
 public class DefaultPersistenceOperations<C extends ApiObject<ID>, P extends PersistentObject<ID>, ID extends Serializable>
         implements PersistenceOperations<C,ID>
 {
+    private static final Logger logger = LoggerFactory.getLogger(DefaultPersistenceOperations.class);
 
     private static final String ID_MISSING = "VALIDATION_ID_MISSING";
     private static final String IDS_NOT_FOUND = "ERROR_ITEMS_NOT_FOUND";
+    private static final String INVALID_CONTINUATION = "ERROR_INVALID_CONTINUATION";
+    private static final String PRECONDITION_FAILED = "ERROR_PRECONDITION_FAILED";
+    private static final String QUERY_UPDATE_ID = "ERROR_QUERY_UPDATE_ID";
 
     protected PersistentQueryBuilderFactory persistentQueryBuilderFactory;
     protected PersistentOrderBuilderFactory persistentOrderBuilderFactory;
     protected HistorySerializer historySerializer;
+    protected int bulkChunkSize = 500;
+
+    // subclasses written before the batched writes may still override the single item hooks
+    private final boolean createOverridden = overrides("doCreate");
+    private final boolean updateOverridden = overrides("doUpdate");
 
     public void setPersistentQueryBuilderFactory(PersistentQueryBuilderFactory persistentQueryBuilderFactory)
     {
@@ -52,14 +77,28 @@ public class DefaultPersistenceOperations<C extends ApiObject<ID>, P extends Per
         this.historySerializer = historySerializer;
     }
 
+    /**
+     * Set the number of items processed at a time by operations that apply to all items matching a query. Defaults
+     * to 500.
+     * @param bulkChunkSize the chunk size
+     */
+    public void setBulkChunkSize(int bulkChunkSize)
+    {
+        this.bulkChunkSize = bulkChunkSize;
+    }
+
     @Override
     public List<C> findByIds(List<ID> ids, PersistenceContext context)
     {
 
-        ApiVersionPlugin<C,P,ID> apiVersionPlugin = context.getApiVersionPlugin();
-
+        EntityPlugin<C,P,ID> entityPlugin = context.getEntityPlugin();
 
-        List<P> iterable = context.getEntityPlugin().getDao().findAll(context.getEntityPlugin().getEntityClass(),ids);
+        List<P> iterable;
+        boolean cached = entityPlugin.getEntityCache() != null;
+        if(cached)
+            iterable = findAllCached(ids, entityPlugin.getEntityCache(), context);
+        else
+            iterable = entityPlugin.getDao().findAll(entityPlugin.getEntityClass(),ids);
 
         List<P> result = new ArrayList<P>();
         for (P p : iterable)
@@ -68,54 +107,323 @@ public class DefaultPersistenceOperations<C extends ApiObject<ID>, P extends Per
                 result.add(p);
         }
 
-        return apiVersionPlugin.getTranslator().convertPersistent(result,context);
+        // skip translation entirely when the client already has the current state
+        ConditionalRequest conditionalRequest = context.getConditionalRequest();
+        if(conditionalRequest != null
+                && conditionalRequest.evaluateRead(result, result.size() == new HashSet<>(ids).size()))
+            return Collections.emptyList();
+
+        // cached items already have every association any version reads
+        return convertResults(result, !cached, context);
+    }
+
+    protected List<P> findAllCached(List<ID> ids, EntityCache<ID,P> entityCache, PersistenceContext context)
+    {
+        Map<ID,P> found = new HashMap<>();
+        List<ID> missing = new ArrayList<>();
+        for (ID id : ids)
+        {
+            P cached = entityCache.get(id);
+            if(cached != null)
+                found.put(id,cached);
+            else
+                missing.add(id);
+        }
+
+        if(!missing.isEmpty())
+        {
+            EntityPlugin<C,P,ID> entityPlugin = context.getEntityPlugin();
+            Dao<P,ID,?,?> dao = entityPlugin.getDao();
+            long generation = entityCache.getGeneration();
+            List<P> loaded = dao.findAll(entityPlugin.getEntityClass(), missing);
+
+            // cached items are shared between requests and versions so they are detached once the associations read
+            // by any version are loaded
+            fetchAssociations(loaded, getCachedFetchPaths(context), context);
+            for (P p : loaded)
+            {
+                dao.reset(p);
+                entityCache.put(p.getId(), p, generation);
+                found.put(p.getId(), p);
+            }
+        }
+
+        List<P> result = new ArrayList<>(found.size());
+        for (ID id : ids)
+        {
+            P p = found.remove(id);
+            if(p != null)
+                result.add(p);
+        }
+
+        return result;
     }
 
     @Override
-    public QueryResult<C> query(Node query, Integer start, Integer limit, EndpointSort sort, PersistenceContext context)
+    public QueryResult<C> query(Node query, Integer start, Integer limit, EndpointSort sort, CountMode countMode,
+                                PersistenceContext context)
     {
-        ApiVersionPlugin<C,P,ID> apiVersionPlugin = context.getApiVersionPlugin();
+        EntityPlugin entityPlugin = context.getEntityPlugin();
+
+        CountMode mode = countMode != null ? countMode : entityPlugin.getCountMode();
+        CountEstimator countEstimator = entityPlugin.getCountEstimator();
+        boolean estimate = mode == CountMode.ESTIMATE && countEstimator != null;
+        boolean count = mode == CountMode.EXACT || (mode == CountMode.ESTIMATE && countEstimator == null);
 
         int size = limit;
         int pageStart = start == null ? 0 : start - 1;
 
+        List<PersistentQueryBuilder> queryBuilders = buildQueryBuilders(query, context);
 
-        List<PersistentQueryBuilder> queryBuilders = new ArrayList<PersistentQueryBuilder>();
-        if(query != null)
+        PersistentOrderBuilder<P> orderBuilder = persistentOrderBuilderFactory.createOrderBuilder(sort, context);
+
+        Dao dao = entityPlugin.getDao();
+        Set<String> projection = getProjection(context);
+        PersistentQueryResult<P> all;
+        if(projection != null)
+            all = ((ProjectionDao) dao).queryProjection(entityPlugin.getEntityClass(), pageStart, size,
+                    orderBuilder, queryBuilders, count, entityPlugin.getMaxCount(), projection);
+        else
+            all = dao.query(entityPlugin.getEntityClass(), pageStart, size,
+                    orderBuilder, queryBuilders, count, entityPlugin.getMaxCount());
+
+        // the dao will supply an exact count when it can be derived from the page so only estimate if needed
+        if(estimate && all.getTotalCount() == null)
         {
-            queryBuilders.add(
-                    persistentQueryBuilderFactory.createQueryBuilder(query, context));
+            all.setTotalCount(countEstimator.estimateCount(queryBuilders, context));
+            all.setTotalCountExact(false);
         }
 
-        PersistentQueryBuilder filter = context.getEntityPlugin().getPersistenceFilter().getFilterQueryBuilder(
-                context);
-        if(filter != null)
-            queryBuilders.add(filter);
+        List<C> converted;
+        if(all.getResults() != null && !all.getResults().isEmpty())
+        {
+            converted = convertResults(all.getResults(), context);
+        }
+        else
+            converted = Collections.emptyList();
+
+        QueryResult<C> queryResult= new QueryResult<C>();
+        queryResult.setItems(converted);
+        queryResult.setResponseCount(converted.size());
+        queryResult.setTotalCount(all.getTotalCount());
+        queryResult.setTotalCountExact(all.isTotalCountExact());
+        queryResult.setStart(start == null ? 1 : (start));
+
+        return queryResult;
+    }
+
+    @Override
+    public QueryResult<C> streamQuery(Node query, Integer start, Integer limit, EndpointSort sort,
+                                      CountMode countMode, final PersistenceContext context,
+                                      final ResultHandler<C> resultHandler)
+    {
+        ApiVersionPlugin<C,P,ID> apiVersionPlugin = context.getApiVersionPlugin();
+        EntityPlugin entityPlugin = context.getEntityPlugin();
+
+        CountMode mode = countMode != null ? countMode : entityPlugin.getCountMode();
+        CountEstimator countEstimator = entityPlugin.getCountEstimator();
+        boolean estimate = mode == CountMode.ESTIMATE && countEstimator != null;
+        boolean count = mode == CountMode.EXACT || (mode == CountMode.ESTIMATE && countEstimator == null);
+
+        int pageStart = start == null ? 0 : start - 1;
+
+        List<PersistentQueryBuilder> queryBuilders = buildQueryBuilders(query, context);
 
         PersistentOrderBuilder<P> orderBuilder = persistentOrderBuilderFactory.createOrderBuilder(sort, context);
 
-        Dao dao = context.getEntityPlugin().getDao();
-        PersistentQueryResult<P> all = dao.query(context.getEntityPlugin().getEntityClass(), pageStart, size,
-                orderBuilder, queryBuilders);
+        final Translator<C,P> translator = apiVersionPlugin.getTranslator();
+        ResultHandler<P> translatingHandler = new ResultHandler<P>()
+        {
+            @Override
+            public void handleResult(P item)
+            {
+                resultHandler.handleResult(translator.convertPersistent(item, context));
+            }
+        };
 
-        List<C> converted;
-        if(all.getTotalCount() > 0)
+        Dao dao = entityPlugin.getDao();
+        PersistentQueryResult<P> all = dao.stream(entityPlugin.getEntityClass(), pageStart, limit,
+                orderBuilder, queryBuilders, count, entityPlugin.getMaxCount(), translatingHandler);
+
+        if(estimate && all.getTotalCount() == null)
         {
-            List<P> list = all.getResults();
-            converted = apiVersionPlugin.getTranslator().convertPersistent(list,context);
+            all.setTotalCount(countEstimator.estimateCount(queryBuilders, context));
+            all.setTotalCountExact(false);
         }
+
+        QueryResult<C> queryResult= new QueryResult<C>();
+        queryResult.setResponseCount(all.getResultCount());
+        queryResult.setTotalCount(all.getTotalCount());
+        queryResult.setTotalCountExact(all.isTotalCountExact());
+        queryResult.setStart(start == null ? 1 : (start));
+
+        return queryResult;
+    }
+
+    @Override
+    public QueryResult<C> seek(Node query, String continuation, Integer limit, EndpointSort sort,
+                               PersistenceContext context)
+    {
+
+        String sortKey = ContinuationToken.buildSortKey(sort);
+        List<Object> seekValues = null;
+        if(continuation != null)
+        {
+            ContinuationToken token = ContinuationToken.decode(continuation);
+            if(token == null || !sortKey.equals(token.getSortKey()))
+                throw new BadRequestException(
+                        context.getMessageSource().getErrorMessage(INVALID_CONTINUATION, context.getLocale()));
+
+            seekValues = token.getValues();
+        }
+
+        List<PersistentQueryBuilder> queryBuilders = buildQueryBuilders(query, context);
+
+        PersistentOrderBuilder<P> orderBuilder = persistentOrderBuilderFactory.createOrderBuilder(sort, context);
+
+        Dao dao = context.getEntityPlugin().getDao();
+        PersistentQueryResult<P> page;
+        try
+        {
+            page = dao.seek(context.getEntityPlugin().getEntityClass(), seekValues, limit, orderBuilder,
+                    queryBuilders);
+        }
+        catch (SeekValueException e)
+        {
+            throw new BadRequestException(
+                    context.getMessageSource().getErrorMessage(INVALID_CONTINUATION, context.getLocale()), e);
+        }
+
+        List<C> converted;
+        if(page.getResults() != null && !page.getResults().isEmpty())
+            converted = convertResults(page.getResults(), context);
         else
             converted = Collections.emptyList();
 
         QueryResult<C> queryResult= new QueryResult<C>();
         queryResult.setItems(converted);
         queryResult.setResponseCount(converted.size());
-        queryResult.setTotalCount(all.getTotalCount());
-        queryResult.setStart(start == null ? 1 : (start));
+        if(page.getSeekValues() != null)
+            queryResult.setContinuation(new ContinuationToken(sortKey, page.getSeekValues()).encode());
 
         return queryResult;
     }
 
+    /**
+     * Convert the results of a read. When the dao supports it the associations read by the translator are fetched
+     * for all of the results first. With debug logging enabled anything still loaded lazily during translation is
+     * logged, translators without fetch paths load their associations lazily by design.
+     */
+    protected List<C> convertResults(List<P> results, PersistenceContext context)
+    {
+        return convertResults(results, true, context);
+    }
+
+    /**
+     * Convert the results of a read, optionally without fetching the associations first because the results already
+     * have them loaded.
+     */
+    @SuppressWarnings("unchecked")
+    protected List<C> convertResults(List<P> results, boolean fetch, PersistenceContext context)
+    {
+        Translator<C,P> translator = context.getApiVersionPlugin().getTranslator();
+        Dao dao = context.getEntityPlugin().getDao();
+        if(results.isEmpty() || !(dao instanceof AssociationFetchDao))
+            return translator.convertPersistent(results, context);
+
+        AssociationFetchDao<P> fetchDao = (AssociationFetchDao<P>) dao;
+        if(fetch)
+            fetchAssociations(results, context);
+
+        long loaded = logger.isDebugEnabled() ? fetchDao.getLoadedCount() : -1;
+        List<C> converted = translator.convertPersistent(results, context);
+        if(loaded >= 0)
+        {
+            long lazy = fetchDao.getLoadedCount() - loaded;
+            if(lazy > 0)
+                logger.debug("{} entities or collections were loaded lazily while translating {} {} items, declare " +
+                        "the association paths on the field mappers to fetch them with the query.",
+                        lazy, results.size(), context.getEntity());
+        }
+
+        return converted;
+    }
+
+    /**
+     * Load the associations the translator declares as fetch paths for the items
+     */
+    protected void fetchAssociations(List<P> results, PersistenceContext context)
+    {
+        Translator<C,P> translator = context.getApiVersionPlugin().getTranslator();
+        if(translator instanceof FetchPlanTranslator)
+            fetchAssociations(results, ((FetchPlanTranslator) translator).getFetchPaths(context), context);
+    }
+
+    /**
+     * Return the association paths read by any version of the entity. Translators that do not declare their fetch
+     * plan are assumed not to read associations.
+     */
+    protected Set<String> getCachedFetchPaths(PersistenceContext context)
+    {
+        ApiVersionRegistry<C,P,ID> registry = context.getEntityPlugin().getApiVersionRegistry();
+        if(registry == null)
+        {
+            Translator<C,P> translator = context.getApiVersionPlugin().getTranslator();
+            return translator instanceof FetchPlanTranslator
+                    ? ((FetchPlanTranslator) translator).getAllFetchPaths()
+                    : Collections.<String>emptySet();
+        }
+
+        Set<String> paths = new LinkedHashSet<>();
+        for (Integer version : registry.getVersions())
+        {
+            Translator<C,P> translator = registry.getPluginForVersion(version).getTranslator();
+            if(translator instanceof FetchPlanTranslator)
+                paths.addAll(((FetchPlanTranslator) translator).getAllFetchPaths());
+        }
+        return paths;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void fetchAssociations(List<P> results, Set<String> paths, PersistenceContext context)
+    {
+        Dao dao = context.getEntityPlugin().getDao();
+        if(!results.isEmpty() && !paths.isEmpty() && dao instanceof AssociationFetchDao)
+            ((AssociationFetchDao<P>) dao).fetchAssociations(context.getEntityPlugin().getEntityClass(), results,
+                    paths);
+    }
+
+    /**
+     * Return the persistent properties to load for a query, or null if whole entities should be loaded.
+     */
+    protected Set<String> getProjection(PersistenceContext context)
+    {
+        EntityPlugin entityPlugin = context.getEntityPlugin();
+        Translator<C,P> translator = context.getApiVersionPlugin().getTranslator();
+        if(!entityPlugin.isProjectionEnabled() || !(entityPlugin.getDao() instanceof ProjectionDao)
+                || !(translator instanceof ProjectionTranslator))
+            return null;
+
+        return ((ProjectionTranslator) translator).getProjection(context);
+    }
+
+    protected List<PersistentQueryBuilder> buildQueryBuilders(Node query, PersistenceContext context)
+    {
+        List<PersistentQueryBuilder> queryBuilders = new ArrayList<PersistentQueryBuilder>();
+        if(query != null)
+        {
+            queryBuilders.add(
+                    persistentQueryBuilderFactory.createQueryBuilder(query, context));
+        }
+
+        PersistentQueryBuilder filter = context.getEntityPlugin().getPersistenceFilter().getFilterQueryBuilder(
+                context);
+        if(filter != null)
+            queryBuilders.add(filter);
+
+        return queryBuilders;
+    }
+
     @Override
     public List<C> createOrUpdateItems(List<C> clientItems, PersistenceContext context)
     {
@@ -127,7 +435,7 @@ public class DefaultPersistenceOperations<C extends ApiObject<ID>, P extends Per
         Dao<P,ID,?,?> dao = entityPlugin.getDao();
         Translator<C,P> translator = apiVersionPlugin.getTranslator();
 
-        context.setCurrentTimestamp(dao.getCurrentTimestamp());
+        context.setCurrentTimestamp(getCurrentTimestamp(context));
 
         AdminPersistenceContext adminPersistenceContext = null;
 
@@ -136,6 +444,9 @@ public class DefaultPersistenceOperations<C extends ApiObject<ID>, P extends Per
 
         List<ID> itemIds = new ArrayList<ID>(clientItems.size());
         List<ID> createdIds = new ArrayList<ID>(clientItems.size());
+        List<P> createdItems = new ArrayList<P>(clientItems.size());
+        List<P> toCreate = new ArrayList<P>(clientItems.size());
+        List<Integer> createdPositions = new ArrayList<Integer>(clientItems.size());
         Map<ID,C> toUpdateMap = new LinkedHashMap<>();
 
         // iterate through the client items and create or update as appropriate
@@ -159,18 +470,26 @@ public class DefaultPersistenceOperations<C extends ApiObject<ID>, P extends Per
 
             P persistent = translator.convertClient(item, context);
 
-            P saved = doCreate(persistent, context);
-            itemIds.add(saved.getId());
-            createdIds.add(saved.getId());
+            // the id is filled in once the items are created
+            createdPositions.add(itemIds.size());
+            itemIds.add(null);
+            toCreate.add(persistent);
+
+            // a later item may look this one up by its create key so it has to be written first
+            if(createKeyProcessor != null)
+                createPending(toCreate, createdPositions, itemIds, createdIds, createdItems, context);
         }
 
+        createPending(toCreate, createdPositions, itemIds, createdIds, createdItems, context);
+
         Map<ID,C> savedMap = new HashMap<ID, C>();
 
         // if any items were created then we need to reload them to process
         if(!createdIds.isEmpty())
         {
-            // reload the created items from the DB
-            List<P> savedItems = dao.findAll(entityPlugin.getEntityClass(), createdIds);
+            // reload the created items from the DB unless the written instances can be used as is
+            List<P> savedItems = canUseWrittenInstances(context) ? createdItems
+                    : dao.findAll(entityPlugin.getEntityClass(), createdIds);
             for (P saved : savedItems)
             {
                 // put the translated results into a map so that we can return items in the same order we received them
@@ -210,12 +529,51 @@ public class DefaultPersistenceOperations<C extends ApiObject<ID>, P extends Per
         return toReturn;
     }
 
+    private void createPending(List<P> toCreate, List<Integer> createdPositions, List<ID> itemIds, List<ID> createdIds,
+                               List<P> createdItems, PersistenceContext context)
+    {
+        if(toCreate.isEmpty())
+            return;
+
+        List<P> created = doCreateAll(toCreate, context);
+        for (int i = 0; i < created.size(); i++)
+        {
+            ID id = created.get(i).getId();
+            itemIds.set(createdPositions.get(i), id);
+            createdIds.add(id);
+            createdItems.add(created.get(i));
+        }
+
+        toCreate.clear();
+        createdPositions.clear();
+    }
+
     protected P doCreate(P persistent,PersistenceContext context)
     {
         Dao<P,ID,?,?> dao = context.getEntityPlugin().getDao();
         return dao.create(persistent);
     }
 
+    /**
+     * Create a list of items. The items are written with a single batched call unless a subclass overrides
+     * {@link #doCreate}, in which case each item is passed to the override.
+     */
+    protected List<P> doCreateAll(List<P> persistent,PersistenceContext context)
+    {
+        if(createOverridden)
+        {
+            List<P> created = new ArrayList<>(persistent.size());
+            for (P p : persistent)
+            {
+                created.add(doCreate(p, context));
+            }
+            return created;
+        }
+
+        Dao<P,ID,?,?> dao = context.getEntityPlugin().getDao();
+        return dao.createAll(persistent);
+    }
+
     @Override
     public List<C> updateItems(List<C> clientItems, PersistenceContext context)
     {
@@ -245,11 +603,16 @@ public class DefaultPersistenceOperations<C extends ApiObject<ID>, P extends Per
                             context.getEntity(),findMissing(new ArrayList<>(mappedClients.keySet()), existingPersistent)));
         }
 
+        ConditionalRequest conditionalRequest = context.getConditionalRequest();
+        if(conditionalRequest != null && !conditionalRequest.evaluateWrite(existingPersistent))
+            throw new PreconditionFailedException(
+                    context.getMessageSource().getErrorMessage(PRECONDITION_FAILED, context.getLocale()));
+
         AdminPersistenceContext adminPersistenceContext = null;
         if(entityPlugin.hasListeners())
             adminPersistenceContext = new AdminPersistenceContext(context);
 
-        context.setCurrentTimestamp(dao.getCurrentTimestamp());
+        context.setCurrentTimestamp(getCurrentTimestamp(context));
 
         Map<ID,P> mappedPersistentItems = buildMap(existingPersistent);
 
@@ -269,6 +632,7 @@ public class DefaultPersistenceOperations<C extends ApiObject<ID>, P extends Per
         Map<ID,C> originalState = new HashMap<>();
         List<ID> updatedIds = new ArrayList<>();
         Set<ID> modifiedIds = new HashSet<>();
+        List<P> toUpdate = new ArrayList<>();
         for (Map.Entry<ID, C> entry : mappedClientItems.entrySet())
         {
             P existingPersistent = mappedPersistentItems.get(entry.getKey());
@@ -288,7 +652,7 @@ public class DefaultPersistenceOperations<C extends ApiObject<ID>, P extends Per
             boolean dirty = translator.copyClient(client, existingPersistent,context);
             if(dirty)
             {
-                doUpdate(context, existingPersistent);
+                toUpdate.add(existingPersistent);
                 modifiedIds.add(entry.getKey());
             }
             else
@@ -299,8 +663,32 @@ public class DefaultPersistenceOperations<C extends ApiObject<ID>, P extends Per
             updatedIds.add(entry.getKey());
         }
 
-        // reload the saved items from the DB
-        List<P> savedItems = dao.findAll(entityPlugin.getEntityClass(),updatedIds);
+        List<P> written = Collections.emptyList();
+        if(!toUpdate.isEmpty())
+            written = doUpdateAll(context, toUpdate);
+
+        for (ID modifiedId : modifiedIds)
+        {
+            invalidateCaches(modifiedId, context);
+        }
+
+        // reload the saved items from the DB, when the written instances can be used only the unchanged items
+        // need to be loaded since they were detached by the reset
+        List<P> savedItems;
+        if(canUseWrittenInstances(context))
+        {
+            savedItems = new ArrayList<>(written);
+            List<ID> unchangedIds = new ArrayList<>();
+            for (ID updatedId : updatedIds)
+            {
+                if(!modifiedIds.contains(updatedId))
+                    unchangedIds.add(updatedId);
+            }
+            if(!unchangedIds.isEmpty())
+                savedItems.addAll(dao.findAll(entityPlugin.getEntityClass(), unchangedIds));
+        }
+        else
+            savedItems = dao.findAll(entityPlugin.getEntityClass(),updatedIds);
 
         Map<ID,C> savedMap = new HashMap<ID, C>();
         for (P savedItem : savedItems)
@@ -341,6 +729,145 @@ public class DefaultPersistenceOperations<C extends ApiObject<ID>, P extends Per
     }
 
 
+    @Override
+    public int updateByQuery(C clientItem, Node query, PersistenceContext context)
+    {
+        EntityPlugin<C,P,ID> entityPlugin = context.getEntityPlugin();
+        Dao dao = entityPlugin.getDao();
+
+        // every matching item receives the same values so the item can not carry an id
+        if(clientItem.getId() != null || context.isFieldProvided(clientItem, "id"))
+            throw new BadRequestException(
+                    context.getMessageSource().getErrorMessage(QUERY_UPDATE_ID, context.getLocale()));
+
+        List<PersistentQueryBuilder> queryBuilders = buildQueryBuilders(query, context);
+
+        context.setCurrentTimestamp(getCurrentTimestamp(context));
+
+        Map<String,Object> values = buildBulkUpdate(clientItem, context);
+        if(values != null)
+        {
+            if(values.isEmpty())
+                return 0;
+            clearCaches(context);
+            return dao.updateByQuery(entityPlugin.getEntityClass(), queryBuilders, values, bulkChunkSize);
+        }
+
+        AdminPersistenceContext adminPersistenceContext = null;
+        if(entityPlugin.hasListeners())
+            adminPersistenceContext = new AdminPersistenceContext(context);
+
+        // walk the matching items in id order a chunk at a time, releasing each chunk once it has been processed
+        PersistentOrderBuilder<P> orderBuilder = persistentOrderBuilderFactory.createOrderBuilder(null, context);
+        int updated = 0;
+        List<Object> seekValues = null;
+        do
+        {
+            PersistentQueryResult<P> chunk = dao.seek(entityPlugin.getEntityClass(), seekValues, bulkChunkSize,
+                    orderBuilder, queryBuilders);
+            updated += updateMatchedItems(clientItem, chunk.getResults(), context, adminPersistenceContext);
+            dao.flushBatch();
+            seekValues = chunk.getSeekValues();
+        }
+        while (seekValues != null);
+
+        return updated;
+    }
+
+    /**
+     * Build the values for an update by query that can be written without loading the matching items. This is
+     * only possible when there are no listeners, the persistence filter and validator do not check individual items,
+     * the translator can express the update as fixed values and the dao can write them with set based updates.
+     * @param clientItem The sparse client item
+     * @param context The persistence context
+     * @return The values keyed by persistent property name, or null if each item must be updated individually
+     */
+    @SuppressWarnings("unchecked")
+    protected Map<String,Object> buildBulkUpdate(C clientItem, PersistenceContext context)
+    {
+        EntityPlugin<C,P,ID> entityPlugin = context.getEntityPlugin();
+        ApiVersionPlugin<C,P,ID> apiVersionPlugin = context.getApiVersionPlugin();
+        Translator<C,P> translator = apiVersionPlugin.getTranslator();
+
+        if(entityPlugin.hasListeners()
+                || entityPlugin.getPersistenceFilter().getClass() != EmptyPersistenceFilter.class
+                || apiVersionPlugin.getValidator().getClass() != DefaultValidator.class
+                || !(translator instanceof BulkUpdateTranslator))
+            return null;
+
+        Map<String,Object> values = ((BulkUpdateTranslator<C>) translator).buildBulkUpdate(clientItem, context);
+        if(values == null || values.isEmpty())
+            return values;
+
+        Dao<P,ID,?,?> dao = entityPlugin.getDao();
+        if(!(dao instanceof SetOperationDao)
+                || !((SetOperationDao) dao).canUpdateBySet(entityPlugin.getEntityClass(), values.keySet()))
+            return null;
+
+        return values;
+    }
+
+    protected int updateMatchedItems(C clientItem, List<P> items, PersistenceContext context,
+                                     AdminPersistenceContext adminPersistenceContext)
+    {
+        ApiVersionPlugin<C,P,ID> apiVersionPlugin = context.getApiVersionPlugin();
+        Translator<C,P> translator = apiVersionPlugin.getTranslator();
+        Validator<C,P> validator = apiVersionPlugin.getValidator();
+        EntityPlugin<C,P,ID> entityPlugin = context.getEntityPlugin();
+
+        Map<ID,C> originalState = new HashMap<>();
+        List<P> toUpdate = new ArrayList<>();
+        for (P item : items)
+        {
+            if(!entityPlugin.getPersistenceFilter().canUpdate(item, context))
+                continue;
+
+            validator.validateUpdate(clientItem, item, context);
+
+            // only capture the original if there is a listener
+            if(entityPlugin.hasListeners())
+                originalState.put(item.getId(), translator.convertPersistent(item, adminPersistenceContext));
+
+            if(translator.copyClient(clientItem, item, context))
+                toUpdate.add(item);
+        }
+
+        if(toUpdate.isEmpty())
+            return 0;
+
+        List<P> written = doUpdateAll(context, toUpdate);
+        for (P saved : written)
+        {
+            invalidateCaches(saved.getId(), context);
+        }
+
+        if(entityPlugin.hasListeners())
+        {
+            List<PersistentChangeEvent<C,ID>> updateEvents = new ArrayList<>();
+            for (P saved : written)
+            {
+                PersistentChangeEvent<C, ID> entityChangeEvent = new PersistentChangeEvent<>(
+                        originalState.get(saved.getId()),
+                        translator.convertPersistent(saved, adminPersistenceContext),
+                        context.getChangedFields(context.getEntity(), saved.getId()),
+                        context,
+                        saved.getId(),
+                        EntityChangeAction.MODIFY);
+
+                if(entityPlugin.hasPersistentChangeListeners())
+                    updateEvents.add(entityChangeEvent);
+
+                if(entityPlugin.hasEntityChangeListeners())
+                    context.addEntityChangeEvent(entityChangeEvent);
+            }
+
+            if(!updateEvents.isEmpty())
+                processPersistentChangeEvents(context, updateEvents);
+        }
+
+        return toUpdate.size();
+    }
+
     protected Map<ID,P> buildMap(List<P> found)
     {
         Map<ID,P> map = new HashMap<>();
@@ -370,25 +897,158 @@ public class DefaultPersistenceOperations<C extends ApiObject<ID>, P extends Per
         return dao.update(existing);
     }
 
+    /**
+     * Update a list of items. The items are written with a single batched call unless a subclass overrides
+     * {@link #doUpdate}, in which case each item is passed to the override.
+     */
+    protected List<P> doUpdateAll(PersistenceContext context, List<P> existing)
+    {
+        if(updateOverridden)
+        {
+            List<P> updated = new ArrayList<>(existing.size());
+            for (P p : existing)
+            {
+                updated.add(doUpdate(context, p));
+            }
+            return updated;
+        }
+
+        Dao<P,ID,?,?> dao = context.getEntityPlugin().getDao();
+        return dao.updateAll(existing);
+    }
+
+    /**
+     * Determine if a subclass overrides one of the single item write hooks
+     */
+    private boolean overrides(String name)
+    {
+        for (Class<?> type = getClass(); type != DefaultPersistenceOperations.class; type = type.getSuperclass())
+        {
+            for (Method method : type.getDeclaredMethods())
+            {
+                if(method.getName().equals(name))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Return the timestamp used for audit fields and history entries of a write. Entities that require strict
+     * timestamps read the time from the database instead of the dao clock.
+     * @param context The persistence context
+     * @return The timestamp
+     */
+    protected Date getCurrentTimestamp(PersistenceContext context)
+    {
+        EntityPlugin<C,P,ID> entityPlugin = context.getEntityPlugin();
+        Dao<P,ID,?,?> dao = entityPlugin.getDao();
+        if(entityPlugin.isStrictTimestamps())
+            return dao.getDatabaseTimestamp();
+        return dao.getCurrentTimestamp();
+    }
+
+    /**
+     * Determine if the instances written by a create or update can be translated directly instead of being
+     * reloaded. Values the database changes on write (such as timestamp precision) are not reflected in the
+     * written instances so this is only done when the entity plugin enables it.
+     * @param context The persistence context
+     * @return true if the written instances can be used
+     */
+    protected boolean canUseWrittenInstances(PersistenceContext context)
+    {
+        EntityPlugin<C,P,ID> entityPlugin = context.getEntityPlugin();
+        if(!entityPlugin.isUseManagedInstances())
+            return false;
+
+        Dao<P,ID,?,?> dao = entityPlugin.getDao();
+        return dao instanceof ManagedInstanceDao
+                && ((ManagedInstanceDao) dao).isManagedInstanceAuthoritative(entityPlugin.getEntityClass());
+    }
+
     @Override
     public int deleteItem(List<ID> ids, PersistenceContext context)
     {
 
         EntityPlugin entityPlugin = context.getEntityPlugin();
         Dao<P,ID,?,?> dao = entityPlugin.getDao();
-        ApiVersionPlugin<C,P,ID> apiVersionPlugin = context.getApiVersionPlugin();
 
-        Translator<C,P> translator = apiVersionPlugin.getTranslator();
         List<P> persistentItems = dao.findAll(entityPlugin.getEntityClass(),ids);
-        PersistenceFilter persistenceFilter = entityPlugin.getPersistenceFilter();
 
         AdminPersistenceContext adminPersistenceContext = null;
         if(entityPlugin.hasListeners())
         {
-            context.setCurrentTimestamp(dao.getCurrentTimestamp());
+            context.setCurrentTimestamp(getCurrentTimestamp(context));
             adminPersistenceContext = new AdminPersistenceContext(context);
         }
 
+        return deleteItems(persistentItems, context, adminPersistenceContext);
+    }
+
+    @Override
+    public int deleteByQuery(Node query, PersistenceContext context)
+    {
+        EntityPlugin<C,P,ID> entityPlugin = context.getEntityPlugin();
+        Dao dao = entityPlugin.getDao();
+
+        List<PersistentQueryBuilder> queryBuilders = buildQueryBuilders(query, context);
+
+        if(canDeleteBySet(context))
+        {
+            clearCaches(context);
+            return dao.deleteByQuery(entityPlugin.getEntityClass(), queryBuilders, bulkChunkSize);
+        }
+
+        AdminPersistenceContext adminPersistenceContext = null;
+        if(entityPlugin.hasListeners())
+        {
+            context.setCurrentTimestamp(getCurrentTimestamp(context));
+            adminPersistenceContext = new AdminPersistenceContext(context);
+        }
+
+        // walk the matching items in id order a chunk at a time, releasing each chunk once it has been processed
+        PersistentOrderBuilder<P> orderBuilder = persistentOrderBuilderFactory.createOrderBuilder(null, context);
+        int deleted = 0;
+        List<Object> seekValues = null;
+        do
+        {
+            PersistentQueryResult<P> chunk = dao.seek(entityPlugin.getEntityClass(), seekValues, bulkChunkSize,
+                    orderBuilder, queryBuilders);
+            deleted += deleteItems(chunk.getResults(), context, adminPersistenceContext);
+            dao.flushBatch();
+            seekValues = chunk.getSeekValues();
+        }
+        while (seekValues != null);
+
+        return deleted;
+    }
+
+    /**
+     * Determine if the items matching a delete by query can be removed with set based deletes. Set based deletes
+     * do not load the items so this is only possible when there are no listeners, the persistence filter and
+     * validator do not check individual items and the dao reports that removing a row does not change other rows.
+     * @param context The persistence context
+     * @return true if the items can be removed without loading them
+     */
+    protected boolean canDeleteBySet(PersistenceContext context)
+    {
+        EntityPlugin<C,P,ID> entityPlugin = context.getEntityPlugin();
+        Dao<P,ID,?,?> dao = entityPlugin.getDao();
+        return !entityPlugin.hasListeners()
+                && entityPlugin.getPersistenceFilter().getClass() == EmptyPersistenceFilter.class
+                && context.getApiVersionPlugin().getValidator().getClass() == DefaultValidator.class
+                && dao instanceof SetOperationDao
+                && ((SetOperationDao) dao).canDeleteBySet(entityPlugin.getEntityClass());
+    }
+
+    protected int deleteItems(List<P> persistentItems, PersistenceContext context,
+                              AdminPersistenceContext adminPersistenceContext)
+    {
+        EntityPlugin entityPlugin = context.getEntityPlugin();
+        ApiVersionPlugin<C,P,ID> apiVersionPlugin = context.getApiVersionPlugin();
+        Translator<C,P> translator = apiVersionPlugin.getTranslator();
+        PersistenceFilter persistenceFilter = entityPlugin.getPersistenceFilter();
+
         int deleted = 0;
         List<PersistentChangeEvent<C,ID>> deleteEvents = new ArrayList<>();
         for (P item : persistentItems)
@@ -398,6 +1058,7 @@ public class DefaultPersistenceOperations<C extends ApiObject<ID>, P extends Per
             {
                 apiVersionPlugin.getValidator().validateDelete(item, context);
                 doDelete(context, item);
+                invalidateCaches(item.getId(), context);
 
                 if(entityPlugin.hasListeners())
                 {
@@ -421,6 +1082,33 @@ public class DefaultPersistenceOperations<C extends ApiObject<ID>, P extends Per
         return deleted;
     }
 
+    /**
+     * Remove a changed item from the entity caches. The id is recorded so that the entry can be removed again once
+     * the transaction has committed.
+     */
+    protected void invalidateCaches(ID id, PersistenceContext context)
+    {
+        EntityPlugin<C,P,ID> entityPlugin = context.getEntityPlugin();
+        if(entityPlugin.hasCaches())
+        {
+            entityPlugin.invalidateCaches(id);
+            context.addInvalidatedId(id);
+        }
+    }
+
+    /**
+     * Remove all items from the entity caches for a change that does not load the affected items
+     */
+    protected void clearCaches(PersistenceContext context)
+    {
+        EntityPlugin<C,P,ID> entityPlugin = context.getEntityPlugin();
+        if(entityPlugin.hasCaches())
+        {
+            entityPlugin.clearCaches();
+            context.setCachesCleared(true);
+        }
+    }
+
     protected void doDelete(PersistenceContext context, P item)
     {
         Dao dao = context.getEntityPlugin().getDao();
@@ -444,17 +1132,25 @@ public class DefaultPersistenceOperations<C extends ApiObject<ID>, P extends Per
         result.setStart(start == null ? 1 : start);
         if(history.getResults() != null)
         {
+            List<PersistentHistoryEntry> results = history.getResults();
+            List<PersistentHistoryEntry> preceding = Collections.emptyList();
+            if(!results.isEmpty() && historySerializer.isDelta(results.get(0)))
+                preceding = getPrecedingHistory(id, start == null ? 1 : start, context);
+
+            List<C> entries = historySerializer.deserializeHistoryEntries(preceding, results, context);
+
             List<HistoryEntry> historyEntries = new LinkedList<HistoryEntry>();
             result.setItems(historyEntries);
-            for (PersistentHistoryEntry entry : history.getResults())
+            for (int i = 0; i < results.size(); i++)
             {
+                PersistentHistoryEntry entry = results.get(i);
                 HistoryEntry historyEntry = new HistoryEntry();
                 historyEntry.setId(entry.getEntityId());
                 historyEntry.setHistoryAction(entry.getHistoryAction());
                 historyEntry.setTimestamp(entry.getTimestamp());
                 historyEntry.setUser(entry.getUser());
                 historyEntry.setApiVersion(entry.getApiVersion());
-                historyEntry.setEntry(historySerializer.deserializeHistoryEntry(entry,context));
+                historyEntry.setEntry(entries.get(i));
                 historyEntries.add(historyEntry);
             }
         }
@@ -466,6 +1162,53 @@ public class DefaultPersistenceOperations<C extends ApiObject<ID>, P extends Per
         return result;
     }
 
+    /**
+     * Load the history entries before the specified position back to the most recent full snapshot, so that delta
+     * encoded entries can be reconstructed.
+     * @param id The entity id
+     * @param start The position of the first requested entry
+     * @param context The persistence context
+     * @return The preceding entries in order
+     */
+    protected List<PersistentHistoryEntry> getPrecedingHistory(ID id, int start, PersistenceContext context)
+    {
+        Dao dao = context.getEntityPlugin().getDao();
+        int pageSize = historySerializer.getSnapshotInterval();
+        LinkedList<PersistentHistoryEntry> preceding = new LinkedList<>();
+        int end = start - 1;
+        while (end >= 1)
+        {
+            int pageStart = Math.max(1, end - pageSize + 1);
+            PersistentQueryResult<PersistentHistoryEntry> page = dao.getHistory(
+                    context.getEntityPlugin().getHistoryType(),
+                    context.getEntity(),
+                    id,
+                    pageStart,
+                    end - pageStart + 1);
+
+            List<PersistentHistoryEntry> results = page.getResults();
+            if(results == null || results.isEmpty())
+                break;
+
+            preceding.addAll(0, results);
+
+            boolean snapshot = false;
+            for (PersistentHistoryEntry entry : results)
+            {
+                if(!historySerializer.isDelta(entry))
+                {
+                    snapshot = true;
+                    break;
+                }
+            }
+            if(snapshot)
+                break;
+
+            end = pageStart - 1;
+        }
+        return preceding;
+    }
+
     protected void processPersistentChangeEvents(PersistenceContext context, List<PersistentChangeEvent<C, ID>> changeEvents)
     {
         List<PersistentChangeListener> listeners = context.getEntityPlugin().getPersistentChangeListeners();
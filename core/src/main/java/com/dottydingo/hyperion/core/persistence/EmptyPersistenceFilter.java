@@ -6,7 +6,7 @@ import com.dottydingo.hyperion.core.persistence.query.PersistentQueryBuilder;
 /**
  * No-op implementation allowing all access.
  */
-public class EmptyPersistenceFilter<P> implements PersistenceFilter<P>
+public class EmptyPersistenceFilter<P> implements PersistenceFilter<P>, RowIndependentPersistenceFilter
 {
     @Override
     public PersistentQueryBuilder getFilterQueryBuilder(PersistenceContext persistenceContext)
@@ -20,6 +20,12 @@ public class EmptyPersistenceFilter<P> implements PersistenceFilter<P>
         return true;
     }
 
+    @Override
+    public Boolean isVisible(PersistenceContext persistenceContext)
+    {
+        return Boolean.TRUE;
+    }
+
     @Override
     public boolean canUpdate(P persistentObject, PersistenceContext persistenceContext)
     {
@@ -51,11 +51,49 @@ public class ExceptionMappingDecorator<C extends ApiObject<ID>, ID extends Seria
     }
 
     @Override
-    public QueryResult<C> query(Node query, Integer start, Integer limit, EndpointSort sort, PersistenceContext context)
+    public QueryResult<C> query(Node query, Integer start, Integer limit, EndpointSort sort, CountMode countMode,
+                                PersistenceContext context)
     {
         try
         {
-            return delegate.query(query, start, limit, sort, context);
+            return delegate.query(query, start, limit, sort, countMode, context);
+        }
+        catch (HyperionException e)
+        {
+            throw e;
+        }
+        catch (Exception e)
+        {
+            throw mapException(e, context);
+        }
+    }
+
+    @Override
+    public QueryResult<C> streamQuery(Node query, Integer start, Integer limit, EndpointSort sort,
+                                      CountMode countMode, PersistenceContext context,
+                                      ResultHandler<C> resultHandler)
+    {
+        try
+        {
+            return delegate.streamQuery(query, start, limit, sort, countMode, context, resultHandler);
+        }
+        catch (HyperionException e)
+        {
+            throw e;
+        }
+        catch (Exception e)
+        {
+            throw mapException(e, context);
+        }
+    }
+
+    @Override
+    public QueryResult<C> seek(Node query, String continuation, Integer limit, EndpointSort sort,
+                               PersistenceContext context)
+    {
+        try
+        {
+            return delegate.seek(query, continuation, limit, sort, context);
         }
         catch (HyperionException e)
         {
@@ -118,6 +156,40 @@ public class ExceptionMappingDecorator<C extends ApiObject<ID>, ID extends Seria
         }
     }
 
+    @Override
+    public int updateByQuery(C clientItem, Node query, PersistenceContext context)
+    {
+        try
+        {
+            return delegate.updateByQuery(clientItem, query, context);
+        }
+        catch (HyperionException e)
+        {
+            throw e;
+        }
+        catch (Exception e)
+        {
+            throw mapException(e, context);
+        }
+    }
+
+    @Override
+    public int deleteByQuery(Node query, PersistenceContext context)
+    {
+        try
+        {
+            return delegate.deleteByQuery(query, context);
+        }
+        catch (HyperionException e)
+        {
+            throw e;
+        }
+        catch (Exception e)
+        {
+            throw mapException(e, context);
+        }
+    }
+
     @Override
     public QueryResult<HistoryEntry> getHistory(ID id, Integer start, Integer limit, PersistenceContext context)
     {
@@ -6,6 +6,7 @@ import com.dottydingo.hyperion.core.registry.ApiVersionPlugin;
 import com.dottydingo.hyperion.core.registry.EntityPlugin;
 import com.dottydingo.hyperion.core.endpoint.HttpMethod;
 import com.dottydingo.hyperion.core.endpoint.pipeline.auth.AuthorizationContext;
+import com.dottydingo.hyperion.core.translation.TranslationPlan;
 import com.dottydingo.service.endpoint.context.MultiMap;
 import com.dottydingo.service.endpoint.context.UserContext;
 
@@ -25,11 +26,15 @@ public class PersistenceContext
     private Date currentTimestamp;
     private Map<ItemChangeKey,Set<String>> itemChangedFieldsMap = new HashMap<>();
     private List<EntityChangeEvent> entityChangeEvents = new ArrayList<EntityChangeEvent>();
+    private Set<Object> invalidatedIds = new HashSet<>();
+    private boolean cachesCleared;
     private AuthorizationContext authorizationContext;
     private Locale locale;
     private HyperionMessageSource messageSource;
     private Map<Object,Set<String>> providedFields = Collections.emptyMap();
     private MultiMap additionalParameters = new MultiMap();
+    private Map<Object,TranslationPlan> translationPlans = new HashMap<>();
+    private ConditionalRequest conditionalRequest;
 
     public PersistenceContext()
     {
@@ -46,6 +51,8 @@ public class PersistenceContext
         this.currentTimestamp = other.currentTimestamp;
         this.itemChangedFieldsMap = other.itemChangedFieldsMap;
         this.entityChangeEvents = other.entityChangeEvents;
+        this.invalidatedIds = other.invalidatedIds;
+        this.cachesCleared = other.cachesCleared;
         this.authorizationContext = other.authorizationContext;
         this.locale = other.locale;
         this.messageSource = other.messageSource;
@@ -157,6 +164,31 @@ public class PersistenceContext
         return entityChangeEvents;
     }
 
+    /**
+     * Record the id of an item whose cached state was invalidated by this request. The entry is invalidated again
+     * after the transaction commits.
+     * @param id The id
+     */
+    public void addInvalidatedId(Object id)
+    {
+        invalidatedIds.add(id);
+    }
+
+    public Set<Object> getInvalidatedIds()
+    {
+        return invalidatedIds;
+    }
+
+    public boolean isCachesCleared()
+    {
+        return cachesCleared;
+    }
+
+    public void setCachesCleared(boolean cachesCleared)
+    {
+        this.cachesCleared = cachesCleared;
+    }
+
     public AuthorizationContext getAuthorizationContext()
     {
         return authorizationContext;
@@ -214,4 +246,24 @@ public class PersistenceContext
     {
         this.additionalParameters = additionalParameters;
     }
+
+    public ConditionalRequest getConditionalRequest()
+    {
+        return conditionalRequest;
+    }
+
+    public void setConditionalRequest(ConditionalRequest conditionalRequest)
+    {
+        this.conditionalRequest = conditionalRequest;
+    }
+
+    public TranslationPlan getTranslationPlan(Object translator)
+    {
+        return translationPlans.get(translator);
+    }
+
+    public void setTranslationPlan(Object translator, TranslationPlan translationPlan)
+    {
+        translationPlans.put(translator, translationPlan);
+    }
 }
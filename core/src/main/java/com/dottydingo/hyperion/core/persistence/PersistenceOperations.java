@@ -14,13 +14,23 @@ public interface PersistenceOperations<C extends ApiObject<ID>, ID extends Seria
 {
     List<C> findByIds(List<ID> ids, PersistenceContext context);
 
-    QueryResult<C> query(Node query, Integer start, Integer limit, EndpointSort sort, PersistenceContext context);
+    QueryResult<C> query(Node query, Integer start, Integer limit, EndpointSort sort, CountMode countMode,
+                         PersistenceContext context);
+
+    QueryResult<C> streamQuery(Node query, Integer start, Integer limit, EndpointSort sort, CountMode countMode,
+                               PersistenceContext context, ResultHandler<C> resultHandler);
+
+    QueryResult<C> seek(Node query, String continuation, Integer limit, EndpointSort sort, PersistenceContext context);
 
     List<C> createOrUpdateItems(List<C> clientItems, PersistenceContext context);
 
     List<C> updateItems(List<C> clientItems, PersistenceContext context);
 
+    int updateByQuery(C clientItem, Node query, PersistenceContext context);
+
     int deleteItem(List<ID> ids, PersistenceContext context);
 
+    int deleteByQuery(Node query, PersistenceContext context);
+
     QueryResult<HistoryEntry> getHistory(ID id,Integer start, Integer limit,PersistenceContext context);
 }
@@ -9,7 +9,9 @@ public class QueryResult<T>
     private List<T> items;
     private int start;
     private int responseCount;
-    private long totalCount;
+    private Long totalCount;
+    private boolean totalCountExact = true;
+    private String continuation;
 
     public List<T> getItems()
     {
@@ -41,13 +43,33 @@ public class QueryResult<T>
         this.responseCount = responseCount;
     }
 
-    public long getTotalCount()
+    public Long getTotalCount()
     {
         return totalCount;
     }
 
-    public void setTotalCount(long totalCount)
+    public void setTotalCount(Long totalCount)
     {
         this.totalCount = totalCount;
     }
+
+    public boolean isTotalCountExact()
+    {
+        return totalCountExact;
+    }
+
+    public void setTotalCountExact(boolean totalCountExact)
+    {
+        this.totalCountExact = totalCountExact;
+    }
+
+    public String getContinuation()
+    {
+        return continuation;
+    }
+
+    public void setContinuation(String continuation)
+    {
+        this.continuation = continuation;
+    }
 }
@@ -0,0 +1,13 @@
+package com.dottydingo.hyperion.core.persistence;
+
+/**
+ * Receives query results one at a time as they are read.
+ */
+public interface ResultHandler<T>
+{
+    /**
+     * Process a single result
+     * @param item The result
+     */
+    void handleResult(T item);
+}
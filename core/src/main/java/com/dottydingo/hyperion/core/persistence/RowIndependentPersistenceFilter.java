@@ -0,0 +1,16 @@
+package com.dottydingo.hyperion.core.persistence;
+
+/**
+ * Optional capability for a {@link PersistenceFilter} that can decide if items are visible without looking at the
+ * persistent object. Cached responses are only used when the filter reports that every item is visible.
+ */
+public interface RowIndependentPersistenceFilter
+{
+    /**
+     * Return a flag indicating if every item is visible to the caller
+     * @param persistenceContext The context
+     * @return True or false if the decision is the same for every item, null if
+     * {@link PersistenceFilter#isVisible} must be called for each item
+     */
+    Boolean isVisible(PersistenceContext persistenceContext);
+}
@@ -77,19 +77,48 @@ public class TransactionalDecorator<C extends ApiObject<ID>, ID extends Serializ
 
     @Override
     public QueryResult<C> query(final Node query, final Integer start, final Integer limit, final EndpointSort sort,
-                                final PersistenceContext context)
+                                final CountMode countMode, final PersistenceContext context)
     {
         return readOnlyTransactionTemplate.execute(new MappingExceptionCallback<QueryResult<C>>()
         {
             @Override
             public QueryResult<C> doInTransactionInternal(TransactionStatus status)
             {
-                return delegate.query(query, start, limit, sort, context);
+                return delegate.query(query, start, limit, sort, countMode, context);
             }
         });
 
     }
 
+    @Override
+    public QueryResult<C> streamQuery(final Node query, final Integer start, final Integer limit,
+                                      final EndpointSort sort, final CountMode countMode,
+                                      final PersistenceContext context, final ResultHandler<C> resultHandler)
+    {
+        return readOnlyTransactionTemplate.execute(new MappingExceptionCallback<QueryResult<C>>()
+        {
+            @Override
+            public QueryResult<C> doInTransactionInternal(TransactionStatus status)
+            {
+                return delegate.streamQuery(query, start, limit, sort, countMode, context, resultHandler);
+            }
+        });
+    }
+
+    @Override
+    public QueryResult<C> seek(final Node query, final String continuation, final Integer limit,
+                               final EndpointSort sort, final PersistenceContext context)
+    {
+        return readOnlyTransactionTemplate.execute(new MappingExceptionCallback<QueryResult<C>>()
+        {
+            @Override
+            public QueryResult<C> doInTransactionInternal(TransactionStatus status)
+            {
+                return delegate.seek(query, continuation, limit, sort, context);
+            }
+        });
+    }
+
     @Override
     public List<C> createOrUpdateItems(final List<C> clientItems, final PersistenceContext context)
     {
@@ -129,6 +158,32 @@ public class TransactionalDecorator<C extends ApiObject<ID>, ID extends Serializ
         });
     }
 
+    @Override
+    public int updateByQuery(final C clientItem, final Node query, final PersistenceContext context)
+    {
+        return readWriteTransactionTemplate.execute(new MappingExceptionCallback<Integer>()
+        {
+            @Override
+            public Integer doInTransactionInternal(TransactionStatus status)
+            {
+                return delegate.updateByQuery(clientItem, query, context);
+            }
+        });
+    }
+
+    @Override
+    public int deleteByQuery(final Node query, final PersistenceContext context)
+    {
+        return readWriteTransactionTemplate.execute(new MappingExceptionCallback<Integer>()
+        {
+            @Override
+            public Integer doInTransactionInternal(TransactionStatus status)
+            {
+                return delegate.deleteByQuery(query, context);
+            }
+        });
+    }
+
     @Override
     public QueryResult<HistoryEntry> getHistory(final ID id, final Integer start, final Integer limit,
                                                 final PersistenceContext context)
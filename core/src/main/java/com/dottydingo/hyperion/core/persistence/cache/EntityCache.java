@@ -0,0 +1,250 @@
+package com.dottydingo.hyperion.core.persistence.cache;
+
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded read through cache of persistent objects for a single entity, keyed by id. Entries are evicted in least
+ * recently used order once the maximum size is reached and expire after the configured time to live.
+ * <p>
+ * Cached objects are shared between requests and must be treated as read only. This cache is intended for entities
+ * whose translation does not require lazily loaded associations.
+ */
+public class EntityCache<ID extends Serializable,P>
+{
+    private final int maxSize;
+    private final long timeToLive;
+
+    private final Map<ID,Entry<P>> entries;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private final AtomicLong expirationCount = new AtomicLong();
+    private final AtomicLong invalidationCount = new AtomicLong();
+
+    // incremented on every invalidation so that loads that started before an invalidation are not cached
+    private long generation = 0;
+
+    /**
+     * Create a cache
+     * @param maxSize The maximum number of entries
+     * @param timeToLive The time to live for an entry in milliseconds, 0 to never expire entries
+     */
+    public EntityCache(int maxSize, long timeToLive)
+    {
+        if(maxSize <= 0)
+            throw new IllegalArgumentException("maxSize must be greater than 0");
+        if(timeToLive < 0)
+            throw new IllegalArgumentException("timeToLive must not be negative");
+
+        this.maxSize = maxSize;
+        this.timeToLive = timeToLive;
+        this.entries = new LinkedHashMap<ID,Entry<P>>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ID, Entry<P>> eldest)
+            {
+                if(size() > EntityCache.this.maxSize)
+                {
+                    evictionCount.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Return the cached item for the id
+     * @param id The id
+     * @return The item or null if it is not cached
+     */
+    public P get(ID id)
+    {
+        long now = System.currentTimeMillis();
+        synchronized (entries)
+        {
+            Entry<P> entry = entries.get(id);
+            if(entry != null && entry.isExpired(now))
+            {
+                entries.remove(id);
+                expirationCount.incrementAndGet();
+                entry = null;
+            }
+
+            if(entry == null)
+            {
+                missCount.incrementAndGet();
+                return null;
+            }
+
+            hitCount.incrementAndGet();
+            return entry.value;
+        }
+    }
+
+    /**
+     * Return the current generation. The value must be read before loading items that will be passed to
+     * {@link #put(Serializable, Object, long)}.
+     * @return The generation
+     */
+    public long getGeneration()
+    {
+        synchronized (entries)
+        {
+            return generation;
+        }
+    }
+
+    /**
+     * Cache an item loaded from the database. The item is not cached if an invalidation occurred after the load started.
+     * @param id The id
+     * @param item The item
+     * @param loadGeneration The generation read before the item was loaded
+     */
+    public void put(ID id, P item, long loadGeneration)
+    {
+        long expires = timeToLive > 0 ? System.currentTimeMillis() + timeToLive : Long.MAX_VALUE;
+        synchronized (entries)
+        {
+            if(loadGeneration == generation)
+                entries.put(id, new Entry<P>(item, expires));
+        }
+    }
+
+    /**
+     * Return the cached item for the id, caching the supplied item if there is no current entry. Hit and miss
+     * counts are not updated.
+     * @param id The id
+     * @param item The item to cache if there is no current entry
+     * @param loadGeneration The generation read before the item was created
+     * @return The cached item, or null if an invalidation occurred after the item was created
+     */
+    public P putIfAbsent(ID id, P item, long loadGeneration)
+    {
+        long now = System.currentTimeMillis();
+        synchronized (entries)
+        {
+            if(loadGeneration != generation)
+                return null;
+
+            Entry<P> entry = entries.get(id);
+            if(entry != null && !entry.isExpired(now))
+                return entry.value;
+
+            long expires = timeToLive > 0 ? now + timeToLive : Long.MAX_VALUE;
+            entries.put(id, new Entry<P>(item, expires));
+            return item;
+        }
+    }
+
+    /**
+     * Remove an item from the cache
+     * @param id The id
+     */
+    public void invalidate(ID id)
+    {
+        synchronized (entries)
+        {
+            generation++;
+            if(entries.remove(id) != null)
+                invalidationCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Remove all items from the cache
+     */
+    public void clear()
+    {
+        synchronized (entries)
+        {
+            generation++;
+            entries.clear();
+        }
+    }
+
+    /**
+     * Remove any expired entries
+     */
+    public void removeExpired()
+    {
+        long now = System.currentTimeMillis();
+        synchronized (entries)
+        {
+            Iterator<Entry<P>> iterator = entries.values().iterator();
+            while (iterator.hasNext())
+            {
+                if(iterator.next().isExpired(now))
+                {
+                    iterator.remove();
+                    expirationCount.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    public int getSize()
+    {
+        synchronized (entries)
+        {
+            return entries.size();
+        }
+    }
+
+    public int getMaxSize()
+    {
+        return maxSize;
+    }
+
+    public long getTimeToLive()
+    {
+        return timeToLive;
+    }
+
+    public long getHitCount()
+    {
+        return hitCount.get();
+    }
+
+    public long getMissCount()
+    {
+        return missCount.get();
+    }
+
+    public long getEvictionCount()
+    {
+        return evictionCount.get();
+    }
+
+    public long getExpirationCount()
+    {
+        return expirationCount.get();
+    }
+
+    public long getInvalidationCount()
+    {
+        return invalidationCount.get();
+    }
+
+    private static class Entry<P>
+    {
+        private final P value;
+        private final long expires;
+
+        private Entry(P value, long expires)
+        {
+            this.value = value;
+            this.expires = expires;
+        }
+
+        private boolean isExpired(long now)
+        {
+            return now >= expires;
+        }
+    }
+}
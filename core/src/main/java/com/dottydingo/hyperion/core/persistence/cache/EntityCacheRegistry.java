@@ -0,0 +1,31 @@
+package com.dottydingo.hyperion.core.persistence.cache;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Holds the entity caches created for each entity so that they can be monitored together.
+ */
+public class EntityCacheRegistry
+{
+    private final Map<String,EntityCache> entityCaches = new TreeMap<>();
+
+    /**
+     * Register the cache for an entity
+     * @param entityName The entity name
+     * @param entityCache The cache
+     */
+    public synchronized void register(String entityName, EntityCache entityCache)
+    {
+        entityCaches.put(entityName, entityCache);
+    }
+
+    /**
+     * Return the registered caches keyed by entity name
+     * @return The caches
+     */
+    public synchronized Map<String,EntityCache> getEntityCaches()
+    {
+        return new TreeMap<>(entityCaches);
+    }
+}
@@ -0,0 +1,76 @@
+package com.dottydingo.hyperion.core.persistence.cache;
+
+import java.io.Serializable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A cache of serialized client representations for a single entity. Each id can have several representations,
+ * one for each variant (API version, requested fields and authorization view) that has been requested.
+ * Invalidating an id removes all of its representations.
+ */
+public class EntityResponseCache<ID extends Serializable>
+{
+    private final EntityCache<ID,ConcurrentMap<String,String>> entityCache;
+
+    /**
+     * Create a cache
+     * @param maxSize The maximum number of ids to hold representations for
+     * @param timeToLive The time to live for an id in milliseconds, 0 to never expire entries
+     */
+    public EntityResponseCache(int maxSize, long timeToLive)
+    {
+        this.entityCache = new EntityCache<>(maxSize, timeToLive);
+    }
+
+    /**
+     * Return the underlying cache, used for invalidation and statistics
+     * @return The cache
+     */
+    public EntityCache<ID, ConcurrentMap<String, String>> getEntityCache()
+    {
+        return entityCache;
+    }
+
+    /**
+     * Return the current generation. The value must be read before loading items that will be passed to
+     * {@link #put(Serializable, String, String, long)}.
+     * @return The generation
+     */
+    public long getGeneration()
+    {
+        return entityCache.getGeneration();
+    }
+
+    /**
+     * Return the cached representation
+     * @param id The id
+     * @param variant The variant key
+     * @return The serialized representation or null if it is not cached
+     */
+    public String get(ID id, String variant)
+    {
+        ConcurrentMap<String,String> variants = entityCache.get(id);
+        if(variants == null)
+            return null;
+
+        return variants.get(variant);
+    }
+
+    /**
+     * Cache a representation
+     * @param id The id
+     * @param variant The variant key
+     * @param representation The serialized representation
+     * @param loadGeneration The generation read before the item was loaded
+     */
+    public void put(ID id, String variant, String representation, long loadGeneration)
+    {
+        ConcurrentMap<String,String> variants = entityCache.putIfAbsent(id,
+                new ConcurrentHashMap<String, String>(), loadGeneration);
+
+        // an invalidation after this check removes the whole variant map so a late put can not be seen
+        if(variants != null && loadGeneration == entityCache.getGeneration())
+            variants.put(variant, representation);
+    }
+}
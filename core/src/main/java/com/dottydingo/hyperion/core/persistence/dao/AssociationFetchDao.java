@@ -0,0 +1,28 @@
+package com.dottydingo.hyperion.core.persistence.dao;
+
+import com.dottydingo.hyperion.core.model.PersistentObject;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Optional capability for a {@link Dao} that can load associations for a list of entities together rather than
+ * lazily for each entity.
+ */
+public interface AssociationFetchDao<P extends PersistentObject>
+{
+    /**
+     * Load associations for entities previously returned by this dao
+     * @param entityClass The entity class
+     * @param entities The entities
+     * @param paths The association paths, nested associations are separated by a period
+     */
+    void fetchAssociations(Class<P> entityClass, List<P> entities, Set<String> paths);
+
+    /**
+     * Return the number of entities and collections held by the current persistence context. Comparing the value
+     * before and after an operation shows if anything was loaded lazily.
+     * @return The count or -1 if it is not available
+     */
+    long getLoadedCount();
+}
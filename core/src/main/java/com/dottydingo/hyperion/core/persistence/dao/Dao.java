@@ -2,12 +2,14 @@ package com.dottydingo.hyperion.core.persistence.dao;
 
 import com.dottydingo.hyperion.core.model.PersistentHistoryEntry;
 import com.dottydingo.hyperion.core.model.PersistentObject;
+import com.dottydingo.hyperion.core.persistence.ResultHandler;
 import com.dottydingo.hyperion.core.persistence.query.PersistentQueryBuilder;
 import com.dottydingo.hyperion.core.persistence.sort.PersistentOrderBuilder;
 
 import java.io.Serializable;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 /**
  * User: mark
@@ -15,10 +17,60 @@ import java.util.List;
  * Time: 9:30 AM
  */
 public interface Dao<P extends PersistentObject<ID>, ID extends Serializable,QB extends PersistentQueryBuilder,SB extends PersistentOrderBuilder>
+        extends DatabaseTimestampSource
 {
+    /**
+     * Load the entities with the supplied ids. The results are in the order of the ids, once per id, and ids that
+     * do not exist are skipped.
+     * @param entityClass The entity class
+     * @param ids The ids
+     * @return The entities
+     */
     List<P> findAll(Class<P> entityClass, List<ID> ids);
 
+    /**
+     * Perform an offset query. When the total count can be determined from the page itself (a partial page) it
+     * is always returned without issuing a count query.
+     * @param entityClass The entity class
+     * @param start The zero based start position
+     * @param limit The maximum number of rows to return
+     * @param orderBuilder The order builder
+     * @param predicateBuilders The predicate builders
+     * @param count True if the total count should be calculated
+     * @param maxCount An optional limit on the count, when exceeded the count is marked as inexact
+     * @return The results
+     */
     PersistentQueryResult<P> query(Class<P> entityClass, Integer start, Integer limit, SB orderBuilder,
+                  List<QB> predicateBuilders, boolean count, Integer maxCount);
+
+    /**
+     * Perform an offset query passing each row to the result handler as it is read instead of collecting
+     * the results. The rows are released after they have been handled. Counting follows the same rules as
+     * {@link #query(Class, Integer, Integer, PersistentOrderBuilder, java.util.List, boolean, Integer)}.
+     * @param entityClass The entity class
+     * @param start The zero based start position
+     * @param limit The maximum number of rows to return
+     * @param orderBuilder The order builder
+     * @param predicateBuilders The predicate builders
+     * @param count True if the total count should be calculated
+     * @param maxCount An optional limit on the count
+     * @param resultHandler The handler that receives each row
+     * @return The result count and total count, no results are included
+     */
+    PersistentQueryResult<P> stream(Class<P> entityClass, Integer start, Integer limit, SB orderBuilder,
+                  List<QB> predicateBuilders, boolean count, Integer maxCount, ResultHandler<P> resultHandler);
+
+    /**
+     * Perform a keyset query. Rows are returned in the order defined by the order builder starting immediately
+     * after the row identified by the seek values. No total count is calculated.
+     * @param entityClass The entity class
+     * @param seekValues The sort key values of the last row of the previous page, or null for the first page
+     * @param limit The maximum number of rows to return
+     * @param orderBuilder The order builder
+     * @param predicateBuilders The predicate builders
+     * @return The results
+     */
+    PersistentQueryResult<P> seek(Class<P> entityClass, List<Object> seekValues, Integer limit, SB orderBuilder,
                   List<QB> predicateBuilders);
 
     P find(Class<P> entityClass, ID id);
@@ -27,8 +79,49 @@ public interface Dao<P extends PersistentObject<ID>, ID extends Serializable,QB
 
     P update(P entity);
 
+    /**
+     * Create a list of entities. Implementations may batch the writes, when this method returns the entities
+     * have been written and hold their generated ids.
+     * @param entities The entities to create
+     * @return The created entities in the same order
+     */
+    List<P> createAll(List<P> entities);
+
+    /**
+     * Update a list of entities. Implementations may batch the writes, when this method returns the changes
+     * have been written.
+     * @param entities The entities to update
+     * @return The updated entities in the same order
+     */
+    List<P> updateAll(List<P> entities);
+
     void delete(P entity);
 
+    /**
+     * Delete the entities matching a query without loading them. Implementations may delete the rows in batches.
+     * @param entityClass The entity type
+     * @param predicateBuilders The predicate builders
+     * @param batchSize The maximum number of rows deleted by a single statement
+     * @return The number of entities deleted
+     */
+    int deleteByQuery(Class<P> entityClass, List<QB> predicateBuilders, int batchSize);
+
+    /**
+     * Update the entities matching a query without loading them. Implementations may update the rows in batches.
+     * @param entityClass The entity type
+     * @param predicateBuilders The predicate builders
+     * @param values The values to write keyed by persistent property name
+     * @param batchSize The maximum number of rows updated by a single statement
+     * @return The number of entities updated
+     */
+    int updateByQuery(Class<P> entityClass, List<QB> predicateBuilders, Map<String,Object> values, int batchSize);
+
+    /**
+     * Write any pending changes and release the entities held by the dao. This is used between the chunks of a large
+     * operation, entities loaded before the call must not be modified afterwards.
+     */
+    void flushBatch();
+
     void reset(P entity);
 
     <H extends PersistentHistoryEntry<ID>> PersistentQueryResult<H> getHistory(Class<H> historyType, String entityType, ID entityId, Integer start,
@@ -36,5 +129,10 @@ public interface Dao<P extends PersistentObject<ID>, ID extends Serializable,QB
 
     <H extends PersistentHistoryEntry<ID>> void saveHistory(H entry);
 
+    /**
+     * Return the current database time. Implementations may derive this from a periodically sampled
+     * {@link DatabaseClock}, use {@link #getDatabaseTimestamp()} when the time must be read from the database.
+     * @return The database time
+     */
     Date getCurrentTimestamp();
 }
@@ -0,0 +1,176 @@
+package com.dottydingo.hyperion.core.persistence.dao;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A clock that tracks the database time without a round trip on every call. The database time is sampled
+ * periodically and the time since the sample is measured with the monotonic local clock. The midpoint of the sample
+ * round trip is used as the sample point. When a new sample differs from the predicted time by more than the
+ * maximum drift the sampling interval is halved (down to a sixteenth of the configured interval), and it is doubled
+ * back towards the configured interval while the drift stays in bounds. Times returned by a clock never go backwards,
+ * while a new sample is behind the time already issued each call moves on by a millisecond so ordering by timestamp
+ * still follows the order of the writes. The clock is disabled by default.
+ */
+public class DatabaseClock
+{
+    private static final int MAX_INTERVAL_REDUCTION = 16;
+
+    private final DatabaseTimestampSource source;
+
+    private long syncInterval = 0;
+    private long maxDrift = 100;
+
+    private volatile Sample sample;
+    private volatile long currentInterval = TimeUnit.MILLISECONDS.toNanos(syncInterval);
+    private volatile long lastDrift;
+    private final AtomicBoolean syncing = new AtomicBoolean();
+    private final AtomicLong lastIssued = new AtomicLong(Long.MIN_VALUE);
+    private final AtomicLong syncCount = new AtomicLong();
+
+    public DatabaseClock(DatabaseTimestampSource source)
+    {
+        this.source = source;
+    }
+
+    /**
+     * Set the interval in milliseconds between samples of the database time. A value of 0 or less disables the clock
+     * and every call reads the database time directly. Defaults to 0.
+     * @param syncInterval the interval in milliseconds
+     */
+    public void setSyncInterval(long syncInterval)
+    {
+        this.syncInterval = syncInterval;
+        this.currentInterval = TimeUnit.MILLISECONDS.toNanos(Math.max(syncInterval, 0));
+    }
+
+    public long getSyncInterval()
+    {
+        return syncInterval;
+    }
+
+    /**
+     * Set the drift in milliseconds between the local and database clocks that is tolerated before the sampling
+     * interval is reduced. Defaults to 100.
+     * @param maxDrift the maximum drift in milliseconds
+     */
+    public void setMaxDrift(long maxDrift)
+    {
+        this.maxDrift = maxDrift;
+    }
+
+    public long getMaxDrift()
+    {
+        return maxDrift;
+    }
+
+    public long getLastDrift()
+    {
+        return lastDrift;
+    }
+
+    public long getSyncCount()
+    {
+        return syncCount.get();
+    }
+
+    public boolean isEnabled()
+    {
+        return syncInterval > 0;
+    }
+
+    /**
+     * Return the current database time
+     * @return The time
+     */
+    public Date now()
+    {
+        if(!isEnabled())
+            return source.getDatabaseTimestamp();
+
+        Sample current = sample;
+        if(current == null)
+        {
+            current = synchronize();
+        }
+        else if(nanoTime() - current.nanos >= currentInterval && syncing.compareAndSet(false, true))
+        {
+            // only one caller resamples, the others keep using the previous sample until it is replaced
+            try
+            {
+                current = synchronize();
+            }
+            finally
+            {
+                syncing.set(false);
+            }
+        }
+
+        long millis = current.millis + TimeUnit.NANOSECONDS.toMillis(nanoTime() - current.nanos);
+        return new Date(issue(millis));
+    }
+
+    /**
+     * Discard the current sample so the next call reads the database time
+     */
+    public void reset()
+    {
+        sample = null;
+    }
+
+    private Sample synchronize()
+    {
+        long start = nanoTime();
+        Date timestamp = source.getDatabaseTimestamp();
+        long end = nanoTime();
+
+        Sample next = new Sample(timestamp.getTime(), start + (end - start) / 2);
+        Sample previous = sample;
+        if(previous != null)
+        {
+            long predicted = previous.millis + TimeUnit.NANOSECONDS.toMillis(next.nanos - previous.nanos);
+            long drift = Math.abs(next.millis - predicted);
+            long configured = TimeUnit.MILLISECONDS.toNanos(syncInterval);
+            if(drift > maxDrift)
+                currentInterval = Math.max(configured / MAX_INTERVAL_REDUCTION, currentInterval / 2);
+            else
+                currentInterval = Math.min(configured, currentInterval * 2);
+            lastDrift = drift;
+        }
+
+        sample = next;
+        syncCount.incrementAndGet();
+        return next;
+    }
+
+    private long issue(long millis)
+    {
+        while (true)
+        {
+            long last = lastIssued.get();
+            // the database time went backwards, keep moving forward instead of repeating the last time
+            long next = millis < last ? last + 1 : millis;
+            if(next == last || lastIssued.compareAndSet(last, next))
+                return next;
+        }
+    }
+
+    protected long nanoTime()
+    {
+        return System.nanoTime();
+    }
+
+    private static class Sample
+    {
+        private final long millis;
+        private final long nanos;
+
+        private Sample(long millis, long nanos)
+        {
+            this.millis = millis;
+            this.nanos = nanos;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.dottydingo.hyperion.core.persistence.dao;
+
+import java.util.Date;
+
+/**
+ * A source of the current time as reported by the database.
+ */
+public interface DatabaseTimestampSource
+{
+    /**
+     * Read the current time from the database. Each call is a round trip to the database.
+     * @return The database time
+     */
+    Date getDatabaseTimestamp();
+}
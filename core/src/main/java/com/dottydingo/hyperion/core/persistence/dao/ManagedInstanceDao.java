@@ -0,0 +1,15 @@
+package com.dottydingo.hyperion.core.persistence.dao;
+
+/**
+ * An optional capability of a {@link Dao} that can report when the instances it has written are an accurate copy of
+ * the stored rows. When they are the written instances can be returned directly instead of reloading them.
+ */
+public interface ManagedInstanceDao
+{
+    /**
+     * Determine if the instances of an entity type are authoritative once they have been created or updated.
+     * @param entityClass The entity type
+     * @return true if the written instances match the stored rows, false if they must be reloaded
+     */
+    boolean isManagedInstanceAuthoritative(Class<?> entityClass);
+}
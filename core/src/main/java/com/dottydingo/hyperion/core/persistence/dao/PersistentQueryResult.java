@@ -11,6 +11,9 @@ public class PersistentQueryResult<P>
 {
     private List<P> results;
     private Long totalCount;
+    private boolean totalCountExact = true;
+    private List<Object> seekValues;
+    private int resultCount;
 
     public List<P> getResults()
     {
@@ -31,4 +34,46 @@ public class PersistentQueryResult<P>
     {
         this.totalCount = totalCount;
     }
+
+    /**
+     * Return the number of results that were passed to the result handler of a streaming query
+     * @return the count
+     */
+    public int getResultCount()
+    {
+        return resultCount;
+    }
+
+    public void setResultCount(int resultCount)
+    {
+        this.resultCount = resultCount;
+    }
+
+    /**
+     * Return the flag indicating if the total count is exact. This will be false when the count was limited.
+     * @return the flag
+     */
+    public boolean isTotalCountExact()
+    {
+        return totalCountExact;
+    }
+
+    public void setTotalCountExact(boolean totalCountExact)
+    {
+        this.totalCountExact = totalCountExact;
+    }
+
+    /**
+     * Return the sort key values of the last row returned by a seek query when more rows are available.
+     * @return The sort key values or null if there are no more rows
+     */
+    public List<Object> getSeekValues()
+    {
+        return seekValues;
+    }
+
+    public void setSeekValues(List<Object> seekValues)
+    {
+        this.seekValues = seekValues;
+    }
 }
@@ -0,0 +1,34 @@
+package com.dottydingo.hyperion.core.persistence.dao;
+
+import com.dottydingo.hyperion.core.model.PersistentObject;
+import com.dottydingo.hyperion.core.persistence.query.PersistentQueryBuilder;
+import com.dottydingo.hyperion.core.persistence.sort.PersistentOrderBuilder;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Optional capability for a {@link Dao} that can load only some of the properties of the entities matching a query.
+ */
+public interface ProjectionDao<P extends PersistentObject,QB extends PersistentQueryBuilder,
+        SB extends PersistentOrderBuilder>
+{
+    /**
+     * Perform an offset query that only loads the supplied properties. The results are detached instances with only
+     * those properties set and must not be written. Counting follows the same rules as
+     * {@link Dao#query(Class, Integer, Integer, PersistentOrderBuilder, java.util.List, boolean, Integer)}.
+     * Implementations may load whole entities when the properties can not be projected.
+     * @param entityClass The entity class
+     * @param start The zero based start position
+     * @param limit The maximum number of rows to return
+     * @param orderBuilder The order builder
+     * @param predicateBuilders The predicate builders
+     * @param count True if the total count should be calculated
+     * @param maxCount An optional limit on the count
+     * @param properties The persistent properties to load
+     * @return The results
+     */
+    PersistentQueryResult<P> queryProjection(Class<P> entityClass, Integer start, Integer limit, SB orderBuilder,
+                                             List<QB> predicateBuilders, boolean count, Integer maxCount,
+                                             Set<String> properties);
+}
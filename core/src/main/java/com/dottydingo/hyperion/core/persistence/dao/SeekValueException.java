@@ -0,0 +1,17 @@
+package com.dottydingo.hyperion.core.persistence.dao;
+
+/**
+ * Thrown when the seek values supplied for a keyset query do not match the requested ordering.
+ */
+public class SeekValueException extends RuntimeException
+{
+    public SeekValueException(String message)
+    {
+        super(message);
+    }
+
+    public SeekValueException(String message, Throwable cause)
+    {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,27 @@
+package com.dottydingo.hyperion.core.persistence.dao;
+
+import java.util.Set;
+
+/**
+ * Optional capability for a {@link Dao} that can report when the items of an entity type can be changed with set
+ * based statements. Set based statements do not load the items so anything the persistence provider does when an
+ * entity is removed or written, such as cascading to associations or maintaining collection tables, is skipped.
+ * Without this capability each item is loaded and changed individually.
+ */
+public interface SetOperationDao
+{
+    /**
+     * Determine if the items of an entity type can be removed with set based deletes.
+     * @param entityClass The entity type
+     * @return true if removing a row does not need to change any other rows or collection tables
+     */
+    boolean canDeleteBySet(Class<?> entityClass);
+
+    /**
+     * Determine if properties of the items of an entity type can be written with set based updates.
+     * @param entityClass The entity type
+     * @param properties The persistent properties written
+     * @return true if writing the properties does not need to change any other rows or collection tables
+     */
+    boolean canUpdateBySet(Class<?> entityClass, Set<String> properties);
+}
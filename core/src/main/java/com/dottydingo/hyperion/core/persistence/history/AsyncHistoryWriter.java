@@ -0,0 +1,665 @@
+package com.dottydingo.hyperion.core.persistence.history;
+
+import com.dottydingo.hyperion.api.ApiObject;
+import com.dottydingo.hyperion.core.model.PersistentHistoryEntry;
+import com.dottydingo.hyperion.core.persistence.dao.Dao;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Writes history entries in batches from a background thread. Entries are queued once the transaction that produced
+ * them commits, so the write transaction no longer includes the history inserts. Without a journal directory entries
+ * are serialized on the writer thread and anything still queued is lost if the process dies. With a journal directory
+ * each entry is serialized and appended to a {@link HistoryJournal} before it is queued and any entries that were not
+ * written are recovered on the next start, they may be written more than once in that case. A batch that still fails
+ * after the configured number of attempts is kept and retried after the retry interval, the journal is not checkpointed
+ * past it until it has been written. History is read in the order it was written, so later entries for an entity with
+ * an entry waiting to be retried wait behind it. When more entries fail than the queue capacity the batch is dropped,
+ * with a journal it is then recovered on the next start and later entries for the same entities are dropped as well
+ * so that they are recovered after it.
+ */
+public class AsyncHistoryWriter
+{
+    private static final Logger logger = LoggerFactory.getLogger(AsyncHistoryWriter.class);
+    private static final long POLL_INTERVAL = 500;
+    private static final long RETRY_DELAY = 1000;
+
+    private boolean enabled = false;
+    private int queueCapacity = 10000;
+    private int batchSize = 100;
+    private int maxAttempts = 3;
+    private long shutdownTimeout = 30000;
+    private long retryInterval = 10000;
+    private String journalDirectory;
+    private boolean syncJournal = true;
+    private long journalSegmentSize = HistoryJournal.DEFAULT_SEGMENT_SIZE;
+
+    private HistorySerializer historySerializer;
+    private Dao defaultDao;
+    private TransactionTemplate transactionTemplate;
+
+    private BlockingQueue<PendingEntry> queue;
+    private HistoryJournal journal;
+    private Thread writerThread;
+    private volatile boolean running;
+    private final Lock appendLock = new ReentrantLock();
+    private final AtomicLong writtenCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    // only used by the writer thread, or before it starts and after it finishes
+    private final List<PendingEntry> failed = new ArrayList<>();
+    private long nextRetry;
+    private long writtenOffset = -1;
+    private long heldOffset = Long.MAX_VALUE;
+    private final Set<String> heldEntities = new HashSet<>();
+    private final ConcurrentMap<String, PendingEntry> unwritten = new ConcurrentHashMap<>();
+
+    /**
+     * Enable asynchronous history. When disabled history is written in the request transaction. Defaults to false.
+     * @param enabled true to enable
+     */
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * Set the maximum number of entries waiting to be written, submitting threads block while the queue is full.
+     * Defaults to 10000.
+     * @param queueCapacity The capacity
+     */
+    public void setQueueCapacity(int queueCapacity)
+    {
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Set the maximum number of entries written in a single transaction. Defaults to 100.
+     * @param batchSize The batch size
+     */
+    public void setBatchSize(int batchSize)
+    {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Set the number of times a batch is attempted before it is dropped. Defaults to 3.
+     * @param maxAttempts The number of attempts
+     */
+    public void setMaxAttempts(int maxAttempts)
+    {
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Set the time in milliseconds to wait before retrying entries that could not be written. Defaults to 10000.
+     * @param retryInterval The interval
+     */
+    public void setRetryInterval(long retryInterval)
+    {
+        this.retryInterval = retryInterval;
+    }
+
+    /**
+     * Set the time in milliseconds to wait for queued entries to be written on shutdown. Defaults to 30000.
+     * @param shutdownTimeout The timeout
+     */
+    public void setShutdownTimeout(long shutdownTimeout)
+    {
+        this.shutdownTimeout = shutdownTimeout;
+    }
+
+    /**
+     * Set the directory used to journal entries until they are written, no journal is used when this is empty.
+     * @param journalDirectory The directory
+     */
+    public void setJournalDirectory(String journalDirectory)
+    {
+        this.journalDirectory = journalDirectory;
+    }
+
+    /**
+     * Force each journal append to disk. Defaults to true.
+     * @param syncJournal true to force appends to disk
+     */
+    public void setSyncJournal(boolean syncJournal)
+    {
+        this.syncJournal = syncJournal;
+    }
+
+    /**
+     * Set the size in bytes after which a new journal segment is started. Defaults to 64MB.
+     * @param journalSegmentSize The segment size
+     */
+    public void setJournalSegmentSize(long journalSegmentSize)
+    {
+        this.journalSegmentSize = journalSegmentSize;
+    }
+
+    public void setHistorySerializer(HistorySerializer historySerializer)
+    {
+        this.historySerializer = historySerializer;
+    }
+
+    /**
+     * Set the dao used for entries that do not specify one, such as those recovered from the journal.
+     * @param defaultDao The dao
+     */
+    public void setDefaultDao(Dao defaultDao)
+    {
+        this.defaultDao = defaultDao;
+    }
+
+    public void setTransactionManager(PlatformTransactionManager transactionManager)
+    {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public int getQueueSize()
+    {
+        return queue == null ? 0 : queue.size();
+    }
+
+    public long getWrittenCount()
+    {
+        return writtenCount.get();
+    }
+
+    public long getDroppedCount()
+    {
+        return droppedCount.get();
+    }
+
+    public void start() throws IOException
+    {
+        if(!enabled)
+            return;
+
+        queue = new LinkedBlockingQueue<>(queueCapacity);
+
+        if(journalDirectory != null && journalDirectory.trim().length() > 0)
+        {
+            journal = new HistoryJournal(new File(journalDirectory.trim()), syncJournal, journalSegmentSize);
+            List<HistoryJournal.Entry> recovered = journal.getRecovered();
+            if(!recovered.isEmpty())
+            {
+                logger.info("Writing {} history entries recovered from the journal.", recovered.size());
+                List<PendingEntry> batch = new ArrayList<>();
+                long start = journal.getCheckpointOffset();
+                for (HistoryJournal.Entry entry : recovered)
+                {
+                    PendingEntry pending = new PendingEntry(entry.getRecord(), null, null, null, entry.getOffset());
+                    pending.start = start;
+                    start = entry.getOffset();
+                    batch.add(pending);
+                    if(batch.size() >= batchSize)
+                    {
+                        write(batch);
+                        batch = new ArrayList<>();
+                    }
+                }
+                if(!batch.isEmpty())
+                    write(batch);
+            }
+        }
+
+        running = true;
+        writerThread = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                runWriter();
+            }
+        }, "hyperion-history-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    public void stop() throws IOException
+    {
+        if(!running)
+            return;
+
+        running = false;
+        try
+        {
+            writerThread.join(shutdownTimeout);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        if(!queue.isEmpty())
+            logger.warn("{} history entries were not written before shutdown.", queue.size());
+
+        if(!writerThread.isAlive() && !failed.isEmpty())
+        {
+            droppedCount.addAndGet(failed.size());
+            release(failed);
+            if(journal != null)
+                logger.warn("{} history entries could not be written before shutdown, they will be recovered from " +
+                        "the journal on the next start.", failed.size());
+            else
+                logger.error("{} history entries could not be written before shutdown.", failed.size());
+            failed.clear();
+        }
+
+        if(journal != null)
+            journal.close();
+    }
+
+    /**
+     * Submit a history entry. When called inside a transaction the entry is queued after the transaction commits and
+     * discarded if it rolls back.
+     * @param record The history record, the serialized entry is filled in from the entity
+     * @param entity The entity to serialize
+     * @param original The entity before the change, may be null
+     * @param dao The dao used to save the entry
+     */
+    public void submit(HistoryRecord record, ApiObject entity, ApiObject original, Dao dao)
+    {
+        final PendingEntry pending = new PendingEntry(record, entity, original, dao, -1);
+        if(TransactionSynchronizationManager.isSynchronizationActive())
+        {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter()
+            {
+                @Override
+                public void afterCommit()
+                {
+                    enqueue(pending);
+                }
+            });
+        }
+        else
+            enqueue(pending);
+    }
+
+    protected void enqueue(PendingEntry pending)
+    {
+        if(!running)
+        {
+            if(!writeBatch(Collections.singletonList(pending)))
+            {
+                droppedCount.incrementAndGet();
+                logger.error("Unable to write history for {} {}, dropping it.", pending.record.getEntityType(),
+                        pending.record.getEntityId());
+            }
+            return;
+        }
+
+        appendLock.lock();
+        try
+        {
+            // the journal and the queue must see entries in the same order for checkpoints to be correct
+            if(journal != null)
+            {
+                serialize(pending);
+                pending.start = journal.getEndOffset();
+                pending.offset = journal.append(pending.record);
+            }
+            queue.put(pending);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            droppedCount.incrementAndGet();
+            logger.error("Interrupted while queueing history for {} {}.", pending.record.getEntityType(),
+                    pending.record.getEntityId());
+        }
+        catch (Exception e)
+        {
+            droppedCount.incrementAndGet();
+            logger.error(String.format("Unable to queue history for %s %s.", pending.record.getEntityType(),
+                    pending.record.getEntityId()), e);
+        }
+        finally
+        {
+            appendLock.unlock();
+        }
+    }
+
+    private void runWriter()
+    {
+        while (running || !queue.isEmpty())
+        {
+            try
+            {
+                if(!failed.isEmpty() && System.currentTimeMillis() >= nextRetry)
+                    retryFailed();
+
+                PendingEntry first = queue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                if(first == null)
+                    continue;
+
+                List<PendingEntry> batch = new ArrayList<>(batchSize);
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                write(batch);
+            }
+            catch (InterruptedException e)
+            {
+                logger.warn("History writer interrupted.");
+                return;
+            }
+            catch (Exception e)
+            {
+                logger.error("Unexpected error writing history.", e);
+            }
+        }
+    }
+
+    /**
+     * Write a batch and checkpoint the journal. A batch that can not be written is kept to be retried.
+     * @param batch The batch
+     */
+    protected void write(List<PendingEntry> batch)
+    {
+        List<PendingEntry> ready = batch;
+        if(!failed.isEmpty() || !heldEntities.isEmpty())
+        {
+            // an entity's history has to be written in order so its entries wait behind any that are not written
+            Set<String> waitingEntities = new HashSet<>();
+            for (PendingEntry pending : failed)
+            {
+                waitingEntities.add(pending.getEntityKey());
+            }
+
+            ready = new ArrayList<>(batch.size());
+            List<PendingEntry> waiting = new ArrayList<>();
+            int held = 0;
+            for (PendingEntry pending : batch)
+            {
+                String entityKey = pending.getEntityKey();
+                if(heldEntities.contains(entityKey))
+                {
+                    held++;
+                    release(Collections.singletonList(pending));
+                }
+                else if(waitingEntities.contains(entityKey))
+                    waiting.add(pending);
+                else
+                    ready.add(pending);
+            }
+
+            if(held > 0)
+            {
+                droppedCount.addAndGet(held);
+                logger.error("Unable to write {} history entries behind entries that were dropped, they will be " +
+                        "recovered from the journal on the next start.", held);
+            }
+            if(!waiting.isEmpty())
+                retain(waiting, false);
+        }
+
+        if(!ready.isEmpty())
+        {
+            if(writeBatch(ready))
+            {
+                for (PendingEntry pending : ready)
+                {
+                    writtenOffset = Math.max(writtenOffset, pending.offset);
+                }
+            }
+            else
+                retain(ready, true);
+        }
+
+        checkpoint();
+    }
+
+    /**
+     * Retry the entries that could not be written.
+     */
+    protected void retryFailed()
+    {
+        List<PendingEntry> retry = new ArrayList<>(failed);
+        failed.clear();
+        write(retry);
+    }
+
+    private void retain(List<PendingEntry> batch, boolean attempted)
+    {
+        List<PendingEntry> retry = new ArrayList<>(batch.size());
+        for (PendingEntry pending : batch)
+        {
+            if(!pending.dropped)
+                retry.add(pending);
+        }
+        if(retry.isEmpty())
+            return;
+
+        if(failed.size() + retry.size() <= queueCapacity)
+        {
+            if(attempted)
+            {
+                logger.warn("Unable to write {} history entries, retrying in {}ms.", retry.size(), retryInterval);
+                nextRetry = System.currentTimeMillis() + retryInterval;
+            }
+            failed.addAll(retry);
+            return;
+        }
+
+        // too much is waiting to be retried, hold the checkpoint so the journal still has the entries
+        droppedCount.addAndGet(retry.size());
+        release(retry);
+        heldOffset = Math.min(heldOffset, retry.get(0).start);
+        if(journal != null)
+        {
+            for (PendingEntry pending : retry)
+            {
+                heldEntities.add(pending.getEntityKey());
+            }
+            logger.error("Unable to write {} history entries, they will be recovered from the journal on the next " +
+                    "start.", retry.size());
+        }
+        else
+            logger.error("Unable to write {} history entries, dropping them.", retry.size());
+    }
+
+    private void checkpoint()
+    {
+        if(journal == null || writtenOffset < 0)
+            return;
+
+        // nothing after the first entry that is not written can be checkpointed
+        long offset = Math.min(writtenOffset, heldOffset);
+        for (PendingEntry pending : failed)
+        {
+            offset = Math.min(offset, pending.start);
+        }
+
+        try
+        {
+            journal.checkpoint(offset);
+        }
+        catch (IOException e)
+        {
+            logger.error("Unable to checkpoint the history journal.", e);
+        }
+    }
+
+    /**
+     * Write a batch of entries in a single transaction. Entries that can not be serialized are dropped.
+     * @param batch The batch
+     * @return false if the batch could not be written after the configured number of attempts
+     */
+    @SuppressWarnings("unchecked")
+    protected boolean writeBatch(List<PendingEntry> batch)
+    {
+        final Map<Dao, List<PersistentHistoryEntry>> entries = new LinkedHashMap<>();
+        int count = 0;
+        for (PendingEntry pending : batch)
+        {
+            if(pending.dropped)
+                continue;
+
+            try
+            {
+                serialize(pending);
+                Dao dao = pending.dao != null ? pending.dao : defaultDao;
+                List<PersistentHistoryEntry> list = entries.get(dao);
+                if(list == null)
+                {
+                    list = new ArrayList<>();
+                    entries.put(dao, list);
+                }
+                list.add(pending.record.createEntry());
+                count++;
+            }
+            catch (Exception e)
+            {
+                pending.dropped = true;
+                droppedCount.incrementAndGet();
+                release(Collections.singletonList(pending));
+                logger.error(String.format("Unable to create history for %s %s.", pending.record.getEntityType(),
+                        pending.record.getEntityId()), e);
+            }
+        }
+
+        for (int attempt = 1; count > 0; attempt++)
+        {
+            try
+            {
+                transactionTemplate.execute(new TransactionCallbackWithoutResult()
+                {
+                    @Override
+                    protected void doInTransactionWithoutResult(TransactionStatus status)
+                    {
+                        for (Map.Entry<Dao, List<PersistentHistoryEntry>> entry : entries.entrySet())
+                        {
+                            for (PersistentHistoryEntry historyEntry : entry.getValue())
+                            {
+                                entry.getKey().saveHistory(historyEntry);
+                            }
+                        }
+                    }
+                });
+                writtenCount.addAndGet(count);
+                release(batch);
+                return true;
+            }
+            catch (Exception e)
+            {
+                if(attempt >= maxAttempts)
+                {
+                    logger.error(String.format("Unable to write %d history entries after %d attempts.", count,
+                            attempt), e);
+                    return false;
+                }
+
+                logger.warn(String.format("Error writing %d history entries, retrying.", count), e);
+                try
+                {
+                    Thread.sleep(RETRY_DELAY * attempt);
+                }
+                catch (InterruptedException ie)
+                {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private void serialize(PendingEntry pending) throws Exception
+    {
+        HistoryRecord record = pending.record;
+        if(record.getSerializedEntry() == null)
+        {
+            PersistentHistoryEntry previous = null;
+            if(historySerializer.usesPreviousEntry(record.getHistoryAction()))
+                previous = getPreviousEntry(pending);
+
+            record.setSerializedEntry(historySerializer.encodeHistoryEntry(pending.entity, pending.original,
+                    record.getHistoryAction(), record.getApiVersion(), previous));
+            unwritten.put(pending.getEntityKey(), pending);
+            pending.entity = null;
+            pending.original = null;
+        }
+    }
+
+    /**
+     * Forget entries that have been written or dropped so that later entries read their predecessor from the dao.
+     */
+    private void release(List<PendingEntry> entries)
+    {
+        for (PendingEntry pending : entries)
+        {
+            unwritten.remove(pending.getEntityKey(), pending);
+        }
+    }
+
+    private PersistentHistoryEntry getPreviousEntry(PendingEntry pending)
+    {
+        HistoryRecord record = pending.record;
+        try
+        {
+            // entries are serialized in order, the previous one for the entity may not have been written yet
+            PendingEntry previous = unwritten.get(pending.getEntityKey());
+            if(previous != null)
+                return previous.record.createEntry();
+
+            Dao dao = pending.dao != null ? pending.dao : defaultDao;
+            return historySerializer.getPreviousEntry(dao, record.createEntry().getClass(), record.getEntityType(),
+                    record.getEntityId());
+        }
+        catch (Exception e)
+        {
+            // without the previous entry the change is stored as a full snapshot
+            logger.warn(String.format("Unable to load the previous history for %s %s.", record.getEntityType(),
+                    record.getEntityId()), e);
+            return null;
+        }
+    }
+
+    protected static class PendingEntry
+    {
+        private final HistoryRecord record;
+        private final Dao dao;
+        private ApiObject entity;
+        private ApiObject original;
+        private long offset;
+        private long start = -1;
+        private boolean dropped;
+
+        public PendingEntry(HistoryRecord record, ApiObject entity, ApiObject original, Dao dao, long offset)
+        {
+            this.record = record;
+            this.entity = entity;
+            this.original = original;
+            this.dao = dao;
+            this.offset = offset;
+        }
+
+        private String getEntityKey()
+        {
+            return record.getEntityType() + ":" + record.getEntityId();
+        }
+    }
+}
@@ -0,0 +1,374 @@
+package com.dottydingo.hyperion.core.persistence.history;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An append only local journal of history records that have been committed but not yet written to the database.
+ * Records are framed with their length and written to segment files, and the offset of the last record known to be
+ * in the database is kept in a separate checkpoint file. Offsets increase across segments, each segment is named
+ * after the offset of its first byte and a new one is started once the current segment reaches the segment size.
+ * Segments are deleted once the checkpoint passes their end, so the journal stays bounded as long as the checkpoint
+ * keeps moving. Records after the checkpoint are recovered when the journal is opened, a partially written trailing
+ * record is discarded.
+ */
+public class HistoryJournal implements Closeable
+{
+    static final String LEGACY_JOURNAL_FILE = "history.journal";
+    static final String CHECKPOINT_FILE = "history.checkpoint";
+    static final long DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private static final Pattern SEGMENT_PATTERN = Pattern.compile("history-(\\d+)\\.journal");
+
+    private final File directory;
+    private final FileChannel checkpoint;
+    private final boolean syncWrites;
+    private final long segmentSize;
+    private final TreeMap<Long,File> segments = new TreeMap<>();
+    private final List<Entry> recovered;
+    private FileChannel journal;
+    private long segmentBase;
+    private long endOffset;
+    private long checkpointOffset;
+
+    /**
+     * Open (or create) the journal in the specified directory using the default segment size
+     * @param directory The directory
+     * @param syncWrites True to force each append to disk before returning
+     * @throws IOException If the journal can not be opened
+     */
+    public HistoryJournal(File directory, boolean syncWrites) throws IOException
+    {
+        this(directory, syncWrites, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Open (or create) the journal in the specified directory
+     * @param directory The directory
+     * @param syncWrites True to force each append to disk before returning
+     * @param segmentSize The size in bytes after which a new segment is started
+     * @throws IOException If the journal can not be opened
+     */
+    public HistoryJournal(File directory, boolean syncWrites, long segmentSize) throws IOException
+    {
+        if(segmentSize <= 0)
+            throw new IllegalArgumentException("The segment size must be greater than 0.");
+        if(!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException(String.format("Unable to create history journal directory %s", directory));
+
+        this.directory = directory;
+        this.syncWrites = syncWrites;
+        this.segmentSize = segmentSize;
+        checkpoint = new RandomAccessFile(new File(directory, CHECKPOINT_FILE), "rw").getChannel();
+
+        checkpointOffset = readCheckpoint();
+        recovered = recover();
+    }
+
+    /**
+     * Return the records that were in the journal but not checkpointed when it was opened. The offset of each entry
+     * can be passed to {@link #checkpoint(long)} once the record has been written.
+     * @return The recovered entries
+     */
+    public List<Entry> getRecovered()
+    {
+        return recovered;
+    }
+
+    /**
+     * Append a record to the journal
+     * @param record The record
+     * @return The offset of the end of the record
+     * @throws IOException If the record can not be written
+     */
+    public synchronized long append(HistoryRecord record) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream os = new ObjectOutputStream(bytes);
+        os.writeObject(record);
+        os.close();
+
+        ByteBuffer buffer = ByteBuffer.allocate(4 + bytes.size());
+        buffer.putInt(bytes.size());
+        buffer.put(bytes.toByteArray());
+        buffer.flip();
+
+        if(endOffset - segmentBase >= segmentSize)
+            startSegment();
+
+        long position = endOffset - segmentBase;
+        while (buffer.hasRemaining())
+        {
+            position += journal.write(buffer, position);
+        }
+        if(syncWrites)
+            journal.force(false);
+
+        endOffset = segmentBase + position;
+        return endOffset;
+    }
+
+    /**
+     * Mark every record up to the specified offset as written
+     * @param offset The offset returned when the last written record was appended
+     * @throws IOException If the checkpoint can not be written
+     */
+    public synchronized void checkpoint(long offset) throws IOException
+    {
+        if(offset <= checkpointOffset)
+            return;
+
+        // the checkpoint is written before any segment is deleted, a crash in between leaves segments that are
+        // removed when the journal is opened
+        writeCheckpoint(Math.min(offset, endOffset));
+
+        // once everything has been written start a new segment so the current one can be removed as well
+        if(checkpointOffset == endOffset && endOffset > segmentBase)
+            startSegment();
+
+        deleteWrittenSegments();
+    }
+
+    /**
+     * Return the offset the next record will be appended at
+     * @return The offset
+     */
+    public synchronized long getEndOffset()
+    {
+        return endOffset;
+    }
+
+    /**
+     * Return the offset of the end of the last record known to be written
+     * @return The offset
+     */
+    public synchronized long getCheckpointOffset()
+    {
+        return checkpointOffset;
+    }
+
+    /**
+     * Return the number of bytes in the journal that have not been checkpointed
+     * @return The number of bytes
+     */
+    public synchronized long getPendingBytes()
+    {
+        return endOffset - checkpointOffset;
+    }
+
+    /**
+     * Return the number of segment files in the journal
+     * @return The number of segments
+     */
+    public synchronized int getSegmentCount()
+    {
+        return segments.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException
+    {
+        try
+        {
+            journal.close();
+        }
+        finally
+        {
+            checkpoint.close();
+        }
+    }
+
+    private List<Entry> recover() throws IOException
+    {
+        // a journal written before segments were used is the segment starting at offset 0
+        File legacy = new File(directory, LEGACY_JOURNAL_FILE);
+        if(legacy.exists() && !legacy.renameTo(segmentFile(0)))
+            throw new IOException(String.format("Unable to rename history journal %s", legacy));
+
+        File[] files = directory.listFiles();
+        for (File file : files == null ? new File[0] : files)
+        {
+            Matcher matcher = SEGMENT_PATTERN.matcher(file.getName());
+            if(matcher.matches())
+                segments.put(Long.parseLong(matcher.group(1)), file);
+        }
+
+        if(segments.isEmpty())
+        {
+            segmentBase = checkpointOffset;
+            endOffset = checkpointOffset;
+            journal = openSegment(segmentBase);
+            return Collections.emptyList();
+        }
+
+        // a checkpoint past the end of the journal can not belong to it, recover everything that is there
+        Map.Entry<Long,File> last = segments.lastEntry();
+        if(checkpointOffset > last.getKey() + last.getValue().length())
+            writeCheckpoint(segments.firstKey());
+
+        List<Entry> entries = new ArrayList<>();
+        for (Map.Entry<Long,File> segment : segments.entrySet())
+        {
+            long base = segment.getKey();
+            try (FileChannel channel = new RandomAccessFile(segment.getValue(), "rw").getChannel())
+            {
+                endOffset = base + recoverSegment(channel, base, entries);
+            }
+        }
+
+        segmentBase = segments.lastKey();
+        journal = new RandomAccessFile(segments.lastEntry().getValue(), "rw").getChannel();
+        deleteWrittenSegments();
+
+        return Collections.unmodifiableList(entries);
+    }
+
+    private long recoverSegment(FileChannel channel, long base, List<Entry> entries) throws IOException
+    {
+        long size = channel.size();
+        long position = 0;
+        ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+        while (position + 4 <= size)
+        {
+            lengthBuffer.clear();
+            readFully(channel, lengthBuffer, position);
+            lengthBuffer.flip();
+            int length = lengthBuffer.getInt();
+            if(length <= 0 || position + 4 + length > size)
+                break;
+
+            position += 4 + length;
+            if(base + position <= checkpointOffset)
+                continue;
+
+            ByteBuffer recordBuffer = ByteBuffer.allocate(length);
+            readFully(channel, recordBuffer, position - length);
+            HistoryRecord record;
+            try (ObjectInputStream is = new ObjectInputStream(new ByteArrayInputStream(recordBuffer.array())))
+            {
+                record = (HistoryRecord) is.readObject();
+            }
+            catch (ClassNotFoundException e)
+            {
+                throw new IOException("Unable to read history journal record.", e);
+            }
+
+            entries.add(new Entry(record, base + position));
+        }
+
+        // discard anything after the last complete record
+        if(position < size)
+        {
+            channel.truncate(position);
+            channel.force(false);
+        }
+        return position;
+    }
+
+    private void startSegment() throws IOException
+    {
+        if(syncWrites)
+            journal.force(false);
+        journal.close();
+
+        segmentBase = endOffset;
+        journal = openSegment(segmentBase);
+    }
+
+    private FileChannel openSegment(long base) throws IOException
+    {
+        File file = segmentFile(base);
+        segments.put(base, file);
+        return new RandomAccessFile(file, "rw").getChannel();
+    }
+
+    private void deleteWrittenSegments() throws IOException
+    {
+        // a segment ends where the next one starts, the current segment is never deleted
+        while (segments.size() > 1 && segments.higherKey(segments.firstKey()) <= checkpointOffset)
+        {
+            File file = segments.remove(segments.firstKey());
+            if(!file.delete())
+                throw new IOException(String.format("Unable to delete history journal segment %s", file));
+        }
+    }
+
+    private File segmentFile(long base)
+    {
+        return new File(directory, String.format("history-%020d.journal", base));
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            int read = channel.read(buffer, position);
+            if(read < 0)
+                throw new EOFException("Unexpected end of history journal.");
+            position += read;
+        }
+    }
+
+    private long readCheckpoint() throws IOException
+    {
+        if(checkpoint.size() < 8)
+            return 0;
+
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        while (buffer.hasRemaining())
+        {
+            if(checkpoint.read(buffer, buffer.position()) < 0)
+                return 0;
+        }
+        buffer.flip();
+        return buffer.getLong();
+    }
+
+    private void writeCheckpoint(long offset) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        buffer.putLong(offset);
+        buffer.flip();
+        while (buffer.hasRemaining())
+        {
+            checkpoint.write(buffer, buffer.position());
+        }
+        if(syncWrites)
+            checkpoint.force(false);
+
+        checkpointOffset = offset;
+    }
+
+    /**
+     * A record read from the journal along with the offset of its end
+     */
+    public static class Entry
+    {
+        private final HistoryRecord record;
+        private final long offset;
+
+        public Entry(HistoryRecord record, long offset)
+        {
+            this.record = record;
+            this.offset = offset;
+        }
+
+        public HistoryRecord getRecord()
+        {
+            return record;
+        }
+
+        public long getOffset()
+        {
+            return offset;
+        }
+    }
+}
@@ -16,12 +16,18 @@ public class HistoryPersistentChangeListener implements PersistentChangeListener
 {
     private static final String HISTORY_PROCESSING_ERROR = "ERROR_HISTORY_PROCESSING_ERROR";
     private HistorySerializer historySerializer;
+    private AsyncHistoryWriter historyWriter;
 
     public void setHistorySerializer(HistorySerializer historySerializer)
     {
         this.historySerializer = historySerializer;
     }
 
+    public void setHistoryWriter(AsyncHistoryWriter historyWriter)
+    {
+        this.historyWriter = historyWriter;
+    }
+
     @Override
     public void processEntityChange(PersistentChangeEvent<ApiObject,Serializable> event)
     {
@@ -31,8 +37,17 @@ public class HistoryPersistentChangeListener implements PersistentChangeListener
 
         try
         {
-            PersistentHistoryEntry entry = generateHistoryEntry(event, context);
-            context.getEntityPlugin().getDao().saveHistory(entry);
+            if(historyWriter != null && historyWriter.isEnabled())
+            {
+                HistoryRecord record = generateHistoryRecord(event, context);
+                historyWriter.submit(record, getHistoryEntity(event, record.getHistoryAction()),
+                        event.getOriginalItem(), context.getEntityPlugin().getDao());
+            }
+            else
+            {
+                PersistentHistoryEntry entry = generateHistoryEntry(event, context);
+                context.getEntityPlugin().getDao().saveHistory(entry);
+            }
         }
         catch (Exception e)
         {
@@ -61,14 +76,39 @@ public class HistoryPersistentChangeListener implements PersistentChangeListener
         entry.setTimestamp(context.getCurrentTimestamp());
 
 
-        ApiObject entity = entry.getHistoryAction() == HistoryAction.DELETE
-                ? event.getOriginalItem()
-                : event.getUpdatedItem();
+        ApiObject entity = getHistoryEntity(event, entry.getHistoryAction());
+
+        PersistentHistoryEntry previous = null;
+        if(historySerializer.usesPreviousEntry(entry.getHistoryAction()))
+            previous = historySerializer.getPreviousEntry(context.getEntityPlugin().getDao(),
+                    context.getEntityPlugin().getHistoryType(), context.getEntity(), event.getId());
 
-        entry.setSerializedEntry(historySerializer.serializeHistoryEntry(entity,context));
+        entry.setSerializedEntry(historySerializer.serializeHistoryEntry(entity,event.getOriginalItem(),
+                entry.getHistoryAction(),entry.getApiVersion(),previous,context));
         return entry;
     }
 
+    protected HistoryRecord generateHistoryRecord(PersistentChangeEvent<ApiObject, Serializable> event,
+                                                  PersistenceContext context)
+    {
+        HistoryRecord record = new HistoryRecord();
+        record.setHistoryType(context.getEntityPlugin().getHistoryType().getName());
+        record.setEntityType(context.getEntity());
+        record.setEntityId(event.getId());
+        record.setApiVersion(context.getApiVersionPlugin().getVersion());
+        record.setHistoryAction(getAction(event.getEntityChangeAction()));
+        record.setUser(context.getUserContext().getUserId());
+        record.setTimestamp(context.getCurrentTimestamp());
+        return record;
+    }
+
+    protected ApiObject getHistoryEntity(PersistentChangeEvent<ApiObject, Serializable> event, HistoryAction action)
+    {
+        return action == HistoryAction.DELETE
+                ? event.getOriginalItem()
+                : event.getUpdatedItem();
+    }
+
     protected HistoryAction getAction(EntityChangeAction entityChangeAction)
     {
         switch (entityChangeAction)
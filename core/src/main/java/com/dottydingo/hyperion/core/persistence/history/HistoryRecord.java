@@ -0,0 +1,127 @@
+package com.dottydingo.hyperion.core.persistence.history;
+
+import com.dottydingo.hyperion.api.HistoryAction;
+import com.dottydingo.hyperion.core.model.PersistentHistoryEntry;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * A detached snapshot of a history entry that can be queued and journaled before it is persisted.
+ */
+public class HistoryRecord implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    private String historyType;
+    private String entityType;
+    private Serializable entityId;
+    private HistoryAction historyAction;
+    private Integer apiVersion;
+    private String serializedEntry;
+    private String user;
+    private Date timestamp;
+
+    public String getHistoryType()
+    {
+        return historyType;
+    }
+
+    public void setHistoryType(String historyType)
+    {
+        this.historyType = historyType;
+    }
+
+    public String getEntityType()
+    {
+        return entityType;
+    }
+
+    public void setEntityType(String entityType)
+    {
+        this.entityType = entityType;
+    }
+
+    public Serializable getEntityId()
+    {
+        return entityId;
+    }
+
+    public void setEntityId(Serializable entityId)
+    {
+        this.entityId = entityId;
+    }
+
+    public HistoryAction getHistoryAction()
+    {
+        return historyAction;
+    }
+
+    public void setHistoryAction(HistoryAction historyAction)
+    {
+        this.historyAction = historyAction;
+    }
+
+    public Integer getApiVersion()
+    {
+        return apiVersion;
+    }
+
+    public void setApiVersion(Integer apiVersion)
+    {
+        this.apiVersion = apiVersion;
+    }
+
+    public String getSerializedEntry()
+    {
+        return serializedEntry;
+    }
+
+    public void setSerializedEntry(String serializedEntry)
+    {
+        this.serializedEntry = serializedEntry;
+    }
+
+    public String getUser()
+    {
+        return user;
+    }
+
+    public void setUser(String user)
+    {
+        this.user = user;
+    }
+
+    public Date getTimestamp()
+    {
+        return timestamp;
+    }
+
+    public void setTimestamp(Date timestamp)
+    {
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Create the persistent history entry for this record
+     * @return The history entry
+     * @throws Exception If the history type can not be instantiated
+     */
+    public PersistentHistoryEntry createEntry() throws Exception
+    {
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        if(classLoader == null)
+            classLoader = HistoryRecord.class.getClassLoader();
+
+        PersistentHistoryEntry entry =
+                (PersistentHistoryEntry) Class.forName(historyType, true, classLoader).newInstance();
+        entry.setEntityType(entityType);
+        entry.setEntityId(entityId);
+        entry.setHistoryAction(historyAction);
+        entry.setApiVersion(apiVersion);
+        entry.setSerializedEntry(serializedEntry);
+        entry.setUser(user);
+        entry.setTimestamp(timestamp);
+        return entry;
+    }
+}
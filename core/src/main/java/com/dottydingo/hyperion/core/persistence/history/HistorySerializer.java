@@ -1,62 +1,301 @@
 package com.dottydingo.hyperion.core.persistence.history;
 
 import com.dottydingo.hyperion.api.ApiObject;
-import com.dottydingo.hyperion.api.exception.BadRequestException;
+import com.dottydingo.hyperion.api.HistoryAction;
 import com.dottydingo.hyperion.api.exception.InternalException;
 import com.dottydingo.hyperion.core.endpoint.marshall.EndpointMarshaller;
 import com.dottydingo.hyperion.core.endpoint.marshall.MarshallingException;
 import com.dottydingo.hyperion.core.model.PersistentHistoryEntry;
 import com.dottydingo.hyperion.core.model.PersistentObject;
 import com.dottydingo.hyperion.core.persistence.PersistenceContext;
+import com.dottydingo.hyperion.core.persistence.dao.Dao;
+import com.dottydingo.hyperion.core.persistence.dao.PersistentQueryResult;
 import com.dottydingo.hyperion.core.registry.ApiVersionPlugin;
+import com.fasterxml.jackson.core.Base64Variants;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.io.Serializable;
+import java.util.*;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 
 /**
+ * Serializes history entries. Entries are stored as the full JSON of the entity unless delta encoding is enabled, in
+ * which case modifications are stored as the fields that changed from the original item. Each delta records its
+ * distance from the last full snapshot and a modification is stored in full once that reaches snapshotInterval, or
+ * when the previous entry was written with a different API version, so reconstruction never reads back more than
+ * snapshotInterval entries and never converts between versions. Encoded entries at least
+ * compressionThreshold characters long can optionally be deflated. Entries written before either option was enabled
+ * remain readable.
  */
 public class HistorySerializer
 {
     public static final String CREATING_HISTORY = "ERROR_CREATING_HISTORY";
     public static final String READING_HISTORY = "ERROR_READING_HISTORY";
+
+    private static final String DELTA_PREFIX = "~d:";
+    private static final String COMPRESSED_PREFIX = "~z:";
+    private static final String COMPRESSED_DELTA_PREFIX = "~zd:";
+    private static final String SET_FIELD = "s";
+    private static final String REMOVE_FIELD = "r";
+    private static final String DEPTH_FIELD = "n";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
     private final SimpleBeanFilter beanFilter = new SimpleBeanFilter();
 
     private EndpointMarshaller endpointMarshaller;
+    private boolean deltaEnabled = false;
+    private int snapshotInterval = 10;
+    private boolean compressionEnabled = false;
+    private int compressionThreshold = 512;
 
     public void setEndpointMarshaller(EndpointMarshaller endpointMarshaller)
     {
         this.endpointMarshaller = endpointMarshaller;
     }
 
+    /**
+     * Store modifications as deltas from the original item. Defaults to false.
+     * @param deltaEnabled true to enable delta encoding
+     */
+    public void setDeltaEnabled(boolean deltaEnabled)
+    {
+        this.deltaEnabled = deltaEnabled;
+    }
+
+    /**
+     * Set the maximum number of modifications between full snapshots when delta encoding is enabled. Defaults to 10.
+     * @param snapshotInterval The interval
+     */
+    public void setSnapshotInterval(int snapshotInterval)
+    {
+        this.snapshotInterval = Math.max(snapshotInterval, 1);
+    }
+
+    public int getSnapshotInterval()
+    {
+        return snapshotInterval;
+    }
+
+    /**
+     * Compress encoded entries. Defaults to false.
+     * @param compressionEnabled true to enable compression
+     */
+    public void setCompressionEnabled(boolean compressionEnabled)
+    {
+        this.compressionEnabled = compressionEnabled;
+    }
+
+    /**
+     * Set the minimum encoded length of an entry before it is compressed. Defaults to 512.
+     * @param compressionThreshold The threshold
+     */
+    public void setCompressionThreshold(int compressionThreshold)
+    {
+        this.compressionThreshold = compressionThreshold;
+    }
+
     public <C extends ApiObject> String serializeHistoryEntry(C entry, PersistenceContext context)
     {
-        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        return serializeHistoryEntry(entry, null, HistoryAction.CREATE, null, null, context);
+    }
+
+    public <C extends ApiObject> String serializeHistoryEntry(C entry, C original, HistoryAction action,
+                                                              Integer apiVersion, PersistentHistoryEntry previous,
+                                                              PersistenceContext context)
+    {
         try
         {
-            endpointMarshaller.marshall(os,entry);
+            return encodeHistoryEntry(entry, original, action, apiVersion, previous);
         }
         catch (MarshallingException e)
         {
             throw new InternalException(context.getMessageSource().getErrorMessage(CREATING_HISTORY,
                     context.getLocale(),context.getEntity()));
         }
+    }
+
+    /**
+     * Serialize an entry in full without a persistence context, for use outside of a request.
+     * @param entry The entry
+     * @return The serialized entry
+     * @throws MarshallingException If the entry can not be serialized
+     */
+    public <C extends ApiObject> String serialize(C entry) throws MarshallingException
+    {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        endpointMarshaller.marshall(os,entry);
         return os.toString();
     }
 
+    /**
+     * Determine if an entry for the specified action may be stored as a delta, in which case the previous entry for
+     * the entity is needed to encode it.
+     * @param action The history action
+     * @return true if the previous entry is used
+     */
+    public boolean usesPreviousEntry(HistoryAction action)
+    {
+        return deltaEnabled && action == HistoryAction.MODIFY;
+    }
+
+    /**
+     * Load the most recent history entry for an entity.
+     * @param dao The dao
+     * @param historyType The history type
+     * @param entityType The entity type
+     * @param entityId The entity id
+     * @return The entry or null if the entity has no history
+     */
+    public PersistentHistoryEntry getPreviousEntry(Dao dao, Class historyType, String entityType,
+                                                   Serializable entityId)
+    {
+        PersistentQueryResult<PersistentHistoryEntry> result = dao.getHistory(historyType, entityType, entityId, 1, 1);
+        long total = result.getTotalCount() == null ? 0 : result.getTotalCount();
+        if(total > 1)
+            result = dao.getHistory(historyType, entityType, entityId, (int) total, 1);
+
+        List<PersistentHistoryEntry> results = result.getResults();
+        return results == null || results.isEmpty() ? null : results.get(results.size() - 1);
+    }
+
+    /**
+     * Encode an entry using the configured storage options, without a persistence context.
+     * @param entry The entry
+     * @param original The entry before the change, may be null
+     * @param action The history action
+     * @param apiVersion The API version of the entry
+     * @param previous The most recent stored entry for the entity, a delta is only written after an entry of the same
+     *                 version
+     * @return The encoded entry
+     * @throws MarshallingException If the entry can not be serialized
+     */
+    public <C extends ApiObject> String encodeHistoryEntry(C entry, C original, HistoryAction action,
+                                                           Integer apiVersion, PersistentHistoryEntry previous)
+            throws MarshallingException
+    {
+        String encoded = null;
+        boolean delta = false;
+        if(usesPreviousEntry(action) && original != null && previous != null
+                && apiVersion != null && apiVersion.equals(previous.getApiVersion()))
+        {
+            int depth = getDepth(previous) + 1;
+            if(depth < snapshotInterval)
+            {
+                encoded = encodeDelta(entry, original, depth);
+                delta = encoded != null;
+            }
+        }
+
+        if(encoded == null)
+            encoded = serialize(entry);
+
+        if(compressionEnabled && encoded.length() >= compressionThreshold)
+            return (delta ? COMPRESSED_DELTA_PREFIX : COMPRESSED_PREFIX) + compress(encoded);
+
+        return delta ? DELTA_PREFIX + encoded : encoded;
+    }
+
+    /**
+     * Determine if a stored entry is a delta that needs preceding entries to be reconstructed.
+     * @param entry The entry
+     * @return true if the entry is a delta
+     */
+    public boolean isDelta(PersistentHistoryEntry entry)
+    {
+        String value = entry.getSerializedEntry();
+        return value != null && (value.startsWith(DELTA_PREFIX) || value.startsWith(COMPRESSED_DELTA_PREFIX));
+    }
+
     public <C extends ApiObject> C deserializeHistoryEntry(PersistentHistoryEntry entry,PersistenceContext context)
     {
-        ByteArrayInputStream inputStream = new ByteArrayInputStream(entry.getSerializedEntry().getBytes());
-        ApiVersionPlugin savedVersion = context.getEntityPlugin().getApiVersionRegistry().getPluginForVersion(entry.getApiVersion());
-        C apiEntry = null;
+        List<C> entries = deserializeHistoryEntries(Collections.<PersistentHistoryEntry>emptyList(),
+                Collections.singletonList(entry), context);
+        return entries.get(0);
+    }
+
+    /**
+     * Deserialize a contiguous run of history entries for one entity. Deltas are applied to the state reconstructed
+     * from the preceding entries, which must reach back to the last full snapshot. A delta without a snapshot before
+     * it fails the request with {@link #READING_HISTORY} rather than returning a partial entity.
+     * @param preceding The entries before the requested ones, in order
+     * @param entries The requested entries, in order
+     * @param context The persistence context
+     * @return The deserialized entries
+     */
+    public <C extends ApiObject> List<C> deserializeHistoryEntries(List<PersistentHistoryEntry> preceding,
+                                                                   List<PersistentHistoryEntry> entries,
+                                                                   PersistenceContext context)
+    {
+        List<PersistentHistoryEntry> all = entries;
+        if(!preceding.isEmpty())
+        {
+            all = new ArrayList<>(preceding.size() + entries.size());
+            all.addAll(preceding);
+            all.addAll(entries);
+        }
+
+        List<C> results = new ArrayList<>(entries.size());
+        Map<Class,boolean[]> readableMasks = new HashMap<>();
         try
         {
-            apiEntry = (C) endpointMarshaller.unmarshall(inputStream,savedVersion.getApiClass());
+            HistoryState state = new HistoryState();
+            for (int i = 0; i < all.size(); i++)
+            {
+                PersistentHistoryEntry entry = all.get(i);
+                boolean requested = i >= preceding.size();
+
+                // a snapshot that no delta builds on is read directly instead of through a tree
+                boolean direct = !isDelta(entry) && (i + 1 == all.size() || !isDelta(all.get(i + 1)));
+                if(direct)
+                    state.node = null;
+
+                if(!requested && direct)
+                    continue;
+
+                StoredEntry stored = decode(entry);
+                if(!direct)
+                    apply(state, entry, stored);
+
+                if(!requested)
+                    continue;
+
+                ApiVersionPlugin savedVersion = getVersion(entry.getApiVersion(), context);
+                C apiEntry = direct
+                        ? (C) stored.read(savedVersion.getApiClass())
+                        : (C) endpointMarshaller.treeToValue(state.node, savedVersion.getApiClass());
+
+                results.add(filter(apiEntry, savedVersion, readableMasks, context));
+            }
         }
         catch (MarshallingException e)
         {
             throw new InternalException(context.getMessageSource().getErrorMessage(READING_HISTORY,
                     context.getLocale(), context.getEntity()));
         }
+        return results;
+    }
+
+    private <C extends ApiObject> C filter(C apiEntry, ApiVersionPlugin savedVersion,
+                                           Map<Class,boolean[]> readableMasks, PersistenceContext context)
+    {
+        // use a per request mask when the authorization does not depend on the row
+        Class type = apiEntry.getClass();
+        boolean[] mask = readableMasks.get(type);
+        if(mask == null && !readableMasks.containsKey(type))
+        {
+            mask = beanFilter.getReadableMask(type, context.getAuthorizationContext());
+            readableMasks.put(type, mask);
+        }
+
+        if(mask != null)
+            return beanFilter.copy(apiEntry, mask);
 
         // recreate the persistent object for filtering
         PersistentObject persistentObject;
@@ -73,4 +312,183 @@ public class HistorySerializer
         return copy;
     }
 
+    /**
+     * Get the number of deltas between an entry and the last full snapshot, deltas that do not record it are treated
+     * as being at the limit.
+     */
+    private int getDepth(PersistentHistoryEntry entry) throws MarshallingException
+    {
+        if(!isDelta(entry))
+            return 0;
+
+        JsonNode depth = decode(entry).readTree().get(DEPTH_FIELD);
+        return depth != null && depth.canConvertToInt() ? depth.intValue() : snapshotInterval;
+    }
+
+    private String encodeDelta(ApiObject entry, ApiObject original, int depth) throws MarshallingException
+    {
+        JsonNode updatedNode = endpointMarshaller.valueToTree(entry);
+        JsonNode originalNode = endpointMarshaller.valueToTree(original);
+        if(!updatedNode.isObject() || !originalNode.isObject())
+            return null;
+
+        ObjectNode delta = JsonNodeFactory.instance.objectNode();
+        ObjectNode set = delta.putObject(SET_FIELD);
+        Iterator<Map.Entry<String, JsonNode>> fields = updatedNode.fields();
+        int fieldCount = 0;
+        while (fields.hasNext())
+        {
+            Map.Entry<String, JsonNode> field = fields.next();
+            fieldCount++;
+            if(!field.getValue().equals(originalNode.get(field.getKey())))
+                set.set(field.getKey(), field.getValue());
+        }
+
+        ArrayNode removed = null;
+        Iterator<String> originalFields = originalNode.fieldNames();
+        while (originalFields.hasNext())
+        {
+            String name = originalFields.next();
+            if(!updatedNode.has(name))
+            {
+                if(removed == null)
+                    removed = delta.putArray(REMOVE_FIELD);
+                removed.add(name);
+            }
+        }
+
+        // a delta that touches most of the entity saves little, store a snapshot instead
+        int changed = set.size() + (removed == null ? 0 : removed.size());
+        if(changed * 2 > fieldCount)
+            return null;
+
+        delta.put(DEPTH_FIELD, depth);
+
+        return endpointMarshaller.marshallToString(delta);
+    }
+
+    private StoredEntry decode(PersistentHistoryEntry entry) throws MarshallingException
+    {
+        String value = entry.getSerializedEntry();
+        if(value.startsWith(COMPRESSED_DELTA_PREFIX))
+            return new StoredEntry(true, null, decompress(value.substring(COMPRESSED_DELTA_PREFIX.length())));
+        if(value.startsWith(COMPRESSED_PREFIX))
+            return new StoredEntry(false, null, decompress(value.substring(COMPRESSED_PREFIX.length())));
+        if(value.startsWith(DELTA_PREFIX))
+            return new StoredEntry(true, value.substring(DELTA_PREFIX.length()), null);
+
+        return new StoredEntry(false, value, null);
+    }
+
+    private void apply(HistoryState state, PersistentHistoryEntry entry, StoredEntry stored)
+            throws MarshallingException
+    {
+        boolean delta = stored.delta;
+        JsonNode node = stored.readTree();
+        if(!node.isObject())
+            throw new MarshallingException("History entry is not an object.");
+
+        if(!delta)
+        {
+            state.node = (ObjectNode) node;
+            state.apiVersion = entry.getApiVersion();
+            return;
+        }
+
+        if(state.node == null)
+            throw new MarshallingException(String.format("No snapshot precedes history entry %s.", entry.getId()));
+
+        // deltas are only written after an entry of the same version
+        if(!entry.getApiVersion().equals(state.apiVersion))
+            throw new MarshallingException(String.format("History entry %s is a delta from version %s.",
+                    entry.getId(), state.apiVersion));
+
+        JsonNode set = node.get(SET_FIELD);
+        if(set != null)
+            state.node.setAll((ObjectNode) set);
+
+        JsonNode removed = node.get(REMOVE_FIELD);
+        if(removed != null)
+        {
+            for (JsonNode name : removed)
+            {
+                state.node.remove(name.asText());
+            }
+        }
+    }
+
+    private ApiVersionPlugin getVersion(Integer version, PersistenceContext context)
+    {
+        return context.getEntityPlugin().getApiVersionRegistry().getPluginForVersion(version);
+    }
+
+    private String compress(String value) throws MarshallingException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DeflaterOutputStream os = new DeflaterOutputStream(bytes))
+        {
+            os.write(value.getBytes(UTF8));
+        }
+        catch (Exception e)
+        {
+            throw new MarshallingException(e);
+        }
+        return Base64Variants.MIME_NO_LINEFEEDS.encode(bytes.toByteArray());
+    }
+
+    private byte[] decompress(String value) throws MarshallingException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (InflaterInputStream is = new InflaterInputStream(
+                new ByteArrayInputStream(Base64Variants.MIME_NO_LINEFEEDS.decode(value))))
+        {
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = is.read(buffer)) > 0)
+            {
+                bytes.write(buffer, 0, read);
+            }
+        }
+        catch (Exception e)
+        {
+            throw new MarshallingException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static class HistoryState
+    {
+        private ObjectNode node;
+        private Integer apiVersion;
+    }
+
+    /**
+     * A stored entry after any compression has been removed, held as the stored text or the inflated bytes so that
+     * it can be parsed without another copy.
+     */
+    private class StoredEntry
+    {
+        private final boolean delta;
+        private final String text;
+        private final byte[] bytes;
+
+        private StoredEntry(boolean delta, String text, byte[] bytes)
+        {
+            this.delta = delta;
+            this.text = text;
+            this.bytes = bytes;
+        }
+
+        private JsonNode readTree() throws MarshallingException
+        {
+            return text != null ? endpointMarshaller.readTree(text) : endpointMarshaller.readTree(bytes);
+        }
+
+        private <T> T read(Class<T> type) throws MarshallingException
+        {
+            return text != null
+                    ? endpointMarshaller.unmarshall(text, type)
+                    : endpointMarshaller.unmarshall(new ByteArrayInputStream(bytes), type);
+        }
+    }
 }
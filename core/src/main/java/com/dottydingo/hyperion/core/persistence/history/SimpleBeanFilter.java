@@ -2,56 +2,139 @@ package com.dottydingo.hyperion.core.persistence.history;
 
 import com.dottydingo.hyperion.api.ApiObject;
 import com.dottydingo.hyperion.api.exception.InternalException;
-import com.dottydingo.hyperion.core.endpoint.pipeline.auth.AuthorizationContext;;
+import com.dottydingo.hyperion.core.endpoint.pipeline.auth.AuthorizationContext;
+import com.dottydingo.hyperion.core.endpoint.pipeline.auth.RowIndependentAuthorization;
 import com.dottydingo.hyperion.core.model.PersistentObject;
 import net.sf.cglib.beans.BeanMap;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.lang.reflect.Constructor;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  */
 public class SimpleBeanFilter
 {
-    private Map<Class,BeanMap> beanMapMap = new HashMap<Class, BeanMap>();
+    private final ConcurrentMap<Class,BeanMetadata> metadataCache = new ConcurrentHashMap<Class, BeanMetadata>();
 
     public <C extends ApiObject> C copy(C original, PersistentObject persistentObject, AuthorizationContext authorizationContext)
     {
-        C copy = (C) createInstance(original.getClass());
-        BeanMap beanMap = getBeanMap(copy);
-        Set<String> set = beanMap.keySet();
-        for (String propertyName : set)
+        BeanMetadata metadata = getMetadata(original.getClass());
+        C copy = (C) metadata.createInstance();
+        String[] propertyNames = metadata.propertyNames;
+        for (int i = 0; i < propertyNames.length; i++)
         {
-            if(authorizationContext.isReadable(persistentObject,propertyName))
-                beanMap.put(copy,propertyName,beanMap.get(original,propertyName));
+            if(authorizationContext.isReadable(persistentObject,propertyNames[i]))
+                metadata.beanMap.put(copy,propertyNames[i],metadata.beanMap.get(original,propertyNames[i]));
         }
 
         return copy;
     }
 
-    private synchronized <C extends ApiObject> BeanMap getBeanMap(C object)
+    /**
+     * Build a mask of the readable properties of a type when the authorization context can decide without looking at
+     * each row.
+     * @param type The API type
+     * @param authorizationContext The authorization context
+     * @return The mask in the order used by {@link #copy(ApiObject, boolean[])}, or null if any property needs a row
+     * level check
+     */
+    public boolean[] getReadableMask(Class<? extends ApiObject> type, AuthorizationContext authorizationContext)
     {
-        BeanMap beanMap = beanMapMap.get(object.getClass());
-        if(beanMap == null)
+        if(!(authorizationContext instanceof RowIndependentAuthorization))
+            return null;
+
+        RowIndependentAuthorization rowIndependentAuthorization = (RowIndependentAuthorization) authorizationContext;
+        String[] propertyNames = getMetadata(type).propertyNames;
+        boolean[] mask = new boolean[propertyNames.length];
+        for (int i = 0; i < propertyNames.length; i++)
+        {
+            Boolean readable = rowIndependentAuthorization.isReadable(propertyNames[i]);
+            if(readable == null)
+                return null;
+            mask[i] = readable;
+        }
+        return mask;
+    }
+
+    /**
+     * Copy the properties allowed by a mask from {@link #getReadableMask(Class, AuthorizationContext)}. The original
+     * is returned when every property is readable.
+     * @param original The object to copy
+     * @param mask The readable mask
+     * @return The filtered object
+     */
+    public <C extends ApiObject> C copy(C original, boolean[] mask)
+    {
+        boolean all = true;
+        for (boolean readable : mask)
         {
-            beanMap = BeanMap.create(object);
-            beanMapMap.put(object.getClass(),beanMap);
+            all &= readable;
         }
+        if(all)
+            return original;
 
-        return beanMap;
+        BeanMetadata metadata = getMetadata(original.getClass());
+        C copy = (C) metadata.createInstance();
+        String[] propertyNames = metadata.propertyNames;
+        for (int i = 0; i < propertyNames.length; i++)
+        {
+            if(mask[i])
+                metadata.beanMap.put(copy,propertyNames[i],metadata.beanMap.get(original,propertyNames[i]));
+        }
+
+        return copy;
     }
 
-    private <C extends ApiObject> C createInstance(Class<C> type)
+    private BeanMetadata getMetadata(Class type)
     {
-        try
+        BeanMetadata metadata = metadataCache.get(type);
+        if(metadata == null)
         {
-            return type.newInstance();
+            metadata = new BeanMetadata(type);
+            BeanMetadata existing = metadataCache.putIfAbsent(type,metadata);
+            if(existing != null)
+                metadata = existing;
         }
-        catch (Exception e)
+
+        return metadata;
+    }
+
+    private static class BeanMetadata
+    {
+        private final BeanMap beanMap;
+        private final String[] propertyNames;
+        private final Constructor constructor;
+
+        private BeanMetadata(Class type)
+        {
+            try
+            {
+                constructor = type.getDeclaredConstructor();
+                constructor.setAccessible(true);
+                beanMap = BeanMap.create(constructor.newInstance());
+            }
+            catch (Exception e)
+            {
+                // no easy way to localize, though this shouldn't generally happen in a production context
+                throw new InternalException("Error creating API instance.",e);
+            }
+
+            Set<String> keys = beanMap.keySet();
+            propertyNames = keys.toArray(new String[keys.size()]);
+        }
+
+        private Object createInstance()
         {
-            // no easy way to localize, though this shouldn't generally happen in a production context
-            throw new InternalException("Error creating API instance.",e);
+            try
+            {
+                return constructor.newInstance();
+            }
+            catch (Exception e)
+            {
+                throw new InternalException("Error creating API instance.",e);
+            }
         }
     }
 }
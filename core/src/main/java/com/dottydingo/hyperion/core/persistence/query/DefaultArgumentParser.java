@@ -12,6 +12,8 @@ import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  */
@@ -24,7 +26,22 @@ public class DefaultArgumentParser  implements ArgumentParser
 
     private static final Logger logger = LoggerFactory.getLogger(DefaultArgumentParser.class);
 
+    private static final Method NO_VALUE_OF;
+
+    static
+    {
+        try
+        {
+            NO_VALUE_OF = Object.class.getMethod("toString");
+        }
+        catch (NoSuchMethodException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
     private DateTimeFormatter dateParser = ISODateTimeFormat.dateOptionalTimeParser();
+    private final ConcurrentMap<Class,Method> valueOfMethods = new ConcurrentHashMap<>();
 
     @Override
     public <T> List<T> parse(List<String> argument, Class<T> type, PersistenceContext context) throws HyperionException
@@ -117,23 +134,41 @@ public class DefaultArgumentParser  implements ArgumentParser
         }
 
         // try to parse via valueOf(String s) method
-        try
+        Method method = getValueOfMethod(type);
+        if(method != null)
         {
-            logger.debug("Trying to get and invoke valueOf(String s) method on {}", type);
-            Method method = type.getMethod("valueOf", String.class);
-            return (T) method.invoke(type, argument);
-
-        }
-        catch (NoSuchMethodException ex)
-        {
-            logger.warn("{} does not have method valueOf(String s)", type);
+            try
+            {
+                return (T) method.invoke(type, argument);
+            }
+            catch (Exception ex)
+            {
+                throw new BadParameterException(createErrorMessage(argument, type, context),ex);
+            }
         }
-        catch (Exception ex)
+
+        throw new BadParameterException(createErrorMessage(argument, type, context));
+    }
+
+    private Method getValueOfMethod(Class type)
+    {
+        Method method = valueOfMethods.get(type);
+        if(method == null)
         {
-            throw new BadParameterException(createErrorMessage(argument, type, context),ex);
+            logger.debug("Looking up valueOf(String s) method on {}", type);
+            try
+            {
+                method = type.getMethod("valueOf", String.class);
+            }
+            catch (NoSuchMethodException ex)
+            {
+                logger.warn("{} does not have method valueOf(String s)", type);
+                method = NO_VALUE_OF;
+            }
+            valueOfMethods.putIfAbsent(type, method);
         }
 
-        throw new BadParameterException(createErrorMessage(argument, type, context));
+        return method == NO_VALUE_OF ? null : method;
     }
 
     protected <T> String createErrorMessage(String argument, Class<T> type, PersistenceContext context)
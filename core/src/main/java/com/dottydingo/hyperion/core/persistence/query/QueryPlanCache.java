@@ -0,0 +1,393 @@
+package com.dottydingo.hyperion.core.persistence.query;
+
+import cz.jirutka.rsql.parser.RSQLParser;
+import cz.jirutka.rsql.parser.RSQLParserException;
+import cz.jirutka.rsql.parser.ast.*;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache of parsed RSQL queries keyed by the shape of the query. The arguments of each comparison are
+ * replaced with slots to build a template, so queries that only differ in their argument values share one parsed
+ * tree and only the arguments are bound per request. The first query seen for a template is parsed in full and the
+ * template is only used if the arguments it extracts match the parsed ones. Templates are evicted in least recently
+ * used order.
+ */
+public class QueryPlanCache
+{
+    private static final String SLOT = "?";
+    private static final String LIST_SLOT = "(?)";
+
+    private final RSQLParser parser = new RSQLParser();
+    private final int maxSize;
+    private final Map<String,Template> templates;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * Create a cache
+     * @param maxSize The maximum number of templates, 0 to disable caching
+     */
+    public QueryPlanCache(int maxSize)
+    {
+        if(maxSize < 0)
+            throw new IllegalArgumentException("maxSize must not be negative");
+
+        this.maxSize = maxSize;
+        this.templates = new LinkedHashMap<String,Template>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Template> eldest)
+            {
+                return size() > QueryPlanCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Parse a query
+     * @param query The query string
+     * @return The root node
+     * @throws RSQLParserException If the query is not valid
+     */
+    public Node parse(String query) throws RSQLParserException
+    {
+        if(maxSize == 0)
+            return parser.parse(query);
+
+        ShapedQuery shaped = shape(query);
+        if(shaped == null)
+        {
+            missCount.incrementAndGet();
+            return parser.parse(query);
+        }
+
+        Template template;
+        synchronized (templates)
+        {
+            template = templates.get(shaped.template);
+        }
+
+        if(template != null)
+        {
+            if(template.root != null)
+            {
+                Node bound = bind(template.root, shaped.arguments);
+                if(bound != null)
+                {
+                    hitCount.incrementAndGet();
+                    return bound;
+                }
+            }
+
+            missCount.incrementAndGet();
+            return parser.parse(query);
+        }
+
+        missCount.incrementAndGet();
+        Node root = parser.parse(query);
+
+        // only trust the template if it extracted exactly what the parser found
+        template = new Template(matches(root, shaped.arguments) ? root : null);
+        synchronized (templates)
+        {
+            templates.put(shaped.template, template);
+        }
+        return root;
+    }
+
+    public int getMaxSize()
+    {
+        return maxSize;
+    }
+
+    public int getSize()
+    {
+        synchronized (templates)
+        {
+            return templates.size();
+        }
+    }
+
+    public long getHitCount()
+    {
+        return hitCount.get();
+    }
+
+    public long getMissCount()
+    {
+        return missCount.get();
+    }
+
+    public void clear()
+    {
+        synchronized (templates)
+        {
+            templates.clear();
+        }
+    }
+
+    /**
+     * Split a query into its template and the arguments of each comparison in order
+     * @param query The query
+     * @return The shaped query or null if the query could not be shaped
+     */
+    static ShapedQuery shape(String query)
+    {
+        StringBuilder template = new StringBuilder(query.length());
+        List<List<String>> arguments = new ArrayList<>();
+        int length = query.length();
+        int i = 0;
+        while (i < length)
+        {
+            char c = query.charAt(i);
+            int operatorEnd = operatorEnd(query, i);
+            if(operatorEnd > 0)
+            {
+                template.append(query, i, operatorEnd);
+                i = skipWhitespace(query, operatorEnd);
+
+                List<String> values = new ArrayList<>();
+                if(i < length && query.charAt(i) == '(')
+                {
+                    i++;
+                    while (true)
+                    {
+                        i = readValue(query, skipWhitespace(query, i), values);
+                        if(i < 0)
+                            return null;
+
+                        i = skipWhitespace(query, i);
+                        if(i >= length)
+                            return null;
+
+                        char next = query.charAt(i++);
+                        if(next == ')')
+                            break;
+                        if(next != ',')
+                            return null;
+                    }
+                    template.append(LIST_SLOT);
+                }
+                else
+                {
+                    i = readValue(query, i, values);
+                    if(i < 0)
+                        return null;
+                    template.append(SLOT);
+                }
+                arguments.add(values);
+            }
+            else if(c == '"' || c == '\'' || c == '~' || c == '=' || c == '!' || c == '<' || c == '>')
+            {
+                // a quote or operator character outside of a comparison, let the parser deal with it
+                return null;
+            }
+            else
+            {
+                template.append(c);
+                i++;
+            }
+        }
+
+        return new ShapedQuery(template.toString(), arguments);
+    }
+
+    private static int operatorEnd(String query, int start)
+    {
+        int length = query.length();
+        char c = query.charAt(start);
+        if(c == '=')
+        {
+            int i = start + 1;
+            while (i < length && isAlpha(query.charAt(i)))
+            {
+                i++;
+            }
+            return i < length && query.charAt(i) == '=' ? i + 1 : -1;
+        }
+        if(c == '!')
+            return start + 1 < length && query.charAt(start + 1) == '=' ? start + 2 : -1;
+        if(c == '<' || c == '>')
+            return start + 1 < length && query.charAt(start + 1) == '=' ? start + 2 : start + 1;
+
+        return -1;
+    }
+
+    private static int readValue(String query, int start, List<String> values)
+    {
+        int length = query.length();
+        if(start >= length)
+            return -1;
+
+        char quote = query.charAt(start);
+        if(quote == '"' || quote == '\'')
+        {
+            StringBuilder sb = new StringBuilder();
+            int i = start + 1;
+            while (i < length)
+            {
+                char c = query.charAt(i);
+                if(c == '\\')
+                {
+                    // leave escape handling to the parser
+                    return -1;
+                }
+                else if(c == quote)
+                {
+                    values.add(sb.toString());
+                    return i + 1;
+                }
+                else
+                {
+                    sb.append(c);
+                    i++;
+                }
+            }
+            return -1;
+        }
+
+        int i = start;
+        while (i < length && !isReserved(query.charAt(i)))
+        {
+            i++;
+        }
+        if(i == start)
+            return -1;
+
+        values.add(query.substring(start, i));
+        return i;
+    }
+
+    private static int skipWhitespace(String query, int start)
+    {
+        int i = start;
+        while (i < query.length() && Character.isWhitespace(query.charAt(i)))
+        {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isAlpha(char c)
+    {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isReserved(char c)
+    {
+        switch (c)
+        {
+            case '"':
+            case '\'':
+            case '(':
+            case ')':
+            case ';':
+            case ',':
+            case '=':
+            case '!':
+            case '~':
+            case '<':
+            case '>':
+                return true;
+            default:
+                return Character.isWhitespace(c);
+        }
+    }
+
+    private Node bind(Node template, List<List<String>> arguments)
+    {
+        try
+        {
+            Iterator<List<String>> iterator = arguments.iterator();
+            Node bound = bind(template, iterator);
+            return iterator.hasNext() ? null : bound;
+        }
+        catch (NoSuchElementException | IllegalArgumentException e)
+        {
+            // the argument count does not fit the operator, let the parser report it
+            return null;
+        }
+    }
+
+    private Node bind(Node node, Iterator<List<String>> arguments)
+    {
+        if(node instanceof ComparisonNode)
+        {
+            ComparisonNode comparison = (ComparisonNode) node;
+            return new ComparisonNode(comparison.getOperator(), comparison.getSelector(), arguments.next());
+        }
+
+        LogicalNode logical = (LogicalNode) node;
+        List<Node> children = new ArrayList<>(logical.getChildren().size());
+        for (Node child : logical)
+        {
+            children.add(bind(child, arguments));
+        }
+        return logical instanceof AndNode ? new AndNode(children) : new OrNode(children);
+    }
+
+    private boolean matches(Node root, List<List<String>> arguments)
+    {
+        List<ComparisonNode> comparisons = new ArrayList<>();
+        collect(root, comparisons);
+        if(comparisons.size() != arguments.size())
+            return false;
+
+        for (int i = 0; i < comparisons.size(); i++)
+        {
+            if(!comparisons.get(i).getArguments().equals(arguments.get(i)))
+                return false;
+        }
+        return true;
+    }
+
+    private void collect(Node node, List<ComparisonNode> comparisons)
+    {
+        if(node instanceof ComparisonNode)
+        {
+            comparisons.add((ComparisonNode) node);
+            return;
+        }
+
+        for (Node child : (LogicalNode) node)
+        {
+            collect(child, comparisons);
+        }
+    }
+
+    static class ShapedQuery
+    {
+        private final String template;
+        private final List<List<String>> arguments;
+
+        ShapedQuery(String template, List<List<String>> arguments)
+        {
+            this.template = template;
+            this.arguments = arguments;
+        }
+
+        String getTemplate()
+        {
+            return template;
+        }
+
+        List<List<String>> getArguments()
+        {
+            return arguments;
+        }
+    }
+
+    private static class Template
+    {
+        // null when the template could not be verified against the parser
+        private final Node root;
+
+        private Template(Node root)
+        {
+            this.root = root;
+        }
+    }
+}
@@ -7,6 +7,8 @@ import com.dottydingo.hyperion.core.model.PersistentHistoryEntry;
 import com.dottydingo.hyperion.core.model.PersistentObject;
 import com.dottydingo.hyperion.core.key.KeyConverter;
 import com.dottydingo.hyperion.core.persistence.*;
+import com.dottydingo.hyperion.core.persistence.cache.EntityCache;
+import com.dottydingo.hyperion.core.persistence.cache.EntityResponseCache;
 import com.dottydingo.hyperion.core.persistence.dao.Dao;
 import com.dottydingo.hyperion.core.persistence.event.EntityChangeListener;
 import com.dottydingo.hyperion.core.persistence.event.PersistentChangeListener;
@@ -22,7 +24,7 @@ import java.util.regex.Pattern;
  */
 public class EntityPlugin<C extends ApiObject<ID>,P extends PersistentObject<ID>,ID extends Serializable>
 {
-    private static final Pattern RESERVED_PARAMETERS = Pattern.compile("start|limit|query|fields|sort|version|trace|cid|collection",
+    private static final Pattern RESERVED_PARAMETERS = Pattern.compile("start|limit|query|fields|sort|version|trace|cid|collection|continuation|count|stream",
             Pattern.CASE_INSENSITIVE);
 
     private String endpointName;
@@ -36,6 +38,19 @@ public class EntityPlugin<C extends ApiObject<ID>,P extends PersistentObject<ID>
     private Dao<P,ID,?,?> dao;
     private PersistenceFilter<P> persistenceFilter = new EmptyPersistenceFilter<P>();
 
+    private CountMode countMode = CountMode.EXACT;
+    private Integer maxCount;
+    private CountEstimator countEstimator;
+
+    private EntityCache<ID,P> entityCache;
+    private EntityResponseCache<ID> responseCache;
+
+    private boolean useManagedInstances = false;
+    private boolean strictTimestamps = false;
+    private boolean queryDeleteEnabled = false;
+    private boolean queryUpdateEnabled = false;
+    private boolean projectionEnabled = false;
+
     private boolean historyEnabled = false;
     private Class<? extends PersistentHistoryEntry> historyType;
 
@@ -155,6 +170,36 @@ public class EntityPlugin<C extends ApiObject<ID>,P extends PersistentObject<ID>
         this.cacheMaxAge = cacheMaxAge;
     }
 
+    public CountMode getCountMode()
+    {
+        return countMode;
+    }
+
+    public void setCountMode(CountMode countMode)
+    {
+        this.countMode = countMode;
+    }
+
+    public Integer getMaxCount()
+    {
+        return maxCount;
+    }
+
+    public void setMaxCount(Integer maxCount)
+    {
+        this.maxCount = maxCount;
+    }
+
+    public CountEstimator getCountEstimator()
+    {
+        return countEstimator;
+    }
+
+    public void setCountEstimator(CountEstimator countEstimator)
+    {
+        this.countEstimator = countEstimator;
+    }
+
     public Dao<P, ID,?,?> getDao()
     {
         return dao;
@@ -170,6 +215,108 @@ public class EntityPlugin<C extends ApiObject<ID>,P extends PersistentObject<ID>
         return limitMethods;
     }
 
+    public EntityCache<ID, P> getEntityCache()
+    {
+        return entityCache;
+    }
+
+    public void setEntityCache(EntityCache<ID, P> entityCache)
+    {
+        this.entityCache = entityCache;
+    }
+
+    /**
+     * Determine if the entity has caches that must be invalidated when items are changed
+     * @return true if there are caches
+     */
+    public boolean hasCaches()
+    {
+        return entityCache != null || responseCache != null;
+    }
+
+    /**
+     * Remove an item from the caches
+     * @param id The id of the item
+     */
+    public void invalidateCaches(ID id)
+    {
+        if(entityCache != null)
+            entityCache.invalidate(id);
+        if(responseCache != null)
+            responseCache.getEntityCache().invalidate(id);
+    }
+
+    /**
+     * Remove all items from the caches
+     */
+    public void clearCaches()
+    {
+        if(entityCache != null)
+            entityCache.clear();
+        if(responseCache != null)
+            responseCache.getEntityCache().clear();
+    }
+
+    public EntityResponseCache<ID> getResponseCache()
+    {
+        return responseCache;
+    }
+
+    public void setResponseCache(EntityResponseCache<ID> responseCache)
+    {
+        this.responseCache = responseCache;
+    }
+
+    public boolean isUseManagedInstances()
+    {
+        return useManagedInstances;
+    }
+
+    public void setUseManagedInstances(boolean useManagedInstances)
+    {
+        this.useManagedInstances = useManagedInstances;
+    }
+
+    public boolean isStrictTimestamps()
+    {
+        return strictTimestamps;
+    }
+
+    public void setStrictTimestamps(boolean strictTimestamps)
+    {
+        this.strictTimestamps = strictTimestamps;
+    }
+
+    public boolean isQueryDeleteEnabled()
+    {
+        return queryDeleteEnabled;
+    }
+
+    public void setQueryDeleteEnabled(boolean queryDeleteEnabled)
+    {
+        this.queryDeleteEnabled = queryDeleteEnabled;
+    }
+
+    public boolean isQueryUpdateEnabled()
+    {
+        return queryUpdateEnabled;
+    }
+
+    public void setQueryUpdateEnabled(boolean queryUpdateEnabled)
+    {
+        this.queryUpdateEnabled = queryUpdateEnabled;
+    }
+
+    public boolean isProjectionEnabled()
+    {
+        return projectionEnabled;
+    }
+
+    public void setProjectionEnabled(boolean projectionEnabled)
+    {
+        this.projectionEnabled = projectionEnabled;
+    }
+
     public List<PersistentChangeListener<C,ID>> getPersistentChangeListeners()
     {
         return persistentChangeListeners;
@@ -0,0 +1,14 @@
+package com.dottydingo.hyperion.core.translation;
+
+/**
+ * A field mapper that reads persistent associations when converting to the client representation. Declaring the
+ * paths lets them be fetched for all of the results of a query up front instead of lazily for each row.
+ */
+public interface AssociationFieldMapper<C,P> extends FieldMapper<C,P>
+{
+    /**
+     * Return the association paths read by this mapper
+     * @return The paths relative to the persistent object, nested associations are separated by a period
+     */
+    String[] getAssociationPaths();
+}
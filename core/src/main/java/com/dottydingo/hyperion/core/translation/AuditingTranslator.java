@@ -6,6 +6,7 @@ import com.dottydingo.hyperion.core.model.AuditablePersistentObject;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 /**
  * A base field mapper for auditable entities
@@ -52,4 +53,17 @@ public abstract class AuditingTranslator<C extends AuditableApiObject,P extends
         return dirty;
     }
 
+    @Override
+    public Map<String, Object> buildBulkUpdate(C client, PersistenceContext context)
+    {
+        Map<String, Object> values = super.buildBulkUpdate(client, context);
+
+        if(values != null && !values.isEmpty())
+        {
+            values.put("modified", context.getCurrentTimestamp());
+            values.put("modifiedBy", context.getUserContext().getUserId());
+        }
+
+        return values;
+    }
 }
@@ -5,29 +5,50 @@ import com.dottydingo.hyperion.api.exception.InternalException;
 import com.dottydingo.hyperion.core.persistence.PersistenceContext;
 import com.dottydingo.hyperion.core.model.PersistentObject;
 import com.dottydingo.hyperion.core.endpoint.pipeline.auth.AuthorizationContext;
+import com.dottydingo.hyperion.core.endpoint.pipeline.auth.RowIndependentAuthorization;
+import com.dottydingo.hyperion.core.endpoint.pipeline.auth.RowIndependentWriteAuthorization;
 
 import java.io.Serializable;
+import java.lang.reflect.Method;
 import java.util.*;
 
 /**
  */
-public abstract class BaseTranslator<C extends ApiObject,P extends PersistentObject> implements Translator<C,P>
+public abstract class BaseTranslator<C extends ApiObject,P extends PersistentObject>
+        implements Translator<C,P>, BulkUpdateTranslator<C>, ProjectionTranslator,
+        FetchPlanTranslator
 {
     protected TypeMapper clientTypeMapper;
     protected TypeMapper persistentTypeMapper;
     private Map<String,FieldMapper> fieldMapperMap = new HashMap<String, FieldMapper>();
+    private boolean uncoveredCopyHooks;
+    private boolean bulkUpdateEnabled = true;
+    private boolean uncoveredConvertHooks;
 
 
 
     protected abstract C createClientInstance();
     protected abstract P createPersistentInstance();
 
+    /**
+     * Set to false when the translator writes values that its field mappers do not express so that updates by query
+     * are applied to each item. Overridden copy and wrapper hooks are detected without this. Defaults to true.
+     * @param bulkUpdateEnabled false to apply updates by query to each item
+     */
+    public void setBulkUpdateEnabled(boolean bulkUpdateEnabled)
+    {
+        this.bulkUpdateEnabled = bulkUpdateEnabled;
+    }
+
     public void init()
     {
         clientTypeMapper = new TypeMapper(createClientInstance().getClass());
         persistentTypeMapper = new TypeMapper(createPersistentInstance().getClass());
         initializeDefaultFieldMappers();
         initializeCustomFieldMappers();
+        resolveFieldMappers();
+        uncoveredCopyHooks = hasUncoveredCopyHooks();
+        uncoveredConvertHooks = hasUncoveredConvertHooks();
     }
 
     protected void beforeConvert(ObjectWrapper<C> clientObjectWrapper, ObjectWrapper<P> persistentObjectWrapper,
@@ -98,6 +119,158 @@ public abstract class BaseTranslator<C extends ApiObject,P extends PersistentObj
         return false;
     }
 
+    /**
+     * Build the values for a bulk update. Only fields handled by a {@link DefaultFieldMapper} can be applied without
+     * loading the items, null is returned if any other mapper would write a value, if writability depends on the
+     * row, if bulk updates are disabled, or if the copy or wrapper hooks are overridden without also overriding this
+     * method.
+     */
+    @Override
+    public Map<String,Object> buildBulkUpdate(C client, PersistenceContext context)
+    {
+        AuthorizationContext authorizationContext = context.getAuthorizationContext();
+        if(!bulkUpdateEnabled || uncoveredCopyHooks
+                || !(authorizationContext instanceof RowIndependentWriteAuthorization))
+            return null;
+
+        RowIndependentWriteAuthorization writeAuthorization = (RowIndependentWriteAuthorization) authorizationContext;
+        ObjectWrapper<C> clientObjectWrapper = createClientObjectWrapper(client,context);
+
+        Map<String,Object> values = new LinkedHashMap<String, Object>();
+        for (FieldMapper mapper : fieldMapperMap.values())
+        {
+            String fieldName = mapper.getClientFieldName();
+            if(mapper instanceof ReadOnlyFieldMapper || mapper instanceof IdFieldMapper)
+                continue;
+
+            boolean provided = context.isFieldProvided(client, fieldName);
+            if(mapper.getClass() != DefaultFieldMapper.class)
+            {
+                // a custom mapper can only be skipped when there is nothing for it to write
+                if(provided || clientTypeMapper.getFieldType(fieldName) == null
+                        || clientObjectWrapper.getValue(fieldName) != null)
+                    return null;
+                continue;
+            }
+
+            DefaultFieldMapper<C,P> defaultMapper = (DefaultFieldMapper<C, P>) mapper;
+            Object value = defaultMapper.convertClientValue(clientObjectWrapper, context);
+            if(value == null && !provided)
+                continue;
+
+            Boolean writable = writeAuthorization.isWritableOnUpdate(fieldName);
+            if(writable == null)
+                return null;
+
+            if(writable)
+                values.put(defaultMapper.getPersistentFieldName(), value);
+        }
+
+        return values;
+    }
+
+    /**
+     * Determine if a subclass overrides the copy or wrapper hooks below the class that provides the bulk update
+     * values. Those hooks would be skipped by a bulk update.
+     */
+    private boolean hasUncoveredCopyHooks()
+    {
+        for (Class<?> type = getClass(); type != BaseTranslator.class; type = type.getSuperclass())
+        {
+            if(declares(type, "buildBulkUpdate"))
+                return false;
+            if(declares(type, "beforeCopy") || declares(type, "afterCopy") || declares(type, "copyClient")
+                    || declares(type, "createClientObjectWrapper") || declares(type, "createPersistentObjectWrapper"))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Return the persistent properties read for the requested fields. Only fields handled by a default mapper can be
+     * projected, null is returned if no fields were requested, if any other mapper applies, if readability depends on
+     * the row, or if the conversion hook is overridden without also overriding this method.
+     */
+    @Override
+    public Set<String> getProjection(PersistenceContext context)
+    {
+        if(uncoveredConvertHooks || context.getRequestedFields() == null)
+            return null;
+
+        TranslationPlan plan = getTranslationPlan(context);
+        FieldMapper[] mappers = plan.getMappers();
+
+        Set<String> properties = new LinkedHashSet<String>();
+        properties.add("id");
+        for (int i = 0; i < mappers.length; i++)
+        {
+            FieldMapper mapper = mappers[i];
+            Class<?> mapperType = mapper.getClass();
+            if(plan.isRowChecked(i) || (mapperType != DefaultFieldMapper.class
+                    && mapperType != DefaultIdFieldMapper.class && mapperType != ReadOnlyFieldMapper.class))
+                return null;
+
+            properties.add(((DefaultFieldMapper) mapper).getPersistentFieldName());
+        }
+
+        return properties;
+    }
+
+    /**
+     * Return the association paths declared by the {@link AssociationFieldMapper}s that apply to the current request.
+     */
+    @Override
+    public Set<String> getFetchPaths(PersistenceContext context)
+    {
+        return getAssociationPaths(Arrays.asList(getTranslationPlan(context).getMappers()));
+    }
+
+    /**
+     * Return the association paths declared by all of the {@link AssociationFieldMapper}s.
+     */
+    @Override
+    public Set<String> getAllFetchPaths()
+    {
+        return getAssociationPaths(fieldMapperMap.values());
+    }
+
+    private Set<String> getAssociationPaths(Collection<FieldMapper> mappers)
+    {
+        Set<String> paths = new LinkedHashSet<String>();
+        for (FieldMapper mapper : mappers)
+        {
+            if(mapper instanceof AssociationFieldMapper)
+                paths.addAll(Arrays.asList(((AssociationFieldMapper) mapper).getAssociationPaths()));
+        }
+        return paths;
+    }
+
+    /**
+     * Determine if a subclass overrides the conversion of persistent objects below the class that provides the
+     * projection. Those overrides may read properties that would not be loaded.
+     */
+    private boolean hasUncoveredConvertHooks()
+    {
+        for (Class<?> type = getClass(); type != BaseTranslator.class; type = type.getSuperclass())
+        {
+            if(declares(type, "getProjection"))
+                return false;
+            if(declares(type, "convertPersistent") || declares(type, "createPersistentObjectWrapper"))
+                return true;
+        }
+        return false;
+    }
+
+    private boolean declares(Class<?> type, String name)
+    {
+        for (Method method : type.getDeclaredMethods())
+        {
+            if(method.getName().equals(name))
+                return true;
+        }
+        return false;
+    }
+
     @Override
     public C convertPersistent(P persistent, PersistenceContext context)
     {
@@ -106,17 +279,15 @@ public abstract class BaseTranslator<C extends ApiObject,P extends PersistentObj
         ObjectWrapper<P> persistentObjectWrapper = createPersistentObjectWrapper(persistent,context);
         ObjectWrapper<C> clientObjectWrapper = createClientObjectWrapper(clientObject,context);
 
-        Set<String> requestedFields = context.getRequestedFields();
+        TranslationPlan plan = getTranslationPlan(context);
         AuthorizationContext authorizationContext = context.getAuthorizationContext();
 
-        for (Map.Entry<String, FieldMapper> entry : fieldMapperMap.entrySet())
+        FieldMapper[] mappers = plan.getMappers();
+        for (int i = 0; i < mappers.length; i++)
         {
-            if((requestedFields == null || requestedFields.contains(entry.getKey()))
-                    && authorizationContext.isReadable(persistent,entry.getKey()))
-            {
-
-                entry.getValue().convertToClient(persistentObjectWrapper,clientObjectWrapper,context);
-            }
+            FieldMapper mapper = mappers[i];
+            if(!plan.isRowChecked(i) || authorizationContext.isReadable(persistent,mapper.getClientFieldName()))
+                mapper.convertToClient(persistentObjectWrapper,clientObjectWrapper,context);
         }
 
         convertPersistent(clientObject,persistent,context);
@@ -126,6 +297,61 @@ public abstract class BaseTranslator<C extends ApiObject,P extends PersistentObj
 
     protected void convertPersistent(C client, P persistent, PersistenceContext context){}
 
+    /**
+     * Return the plan for converting persistent objects in the current request, building it on first use.
+     * @param context The persistence context
+     * @return The plan
+     */
+    protected TranslationPlan getTranslationPlan(PersistenceContext context)
+    {
+        Set<String> requestedFields = context.getRequestedFields();
+        AuthorizationContext authorizationContext = context.getAuthorizationContext();
+
+        TranslationPlan plan = context.getTranslationPlan(this);
+        if(plan == null || !plan.isValidFor(requestedFields,authorizationContext))
+        {
+            plan = createTranslationPlan(requestedFields,authorizationContext);
+            context.setTranslationPlan(this,plan);
+        }
+
+        return plan;
+    }
+
+    private TranslationPlan createTranslationPlan(Set<String> requestedFields,
+                                                  AuthorizationContext authorizationContext)
+    {
+        RowIndependentAuthorization rowIndependentAuthorization = null;
+        if(authorizationContext instanceof RowIndependentAuthorization)
+            rowIndependentAuthorization = (RowIndependentAuthorization) authorizationContext;
+
+        List<FieldMapper> mappers = new ArrayList<FieldMapper>();
+        List<Boolean> rowChecked = new ArrayList<Boolean>();
+        for (Map.Entry<String, FieldMapper> entry : fieldMapperMap.entrySet())
+        {
+            if(requestedFields != null && !requestedFields.contains(entry.getKey()))
+                continue;
+
+            Boolean readable = null;
+            if(rowIndependentAuthorization != null)
+                readable = rowIndependentAuthorization.isReadable(entry.getKey());
+
+            if(readable == null || readable)
+            {
+                mappers.add(entry.getValue());
+                rowChecked.add(readable == null);
+            }
+        }
+
+        boolean[] checked = new boolean[rowChecked.size()];
+        for (int i = 0; i < checked.length; i++)
+        {
+            checked[i] = rowChecked.get(i);
+        }
+
+        return new TranslationPlan(requestedFields,authorizationContext,
+                mappers.toArray(new FieldMapper[mappers.size()]),checked);
+    }
+
     @Override
     public List<C> convertPersistent(List<P> persistent, PersistenceContext context)
     {
@@ -188,6 +414,15 @@ public abstract class BaseTranslator<C extends ApiObject,P extends PersistentObj
             throw new InternalException("Mapper for the id field must be an instance of IdFieldMapper");
     }
 
+    private void resolveFieldMappers()
+    {
+        for (FieldMapper mapper : fieldMapperMap.values())
+        {
+            if(mapper instanceof ResolvableFieldMapper)
+                ((ResolvableFieldMapper) mapper).resolve(clientTypeMapper, persistentTypeMapper);
+        }
+    }
+
     protected List<FieldMapper> getCustomFieldMappers()
     {
         return new ArrayList<FieldMapper>();
@@ -0,0 +1,21 @@
+package com.dottydingo.hyperion.core.translation;
+
+import com.dottydingo.hyperion.api.ApiObject;
+import com.dottydingo.hyperion.core.persistence.PersistenceContext;
+
+import java.util.Map;
+
+/**
+ * Optional capability for a {@link Translator} that can express an update as a fixed set of persistent values so
+ * that it can be applied to every item matching a query without loading the items.
+ */
+public interface BulkUpdateTranslator<C extends ApiObject>
+{
+    /**
+     * Build the persistent values written when applying the client object to every matching item
+     * @param client The sparse client object
+     * @param context The persistence context
+     * @return The values keyed by persistent property name, or null if the update must be applied to each item
+     */
+    Map<String,Object> buildBulkUpdate(C client, PersistenceContext context);
+}
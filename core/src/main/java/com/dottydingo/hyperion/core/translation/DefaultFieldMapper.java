@@ -4,13 +4,18 @@ import com.dottydingo.hyperion.core.persistence.PersistenceContext;
 
 /**
  */
-public class DefaultFieldMapper <C,P> implements FieldMapper<C,P>
+public class DefaultFieldMapper <C,P> implements ResolvableFieldMapper<C,P>
 {
     private String clientFieldName;
     private String persistentFieldName;
     protected ValueConverter valueConverter;
     protected PropertyChangeEvaluator propertyChangeEvaluator = new DefaultPropertyChangeEvaluator();
 
+    private TypeMapper clientTypeMapper;
+    private TypeMapper persistentTypeMapper;
+    private PropertyAccessor clientAccessor;
+    private PropertyAccessor persistentAccessor;
+
     public DefaultFieldMapper(String name)
     {
         this(name,name,null);
@@ -39,41 +44,97 @@ public class DefaultFieldMapper <C,P> implements FieldMapper<C,P>
         this.propertyChangeEvaluator = propertyChangeEvaluator;
     }
 
+    @Override
+    public void resolve(TypeMapper clientTypeMapper, TypeMapper persistentTypeMapper)
+    {
+        this.clientTypeMapper = clientTypeMapper;
+        this.persistentTypeMapper = persistentTypeMapper;
+        this.clientAccessor = clientTypeMapper.getAccessor(getClientFieldName());
+        this.persistentAccessor = persistentTypeMapper.getAccessor(getPersistentFieldName());
+    }
+
     @Override
     public void convertToClient(ObjectWrapper<P> persistentObjectWrapper,
                                 ObjectWrapper<C> clientObjectWrapper, PersistenceContext context)
     {
-        Object persistentValue = persistentObjectWrapper.getValue(getPersistentFieldName());
+        Object persistentValue = getPersistentValue(persistentObjectWrapper);
 
         if(valueConverter != null)
         {
             persistentValue = valueConverter.convertToClientValue(persistentValue,context);
         }
 
-        clientObjectWrapper.setValue(getClientFieldName(), persistentValue);
+        setClientValue(clientObjectWrapper, persistentValue);
     }
 
     @Override
     public boolean convertToPersistent(ObjectWrapper<C> clientObjectWrapper,
                                     ObjectWrapper<P> persistentObjectWrapper, PersistenceContext context)
     {
-        Object clientValue = clientObjectWrapper.getValue(getClientFieldName());
-        if(valueConverter != null)
-        {
-            clientValue = valueConverter.convertToPersistentValue(clientValue,context);
-        }
+        Object clientValue = convertClientValue(clientObjectWrapper, context);
 
         boolean dirty = false;
 
         // if a value is explicitly provided or field tracking is turned on and the value was set (detects explicit null values)
         if(clientValue != null || context.isFieldProvided(clientObjectWrapper.getWrappedObject(),getClientFieldName()))
         {
-            dirty = propertyChangeEvaluator.hasChanged(persistentObjectWrapper.getValue(persistentFieldName),
+            dirty = propertyChangeEvaluator.hasChanged(getPersistentValue(persistentObjectWrapper),
                     clientValue);
             if(dirty)
-                persistentObjectWrapper.setValue(getPersistentFieldName(), clientValue);
+                setPersistentValue(persistentObjectWrapper, clientValue);
         }
 
         return dirty;
     }
+
+    /**
+     * Read the client value and convert it to the persistent representation
+     * @param clientObjectWrapper The client object
+     * @param context The persistence context
+     * @return The converted value
+     */
+    public Object convertClientValue(ObjectWrapper<C> clientObjectWrapper, PersistenceContext context)
+    {
+        Object clientValue = getClientValue(clientObjectWrapper);
+        if(valueConverter != null)
+        {
+            clientValue = valueConverter.convertToPersistentValue(clientValue,context);
+        }
+        return clientValue;
+    }
+
+    // the resolved accessors are only used when the wrapper uses the type mapper they were resolved against,
+    // otherwise fall back to a lookup by name
+
+    protected Object getClientValue(ObjectWrapper<C> clientObjectWrapper)
+    {
+        if(clientAccessor != null && clientObjectWrapper.getTypeMapper() == clientTypeMapper)
+            return clientObjectWrapper.getValue(clientAccessor);
+
+        return clientObjectWrapper.getValue(getClientFieldName());
+    }
+
+    protected void setClientValue(ObjectWrapper<C> clientObjectWrapper, Object value)
+    {
+        if(clientAccessor != null && clientObjectWrapper.getTypeMapper() == clientTypeMapper)
+            clientObjectWrapper.setValue(clientAccessor, value);
+        else
+            clientObjectWrapper.setValue(getClientFieldName(), value);
+    }
+
+    protected Object getPersistentValue(ObjectWrapper<P> persistentObjectWrapper)
+    {
+        if(persistentAccessor != null && persistentObjectWrapper.getTypeMapper() == persistentTypeMapper)
+            return persistentObjectWrapper.getValue(persistentAccessor);
+
+        return persistentObjectWrapper.getValue(getPersistentFieldName());
+    }
+
+    protected void setPersistentValue(ObjectWrapper<P> persistentObjectWrapper, Object value)
+    {
+        if(persistentAccessor != null && persistentObjectWrapper.getTypeMapper() == persistentTypeMapper)
+            persistentObjectWrapper.setValue(persistentAccessor, value);
+        else
+            persistentObjectWrapper.setValue(getPersistentFieldName(), value);
+    }
 }
@@ -21,7 +21,7 @@ public class DefaultIdFieldMapper<C,P> extends DefaultFieldMapper<C,P> implement
     @Override
     public <ID extends Serializable> ID convertId(ObjectWrapper<C> client, PersistenceContext context)
     {
-        Object value = client.getValue("id");
+        Object value = getClientValue(client);
         if(valueConverter != null)
             value = valueConverter.convertToClientValue(value,context);
 
@@ -0,0 +1,25 @@
+package com.dottydingo.hyperion.core.translation;
+
+import com.dottydingo.hyperion.core.persistence.PersistenceContext;
+
+import java.util.Set;
+
+/**
+ * Optional capability for a {@link Translator} that can report the persistent associations it reads when converting
+ * persistent objects for a request.
+ */
+public interface FetchPlanTranslator
+{
+    /**
+     * Return the association paths read when converting persistent objects in the current request
+     * @param context The persistence context
+     * @return The association paths, empty if no associations are read
+     */
+    Set<String> getFetchPaths(PersistenceContext context);
+
+    /**
+     * Return the association paths read by any request, regardless of the requested fields or the caller
+     * @return The association paths, empty if no associations are read
+     */
+    Set<String> getAllFetchPaths();
+}
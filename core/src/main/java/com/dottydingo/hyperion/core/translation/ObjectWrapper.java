@@ -23,6 +23,16 @@ public class ObjectWrapper<T>
         return typeMapper.getValue(wrappedObject,property);
     }
 
+    public void setValue(PropertyAccessor accessor,Object value)
+    {
+        accessor.setValue(wrappedObject, value);
+    }
+
+    public Object getValue(PropertyAccessor accessor)
+    {
+        return accessor.getValue(wrappedObject);
+    }
+
     public T getWrappedObject()
     {
         return wrappedObject;
@@ -0,0 +1,19 @@
+package com.dottydingo.hyperion.core.translation;
+
+import com.dottydingo.hyperion.core.persistence.PersistenceContext;
+
+import java.util.Set;
+
+/**
+ * Optional capability for a {@link Translator} that can report the persistent properties it reads when converting
+ * persistent objects for a request, so that a query can load only those properties.
+ */
+public interface ProjectionTranslator
+{
+    /**
+     * Return the persistent properties read when converting persistent objects in the current request
+     * @param context The persistence context
+     * @return The persistent property names, always including the id, or null if the whole object is needed
+     */
+    Set<String> getProjection(PersistenceContext context);
+}
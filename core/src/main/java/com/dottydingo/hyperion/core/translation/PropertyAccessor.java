@@ -0,0 +1,91 @@
+package com.dottydingo.hyperion.core.translation;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+
+/**
+ * Pre-resolved access to a single bean property. Method handles for the getter and setter are bound once, adapted to
+ * take and return Object, and invoked directly instead of looking the property up by name on each access.
+ */
+public class PropertyAccessor
+{
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private final String name;
+    private final MethodHandle readHandle;
+    private final MethodHandle writeHandle;
+
+    public PropertyAccessor(String name, Method readMethod, Method writeMethod)
+    {
+        this.name = name;
+        this.readHandle = unreflect(readMethod, GETTER_TYPE);
+        this.writeHandle = unreflect(writeMethod, SETTER_TYPE);
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public Object getValue(Object bean)
+    {
+        if(readHandle == null)
+            return null;
+
+        try
+        {
+            return (Object) readHandle.invokeExact(bean);
+        }
+        catch (Throwable t)
+        {
+            throw propagate(t);
+        }
+    }
+
+    public void setValue(Object bean, Object value)
+    {
+        if(writeHandle == null)
+            return;
+
+        try
+        {
+            writeHandle.invokeExact(bean, value);
+        }
+        catch (Throwable t)
+        {
+            throw propagate(t);
+        }
+    }
+
+    private MethodHandle unreflect(Method method, MethodType type)
+    {
+        if(method == null)
+            return null;
+
+        // public accessors declared on a non public class are not accessible without this
+        if(!method.isAccessible())
+            method.setAccessible(true);
+
+        try
+        {
+            return MethodHandles.lookup().unreflect(method).asType(type);
+        }
+        catch (IllegalAccessException e)
+        {
+            throw new RuntimeException(String.format("Error accessing property %s", name), e);
+        }
+    }
+
+    private RuntimeException propagate(Throwable t)
+    {
+        if(t instanceof RuntimeException)
+            return (RuntimeException) t;
+        if(t instanceof Error)
+            throw (Error) t;
+
+        return new RuntimeException(String.format("Error accessing property %s", name), t);
+    }
+}
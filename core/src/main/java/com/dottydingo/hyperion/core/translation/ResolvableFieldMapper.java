@@ -0,0 +1,14 @@
+package com.dottydingo.hyperion.core.translation;
+
+/**
+ * A field mapper that resolves its property accessors once when the translator is initialized
+ */
+public interface ResolvableFieldMapper<C,P> extends FieldMapper<C,P>
+{
+    /**
+     * Resolve the property accessors for this mapper
+     * @param clientTypeMapper The client type mapper
+     * @param persistentTypeMapper The persistent type mapper
+     */
+    void resolve(TypeMapper clientTypeMapper, TypeMapper persistentTypeMapper);
+}
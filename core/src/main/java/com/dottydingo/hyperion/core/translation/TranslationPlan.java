@@ -0,0 +1,56 @@
+package com.dottydingo.hyperion.core.translation;
+
+import com.dottydingo.hyperion.core.endpoint.pipeline.auth.AuthorizationContext;
+
+import java.util.Set;
+
+/**
+ * The field mappers that apply when converting persistent objects for a single request. The plan is built once from
+ * the requested fields and the authorization context and then reused for every row.
+ */
+public class TranslationPlan
+{
+    private Set<String> requestedFields;
+    private AuthorizationContext authorizationContext;
+    private FieldMapper[] mappers;
+    private boolean[] rowChecked;
+
+    public TranslationPlan(Set<String> requestedFields, AuthorizationContext authorizationContext,
+                           FieldMapper[] mappers, boolean[] rowChecked)
+    {
+        this.requestedFields = requestedFields;
+        this.authorizationContext = authorizationContext;
+        this.mappers = mappers;
+        this.rowChecked = rowChecked;
+    }
+
+    /**
+     * Return the mappers that apply to this request
+     * @return The mappers
+     */
+    public FieldMapper[] getMappers()
+    {
+        return mappers;
+    }
+
+    /**
+     * Return a flag indicating if the mapper at the specified index requires a per row authorization check
+     * @param index The mapper index
+     * @return True if the row must be checked, false otherwise
+     */
+    public boolean isRowChecked(int index)
+    {
+        return rowChecked[index];
+    }
+
+    /**
+     * Return a flag indicating if this plan was built for the supplied request state
+     * @param requestedFields The requested fields
+     * @param authorizationContext The authorization context
+     * @return True if the plan can be used, false otherwise
+     */
+    public boolean isValidFor(Set<String> requestedFields, AuthorizationContext authorizationContext)
+    {
+        return this.requestedFields == requestedFields && this.authorizationContext == authorizationContext;
+    }
+}
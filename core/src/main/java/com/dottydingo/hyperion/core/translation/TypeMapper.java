@@ -5,8 +5,12 @@ import com.fasterxml.classmate.ResolvedType;
 import com.fasterxml.classmate.ResolvedTypeWithMembers;
 import com.fasterxml.classmate.TypeResolver;
 import com.fasterxml.classmate.members.ResolvedField;
-import net.sf.cglib.beans.BeanMap;
 
+import java.beans.BeanInfo;
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Method;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
@@ -19,7 +23,7 @@ import java.util.Set;
 public class TypeMapper
 {
     private Map<String,ResolvedField> fields = new HashMap<String, ResolvedField>();
-    private BeanMap beanMap;
+    private Map<String,PropertyAccessor> accessors = new HashMap<String, PropertyAccessor>();
 
     public TypeMapper(Class type)
     {
@@ -34,7 +38,7 @@ public class TypeMapper
             fields.put(field.getName(),field);
         }
 
-        beanMap = BeanMap.create(createInstance(type));
+        createAccessors(type);
     }
 
     public Class getFieldType(String fieldName)
@@ -45,14 +49,30 @@ public class TypeMapper
         return field.getType().getErasedType();
     }
 
+    /**
+     * Return the pre-resolved accessor for a property
+     * @param property The property name
+     * @return The accessor or null if the type does not have the property
+     */
+    public PropertyAccessor getAccessor(String property)
+    {
+        return accessors.get(property);
+    }
+
     public Object getValue(Object bean,String field)
     {
-        return beanMap.get(bean,field);
+        PropertyAccessor accessor = accessors.get(field);
+        if(accessor == null)
+            return null;
+
+        return accessor.getValue(bean);
     }
 
     public void setValue(Object bean, String property, Object value)
     {
-        beanMap.put(bean,property,value);
+        PropertyAccessor accessor = accessors.get(property);
+        if(accessor != null)
+            accessor.setValue(bean, value);
     }
 
     public Set<String> getFieldNames()
@@ -60,17 +80,26 @@ public class TypeMapper
         return fields.keySet();
     }
 
-    private Object createInstance(Class type)
+    private void createAccessors(Class type)
     {
+        BeanInfo beanInfo;
         try
         {
-            return type.newInstance();
+            beanInfo = Introspector.getBeanInfo(type);
         }
-        catch (Exception e)
+        catch (IntrospectionException e)
         {
-            throw new RuntimeException(
-                    String.format("Error creating instance of %s",type.getName()),e);
+            throw new RuntimeException(String.format("Error introspecting %s",type.getName()),e);
         }
 
+        for (PropertyDescriptor descriptor : beanInfo.getPropertyDescriptors())
+        {
+            Method readMethod = descriptor.getReadMethod();
+            Method writeMethod = descriptor.getWriteMethod();
+            if(readMethod == null && writeMethod == null)
+                continue;
+
+            accessors.put(descriptor.getName(), new PropertyAccessor(descriptor.getName(), readMethod, writeMethod));
+        }
     }
 }
@@ -0,0 +1,113 @@
+package com.dottydingo.hyperion.core.endpoint.marshall;
+
+import com.dottydingo.hyperion.api.EntityResponse;
+import com.dottydingo.hyperion.api.ErrorResponse;
+import com.dottydingo.hyperion.api.Page;
+import com.dottydingo.hyperion.core.configuration.HyperionEndpointConfiguration;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.*;
+
+public class EntityStreamWriterTest
+{
+    private EndpointMarshaller endpointMarshaller;
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @Before
+    public void setup()
+    {
+        endpointMarshaller = new EndpointMarshaller();
+        endpointMarshaller.setConfiguration(new HyperionEndpointConfiguration());
+        endpointMarshaller.init();
+    }
+
+    @Test
+    public void testWrite() throws Exception
+    {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        EntityStreamWriter<SampleClient> writer = new EntityStreamWriter<>(endpointMarshaller, outputStream);
+        assertFalse(writer.isStarted());
+
+        writer.handleResult(buildClient(1L, "one"));
+        writer.handleResult(buildClient(2L, null));
+        assertTrue(writer.isStarted());
+
+        Page page = new Page();
+        page.setStart(1);
+        page.setResponseCount(2);
+        writer.complete(page);
+
+        EntityResponse<SampleClient> response = objectMapper.readValue(outputStream.toByteArray(),
+                objectMapper.getTypeFactory().constructParametricType(EntityResponse.class, SampleClient.class));
+
+        assertEquals(2, response.getEntries().size());
+        assertEquals(new Long(1), response.getEntries().get(0).getId());
+        assertEquals("one", response.getEntries().get(0).getStringField());
+        assertEquals(new Integer(2), response.getPage().getResponseCount());
+
+        // null fields are omitted just like a marshalled response
+        assertFalse(new String(outputStream.toByteArray(), "UTF-8").contains("totalCount"));
+    }
+
+    @Test
+    public void testWrite_empty() throws Exception
+    {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        EntityStreamWriter<SampleClient> writer = new EntityStreamWriter<>(endpointMarshaller, outputStream);
+
+        Page page = new Page();
+        page.setResponseCount(0);
+        writer.complete(page);
+
+        assertEquals("{\"entries\":[],\"page\":{\"responseCount\":0}}", new String(outputStream.toByteArray(), "UTF-8"));
+    }
+
+    @Test
+    public void testFail() throws Exception
+    {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        final int[] starts = new int[1];
+        EntityStreamWriter<SampleClient> writer = new EntityStreamWriter<SampleClient>(endpointMarshaller,
+                outputStream)
+        {
+            @Override
+            protected void onStart()
+            {
+                starts[0]++;
+            }
+        };
+
+        ErrorResponse error = new ErrorResponse();
+        error.setStatusCode(500);
+        error.setMessage("failed");
+
+        // nothing has been written so the error can still be returned normally
+        writer.fail(error);
+        assertEquals(0, outputStream.size());
+        assertEquals(0, starts[0]);
+
+        writer.handleResult(buildClient(1L, "one"));
+        writer.handleResult(buildClient(2L, "two"));
+        assertEquals(1, starts[0]);
+        writer.fail(error);
+
+        JsonNode response = objectMapper.readTree(outputStream.toByteArray());
+        assertEquals(2, response.get("entries").size());
+        assertFalse(response.has("page"));
+        assertEquals(500, response.get("error").get("statusCode").asInt());
+        assertEquals("failed", response.get("error").get("message").asText());
+    }
+
+    private SampleClient buildClient(Long id, String value)
+    {
+        SampleClient client = new SampleClient();
+        client.setId(id);
+        client.setStringField(value);
+        return client;
+    }
+}
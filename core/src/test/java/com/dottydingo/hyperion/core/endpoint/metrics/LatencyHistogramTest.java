@@ -0,0 +1,63 @@
+package com.dottydingo.hyperion.core.endpoint.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ */
+public class LatencyHistogramTest
+{
+    @Test
+    public void testBucketBounds() throws Exception
+    {
+        for (long value = 0; value < 1000000; value = value * 3 / 2 + 1)
+        {
+            long upper = LatencyHistogram.bucketUpperBound(LatencyHistogram.bucketIndex(value));
+            Assert.assertTrue(upper >= value);
+            Assert.assertTrue(upper - value <= Math.max(1, value / 16));
+        }
+    }
+
+    @Test
+    public void testPercentiles() throws Exception
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++)
+        {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(i));
+        }
+
+        Assert.assertEquals(1000, histogram.getCount());
+        Assert.assertEquals(1000, histogram.getMax());
+        Assert.assertEquals(500, histogram.getMean());
+        assertWithin(500, histogram.getPercentile(50));
+        assertWithin(990, histogram.getPercentile(99));
+        Assert.assertEquals(1000, histogram.getPercentile(100));
+
+        histogram.reset();
+        Assert.assertEquals(0, histogram.getCount());
+        Assert.assertEquals(0, histogram.getPercentile(50));
+    }
+
+    @Test
+    public void testPipelineMetrics() throws Exception
+    {
+        HistogramPipelineMetrics metrics = new HistogramPipelineMetrics();
+        PhaseMetricKey key = new PhaseMetricKey("GetPhase", "Item", "GET", 1);
+        metrics.recordPhase(key, 1000L, 2000000L);
+        metrics.recordPhase(new PhaseMetricKey("GetPhase", "Item", "GET", 1), 1000L, 2000000L);
+
+        Assert.assertEquals(1, metrics.getKeys().size());
+        Assert.assertEquals(2, metrics.getExecution(key).getCount());
+        Assert.assertEquals(2000, metrics.getExecution(key).getMax());
+        Assert.assertEquals(1, metrics.getQueueWait(key).getMax());
+        Assert.assertTrue(metrics.getExecutionSummary().get(0).startsWith("GetPhase/Item/GET/v1 count=2"));
+    }
+
+    private void assertWithin(long expected, long actual)
+    {
+        Assert.assertTrue(actual >= expected && actual <= expected + expected / 16);
+    }
+}
@@ -0,0 +1,146 @@
+package com.dottydingo.hyperion.core.endpoint.pipeline;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ */
+public class AdaptiveConcurrencyLimiterTest
+{
+    @Test
+    public void testRejectsOverLimit() throws Exception
+    {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter();
+        limiter.setLimit(2);
+        limiter.setQueueWaitBudget(0);
+
+        AdaptiveConcurrencyLimiter.Permit first = limiter.tryAcquire();
+        AdaptiveConcurrencyLimiter.Permit second = limiter.tryAcquire();
+        Assert.assertNotNull(first);
+        Assert.assertNotNull(second);
+        Assert.assertNull(limiter.tryAcquire());
+        Assert.assertEquals(2, limiter.getInFlight());
+        Assert.assertEquals(1, limiter.getRejectedCount());
+
+        first.release();
+        first.release();
+        Assert.assertEquals(1, limiter.getInFlight());
+        Assert.assertNotNull(limiter.tryAcquire());
+    }
+
+    @Test
+    public void testAdmitsWithinQueueWaitBudget() throws Exception
+    {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter();
+        limiter.setLimit(1);
+        limiter.setQueueWaitBudget(1000);
+
+        Assert.assertNotNull(limiter.tryAcquire());
+        Assert.assertNotNull(limiter.tryAcquire());
+        Assert.assertEquals(0, limiter.getRejectedCount());
+    }
+
+    @Test
+    public void testDisabled() throws Exception
+    {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter();
+        limiter.setLimit(1);
+        limiter.setQueueWaitBudget(0);
+        limiter.setEnabled(false);
+
+        Assert.assertNotNull(limiter.tryAcquire());
+        Assert.assertNotNull(limiter.tryAcquire());
+        Assert.assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void testBackoffOnLatencyIncrease() throws Exception
+    {
+        ManualClockLimiter limiter = new ManualClockLimiter();
+        limiter.setLimit(10);
+
+        limiter.sample("a", 1);
+        Assert.assertEquals(10, limiter.getLimit());
+
+        limiter.sample("a", 50);
+        Assert.assertEquals(9, limiter.getLimit());
+        Assert.assertEquals(new Long(1), limiter.getBaselineLatencies().get("a"));
+    }
+
+    @Test
+    public void testBackoffOncePerAverageLatency() throws Exception
+    {
+        ManualClockLimiter limiter = new ManualClockLimiter();
+        limiter.setLimit(10);
+
+        limiter.sample("a", 1);
+
+        // slow requests completing together are a single decrease
+        AdaptiveConcurrencyLimiter.Permit first = limiter.tryAcquire("a");
+        AdaptiveConcurrencyLimiter.Permit second = limiter.tryAcquire("a");
+        limiter.advance(50);
+        first.release();
+        second.release();
+        Assert.assertEquals(9, limiter.getLimit());
+    }
+
+    @Test
+    public void testBaselinePerKey() throws Exception
+    {
+        ManualClockLimiter limiter = new ManualClockLimiter();
+        limiter.setLimit(10);
+
+        // a request type that is always slow is not congestion
+        limiter.sample("fast", 1);
+        limiter.sample("slow", 50);
+        limiter.sample("fast", 1);
+        limiter.sample("slow", 60);
+        Assert.assertEquals(10, limiter.getLimit());
+        Assert.assertEquals(new Long(1), limiter.getBaselineLatencies().get("fast"));
+        Assert.assertEquals(new Long(50), limiter.getBaselineLatencies().get("slow"));
+
+        limiter.sample("slow", 150);
+        Assert.assertEquals(9, limiter.getLimit());
+    }
+
+    @Test
+    public void testBaselineWindow() throws Exception
+    {
+        ManualClockLimiter limiter = new ManualClockLimiter();
+        limiter.setLimit(10);
+        limiter.setSampleWindow(2);
+
+        limiter.sample("a", 1);
+        limiter.sample("a", 2);
+        limiter.sample("a", 5);
+        limiter.sample("a", 5);
+
+        // the window has moved past the fastest samples so the baseline follows the new latency
+        Assert.assertEquals(new Long(5), limiter.getBaselineLatencies().get("a"));
+    }
+
+    private static class ManualClockLimiter extends AdaptiveConcurrencyLimiter
+    {
+        private long now;
+
+        @Override
+        protected long nanoTime()
+        {
+            return now;
+        }
+
+        private void advance(long millis)
+        {
+            now += TimeUnit.MILLISECONDS.toNanos(millis);
+        }
+
+        private void sample(String key, long millis)
+        {
+            Permit permit = tryAcquire(key);
+            advance(millis);
+            permit.release();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.dottydingo.hyperion.core.endpoint.pipeline;
+
+import com.dottydingo.hyperion.api.exception.ServiceUnavailableException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ */
+public class SemaphoreExecutorTest
+{
+    private ExecutorService backing;
+
+    @Before
+    public void setup()
+    {
+        backing = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown()
+    {
+        backing.shutdownNow();
+    }
+
+    @Test
+    public void testLimitsConcurrency() throws Exception
+    {
+        SemaphoreExecutor executor = new SemaphoreExecutor(backing, 1);
+        executor.setMaxPermitWait(10);
+
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        executor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                started.countDown();
+                awaitQuietly(release);
+            }
+        });
+
+        Assert.assertTrue(started.await(1, TimeUnit.SECONDS));
+        Assert.assertEquals(1, executor.getInFlightCount());
+        Assert.assertEquals(0, executor.getAvailablePermits());
+
+        try
+        {
+            executor.execute(new NoOp());
+            Assert.fail("Expected rejection");
+        }
+        catch (ServiceUnavailableException e)
+        {
+            // expected
+        }
+
+        Assert.assertEquals(1, executor.getPermitWaitCount());
+        Assert.assertEquals(1, executor.getRejectedCount());
+
+        release.countDown();
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+        Assert.assertEquals(1, executor.getCompletedTaskCount());
+        Assert.assertEquals(1, executor.getAvailablePermits());
+    }
+
+    @Test
+    public void testAdjustConcurrency() throws Exception
+    {
+        SemaphoreExecutor executor = new SemaphoreExecutor(backing, 2);
+        executor.setMaxConcurrency(5);
+        Assert.assertEquals(5, executor.getMaxConcurrency());
+        Assert.assertEquals(5, executor.getAvailablePermits());
+
+        executor.setMaxConcurrency(1);
+        Assert.assertEquals(1, executor.getAvailablePermits());
+    }
+
+    @Test(expected = ServiceUnavailableException.class)
+    public void testRejectAfterShutdown()
+    {
+        SemaphoreExecutor executor = new SemaphoreExecutor(backing, 1);
+        executor.shutdown();
+        executor.execute(new NoOp());
+    }
+
+    private static void awaitQuietly(CountDownLatch latch)
+    {
+        try
+        {
+            latch.await(5, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class NoOp implements Runnable
+    {
+        @Override
+        public void run()
+        {
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.dottydingo.hyperion.core.endpoint.pipeline.phase;
+
+import com.dottydingo.hyperion.core.endpoint.HttpMethod;
+import com.dottydingo.hyperion.core.endpoint.HyperionContext;
+import com.dottydingo.hyperion.core.endpoint.metrics.HistogramPipelineMetrics;
+import com.dottydingo.hyperion.core.endpoint.metrics.PhaseMetricKey;
+import com.dottydingo.hyperion.core.registry.ApiVersionPlugin;
+import com.dottydingo.hyperion.core.registry.EntityPlugin;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ */
+public class BaseHyperionPhaseTest
+{
+    private BaseHyperionPhase phase = new BaseHyperionPhase()
+    {
+        @Override
+        protected void doExecutePhase(HyperionContext phaseContext) throws Exception
+        {
+        }
+    };
+
+    @Test
+    public void testMetricKey() throws Exception
+    {
+        EntityPlugin entityPlugin = new EntityPlugin();
+        entityPlugin.setEndpointName("Simple");
+        ApiVersionPlugin versionPlugin = new ApiVersionPlugin();
+        versionPlugin.setVersion(2);
+
+        HyperionContext context = new HyperionContext();
+        context.setEntityPlugin(entityPlugin);
+        context.setVersionPlugin(versionPlugin);
+        context.setEffectiveMethod(HttpMethod.GET);
+
+        // the requested version is resolved to the closest registered version
+        context.setVersion(7);
+
+        PhaseMetricKey key = phase.buildMetricKey(context);
+        Assert.assertEquals("Simple", key.getEntity());
+        Assert.assertEquals("GET", key.getMethod());
+        Assert.assertEquals(new Integer(2), key.getVersion());
+    }
+
+    @Test
+    public void testRecordsPhaseTimings() throws Exception
+    {
+        HistogramPipelineMetrics metrics = new HistogramPipelineMetrics();
+        phase.setPipelineMetrics(metrics);
+
+        HyperionContext context = new HyperionContext();
+        context.setEffectiveMethod(HttpMethod.GET);
+        phase.executePhase(context);
+
+        PhaseMetricKey key = phase.buildMetricKey(context);
+        Assert.assertEquals(1, metrics.getKeys().size());
+        Assert.assertEquals(1, metrics.getExecution(key).getCount());
+    }
+
+    @Test
+    public void testMetricKeyBeforeResolution() throws Exception
+    {
+        HyperionContext context = new HyperionContext();
+        context.setVersion(123456);
+
+        PhaseMetricKey key = phase.buildMetricKey(context);
+        Assert.assertEquals("unknown", key.getEntity());
+        Assert.assertEquals("unknown", key.getMethod());
+        Assert.assertNull(key.getVersion());
+    }
+}
@@ -0,0 +1,225 @@
+package com.dottydingo.hyperion.core.endpoint.pipeline.phase;
+
+import com.dottydingo.hyperion.api.exception.PreconditionFailedException;
+import com.dottydingo.hyperion.core.StubMessageSource;
+import com.dottydingo.hyperion.core.configuration.HyperionEndpointConfiguration;
+import com.dottydingo.hyperion.core.endpoint.EndpointSort;
+import com.dottydingo.hyperion.core.endpoint.HttpMethod;
+import com.dottydingo.hyperion.core.endpoint.HyperionContext;
+import com.dottydingo.hyperion.core.endpoint.HyperionRequest;
+import com.dottydingo.hyperion.core.endpoint.HyperionResponse;
+import com.dottydingo.hyperion.core.endpoint.marshall.EndpointMarshaller;
+import com.dottydingo.hyperion.core.endpoint.pipeline.auth.NoOpAuthorizationContext;
+import com.dottydingo.hyperion.core.key.LongKeyConverter;
+import com.dottydingo.hyperion.core.persistence.DefaultPersistenceOperations;
+import com.dottydingo.hyperion.core.persistence.InMemoryDao;
+import com.dottydingo.hyperion.core.persistence.PersistenceContext;
+import com.dottydingo.hyperion.core.persistence.sort.PersistentOrderBuilder;
+import com.dottydingo.hyperion.core.persistence.sort.PersistentOrderBuilderFactory;
+import com.dottydingo.hyperion.core.registry.ApiVersionPlugin;
+import com.dottydingo.hyperion.core.registry.EntityPlugin;
+import com.dottydingo.hyperion.core.translation.DefaultTranslator;
+import com.dottydingo.hyperion.core.translation.SimpleClientObject;
+import com.dottydingo.hyperion.core.translation.SimplePersistentObject;
+import com.dottydingo.hyperion.core.validation.DefaultValidator;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ */
+public class ConditionalRequestPhaseTest
+{
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private InMemoryDao dao;
+    private EntityPlugin<SimpleClientObject,SimplePersistentObject,Long> entityPlugin;
+    private ApiVersionPlugin<SimpleClientObject,SimplePersistentObject,Long> versionPlugin;
+    private GetPhase getPhase;
+    private UpdatePhase updatePhase;
+    private ResponseMarshallerPhase marshallerPhase;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        dao = new InMemoryDao();
+        dao.add("first");
+        dao.add("second");
+
+        DefaultTranslator<SimpleClientObject,SimplePersistentObject> translator =
+                new DefaultTranslator<SimpleClientObject,SimplePersistentObject>(SimpleClientObject.class,
+                        SimplePersistentObject.class);
+        translator.init();
+        versionPlugin = new ApiVersionPlugin<SimpleClientObject,SimplePersistentObject,Long>(1, translator,
+                new DefaultValidator<SimpleClientObject,SimplePersistentObject>(), SimpleClientObject.class);
+
+        DefaultPersistenceOperations<SimpleClientObject,SimplePersistentObject,Long> operations =
+                new DefaultPersistenceOperations<>();
+        operations.setPersistentOrderBuilderFactory(new PersistentOrderBuilderFactory()
+        {
+            @Override
+            public PersistentOrderBuilder createOrderBuilder(EndpointSort endpointSort,
+                                                             PersistenceContext persistenceContext)
+            {
+                return null;
+            }
+        });
+
+        entityPlugin = new EntityPlugin<>();
+        entityPlugin.setEndpointName("Simple");
+        entityPlugin.setEntityClass(SimplePersistentObject.class);
+        entityPlugin.setDao(dao);
+        entityPlugin.setPersistenceOperations(operations);
+        entityPlugin.setKeyConverter(new LongKeyConverter());
+
+        HyperionEndpointConfiguration configuration = new HyperionEndpointConfiguration();
+        configuration.setWriteLimit(10);
+        EndpointMarshaller marshaller = new EndpointMarshaller();
+        marshaller.setConfiguration(configuration);
+        marshaller.init();
+
+        getPhase = new GetPhase();
+        getPhase.setMessageSource(new StubMessageSource());
+
+        updatePhase = new UpdatePhase();
+        updatePhase.setMessageSource(new StubMessageSource());
+        updatePhase.setMarshaller(marshaller);
+
+        marshallerPhase = new ResponseMarshallerPhase();
+        marshallerPhase.setMessageSource(new StubMessageSource());
+        marshallerPhase.setConfiguration(configuration);
+        marshallerPhase.setMarshaller(marshaller);
+    }
+
+    @Test
+    public void testPutWithEntityTagFromGet() throws Exception
+    {
+        Response get = execute(getPhase, createContext(HttpMethod.GET, null, "\"stale\""));
+        Assert.assertEquals(200, get.context.getEndpointResponse().getResponseCode());
+        Assert.assertTrue(get.body.contains("first"));
+        String entityTag = get.headers.get("ETag");
+        Assert.assertNotNull(entityTag);
+
+        HyperionContext put = createContext(HttpMethod.PUT, entityTag, null);
+        put.getEndpointRequest().setInputStream(new ByteArrayInputStream(
+                "{\"entries\":[{\"id\":1,\"name\":\"changed\"}]}".getBytes(UTF8)));
+        execute(updatePhase, put);
+
+        Assert.assertEquals(200, put.getEndpointResponse().getResponseCode());
+        Assert.assertEquals("changed", dao.get(1L).getName());
+    }
+
+    @Test
+    public void testPutWithOutdatedEntityTag() throws Exception
+    {
+        String entityTag = execute(getPhase, createContext(HttpMethod.GET, null, "\"stale\"")).headers.get("ETag");
+        dao.get(1L).setName("concurrent");
+
+        HyperionContext put = createContext(HttpMethod.PUT, entityTag, null);
+        put.getEndpointRequest().setInputStream(new ByteArrayInputStream(
+                "{\"entries\":[{\"id\":1,\"name\":\"changed\"}]}".getBytes(UTF8)));
+        try
+        {
+            execute(updatePhase, put);
+            Assert.fail("Expected the precondition to fail");
+        }
+        catch (PreconditionFailedException e)
+        {
+            Assert.assertEquals("concurrent", dao.get(1L).getName());
+        }
+    }
+
+    @Test
+    public void testGetNotModified() throws Exception
+    {
+        String entityTag = execute(getPhase, createContext(HttpMethod.GET, null, "\"stale\"")).headers.get("ETag");
+
+        Response get = execute(getPhase, createContext(HttpMethod.GET, null, entityTag));
+        Assert.assertEquals(304, get.context.getEndpointResponse().getResponseCode());
+        Assert.assertEquals("", get.body);
+    }
+
+    @Test
+    public void testUnconditionalGetIsNotBuffered() throws Exception
+    {
+        Response get = execute(getPhase, createContext(HttpMethod.GET, null, null));
+        Assert.assertEquals(200, get.context.getEndpointResponse().getResponseCode());
+        Assert.assertTrue(get.body.contains("first"));
+        Assert.assertNull(get.headers.get("ETag"));
+    }
+
+    private Response execute(BasePersistencePhase phase, HyperionContext context) throws Exception
+    {
+        phase.doExecutePhase(context);
+        if(context.getEndpointResponse().getResponseCode() != 304)
+            marshallerPhase.doExecutePhase(context);
+
+        Response response = new Response();
+        response.context = context;
+        response.headers = ((Recorder) Proxy.getInvocationHandler(
+                context.getEndpointResponse().getHttpServletResponse())).headers;
+        response.body = new String(((ByteArrayOutputStream) context.getEndpointResponse().getOutputStream())
+                .toByteArray(), UTF8);
+        return response;
+    }
+
+    private HyperionContext createContext(HttpMethod method, String ifMatch, String ifNoneMatch)
+    {
+        HyperionRequest request = new HyperionRequest();
+        if(ifMatch != null)
+            request.addHeader("If-Match", ifMatch);
+        if(ifNoneMatch != null)
+            request.addHeader("If-None-Match", ifNoneMatch);
+
+        HyperionResponse response = new HyperionResponse();
+        response.setOutputStream(new ByteArrayOutputStream());
+        response.setHttpServletResponse((HttpServletResponse) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class[]{HttpServletResponse.class}, new Recorder()));
+
+        HyperionContext context = new HyperionContext();
+        context.setEndpointRequest(request);
+        context.setEndpointResponse(response);
+        context.setEntityPlugin(entityPlugin);
+        context.setVersionPlugin(versionPlugin);
+        context.setRequestMethod(method);
+        context.setEffectiveMethod(method);
+        context.setAuthorizationContext(new NoOpAuthorizationContext(null));
+        if(method == HttpMethod.GET)
+            context.setId("1");
+        return context;
+    }
+
+    private static class Response
+    {
+        private HyperionContext context;
+        private Map<String,String> headers;
+        private String body;
+    }
+
+    private static class Recorder implements InvocationHandler
+    {
+        private final Map<String,String> headers = new HashMap<>();
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args)
+        {
+            if(method.getName().equals("setHeader"))
+                headers.put((String) args[0], (String) args[1]);
+            if(method.getReturnType() == boolean.class)
+                return false;
+            if(method.getReturnType() == int.class)
+                return 0;
+            return null;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.dottydingo.hyperion.core.endpoint.pipeline.phase;
+
+import com.dottydingo.hyperion.api.DeleteResponse;
+import com.dottydingo.hyperion.api.exception.BadRequestException;
+import com.dottydingo.hyperion.api.exception.NotAllowedException;
+import com.dottydingo.hyperion.core.StubMessageSource;
+import com.dottydingo.hyperion.core.endpoint.EndpointSort;
+import com.dottydingo.hyperion.core.endpoint.HttpMethod;
+import com.dottydingo.hyperion.core.endpoint.HyperionContext;
+import com.dottydingo.hyperion.core.endpoint.HyperionRequest;
+import com.dottydingo.hyperion.core.endpoint.HyperionResponse;
+import com.dottydingo.hyperion.core.endpoint.pipeline.auth.NoOpAuthorizationContext;
+import com.dottydingo.hyperion.core.persistence.DefaultPersistenceOperations;
+import com.dottydingo.hyperion.core.persistence.InMemoryDao;
+import com.dottydingo.hyperion.core.persistence.PersistenceContext;
+import com.dottydingo.hyperion.core.persistence.query.PersistentQueryBuilder;
+import com.dottydingo.hyperion.core.persistence.query.PersistentQueryBuilderFactory;
+import com.dottydingo.hyperion.core.persistence.sort.PersistentOrderBuilder;
+import com.dottydingo.hyperion.core.persistence.sort.PersistentOrderBuilderFactory;
+import com.dottydingo.hyperion.core.registry.ApiVersionPlugin;
+import com.dottydingo.hyperion.core.registry.EntityPlugin;
+import com.dottydingo.hyperion.core.translation.DefaultTranslator;
+import com.dottydingo.hyperion.core.translation.SimpleClientObject;
+import com.dottydingo.hyperion.core.translation.SimplePersistentObject;
+import com.dottydingo.hyperion.core.validation.DefaultValidator;
+import cz.jirutka.rsql.parser.ast.Node;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ */
+public class DeletePhaseTest
+{
+    private DeletePhase phase;
+    private InMemoryDao dao;
+    private EntityPlugin<SimpleClientObject,SimplePersistentObject,Long> entityPlugin;
+    private HyperionContext context;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        dao = new InMemoryDao();
+        for (int i = 1; i <= 25; i++)
+        {
+            dao.add("item" + i);
+        }
+
+        DefaultTranslator<SimpleClientObject,SimplePersistentObject> translator =
+                new DefaultTranslator<SimpleClientObject,SimplePersistentObject>(SimpleClientObject.class,
+                        SimplePersistentObject.class);
+        translator.init();
+
+        DefaultPersistenceOperations<SimpleClientObject,SimplePersistentObject,Long> operations =
+                new DefaultPersistenceOperations<>();
+        operations.setBulkChunkSize(10);
+        operations.setPersistentQueryBuilderFactory(new PersistentQueryBuilderFactory()
+        {
+            @Override
+            public PersistentQueryBuilder createQueryBuilder(Node rootExpression,
+                                                             PersistenceContext persistenceContext)
+            {
+                return null;
+            }
+        });
+        operations.setPersistentOrderBuilderFactory(new PersistentOrderBuilderFactory()
+        {
+            @Override
+            public PersistentOrderBuilder createOrderBuilder(EndpointSort endpointSort,
+                                                             PersistenceContext persistenceContext)
+            {
+                return null;
+            }
+        });
+
+        entityPlugin = new EntityPlugin<>();
+        entityPlugin.setEndpointName("Simple");
+        entityPlugin.setEntityClass(SimplePersistentObject.class);
+        entityPlugin.setDao(dao);
+        entityPlugin.setPersistenceOperations(operations);
+        entityPlugin.setQueryDeleteEnabled(true);
+
+        phase = new DeletePhase();
+        phase.setMessageSource(new StubMessageSource());
+
+        context = new HyperionContext();
+        context.setEndpointRequest(new HyperionRequest());
+        context.setEndpointResponse(new HyperionResponse());
+        context.setEntityPlugin(entityPlugin);
+        context.setVersionPlugin(new ApiVersionPlugin<SimpleClientObject,SimplePersistentObject,Long>(1,
+                translator, new DefaultValidator<SimpleClientObject,SimplePersistentObject>(),
+                SimpleClientObject.class));
+        context.setEffectiveMethod(HttpMethod.DELETE);
+        context.setAuthorizationContext(new NoOpAuthorizationContext(null));
+    }
+
+    @Test
+    public void testDeleteByQuery() throws Exception
+    {
+        context.getEndpointRequest().addParameter("query", "name==item*");
+        phase.doExecutePhase(context);
+
+        Assert.assertEquals(25, ((DeleteResponse) context.getResult()).getCount());
+        Assert.assertEquals(200, context.getEndpointResponse().getResponseCode());
+        Assert.assertEquals(1, dao.getDeleteByQueryCount());
+        Assert.assertEquals(0, dao.size());
+    }
+
+    @Test
+    public void testDeleteByQueryChunked() throws Exception
+    {
+        dao.setSetDelete(false);
+        context.getEndpointRequest().addParameter("query", "name==item*");
+        phase.doExecutePhase(context);
+
+        Assert.assertEquals(25, ((DeleteResponse) context.getResult()).getCount());
+        Assert.assertEquals(0, dao.getDeleteByQueryCount());
+        Assert.assertEquals(0, dao.size());
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void testQueryRequired() throws Exception
+    {
+        context.getEndpointRequest().addParameter("query", " ");
+        phase.doExecutePhase(context);
+    }
+
+    @Test
+    public void testQueryDeleteNotAllowed() throws Exception
+    {
+        entityPlugin.setQueryDeleteEnabled(false);
+        context.getEndpointRequest().addParameter("query", "name==item*");
+        try
+        {
+            phase.doExecutePhase(context);
+            Assert.fail("Expected the delete to be rejected");
+        }
+        catch (NotAllowedException e)
+        {
+            Assert.assertEquals(25, dao.size());
+        }
+    }
+}
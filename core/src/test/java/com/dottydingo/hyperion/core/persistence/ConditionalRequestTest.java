@@ -0,0 +1,215 @@
+package com.dottydingo.hyperion.core.persistence;
+
+import com.dottydingo.hyperion.core.model.AuditablePersistentObject;
+import com.dottydingo.hyperion.core.model.PersistentObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ */
+public class ConditionalRequestTest
+{
+    @Test
+    public void testEntityTagFromState()
+    {
+        ConditionalRequest request = new ConditionalRequest("1|*|");
+        String tag = request.buildEntityTag(Arrays.asList(item(1L, 1000L), item(2L, 2000L)));
+
+        Assert.assertNotNull(tag);
+        Assert.assertTrue(tag.startsWith("\"") && tag.endsWith("\""));
+
+        // load order does not matter
+        Assert.assertEquals(tag, request.buildEntityTag(Arrays.asList(item(2L, 2000L), item(1L, 1000L))));
+
+        // a modification changes the tag
+        Assert.assertNotEquals(tag, request.buildEntityTag(Arrays.asList(item(1L, 1000L), item(2L, 3000L))));
+
+        // so does the representation
+        Assert.assertNotEquals(tag, new ConditionalRequest("1|id,|").buildEntityTag(
+                Arrays.asList(item(1L, 1000L), item(2L, 2000L))));
+    }
+
+    @Test
+    public void testEntityTagRequiresModified()
+    {
+        ConditionalRequest request = new ConditionalRequest("1|*|");
+        Assert.assertNull(request.buildEntityTag(Collections.singletonList(item(1L, null))));
+        Assert.assertNull(new ConditionalRequest(null).buildEntityTag(Collections.singletonList(item(1L, 1000L))));
+    }
+
+    @Test
+    public void testIfNoneMatch()
+    {
+        List<TestItem> items = Collections.singletonList(item(1L, 1000L));
+        String tag = new ConditionalRequest("v").buildEntityTag(items);
+
+        ConditionalRequest request = new ConditionalRequest("v");
+        request.setIfNoneMatch(ConditionalRequest.parseEntityTags("\"other\", W/" + tag));
+        Assert.assertTrue(request.evaluateRead(items, true));
+        Assert.assertEquals(tag, request.getEntityTag());
+        Assert.assertEquals(new Date(1000L), request.getLastModified());
+
+        request = new ConditionalRequest("v");
+        request.setIfNoneMatch(ConditionalRequest.parseEntityTags("\"other\""));
+        Assert.assertFalse(request.evaluateRead(items, true));
+    }
+
+    @Test
+    public void testIfModifiedSince()
+    {
+        List<TestItem> items = Collections.singletonList(item(1L, 5500L));
+
+        ConditionalRequest request = new ConditionalRequest("v");
+        request.setIfModifiedSince(new Date(5000L));
+        Assert.assertTrue(request.evaluateRead(items, true));
+
+        request = new ConditionalRequest("v");
+        request.setIfModifiedSince(new Date(4000L));
+        Assert.assertFalse(request.evaluateRead(items, true));
+
+        // an incomplete result can not be validated by date
+        request = new ConditionalRequest("v");
+        request.setIfModifiedSince(new Date(5000L));
+        Assert.assertFalse(request.evaluateRead(items, false));
+        Assert.assertNull(request.getLastModified());
+    }
+
+    @Test
+    public void testIfMatch()
+    {
+        List<TestItem> items = Collections.singletonList(item(1L, 1000L));
+        String tag = new ConditionalRequest("v").buildEntityTag(items);
+
+        ConditionalRequest request = new ConditionalRequest("v");
+        Assert.assertTrue(request.evaluateWrite(items));
+
+        request.setIfMatch(ConditionalRequest.parseEntityTags(tag));
+        Assert.assertTrue(request.evaluateWrite(items));
+        Assert.assertFalse(request.evaluateWrite(Collections.singletonList(item(1L, 2000L))));
+
+        // weak tags never match for If-Match
+        request.setIfMatch(ConditionalRequest.parseEntityTags("W/" + tag));
+        Assert.assertFalse(request.evaluateWrite(items));
+
+        request.setIfMatch(ConditionalRequest.parseEntityTags("*"));
+        Assert.assertTrue(request.evaluateWrite(items));
+    }
+
+    @Test
+    public void testIfMatchRepresentation()
+    {
+        List<TestItem> items = Collections.singletonList(item(1L, 1000L));
+        String stateTag = new ConditionalRequest("v").buildEntityTag(items);
+
+        ConditionalRequest request = new ConditionalRequest("v");
+        request.setRepresentationTagger(new ConditionalRequest.RepresentationTagger()
+        {
+            @Override
+            public String buildEntityTag(List<? extends PersistentObject> items)
+            {
+                return "\"body\"";
+            }
+        });
+
+        request.setIfMatch(ConditionalRequest.parseEntityTags("\"body\""));
+        Assert.assertTrue(request.evaluateWrite(items));
+
+        request.setIfMatch(ConditionalRequest.parseEntityTags(stateTag));
+        Assert.assertTrue(request.evaluateWrite(items));
+
+        request.setIfMatch(ConditionalRequest.parseEntityTags("\"other\""));
+        Assert.assertFalse(request.evaluateWrite(items));
+    }
+
+    @Test
+    public void testIfMatchIgnoredWithoutEntityTag()
+    {
+        // neither a state based nor a body tag can be built so the precondition is ignored
+        ConditionalRequest request = new ConditionalRequest(null);
+        request.setIfMatch(ConditionalRequest.parseEntityTags("\"other\""));
+        Assert.assertTrue(request.evaluateWrite(Collections.singletonList(item(1L, 1000L))));
+    }
+
+    private TestItem item(Long id, Long modified)
+    {
+        TestItem item = new TestItem();
+        item.setId(id);
+        if(modified != null)
+            item.setModified(new Date(modified));
+        return item;
+    }
+
+    private static class TestItem implements AuditablePersistentObject<Long>
+    {
+        private Long id;
+        private Date created;
+        private String createdBy;
+        private Date modified;
+        private String modifiedBy;
+
+        @Override
+        public Long getId()
+        {
+            return id;
+        }
+
+        @Override
+        public void setId(Long id)
+        {
+            this.id = id;
+        }
+
+        @Override
+        public Date getCreated()
+        {
+            return created;
+        }
+
+        @Override
+        public void setCreated(Date created)
+        {
+            this.created = created;
+        }
+
+        @Override
+        public String getCreatedBy()
+        {
+            return createdBy;
+        }
+
+        @Override
+        public void setCreatedBy(String createdBy)
+        {
+            this.createdBy = createdBy;
+        }
+
+        @Override
+        public Date getModified()
+        {
+            return modified;
+        }
+
+        @Override
+        public void setModified(Date modified)
+        {
+            this.modified = modified;
+        }
+
+        @Override
+        public String getModifiedBy()
+        {
+            return modifiedBy;
+        }
+
+        @Override
+        public void setModifiedBy(String modifiedBy)
+        {
+            this.modifiedBy = modifiedBy;
+        }
+    }
+}
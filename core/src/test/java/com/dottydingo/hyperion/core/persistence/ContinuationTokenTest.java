@@ -0,0 +1,42 @@
+package com.dottydingo.hyperion.core.persistence;
+
+import com.dottydingo.hyperion.core.endpoint.EndpointSort;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ContinuationTokenTest
+{
+    @Test
+    public void testRoundTrip() throws Exception
+    {
+        List<Object> values = Arrays.<Object>asList("name", 12, 1234567890123L, new BigDecimal("10.25"), null, true);
+        String encoded = new ContinuationToken("name,id", values).encode();
+
+        assertTrue(encoded.matches("[A-Za-z0-9_\\-]+"));
+
+        ContinuationToken decoded = ContinuationToken.decode(encoded);
+        assertNotNull(decoded);
+        assertEquals("name,id", decoded.getSortKey());
+        assertEquals(values, decoded.getValues());
+    }
+
+    @Test
+    public void testDecode_invalid() throws Exception
+    {
+        assertNull(ContinuationToken.decode("not a token"));
+        assertNull(ContinuationToken.decode("e30"));
+    }
+
+    @Test
+    public void testBuildSortKey() throws Exception
+    {
+        assertEquals("", ContinuationToken.buildSortKey(null));
+        assertEquals("name:desc,id",
+                ContinuationToken.buildSortKey(new EndpointSort().addOrder("name", true).addOrder("id")));
+    }
+}
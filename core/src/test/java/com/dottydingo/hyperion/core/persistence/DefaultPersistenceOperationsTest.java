@@ -0,0 +1,471 @@
+package com.dottydingo.hyperion.core.persistence;
+
+import com.dottydingo.hyperion.core.StubMessageSource;
+import com.dottydingo.hyperion.core.endpoint.EndpointSort;
+import com.dottydingo.hyperion.core.endpoint.pipeline.auth.NoOpAuthorizationContext;
+import com.dottydingo.hyperion.core.persistence.cache.EntityCache;
+import com.dottydingo.hyperion.core.persistence.cache.EntityResponseCache;
+import com.dottydingo.hyperion.core.persistence.dao.AssociationFetchDao;
+import com.dottydingo.hyperion.core.persistence.dao.ManagedInstanceDao;
+import com.dottydingo.hyperion.core.persistence.query.PersistentQueryBuilder;
+import com.dottydingo.hyperion.core.persistence.sort.PersistentOrderBuilder;
+import com.dottydingo.hyperion.core.persistence.sort.PersistentOrderBuilderFactory;
+import com.dottydingo.hyperion.core.registry.ApiVersionPlugin;
+import com.dottydingo.hyperion.core.registry.ApiVersionRegistry;
+import com.dottydingo.hyperion.core.registry.EntityPlugin;
+import com.dottydingo.hyperion.core.translation.AssociationFieldMapper;
+import com.dottydingo.hyperion.core.translation.DefaultTranslator;
+import com.dottydingo.hyperion.core.translation.FieldMapper;
+import com.dottydingo.hyperion.core.translation.ObjectWrapper;
+import com.dottydingo.hyperion.core.translation.SimpleClientObject;
+import com.dottydingo.hyperion.core.translation.SimplePersistentObject;
+import com.dottydingo.hyperion.core.validation.DefaultValidator;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ */
+public class DefaultPersistenceOperationsTest
+{
+    private DefaultPersistenceOperations<SimpleClientObject,SimplePersistentObject,Long> operations;
+    private InMemoryDao dao;
+    private EntityPlugin<SimpleClientObject,SimplePersistentObject,Long> entityPlugin;
+    private PersistenceContext context;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        dao = new InMemoryDao();
+        for (int i = 1; i <= 25; i++)
+        {
+            dao.add("item" + i);
+        }
+
+        DefaultTranslator<SimpleClientObject,SimplePersistentObject> translator =
+                new DefaultTranslator<SimpleClientObject,SimplePersistentObject>(SimpleClientObject.class,
+                        SimplePersistentObject.class);
+        translator.init();
+
+        entityPlugin = new EntityPlugin<>();
+        entityPlugin.setEntityClass(SimplePersistentObject.class);
+        entityPlugin.setDao(dao);
+
+        operations = new DefaultPersistenceOperations<>();
+        operations.setPersistentOrderBuilderFactory(new PersistentOrderBuilderFactory()
+        {
+            @Override
+            public PersistentOrderBuilder createOrderBuilder(EndpointSort endpointSort,
+                                                             PersistenceContext persistenceContext)
+            {
+                return null;
+            }
+        });
+
+        context = new PersistenceContext();
+        context.setEntity("Simple");
+        context.setEntityPlugin(entityPlugin);
+        context.setApiVersionPlugin(new ApiVersionPlugin<SimpleClientObject,SimplePersistentObject,Long>(1,
+                translator, new DefaultValidator<SimpleClientObject,SimplePersistentObject>(),
+                SimpleClientObject.class));
+        context.setAuthorizationContext(new NoOpAuthorizationContext(null));
+        context.setMessageSource(new StubMessageSource());
+    }
+
+    @Test
+    public void testExactCount() throws Exception
+    {
+        QueryResult<SimpleClientObject> result = operations.query(null, 1, 10, null, CountMode.EXACT, context);
+
+        Assert.assertTrue(dao.isLastCount());
+        Assert.assertEquals(10, result.getResponseCount());
+        Assert.assertEquals(new Long(25), result.getTotalCount());
+        Assert.assertTrue(result.isTotalCountExact());
+    }
+
+    @Test
+    public void testMaxCount() throws Exception
+    {
+        entityPlugin.setMaxCount(20);
+        QueryResult<SimpleClientObject> result = operations.query(null, 1, 10, null, CountMode.EXACT, context);
+
+        Assert.assertEquals(new Integer(20), dao.getLastMaxCount());
+        Assert.assertEquals(new Long(20), result.getTotalCount());
+        Assert.assertFalse(result.isTotalCountExact());
+    }
+
+    @Test
+    public void testNoCount() throws Exception
+    {
+        QueryResult<SimpleClientObject> result = operations.query(null, 1, 10, null, CountMode.NONE, context);
+
+        Assert.assertFalse(dao.isLastCount());
+        Assert.assertEquals(10, result.getResponseCount());
+        Assert.assertNull(result.getTotalCount());
+    }
+
+    @Test
+    public void testDefaultCountMode() throws Exception
+    {
+        entityPlugin.setCountMode(CountMode.NONE);
+        QueryResult<SimpleClientObject> result = operations.query(null, 1, 10, null, null, context);
+
+        Assert.assertFalse(dao.isLastCount());
+        Assert.assertNull(result.getTotalCount());
+
+        // the request overrides the entity default
+        result = operations.query(null, 1, 10, null, CountMode.EXACT, context);
+        Assert.assertEquals(new Long(25), result.getTotalCount());
+    }
+
+    @Test
+    public void testEstimatedCount() throws Exception
+    {
+        entityPlugin.setCountEstimator(new CountEstimator()
+        {
+            @Override
+            public Long estimateCount(List<PersistentQueryBuilder> queryBuilders,
+                                      PersistenceContext persistenceContext)
+            {
+                return 1000L;
+            }
+        });
+
+        QueryResult<SimpleClientObject> result = operations.query(null, 1, 10, null, CountMode.ESTIMATE, context);
+
+        Assert.assertFalse(dao.isLastCount());
+        Assert.assertEquals(new Long(1000), result.getTotalCount());
+        Assert.assertFalse(result.isTotalCountExact());
+    }
+
+    @Test
+    public void testEstimateWithoutEstimator() throws Exception
+    {
+        QueryResult<SimpleClientObject> result = operations.query(null, 1, 10, null, CountMode.ESTIMATE, context);
+
+        Assert.assertTrue(dao.isLastCount());
+        Assert.assertEquals(new Long(25), result.getTotalCount());
+        Assert.assertTrue(result.isTotalCountExact());
+    }
+
+    @Test
+    public void testEntityCache() throws Exception
+    {
+        EntityCache<Long,SimplePersistentObject> cache = new EntityCache<>(10, 0);
+        entityPlugin.setEntityCache(cache);
+
+        operations.findByIds(Arrays.asList(1L, 2L), context);
+        Assert.assertEquals(1, dao.getFindAllCount());
+        Assert.assertEquals(2, cache.getSize());
+
+        // loaded items are detached before they are shared through the cache
+        Assert.assertEquals(2, dao.getResetCount());
+
+        List<SimpleClientObject> found = operations.findByIds(Arrays.asList(2L, 1L), context);
+        Assert.assertEquals(1, dao.getFindAllCount());
+        Assert.assertEquals(new Long(2), found.get(0).getId());
+        Assert.assertEquals(new Long(1), found.get(1).getId());
+
+        // the cache is not a listener so it does not disable the set based operations
+        Assert.assertFalse(entityPlugin.hasListeners());
+
+        operations.deleteItem(Collections.singletonList(1L), context);
+        Assert.assertEquals(1, cache.getSize());
+        Assert.assertNull(cache.get(1L));
+        Assert.assertEquals(Collections.<Object>singleton(1L), context.getInvalidatedIds());
+    }
+
+    @Test
+    public void testEntityCacheFetchesAllVersionAssociations() throws Exception
+    {
+        FetchingInMemoryDao fetchingDao = new FetchingInMemoryDao();
+        fetchingDao.add("item1");
+        fetchingDao.add("item2");
+        entityPlugin.setDao(fetchingDao);
+        entityPlugin.setEntityCache(new EntityCache<Long,SimplePersistentObject>(10, 0));
+
+        ApiVersionPlugin<SimpleClientObject,SimplePersistentObject,Long> first =
+                createVersion(1, new PathFieldMapper("clientOnly", "children"));
+        ApiVersionPlugin<SimpleClientObject,SimplePersistentObject,Long> second =
+                createVersion(2, new PathFieldMapper("differentType", "parent"));
+        ApiVersionRegistry<SimpleClientObject,SimplePersistentObject,Long> registry = new ApiVersionRegistry<>();
+        registry.setPlugins(Arrays.asList(first, second));
+        entityPlugin.setApiVersionRegistry(registry);
+
+        // the request only reads plain fields but the cached items are shared with every version
+        context.setApiVersionPlugin(first);
+        context.setRequestedFields(new HashSet<String>(Arrays.asList("id", "name")));
+        operations.findByIds(Arrays.asList(1L, 2L), context);
+        Assert.assertEquals(Collections.singletonList(new HashSet<String>(Arrays.asList("children", "parent"))),
+                fetchingDao.getFetched());
+
+        // cache hits already have their associations
+        context.setApiVersionPlugin(second);
+        context.setRequestedFields(null);
+        operations.findByIds(Arrays.asList(1L, 2L), context);
+        Assert.assertEquals(1, fetchingDao.getFetched().size());
+        Assert.assertEquals(1, fetchingDao.getFindAllCount());
+    }
+
+    @Test
+    public void testResponseCacheInvalidation() throws Exception
+    {
+        EntityResponseCache<Long> cache = new EntityResponseCache<>(10, 0);
+        entityPlugin.setResponseCache(cache);
+        cache.put(1L, "1|*|", "{\"id\":1}", cache.getGeneration());
+        cache.put(2L, "1|*|", "{\"id\":2}", cache.getGeneration());
+
+        Assert.assertFalse(entityPlugin.hasListeners());
+
+        operations.deleteItem(Collections.singletonList(1L), context);
+        Assert.assertNull(cache.get(1L, "1|*|"));
+        Assert.assertEquals("{\"id\":2}", cache.get(2L, "1|*|"));
+
+        // a set based delete can not tell which items were removed
+        operations.deleteByQuery(null, context);
+        Assert.assertNull(cache.get(2L, "1|*|"));
+        Assert.assertTrue(context.isCachesCleared());
+    }
+
+    @Test
+    public void testDeleteByQuery() throws Exception
+    {
+        Assert.assertEquals(25, operations.deleteByQuery(null, context));
+        Assert.assertEquals(1, dao.getDeleteByQueryCount());
+        Assert.assertEquals(0, dao.getFindAllCount());
+        Assert.assertEquals(0, dao.size());
+    }
+
+    @Test
+    public void testDeleteByQueryChunked() throws Exception
+    {
+        // removing a row would change other rows so every item is loaded and removed individually
+        dao.setSetDelete(false);
+        operations.setBulkChunkSize(10);
+
+        Assert.assertEquals(25, operations.deleteByQuery(null, context));
+        Assert.assertEquals(0, dao.getDeleteByQueryCount());
+        Assert.assertEquals(0, dao.size());
+    }
+
+    @Test
+    public void testUpdateByQuery() throws Exception
+    {
+        Assert.assertEquals(25, operations.updateByQuery(client(null, "x"), null, context));
+        Assert.assertEquals(Collections.<String,Object>singletonMap("name", "x"), dao.getLastUpdateValues());
+        Assert.assertEquals(0, dao.getWriteCount());
+    }
+
+    @Test
+    public void testUpdateByQueryPerItem() throws Exception
+    {
+        // the dao can not write the values without loading the items
+        dao.setSetUpdate(false);
+        operations.setBulkChunkSize(10);
+
+        Assert.assertEquals(25, operations.updateByQuery(client(null, "x"), null, context));
+        Assert.assertNull(dao.getLastUpdateValues());
+        Assert.assertEquals(3, dao.getWriteCount());
+        Assert.assertEquals("x", dao.get(25L).getName());
+    }
+
+    @Test
+    public void testBatchedCreate() throws Exception
+    {
+        List<SimpleClientObject> created = operations.createOrUpdateItems(
+                Arrays.asList(client(null, "a"), client(null, "b"), client(null, "c")), context);
+
+        Assert.assertEquals(1, dao.getWriteCount());
+        Assert.assertEquals(3, dao.getLastWriteSize());
+        Assert.assertEquals(28, dao.size());
+        Assert.assertEquals(new Long(26), created.get(0).getId());
+        Assert.assertEquals("c", created.get(2).getName());
+    }
+
+    @Test
+    public void testBatchedUpdate() throws Exception
+    {
+        List<SimpleClientObject> updated = operations.updateItems(
+                Arrays.asList(client(1L, "x"), client(2L, "item2"), client(3L, "y")), context);
+
+        // only the changed items are written
+        Assert.assertEquals(1, dao.getWriteCount());
+        Assert.assertEquals(2, dao.getLastWriteSize());
+        Assert.assertEquals("x", updated.get(0).getName());
+        Assert.assertEquals("item2", updated.get(1).getName());
+        Assert.assertEquals("y", dao.get(3L).getName());
+    }
+
+    @Test
+    public void testSingleItemHooks() throws Exception
+    {
+        final List<SimplePersistentObject> written = new ArrayList<>();
+        DefaultPersistenceOperations<SimpleClientObject,SimplePersistentObject,Long> custom =
+                new DefaultPersistenceOperations<SimpleClientObject,SimplePersistentObject,Long>()
+                {
+                    @Override
+                    protected SimplePersistentObject doCreate(SimplePersistentObject persistent,
+                                                              PersistenceContext context)
+                    {
+                        written.add(persistent);
+                        return super.doCreate(persistent, context);
+                    }
+
+                    @Override
+                    protected SimplePersistentObject doUpdate(PersistenceContext context,
+                                                              SimplePersistentObject existing)
+                    {
+                        written.add(existing);
+                        return super.doUpdate(context, existing);
+                    }
+                };
+
+        // subclasses overriding the single item hooks still see every item
+        custom.createOrUpdateItems(Arrays.asList(client(null, "a"), client(null, "b")), context);
+        custom.updateItems(Collections.singletonList(client(1L, "x")), context);
+
+        Assert.assertEquals(3, written.size());
+        Assert.assertEquals(0, dao.getWriteCount());
+        Assert.assertEquals("x", dao.get(1L).getName());
+    }
+
+    @Test
+    public void testWrittenInstances() throws Exception
+    {
+        dao = new ManagedInMemoryDao();
+        for (int i = 1; i <= 5; i++)
+        {
+            dao.add("item" + i);
+        }
+        entityPlugin.setDao(dao);
+
+        // without the entity setting the created items are reloaded
+        operations.createOrUpdateItems(Collections.singletonList(client(null, "a")), context);
+        Assert.assertEquals(1, dao.getFindAllCount());
+
+        entityPlugin.setUseManagedInstances(true);
+        List<SimpleClientObject> created = operations.createOrUpdateItems(
+                Arrays.asList(client(null, "b"), client(null, "c")), context);
+        Assert.assertEquals(1, dao.getFindAllCount());
+        Assert.assertEquals(new Long(7), created.get(0).getId());
+        Assert.assertEquals("c", created.get(1).getName());
+
+        // only the unchanged item has to be reloaded after the existing items are loaded
+        List<SimpleClientObject> updated = operations.updateItems(
+                Arrays.asList(client(1L, "x"), client(2L, "item2")), context);
+        Assert.assertEquals(3, dao.getFindAllCount());
+        Assert.assertEquals("x", updated.get(0).getName());
+        Assert.assertEquals("item2", updated.get(1).getName());
+
+        operations.updateItems(Collections.singletonList(client(3L, "y")), context);
+        Assert.assertEquals(4, dao.getFindAllCount());
+        Assert.assertEquals("y", dao.get(3L).getName());
+    }
+
+    @Test
+    public void testWrittenInstancesNotAuthoritative() throws Exception
+    {
+        entityPlugin.setUseManagedInstances(true);
+
+        // the dao can not tell if the written instances match the stored rows
+        operations.createOrUpdateItems(Collections.singletonList(client(null, "a")), context);
+        Assert.assertEquals(1, dao.getFindAllCount());
+    }
+
+    private ApiVersionPlugin<SimpleClientObject,SimplePersistentObject,Long> createVersion(int version,
+                                                                                    FieldMapper fieldMapper)
+    {
+        DefaultTranslator<SimpleClientObject,SimplePersistentObject> translator =
+                new DefaultTranslator<SimpleClientObject,SimplePersistentObject>(SimpleClientObject.class,
+                        SimplePersistentObject.class);
+        translator.setFieldMappers(Collections.singletonList(fieldMapper));
+        translator.init();
+        return new ApiVersionPlugin<SimpleClientObject,SimplePersistentObject,Long>(version, translator,
+                new DefaultValidator<SimpleClientObject,SimplePersistentObject>(), SimpleClientObject.class);
+    }
+
+    private SimpleClientObject client(Long id, String name)
+    {
+        SimpleClientObject client = new SimpleClientObject();
+        client.setId(id);
+        client.setName(name);
+        return client;
+    }
+
+    private static class FetchingInMemoryDao extends InMemoryDao implements AssociationFetchDao<SimplePersistentObject>
+    {
+        private final List<Set<String>> fetched = new ArrayList<>();
+
+        public List<Set<String>> getFetched()
+        {
+            return fetched;
+        }
+
+        @Override
+        public void fetchAssociations(Class<SimplePersistentObject> entityClass, List<SimplePersistentObject> entities,
+                                      Set<String> paths)
+        {
+            fetched.add(new HashSet<>(paths));
+        }
+
+        @Override
+        public long getLoadedCount()
+        {
+            return -1;
+        }
+    }
+
+    private static class PathFieldMapper implements AssociationFieldMapper<SimpleClientObject,SimplePersistentObject>
+    {
+        private final String clientFieldName;
+        private final String path;
+
+        private PathFieldMapper(String clientFieldName, String path)
+        {
+            this.clientFieldName = clientFieldName;
+            this.path = path;
+        }
+
+        @Override
+        public String[] getAssociationPaths()
+        {
+            return new String[]{path};
+        }
+
+        @Override
+        public String getClientFieldName()
+        {
+            return clientFieldName;
+        }
+
+        @Override
+        public void convertToClient(ObjectWrapper<SimplePersistentObject> persistentObjectWrapper,
+                                    ObjectWrapper<SimpleClientObject> clientObjectWrapper, PersistenceContext context)
+        {
+        }
+
+        @Override
+        public boolean convertToPersistent(ObjectWrapper<SimpleClientObject> clientObjectWrapper,
+                                           ObjectWrapper<SimplePersistentObject> persistentObjectWrapper,
+                                           PersistenceContext context)
+        {
+            return false;
+        }
+    }
+
+    private static class ManagedInMemoryDao extends InMemoryDao implements ManagedInstanceDao
+    {
+        @Override
+        public boolean isManagedInstanceAuthoritative(Class<?> entityClass)
+        {
+            return true;
+        }
+    }
+}
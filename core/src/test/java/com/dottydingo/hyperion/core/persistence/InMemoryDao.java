@@ -0,0 +1,310 @@
+package com.dottydingo.hyperion.core.persistence;
+
+import com.dottydingo.hyperion.core.model.PersistentHistoryEntry;
+import com.dottydingo.hyperion.core.persistence.dao.Dao;
+import com.dottydingo.hyperion.core.persistence.dao.PersistentQueryResult;
+import com.dottydingo.hyperion.core.persistence.dao.SetOperationDao;
+import com.dottydingo.hyperion.core.persistence.query.PersistentQueryBuilder;
+import com.dottydingo.hyperion.core.persistence.sort.PersistentOrderBuilder;
+import com.dottydingo.hyperion.core.translation.SimplePersistentObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * A dao holding items in memory in id order. Query builders are ignored so every query matches all items. The calls
+ * made by the persistence operations are recorded for the tests.
+ */
+public class InMemoryDao implements Dao<SimplePersistentObject,Long,PersistentQueryBuilder,PersistentOrderBuilder>,
+        SetOperationDao
+{
+    private final TreeMap<Long,SimplePersistentObject> items = new TreeMap<>();
+    private long nextId = 1;
+
+    private boolean lastCount;
+    private Integer lastMaxCount;
+    private int findAllCount;
+    private int writeCount;
+    private int lastWriteSize;
+    private int deleteByQueryCount;
+    private int resetCount;
+    private Map<String,Object> lastUpdateValues;
+    private boolean setDelete = true;
+    private boolean setUpdate = true;
+
+    public SimplePersistentObject add(String name)
+    {
+        SimplePersistentObject item = new SimplePersistentObject();
+        item.setName(name);
+        return create(item);
+    }
+
+    public SimplePersistentObject get(Long id)
+    {
+        return items.get(id);
+    }
+
+    public int size()
+    {
+        return items.size();
+    }
+
+    public boolean isLastCount()
+    {
+        return lastCount;
+    }
+
+    public Integer getLastMaxCount()
+    {
+        return lastMaxCount;
+    }
+
+    public int getFindAllCount()
+    {
+        return findAllCount;
+    }
+
+    public int getWriteCount()
+    {
+        return writeCount;
+    }
+
+    public int getLastWriteSize()
+    {
+        return lastWriteSize;
+    }
+
+    public int getDeleteByQueryCount()
+    {
+        return deleteByQueryCount;
+    }
+
+    public int getResetCount()
+    {
+        return resetCount;
+    }
+
+    public Map<String, Object> getLastUpdateValues()
+    {
+        return lastUpdateValues;
+    }
+
+    public void setSetDelete(boolean setDelete)
+    {
+        this.setDelete = setDelete;
+    }
+
+    public void setSetUpdate(boolean setUpdate)
+    {
+        this.setUpdate = setUpdate;
+    }
+
+    @Override
+    public boolean canDeleteBySet(Class<?> entityClass)
+    {
+        return setDelete;
+    }
+
+    @Override
+    public boolean canUpdateBySet(Class<?> entityClass, Set<String> properties)
+    {
+        return setUpdate;
+    }
+
+    @Override
+    public List<SimplePersistentObject> findAll(Class<SimplePersistentObject> entityClass, List<Long> ids)
+    {
+        findAllCount++;
+        List<SimplePersistentObject> found = new ArrayList<>();
+        for (SimplePersistentObject item : items.values())
+        {
+            if(ids.contains(item.getId()))
+                found.add(item);
+        }
+        return found;
+    }
+
+    @Override
+    public PersistentQueryResult<SimplePersistentObject> query(Class<SimplePersistentObject> entityClass,
+                                                               Integer start, Integer limit,
+                                                               PersistentOrderBuilder orderBuilder,
+                                                               List<PersistentQueryBuilder> predicateBuilders,
+                                                               boolean count, Integer maxCount)
+    {
+        lastCount = count;
+        lastMaxCount = maxCount;
+
+        List<SimplePersistentObject> all = new ArrayList<>(items.values());
+        int offset = start == null ? 0 : start;
+        List<SimplePersistentObject> page = all.subList(Math.min(offset, all.size()),
+                limit == null ? all.size() : Math.min(offset + limit, all.size()));
+
+        PersistentQueryResult<SimplePersistentObject> result = new PersistentQueryResult<>();
+        result.setResults(new ArrayList<>(page));
+        result.setResultCount(page.size());
+        if(count)
+        {
+            result.setTotalCount((long) (maxCount == null ? all.size() : Math.min(all.size(), maxCount)));
+            result.setTotalCountExact(maxCount == null || all.size() <= maxCount);
+        }
+        return result;
+    }
+
+    @Override
+    public PersistentQueryResult<SimplePersistentObject> stream(Class<SimplePersistentObject> entityClass,
+                                                                Integer start, Integer limit,
+                                                                PersistentOrderBuilder orderBuilder,
+                                                                List<PersistentQueryBuilder> predicateBuilders,
+                                                                boolean count, Integer maxCount,
+                                                                ResultHandler<SimplePersistentObject> resultHandler)
+    {
+        PersistentQueryResult<SimplePersistentObject> result = query(entityClass, start, limit, orderBuilder,
+                predicateBuilders, count, maxCount);
+        for (SimplePersistentObject item : result.getResults())
+        {
+            resultHandler.handleResult(item);
+        }
+        result.setResults(null);
+        return result;
+    }
+
+    @Override
+    public PersistentQueryResult<SimplePersistentObject> seek(Class<SimplePersistentObject> entityClass,
+                                                              List<Object> seekValues, Integer limit,
+                                                              PersistentOrderBuilder orderBuilder,
+                                                              List<PersistentQueryBuilder> predicateBuilders)
+    {
+        Map<Long,SimplePersistentObject> remaining = seekValues == null ? items
+                : items.tailMap((Long) seekValues.get(0), false);
+
+        List<SimplePersistentObject> page = new ArrayList<>();
+        for (SimplePersistentObject item : remaining.values())
+        {
+            if(limit != null && page.size() == limit)
+                break;
+            page.add(item);
+        }
+
+        PersistentQueryResult<SimplePersistentObject> result = new PersistentQueryResult<>();
+        result.setResults(page);
+        if(limit != null && remaining.size() > limit)
+            result.setSeekValues(Collections.<Object>singletonList(page.get(page.size() - 1).getId()));
+        return result;
+    }
+
+    @Override
+    public SimplePersistentObject find(Class<SimplePersistentObject> entityClass, Long id)
+    {
+        return items.get(id);
+    }
+
+    @Override
+    public SimplePersistentObject create(SimplePersistentObject entity)
+    {
+        entity.setId(nextId++);
+        items.put(entity.getId(), entity);
+        return entity;
+    }
+
+    @Override
+    public SimplePersistentObject update(SimplePersistentObject entity)
+    {
+        items.put(entity.getId(), entity);
+        return entity;
+    }
+
+    @Override
+    public List<SimplePersistentObject> createAll(List<SimplePersistentObject> entities)
+    {
+        writeCount++;
+        lastWriteSize = entities.size();
+        for (SimplePersistentObject entity : entities)
+        {
+            create(entity);
+        }
+        return new ArrayList<>(entities);
+    }
+
+    @Override
+    public List<SimplePersistentObject> updateAll(List<SimplePersistentObject> entities)
+    {
+        writeCount++;
+        lastWriteSize = entities.size();
+        for (SimplePersistentObject entity : entities)
+        {
+            update(entity);
+        }
+        return new ArrayList<>(entities);
+    }
+
+    @Override
+    public void delete(SimplePersistentObject entity)
+    {
+        items.remove(entity.getId());
+    }
+
+    @Override
+    public int deleteByQuery(Class<SimplePersistentObject> entityClass,
+                             List<PersistentQueryBuilder> predicateBuilders, int batchSize)
+    {
+        deleteByQueryCount++;
+        int deleted = items.size();
+        items.clear();
+        return deleted;
+    }
+
+    @Override
+    public int updateByQuery(Class<SimplePersistentObject> entityClass,
+                             List<PersistentQueryBuilder> predicateBuilders, Map<String, Object> values,
+                             int batchSize)
+    {
+        lastUpdateValues = values;
+        return items.size();
+    }
+
+    @Override
+    public void flushBatch()
+    {
+    }
+
+    @Override
+    public void reset(SimplePersistentObject entity)
+    {
+        resetCount++;
+    }
+
+    @Override
+    public <H extends PersistentHistoryEntry<Long>> PersistentQueryResult<H> getHistory(Class<H> historyType,
+                                                                                        String entityType,
+                                                                                        Long entityId,
+                                                                                        Integer start,
+                                                                                        Integer limit)
+    {
+        PersistentQueryResult<H> result = new PersistentQueryResult<>();
+        result.setResults(Collections.<H>emptyList());
+        result.setTotalCount(0L);
+        return result;
+    }
+
+    @Override
+    public <H extends PersistentHistoryEntry<Long>> void saveHistory(H entry)
+    {
+    }
+
+    @Override
+    public Date getCurrentTimestamp()
+    {
+        return new Date();
+    }
+
+    @Override
+    public Date getDatabaseTimestamp()
+    {
+        return new Date();
+    }
+}
@@ -0,0 +1,76 @@
+package com.dottydingo.hyperion.core.persistence.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ */
+public class EntityCacheTest
+{
+    @Test
+    public void testGetAndPut()
+    {
+        EntityCache<Long,String> cache = new EntityCache<>(10, 0);
+        Assert.assertNull(cache.get(1L));
+        Assert.assertEquals(1, cache.getMissCount());
+
+        cache.put(1L, "one", cache.getGeneration());
+        Assert.assertEquals("one", cache.get(1L));
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(1, cache.getSize());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction()
+    {
+        EntityCache<Long,String> cache = new EntityCache<>(2, 0);
+        cache.put(1L, "one", cache.getGeneration());
+        cache.put(2L, "two", cache.getGeneration());
+
+        // touch the first entry so that the second is the least recently used
+        cache.get(1L);
+        cache.put(3L, "three", cache.getGeneration());
+
+        Assert.assertEquals(2, cache.getSize());
+        Assert.assertEquals(1, cache.getEvictionCount());
+        Assert.assertEquals("one", cache.get(1L));
+        Assert.assertNull(cache.get(2L));
+        Assert.assertEquals("three", cache.get(3L));
+    }
+
+    @Test
+    public void testExpiration() throws Exception
+    {
+        EntityCache<Long,String> cache = new EntityCache<>(10, 1);
+        cache.put(1L, "one", cache.getGeneration());
+        Thread.sleep(5);
+
+        Assert.assertNull(cache.get(1L));
+        Assert.assertEquals(1, cache.getExpirationCount());
+        Assert.assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testInvalidate()
+    {
+        EntityCache<Long,String> cache = new EntityCache<>(10, 0);
+        cache.put(1L, "one", cache.getGeneration());
+        cache.invalidate(1L);
+
+        Assert.assertNull(cache.get(1L));
+        Assert.assertEquals(1, cache.getInvalidationCount());
+    }
+
+    @Test
+    public void testStaleLoadNotCached()
+    {
+        EntityCache<Long,String> cache = new EntityCache<>(10, 0);
+        long generation = cache.getGeneration();
+
+        // an invalidation happens while the item is being loaded
+        cache.invalidate(1L);
+        cache.put(1L, "stale", generation);
+
+        Assert.assertNull(cache.get(1L));
+    }
+}
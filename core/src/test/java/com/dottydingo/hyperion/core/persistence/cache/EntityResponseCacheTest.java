@@ -0,0 +1,48 @@
+package com.dottydingo.hyperion.core.persistence.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ */
+public class EntityResponseCacheTest
+{
+    @Test
+    public void testVariants()
+    {
+        EntityResponseCache<Long> cache = new EntityResponseCache<>(10, 0);
+        long generation = cache.getGeneration();
+        cache.put(1L, "1|*|", "{\"id\":1,\"name\":\"one\"}", generation);
+        cache.put(1L, "1|id,|", "{\"id\":1}", generation);
+
+        Assert.assertEquals("{\"id\":1,\"name\":\"one\"}", cache.get(1L, "1|*|"));
+        Assert.assertEquals("{\"id\":1}", cache.get(1L, "1|id,|"));
+        Assert.assertNull(cache.get(1L, "2|*|"));
+        Assert.assertNull(cache.get(2L, "1|*|"));
+    }
+
+    @Test
+    public void testInvalidateRemovesAllVariants()
+    {
+        EntityResponseCache<Long> cache = new EntityResponseCache<>(10, 0);
+        long generation = cache.getGeneration();
+        cache.put(1L, "a", "{}", generation);
+        cache.put(1L, "b", "{}", generation);
+
+        cache.getEntityCache().invalidate(1L);
+
+        Assert.assertNull(cache.get(1L, "a"));
+        Assert.assertNull(cache.get(1L, "b"));
+    }
+
+    @Test
+    public void testStaleLoadNotCached()
+    {
+        EntityResponseCache<Long> cache = new EntityResponseCache<>(10, 0);
+        long generation = cache.getGeneration();
+        cache.getEntityCache().invalidate(1L);
+        cache.put(1L, "a", "{}", generation);
+
+        Assert.assertNull(cache.get(1L, "a"));
+    }
+}
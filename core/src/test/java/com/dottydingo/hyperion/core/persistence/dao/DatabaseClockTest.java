@@ -0,0 +1,145 @@
+package com.dottydingo.hyperion.core.persistence.dao;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ */
+public class DatabaseClockTest
+{
+    private TestSource source;
+    private TestClock clock;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        source = new TestSource();
+        clock = new TestClock(source);
+        clock.setSyncInterval(1000);
+        clock.setMaxDrift(10);
+    }
+
+    @Test
+    public void testDerivesTimeFromSample() throws Exception
+    {
+        source.time = 50000;
+        Assert.assertEquals(50000, clock.now().getTime());
+        Assert.assertEquals(1, source.calls);
+
+        clock.advance(250);
+        Assert.assertEquals(50250, clock.now().getTime());
+        Assert.assertEquals(1, source.calls);
+    }
+
+    @Test
+    public void testResamplesAfterInterval() throws Exception
+    {
+        source.time = 50000;
+        clock.now();
+
+        clock.advance(1000);
+        source.time = 51000;
+        Assert.assertEquals(51000, clock.now().getTime());
+        Assert.assertEquals(2, source.calls);
+        Assert.assertEquals(0, clock.getLastDrift());
+    }
+
+    @Test
+    public void testDriftShortensInterval() throws Exception
+    {
+        source.time = 50000;
+        clock.now();
+
+        clock.advance(1000);
+        source.time = 51100;
+        clock.now();
+        Assert.assertEquals(100, clock.getLastDrift());
+
+        // the interval is halved so the next sample is taken sooner
+        clock.advance(500);
+        source.time = 51600;
+        clock.now();
+        Assert.assertEquals(3, source.calls);
+    }
+
+    @Test
+    public void testNeverGoesBackwards() throws Exception
+    {
+        source.time = 50000;
+        clock.now();
+
+        clock.advance(900);
+        Assert.assertEquals(50900, clock.now().getTime());
+
+        // the new sample is behind the time already returned so each call moves on by a millisecond
+        clock.advance(100);
+        source.time = 50500;
+        Assert.assertEquals(50901, clock.now().getTime());
+        Assert.assertEquals(50902, clock.now().getTime());
+
+        clock.advance(100);
+        Assert.assertEquals(50903, clock.now().getTime());
+
+        // once the database time catches up it is used again
+        clock.advance(400);
+        source.time = 51000;
+        Assert.assertEquals(51000, clock.now().getTime());
+        Assert.assertEquals(51000, clock.now().getTime());
+    }
+
+    @Test
+    public void testDisabledByDefault() throws Exception
+    {
+        clock = new TestClock(source);
+        Assert.assertFalse(clock.isEnabled());
+        Assert.assertEquals(0, clock.getSyncInterval());
+    }
+
+    @Test
+    public void testDisabled() throws Exception
+    {
+        clock.setSyncInterval(0);
+        source.time = 50000;
+        clock.now();
+        clock.now();
+        Assert.assertEquals(2, source.calls);
+    }
+
+    private static class TestSource implements DatabaseTimestampSource
+    {
+        private long time;
+        private int calls;
+
+        @Override
+        public Date getDatabaseTimestamp()
+        {
+            calls++;
+            return new Date(time);
+        }
+    }
+
+    private static class TestClock extends DatabaseClock
+    {
+        private long nanos = 1000;
+
+        private TestClock(DatabaseTimestampSource source)
+        {
+            super(source);
+        }
+
+        private void advance(long millis)
+        {
+            nanos += TimeUnit.MILLISECONDS.toNanos(millis);
+        }
+
+        @Override
+        protected long nanoTime()
+        {
+            return nanos;
+        }
+    }
+}
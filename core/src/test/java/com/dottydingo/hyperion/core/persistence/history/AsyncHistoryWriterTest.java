@@ -0,0 +1,329 @@
+package com.dottydingo.hyperion.core.persistence.history;
+
+import com.dottydingo.hyperion.api.HistoryAction;
+import com.dottydingo.hyperion.core.configuration.HyperionEndpointConfiguration;
+import com.dottydingo.hyperion.core.endpoint.marshall.EndpointMarshaller;
+import com.dottydingo.hyperion.core.model.PersistentHistoryEntry;
+import com.dottydingo.hyperion.core.persistence.InMemoryDao;
+import com.dottydingo.hyperion.core.translation.SimpleClientObject;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ */
+public class AsyncHistoryWriterTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+    private RecordingDao dao;
+    private AsyncHistoryWriter writer;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        directory = folder.newFolder("journal");
+        dao = new RecordingDao();
+        writer = createWriter(dao);
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        writer.stop();
+        if(TransactionSynchronizationManager.isSynchronizationActive())
+            TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    @Test
+    public void testQueuesAfterCommit() throws Exception
+    {
+        writer.start();
+
+        TransactionSynchronizationManager.initSynchronization();
+        writer.submit(createRecord(1L), null, null, dao);
+        Assert.assertEquals(0, writer.getQueueSize());
+        Assert.assertEquals(0, dao.getAttempts());
+
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations())
+        {
+            synchronization.afterCommit();
+        }
+        TransactionSynchronizationManager.clearSynchronization();
+
+        writer.stop();
+        Assert.assertEquals(Arrays.<Serializable>asList(1L), dao.getSaved());
+        Assert.assertEquals(1, writer.getWrittenCount());
+    }
+
+    @Test
+    public void testDiscardedOnRollback() throws Exception
+    {
+        writer.start();
+
+        TransactionSynchronizationManager.initSynchronization();
+        writer.submit(createRecord(1L), null, null, dao);
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations())
+        {
+            synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+        }
+        TransactionSynchronizationManager.clearSynchronization();
+
+        writer.stop();
+        Assert.assertEquals(0, dao.getAttempts());
+    }
+
+    @Test
+    public void testRetriesFailedBatch() throws Exception
+    {
+        dao.failFirst(1);
+        writer.start();
+
+        writer.submit(createRecord(1L), null, null, dao);
+        waitForAttempts(2);
+
+        writer.stop();
+        Assert.assertEquals(Arrays.<Serializable>asList(1L), dao.getSaved());
+        Assert.assertEquals(1, writer.getWrittenCount());
+        Assert.assertEquals(0, writer.getDroppedCount());
+    }
+
+    @Test
+    public void testEntityHistoryStaysInOrder() throws Exception
+    {
+        dao.failFirst(1);
+        writer.setRetryInterval(200);
+        writer.start();
+
+        writer.submit(createRecord(1L, "first"), null, null, dao);
+        waitForAttempts(1);
+        writer.submit(createRecord(1L, "second"), null, null, dao);
+        writer.submit(createRecord(2L, "other"), null, null, dao);
+        waitForAttempts(4);
+
+        writer.stop();
+        List<String> values = dao.getValues();
+        Assert.assertEquals(3, values.size());
+        Assert.assertTrue(values.contains("other"));
+        Assert.assertTrue(values.indexOf("first") < values.indexOf("second"));
+        Assert.assertEquals(0, writer.getDroppedCount());
+    }
+
+    @Test
+    public void testDeltaFollowsUnwrittenEntry() throws Exception
+    {
+        EndpointMarshaller endpointMarshaller = new EndpointMarshaller();
+        endpointMarshaller.setConfiguration(new HyperionEndpointConfiguration());
+        endpointMarshaller.init();
+        HistorySerializer serializer = new HistorySerializer();
+        serializer.setEndpointMarshaller(endpointMarshaller);
+        serializer.setDeltaEnabled(true);
+
+        dao.failFirst(1);
+        writer.setHistorySerializer(serializer);
+        writer.setJournalDirectory(directory.getPath());
+        writer.setRetryInterval(200);
+        writer.start();
+
+        SimpleClientObject created = createClient("name");
+        SimpleClientObject renamed = createClient("renamed");
+        writer.submit(createRecord(1L, null, HistoryAction.CREATE), created, null, dao);
+        writer.submit(createRecord(1L, null, HistoryAction.MODIFY), renamed, created, dao);
+        waitForAttempts(3);
+
+        writer.stop();
+        List<String> values = dao.getValues();
+        Assert.assertEquals(2, values.size());
+        Assert.assertTrue(values.get(0).startsWith("{"));
+        Assert.assertFalse(values.get(1).startsWith("{"));
+    }
+
+    @Test
+    public void testCheckpointHeldBehindFailedBatch() throws Exception
+    {
+        dao.failAlways(1L);
+        writer.setJournalDirectory(directory.getPath());
+        writer.setRetryInterval(60000);
+        writer.start();
+
+        writer.submit(createRecord(1L), null, null, dao);
+        writer.submit(createRecord(2L), null, null, dao);
+        waitForAttempts(2);
+
+        writer.stop();
+        Assert.assertEquals(Arrays.<Serializable>asList(2L), dao.getSaved());
+        Assert.assertEquals(1, writer.getDroppedCount());
+
+        // the written entry after the failed one is recovered as well
+        HistoryJournal journal = new HistoryJournal(directory, true);
+        Assert.assertEquals(2, journal.getRecovered().size());
+        Assert.assertEquals(1L, journal.getRecovered().get(0).getRecord().getEntityId());
+        journal.close();
+    }
+
+    @Test
+    public void testRecoversFromJournal() throws Exception
+    {
+        dao.failAlways(1L);
+        writer.setJournalDirectory(directory.getPath());
+        writer.start();
+
+        writer.submit(createRecord(1L), null, null, dao);
+        waitForAttempts(1);
+        writer.stop();
+        Assert.assertTrue(dao.getSaved().isEmpty());
+
+        RecordingDao recoveryDao = new RecordingDao();
+        writer = createWriter(recoveryDao);
+        writer.setJournalDirectory(directory.getPath());
+        writer.start();
+
+        Assert.assertEquals(Arrays.<Serializable>asList(1L), recoveryDao.getSaved());
+        Assert.assertEquals(1, writer.getWrittenCount());
+        writer.stop();
+
+        HistoryJournal journal = new HistoryJournal(directory, true);
+        Assert.assertTrue(journal.getRecovered().isEmpty());
+        journal.close();
+    }
+
+    private AsyncHistoryWriter createWriter(RecordingDao defaultDao)
+    {
+        AsyncHistoryWriter asyncHistoryWriter = new AsyncHistoryWriter();
+        asyncHistoryWriter.setEnabled(true);
+        asyncHistoryWriter.setBatchSize(1);
+        asyncHistoryWriter.setMaxAttempts(1);
+        asyncHistoryWriter.setRetryInterval(10);
+        asyncHistoryWriter.setDefaultDao(defaultDao);
+        asyncHistoryWriter.setTransactionManager(new StubTransactionManager());
+        return asyncHistoryWriter;
+    }
+
+    private void waitForAttempts(int attempts) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (dao.getAttempts() < attempts && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(dao.getAttempts() >= attempts);
+    }
+
+    private HistoryRecord createRecord(Long id)
+    {
+        return createRecord(id, "{\"id\":" + id + "}");
+    }
+
+    private HistoryRecord createRecord(Long id, String serializedEntry)
+    {
+        return createRecord(id, serializedEntry, HistoryAction.MODIFY);
+    }
+
+    private HistoryRecord createRecord(Long id, String serializedEntry, HistoryAction historyAction)
+    {
+        HistoryRecord record = new HistoryRecord();
+        record.setHistoryType(TestHistoryEntry.class.getName());
+        record.setEntityType("Test");
+        record.setEntityId(id);
+        record.setApiVersion(1);
+        record.setHistoryAction(historyAction);
+        record.setUser("user");
+        record.setTimestamp(new Date());
+        record.setSerializedEntry(serializedEntry);
+        return record;
+    }
+
+    private SimpleClientObject createClient(String name)
+    {
+        SimpleClientObject client = new SimpleClientObject();
+        client.setId(1L);
+        client.setName(name);
+        client.setNumber(1);
+        client.setClientOnly("client");
+        client.setDifferentType("type");
+        return client;
+    }
+
+    private static class RecordingDao extends InMemoryDao
+    {
+        private final List<Serializable> saved = Collections.synchronizedList(new ArrayList<Serializable>());
+        private final List<String> values = Collections.synchronizedList(new ArrayList<String>());
+        private final Set<Serializable> failing = new HashSet<>();
+        private volatile int failures;
+        private volatile int attempts;
+
+        public void failFirst(int failures)
+        {
+            this.failures = failures;
+        }
+
+        public void failAlways(Serializable entityId)
+        {
+            failing.add(entityId);
+        }
+
+        public List<Serializable> getSaved()
+        {
+            return saved;
+        }
+
+        public List<String> getValues()
+        {
+            return values;
+        }
+
+        public int getAttempts()
+        {
+            return attempts;
+        }
+
+        @Override
+        public <H extends PersistentHistoryEntry<Long>> void saveHistory(H entry)
+        {
+            attempts++;
+            if(failures > 0)
+            {
+                failures--;
+                throw new IllegalStateException("Unable to save history.");
+            }
+            if(failing.contains(entry.getEntityId()))
+                throw new IllegalStateException("Unable to save history.");
+            saved.add(entry.getEntityId());
+            values.add(entry.getSerializedEntry());
+        }
+    }
+
+    private static class StubTransactionManager implements PlatformTransactionManager
+    {
+        @Override
+        public TransactionStatus getTransaction(TransactionDefinition definition)
+        {
+            return new SimpleTransactionStatus();
+        }
+
+        @Override
+        public void commit(TransactionStatus status)
+        {
+        }
+
+        @Override
+        public void rollback(TransactionStatus status)
+        {
+        }
+    }
+}
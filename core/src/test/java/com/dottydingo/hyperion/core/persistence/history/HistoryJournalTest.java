@@ -0,0 +1,170 @@
+package com.dottydingo.hyperion.core.persistence.history;
+
+import com.dottydingo.hyperion.api.HistoryAction;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Date;
+import java.util.List;
+
+/**
+ */
+public class HistoryJournalTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        directory = folder.newFolder("journal");
+    }
+
+    @Test
+    public void testRecoversUncheckpointedRecords() throws Exception
+    {
+        HistoryJournal journal = new HistoryJournal(directory, true);
+        Assert.assertTrue(journal.getRecovered().isEmpty());
+
+        long first = journal.append(createRecord(1L));
+        journal.append(createRecord(2L));
+        journal.append(createRecord(3L));
+        journal.checkpoint(first);
+        journal.close();
+
+        journal = new HistoryJournal(directory, true);
+        List<HistoryJournal.Entry> recovered = journal.getRecovered();
+        Assert.assertEquals(2, recovered.size());
+        Assert.assertEquals(2L, recovered.get(0).getRecord().getEntityId());
+        Assert.assertEquals(3L, recovered.get(1).getRecord().getEntityId());
+        Assert.assertEquals("user", recovered.get(1).getRecord().getUser());
+        Assert.assertEquals(HistoryAction.MODIFY, recovered.get(1).getRecord().getHistoryAction());
+        journal.close();
+    }
+
+    @Test
+    public void testTruncatesWhenCaughtUp() throws Exception
+    {
+        HistoryJournal journal = new HistoryJournal(directory, true);
+        journal.append(createRecord(1L));
+        long last = journal.append(createRecord(2L));
+        Assert.assertEquals(last, journal.getPendingBytes());
+
+        journal.checkpoint(last);
+        Assert.assertEquals(0, journal.getPendingBytes());
+        Assert.assertEquals(1, journal.getSegmentCount());
+        Assert.assertFalse(segmentFile(0).exists());
+
+        long next = journal.append(createRecord(3L));
+        journal.close();
+
+        journal = new HistoryJournal(directory, true);
+        Assert.assertEquals(1, journal.getRecovered().size());
+        Assert.assertEquals(next, journal.getRecovered().get(0).getOffset());
+        journal.close();
+    }
+
+    @Test
+    public void testDiscardsPartialRecord() throws Exception
+    {
+        HistoryJournal journal = new HistoryJournal(directory, true);
+        long first = journal.append(createRecord(1L));
+        journal.append(createRecord(2L));
+        journal.close();
+
+        File file = segmentFile(0);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw"))
+        {
+            raf.setLength(file.length() - 5);
+        }
+
+        journal = new HistoryJournal(directory, true);
+        Assert.assertEquals(1, journal.getRecovered().size());
+        Assert.assertEquals(1L, journal.getRecovered().get(0).getRecord().getEntityId());
+        Assert.assertEquals(first, file.length());
+
+        // appends continue after the last complete record
+        journal.append(createRecord(3L));
+        journal.close();
+
+        journal = new HistoryJournal(directory, true);
+        Assert.assertEquals(2, journal.getRecovered().size());
+        Assert.assertEquals(3L, journal.getRecovered().get(1).getRecord().getEntityId());
+        journal.close();
+    }
+
+    @Test
+    public void testRotatesSegments() throws Exception
+    {
+        HistoryJournal journal = new HistoryJournal(directory, true, 1);
+        journal.append(createRecord(1L));
+        long second = journal.append(createRecord(2L));
+        long third = journal.append(createRecord(3L));
+        Assert.assertEquals(3, journal.getSegmentCount());
+
+        journal.checkpoint(second);
+        Assert.assertEquals(1, journal.getSegmentCount());
+        Assert.assertEquals(third - second, journal.getPendingBytes());
+        Assert.assertTrue(segmentFile(second).exists());
+        journal.close();
+
+        journal = new HistoryJournal(directory, true, 1);
+        Assert.assertEquals(1, journal.getRecovered().size());
+        Assert.assertEquals(3L, journal.getRecovered().get(0).getRecord().getEntityId());
+        Assert.assertEquals(third, journal.getRecovered().get(0).getOffset());
+
+        // offsets keep increasing across segments
+        long fourth = journal.append(createRecord(4L));
+        Assert.assertTrue(fourth > third);
+        journal.close();
+    }
+
+    @Test
+    public void testRecoversLegacyJournal() throws Exception
+    {
+        HistoryJournal journal = new HistoryJournal(directory, true);
+        journal.append(createRecord(1L));
+        journal.append(createRecord(2L));
+        journal.close();
+
+        Assert.assertTrue(segmentFile(0).renameTo(new File(directory, HistoryJournal.LEGACY_JOURNAL_FILE)));
+
+        journal = new HistoryJournal(directory, true);
+        Assert.assertEquals(2, journal.getRecovered().size());
+        Assert.assertEquals(1L, journal.getRecovered().get(0).getRecord().getEntityId());
+        Assert.assertFalse(new File(directory, HistoryJournal.LEGACY_JOURNAL_FILE).exists());
+        journal.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidSegmentSize() throws Exception
+    {
+        new HistoryJournal(directory, true, 0);
+    }
+
+    private File segmentFile(long base)
+    {
+        return new File(directory, String.format("history-%020d.journal", base));
+    }
+
+    private HistoryRecord createRecord(Long id)
+    {
+        HistoryRecord record = new HistoryRecord();
+        record.setHistoryType("com.example.History");
+        record.setEntityType("Test");
+        record.setEntityId(id);
+        record.setApiVersion(1);
+        record.setHistoryAction(HistoryAction.MODIFY);
+        record.setUser("user");
+        record.setTimestamp(new Date());
+        record.setSerializedEntry("{\"id\":" + id + "}");
+        return record;
+    }
+}
@@ -0,0 +1,297 @@
+package com.dottydingo.hyperion.core.persistence.history;
+
+import com.dottydingo.hyperion.api.HistoryAction;
+import com.dottydingo.hyperion.api.exception.InternalException;
+import com.dottydingo.hyperion.core.StubMessageSource;
+import com.dottydingo.hyperion.core.configuration.HyperionEndpointConfiguration;
+import com.dottydingo.hyperion.core.endpoint.marshall.EndpointMarshaller;
+import com.dottydingo.hyperion.core.endpoint.pipeline.auth.NoOpAuthorizationContext;
+import com.dottydingo.hyperion.core.model.PersistentHistoryEntry;
+import com.dottydingo.hyperion.core.model.PersistentObject;
+import com.dottydingo.hyperion.core.persistence.PersistenceContext;
+import com.dottydingo.hyperion.core.registry.ApiVersionPlugin;
+import com.dottydingo.hyperion.core.registry.ApiVersionRegistry;
+import com.dottydingo.hyperion.core.registry.EntityPlugin;
+import com.dottydingo.hyperion.core.translation.DefaultTranslator;
+import com.dottydingo.hyperion.core.translation.SimpleClientObject;
+import com.dottydingo.hyperion.core.translation.SimplePersistentObject;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ */
+public class HistorySerializerTest
+{
+    private HistorySerializer serializer;
+    private PersistenceContext context;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        EndpointMarshaller endpointMarshaller = new EndpointMarshaller();
+        endpointMarshaller.setConfiguration(new HyperionEndpointConfiguration());
+        endpointMarshaller.init();
+
+        serializer = new HistorySerializer();
+        serializer.setEndpointMarshaller(endpointMarshaller);
+
+        DefaultTranslator<SimpleClientObject,SimplePersistentObject> translator =
+                new DefaultTranslator<SimpleClientObject,SimplePersistentObject>(SimpleClientObject.class,
+                        SimplePersistentObject.class);
+        translator.init();
+
+        ApiVersionRegistry<SimpleClientObject,SimplePersistentObject,Long> registry = new ApiVersionRegistry<>();
+        registry.setPlugins(Collections.singletonList(
+                new ApiVersionPlugin<SimpleClientObject,SimplePersistentObject,Long>(1, translator, null,
+                        SimpleClientObject.class)));
+
+        EntityPlugin entityPlugin = new EntityPlugin();
+        entityPlugin.setApiVersionRegistry(registry);
+
+        context = new PersistenceContext();
+        context.setEntityPlugin(entityPlugin);
+        context.setAuthorizationContext(new NoOpAuthorizationContext(null));
+        context.setMessageSource(new StubMessageSource());
+    }
+
+    @Test
+    public void testFullEntries() throws Exception
+    {
+        SimpleClientObject original = buildClient("name", 1, "client");
+        String encoded = serializer.encodeHistoryEntry(original, null, HistoryAction.CREATE, 1, null);
+        Assert.assertTrue(encoded.startsWith("{"));
+
+        TestHistoryEntry entry = buildEntry(encoded);
+        Assert.assertFalse(serializer.isDelta(entry));
+
+        SimpleClientObject result = serializer.deserializeHistoryEntry(entry, context);
+        Assert.assertEquals("name", result.getName());
+        Assert.assertEquals(new Integer(1), result.getNumber());
+    }
+
+    @Test
+    public void testDeltaEntries() throws Exception
+    {
+        serializer.setDeltaEnabled(true);
+        serializer.setSnapshotInterval(Integer.MAX_VALUE);
+
+        SimpleClientObject created = buildClient("name", 1, "client");
+        SimpleClientObject renamed = buildClient("renamed", 1, "client");
+        SimpleClientObject cleared = buildClient("renamed", 2, null);
+
+        TestHistoryEntry first = buildSnapshot(created);
+        TestHistoryEntry second = buildEntry(serializer.encodeHistoryEntry(renamed, created, HistoryAction.MODIFY, 1,
+                first));
+        TestHistoryEntry third = buildEntry(serializer.encodeHistoryEntry(cleared, renamed, HistoryAction.MODIFY, 1,
+                second));
+
+        Assert.assertFalse(serializer.isDelta(first));
+        Assert.assertTrue(serializer.isDelta(second));
+        Assert.assertTrue(serializer.isDelta(third));
+        Assert.assertFalse(second.getSerializedEntry().contains("client"));
+
+        List<SimpleClientObject> results = serializer.deserializeHistoryEntries(
+                Collections.<PersistentHistoryEntry>singletonList(first),
+                Arrays.<PersistentHistoryEntry>asList(second, third), context);
+
+        Assert.assertEquals(2, results.size());
+        Assert.assertEquals("renamed", results.get(0).getName());
+        Assert.assertEquals(new Integer(1), results.get(0).getNumber());
+        Assert.assertEquals("client", results.get(0).getClientOnly());
+        Assert.assertEquals("renamed", results.get(1).getName());
+        Assert.assertEquals(new Integer(2), results.get(1).getNumber());
+        Assert.assertNull(results.get(1).getClientOnly());
+        Assert.assertEquals(new Long(1), results.get(1).getId());
+    }
+
+    @Test(expected = InternalException.class)
+    public void testDeltaWithoutSnapshot() throws Exception
+    {
+        serializer.setDeltaEnabled(true);
+        serializer.setSnapshotInterval(Integer.MAX_VALUE);
+
+        SimpleClientObject created = buildClient("name", 1, "client");
+        SimpleClientObject renamed = buildClient("renamed", 1, "client");
+
+        TestHistoryEntry first = buildSnapshot(created);
+        TestHistoryEntry second = buildEntry(serializer.encodeHistoryEntry(renamed, created, HistoryAction.MODIFY, 1,
+                first));
+        Assert.assertTrue(serializer.isDelta(second));
+
+        serializer.deserializeHistoryEntries(Collections.<PersistentHistoryEntry>emptyList(),
+                Collections.<PersistentHistoryEntry>singletonList(second), context);
+    }
+
+    @Test
+    public void testCompressedEntries() throws Exception
+    {
+        serializer.setDeltaEnabled(true);
+        serializer.setSnapshotInterval(Integer.MAX_VALUE);
+        serializer.setCompressionEnabled(true);
+        serializer.setCompressionThreshold(0);
+
+        SimpleClientObject created = buildClient("name", 1, "client");
+        SimpleClientObject renamed = buildClient("renamed", 1, "client");
+
+        TestHistoryEntry first = buildSnapshot(created);
+        TestHistoryEntry second = buildEntry(serializer.encodeHistoryEntry(renamed, created, HistoryAction.MODIFY, 1,
+                first));
+
+        Assert.assertFalse(first.getSerializedEntry().startsWith("{"));
+        Assert.assertFalse(serializer.isDelta(first));
+        Assert.assertTrue(serializer.isDelta(second));
+
+        List<SimpleClientObject> results = serializer.deserializeHistoryEntries(
+                Collections.<PersistentHistoryEntry>emptyList(),
+                Arrays.<PersistentHistoryEntry>asList(first, second), context);
+
+        Assert.assertEquals("name", results.get(0).getName());
+        Assert.assertEquals("renamed", results.get(1).getName());
+        Assert.assertEquals("client", results.get(1).getClientOnly());
+    }
+
+    @Test
+    public void testLargeChangeStoresSnapshot() throws Exception
+    {
+        serializer.setDeltaEnabled(true);
+        serializer.setSnapshotInterval(Integer.MAX_VALUE);
+
+        SimpleClientObject original = buildClient("name", 1, "client");
+        SimpleClientObject updated = buildClient("other", 2, "changed");
+
+        TestHistoryEntry first = buildSnapshot(original);
+        String encoded = serializer.encodeHistoryEntry(updated, original, HistoryAction.MODIFY, 1, first);
+        Assert.assertFalse(serializer.isDelta(buildEntry(encoded)));
+    }
+
+    @Test
+    public void testSnapshotInterval() throws Exception
+    {
+        serializer.setDeltaEnabled(true);
+        serializer.setSnapshotInterval(3);
+
+        SimpleClientObject previousClient = buildClient("name0", 1, "client");
+        TestHistoryEntry previous = buildSnapshot(previousClient);
+        List<PersistentHistoryEntry> entries = new ArrayList<>();
+        entries.add(previous);
+        for (int i = 1; i <= 6; i++)
+        {
+            SimpleClientObject client = buildClient("name" + i, 1, "client");
+            previous = buildEntry(serializer.encodeHistoryEntry(client, previousClient, HistoryAction.MODIFY, 1,
+                    previous));
+            entries.add(previous);
+            previousClient = client;
+        }
+
+        // two deltas follow each snapshot
+        for (int i = 0; i < entries.size(); i++)
+        {
+            Assert.assertEquals(i % 3 != 0, serializer.isDelta(entries.get(i)));
+        }
+
+        List<SimpleClientObject> results = serializer.deserializeHistoryEntries(entries.subList(3, 5),
+                entries.subList(5, 7), context);
+        Assert.assertEquals("name5", results.get(0).getName());
+        Assert.assertEquals("name6", results.get(1).getName());
+    }
+
+    @Test
+    public void testVersionChangeStoresSnapshot() throws Exception
+    {
+        serializer.setDeltaEnabled(true);
+        serializer.setSnapshotInterval(Integer.MAX_VALUE);
+
+        SimpleClientObject created = buildClient("name", 1, "client");
+        SimpleClientObject renamed = buildClient("renamed", 1, "client");
+
+        TestHistoryEntry first = buildSnapshot(created);
+        Assert.assertTrue(serializer.isDelta(buildEntry(serializer.encodeHistoryEntry(renamed, created,
+                HistoryAction.MODIFY, 1, first))));
+        Assert.assertFalse(serializer.isDelta(buildEntry(serializer.encodeHistoryEntry(renamed, created,
+                HistoryAction.MODIFY, 2, first))));
+        Assert.assertFalse(serializer.isDelta(buildEntry(serializer.encodeHistoryEntry(renamed, created,
+                HistoryAction.MODIFY, 1, null))));
+    }
+
+    @Test
+    public void testRowIndependentFiltering() throws Exception
+    {
+        context.setAuthorizationContext(new HiddenNameAuthorizationContext(false));
+        TestHistoryEntry entry = buildEntry(serializer.encodeHistoryEntry(buildClient("name", 1, "client"), null,
+                HistoryAction.CREATE, 1, null));
+
+        SimpleClientObject result = serializer.deserializeHistoryEntry(entry, context);
+        Assert.assertNull(result.getName());
+        Assert.assertEquals(new Integer(1), result.getNumber());
+        Assert.assertEquals(new Long(1), result.getId());
+    }
+
+    @Test
+    public void testRowFiltering() throws Exception
+    {
+        context.setAuthorizationContext(new HiddenNameAuthorizationContext(true));
+        TestHistoryEntry entry = buildEntry(serializer.encodeHistoryEntry(buildClient("name", 1, "client"), null,
+                HistoryAction.CREATE, 1, null));
+
+        SimpleClientObject result = serializer.deserializeHistoryEntry(entry, context);
+        Assert.assertNull(result.getName());
+        Assert.assertEquals(new Integer(1), result.getNumber());
+    }
+
+    private SimpleClientObject buildClient(String name, Integer number, String clientOnly)
+    {
+        SimpleClientObject client = new SimpleClientObject();
+        client.setId(1L);
+        client.setName(name);
+        client.setNumber(number);
+        client.setClientOnly(clientOnly);
+        client.setDifferentType("type");
+        return client;
+    }
+
+    private TestHistoryEntry buildSnapshot(SimpleClientObject client) throws Exception
+    {
+        return buildEntry(serializer.encodeHistoryEntry(client, null, HistoryAction.CREATE, 1, null));
+    }
+
+    private TestHistoryEntry buildEntry(String serializedEntry)
+    {
+        TestHistoryEntry entry = new TestHistoryEntry();
+        entry.setEntityId(1L);
+        entry.setApiVersion(1);
+        entry.setSerializedEntry(serializedEntry);
+        entry.setTimestamp(new Date());
+        return entry;
+    }
+
+    private static class HiddenNameAuthorizationContext extends NoOpAuthorizationContext
+    {
+        private final boolean rowDependent;
+
+        private HiddenNameAuthorizationContext(boolean rowDependent)
+        {
+            super(null);
+            this.rowDependent = rowDependent;
+        }
+
+        @Override
+        public boolean isReadable(PersistentObject persistent, String propertyName)
+        {
+            Assert.assertNotNull(persistent);
+            return !propertyName.equals("name");
+        }
+
+        @Override
+        public Boolean isReadable(String propertyName)
+        {
+            return rowDependent ? null : !propertyName.equals("name");
+        }
+    }
+}
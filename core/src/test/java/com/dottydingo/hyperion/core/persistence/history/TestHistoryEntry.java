@@ -0,0 +1,100 @@
+package com.dottydingo.hyperion.core.persistence.history;
+
+import com.dottydingo.hyperion.api.HistoryAction;
+import com.dottydingo.hyperion.core.model.PersistentHistoryEntry;
+
+import java.util.Date;
+
+/**
+ */
+public class TestHistoryEntry implements PersistentHistoryEntry<Long>
+{
+    private Long id;
+    private String entityType;
+    private Long entityId;
+    private HistoryAction historyAction;
+    private Integer apiVersion;
+    private String serializedEntry;
+    private String user;
+    private Date timestamp;
+
+    public Long getId()
+    {
+        return id;
+    }
+
+    public void setId(Long id)
+    {
+        this.id = id;
+    }
+
+    public String getEntityType()
+    {
+        return entityType;
+    }
+
+    public void setEntityType(String entityType)
+    {
+        this.entityType = entityType;
+    }
+
+    public Long getEntityId()
+    {
+        return entityId;
+    }
+
+    public void setEntityId(Long entityId)
+    {
+        this.entityId = entityId;
+    }
+
+    public HistoryAction getHistoryAction()
+    {
+        return historyAction;
+    }
+
+    public void setHistoryAction(HistoryAction historyAction)
+    {
+        this.historyAction = historyAction;
+    }
+
+    public Integer getApiVersion()
+    {
+        return apiVersion;
+    }
+
+    public void setApiVersion(Integer apiVersion)
+    {
+        this.apiVersion = apiVersion;
+    }
+
+    public String getSerializedEntry()
+    {
+        return serializedEntry;
+    }
+
+    public void setSerializedEntry(String serializedEntry)
+    {
+        this.serializedEntry = serializedEntry;
+    }
+
+    public String getUser()
+    {
+        return user;
+    }
+
+    public void setUser(String user)
+    {
+        this.user = user;
+    }
+
+    public Date getTimestamp()
+    {
+        return timestamp;
+    }
+
+    public void setTimestamp(Date timestamp)
+    {
+        this.timestamp = timestamp;
+    }
+}
@@ -0,0 +1,98 @@
+package com.dottydingo.hyperion.core.persistence.query;
+
+import cz.jirutka.rsql.parser.RSQLParserException;
+import cz.jirutka.rsql.parser.ast.AndNode;
+import cz.jirutka.rsql.parser.ast.ComparisonNode;
+import cz.jirutka.rsql.parser.ast.Node;
+import cz.jirutka.rsql.parser.ast.OrNode;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class QueryPlanCacheTest
+{
+    private QueryPlanCache cache = new QueryPlanCache(10);
+
+    @Test
+    public void testShape() throws Exception
+    {
+        QueryPlanCache.ShapedQuery shaped = QueryPlanCache.shape("(a==1,b!=x*);c=in=( 1 , 2,3 );d<5;e>=\"x y\"");
+        assertEquals("(a==?,b!=?);c=in=(?);d<?;e>=?", shaped.getTemplate());
+        assertEquals(Arrays.asList(Collections.singletonList("1"), Collections.singletonList("x*"),
+                Arrays.asList("1", "2", "3"), Collections.singletonList("5"), Collections.singletonList("x y")),
+                shaped.getArguments());
+
+        assertNull(QueryPlanCache.shape("a==\"x\\\"y\""));
+        assertNull(QueryPlanCache.shape("a=="));
+    }
+
+    @Test
+    public void testBinding() throws Exception
+    {
+        Node first = cache.parse("name==foo;(id=in=(1,2),age>=3)");
+        Node second = cache.parse("name==bar;(id=in=(4,5,6),age>=7)");
+
+        assertEquals(1, cache.getSize());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertNotSame(first, second);
+
+        AndNode and = (AndNode) second;
+        ComparisonNode name = (ComparisonNode) and.getChildren().get(0);
+        assertEquals("name", name.getSelector());
+        assertEquals(Collections.singletonList("bar"), name.getArguments());
+
+        OrNode or = (OrNode) and.getChildren().get(1);
+        ComparisonNode id = (ComparisonNode) or.getChildren().get(0);
+        assertEquals("id", id.getSelector());
+        assertEquals(Arrays.asList("4", "5", "6"), id.getArguments());
+
+        ComparisonNode age = (ComparisonNode) or.getChildren().get(1);
+        assertEquals(Collections.singletonList("7"), age.getArguments());
+
+        // the cached tree is not changed by binding
+        ComparisonNode firstName = (ComparisonNode) ((AndNode) first).getChildren().get(0);
+        assertEquals(Collections.singletonList("foo"), firstName.getArguments());
+    }
+
+    @Test
+    public void testListSizes() throws Exception
+    {
+        cache.parse("id=in=(1,2)");
+        ComparisonNode single = (ComparisonNode) cache.parse("id=in=(3)");
+        ComparisonNode many = (ComparisonNode) cache.parse("id=in=(4,5,6,7)");
+
+        assertEquals(2, cache.getHitCount());
+        assertEquals(Collections.singletonList("3"), single.getArguments());
+        assertEquals(Arrays.asList("4", "5", "6", "7"), many.getArguments());
+    }
+
+    @Test(expected = RSQLParserException.class)
+    public void testInvalidQuery() throws Exception
+    {
+        cache.parse("name==foo;");
+    }
+
+    @Test
+    public void testDisabled() throws Exception
+    {
+        QueryPlanCache disabled = new QueryPlanCache(0);
+        disabled.parse("name==foo");
+        disabled.parse("name==bar");
+        assertEquals(0, disabled.getSize());
+        assertEquals(0, disabled.getHitCount());
+    }
+
+    @Test
+    public void testEviction() throws Exception
+    {
+        QueryPlanCache small = new QueryPlanCache(2);
+        small.parse("a==1");
+        small.parse("b==1");
+        small.parse("c==1");
+        assertEquals(2, small.getSize());
+    }
+}
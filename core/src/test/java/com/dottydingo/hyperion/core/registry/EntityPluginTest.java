@@ -141,6 +141,9 @@ public class EntityPluginTest
         Assert.assertTrue(entityPlugin.isReserved("trace"));
         Assert.assertTrue(entityPlugin.isReserved("version"));
         Assert.assertTrue(entityPlugin.isReserved("cid"));
+        Assert.assertTrue(entityPlugin.isReserved("continuation"));
+        Assert.assertTrue(entityPlugin.isReserved("count"));
+        Assert.assertTrue(entityPlugin.isReserved("stream"));
 
         Assert.assertFalse(entityPlugin.isReserved("foobar"));
     }
@@ -10,6 +10,12 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
 /**
  * User: mark
  * Date: 9/3/12
@@ -123,4 +129,232 @@ public class TranslatorTest
         Assert.assertNull(clientObject.getDifferentType());
         Assert.assertNull(clientObject.getClientOnly());
     }
+
+    @Test
+    public void testConvertPersistent_RequestedFields()
+    {
+        context.setRequestedFields(new HashSet<String>(Arrays.asList("id","name")));
+
+        SimplePersistentObject persistentObject = new SimplePersistentObject();
+        persistentObject.setId(50L);
+        persistentObject.setName("name");
+        persistentObject.setNumber(5);
+
+        SimpleClientObject clientObject = translator.convertPersistent(persistentObject, context);
+
+        Assert.assertEquals(new Long(50),clientObject.getId());
+        Assert.assertEquals("name",clientObject.getName());
+        Assert.assertNull(clientObject.getNumber());
+
+        TranslationPlan plan = context.getTranslationPlan(translator);
+        Assert.assertNotNull(plan);
+        Assert.assertEquals(2,plan.getMappers().length);
+
+        // the plan is reused for the same request state
+        translator.convertPersistent(persistentObject, context);
+        Assert.assertSame(plan,context.getTranslationPlan(translator));
+    }
+
+    @Test
+    public void testConvertPersistent_RowAuthorization()
+    {
+        context.setAuthorizationContext(new NoOpAuthorizationContext(null)
+        {
+            @Override
+            public boolean isReadable(PersistentObject persistent, String propertyName)
+            {
+                return !propertyName.equals("number") || ((SimplePersistentObject) persistent).getId() > 10L;
+            }
+
+            @Override
+            public Boolean isReadable(String propertyName)
+            {
+                return propertyName.equals("number") ? null : Boolean.TRUE;
+            }
+        });
+
+        SimplePersistentObject first = new SimplePersistentObject();
+        first.setId(5L);
+        first.setNumber(5);
+
+        SimplePersistentObject second = new SimplePersistentObject();
+        second.setId(50L);
+        second.setNumber(50);
+
+        Assert.assertNull(translator.convertPersistent(first, context).getNumber());
+        Assert.assertEquals(new Integer(50),translator.convertPersistent(second, context).getNumber());
+    }
+
+    @Test
+    public void testBuildBulkUpdate()
+    {
+        SimpleClientObject clientObject = new SimpleClientObject();
+        clientObject.setName("name");
+        context.setProvidedFields(Collections.<Object,Set<String>>singletonMap(clientObject,
+                new HashSet<String>(Arrays.asList("name","number"))));
+
+        Map<String,Object> values = translator.buildBulkUpdate(clientObject, context);
+
+        // an explicit null is written, fields that were not provided are not
+        Assert.assertEquals(2, values.size());
+        Assert.assertEquals("name", values.get("name"));
+        Assert.assertTrue(values.containsKey("number"));
+        Assert.assertNull(values.get("number"));
+    }
+
+    @Test
+    public void testBuildBulkUpdate_RowAuthorization()
+    {
+        context.setAuthorizationContext(new NoOpAuthorizationContext(null)
+        {
+            @Override
+            public Boolean isWritableOnUpdate(String propertyName)
+            {
+                return propertyName.equals("number") ? null : Boolean.TRUE;
+            }
+        });
+
+        SimpleClientObject clientObject = new SimpleClientObject();
+        clientObject.setName("name");
+        Assert.assertEquals(1, translator.buildBulkUpdate(clientObject, context).size());
+
+        clientObject.setNumber(5);
+        Assert.assertNull(translator.buildBulkUpdate(clientObject, context));
+    }
+
+    @Test
+    public void testBuildBulkUpdate_CopyHooks()
+    {
+        SimpleClientObject clientObject = new SimpleClientObject();
+        clientObject.setName("name");
+
+        BaseTranslator<SimpleClientObject,SimplePersistentObject> hooked =
+                new DefaultTranslator<SimpleClientObject,SimplePersistentObject>(SimpleClientObject.class,
+                        SimplePersistentObject.class)
+                {
+                    @Override
+                    public boolean copyClient(SimpleClientObject client, SimplePersistentObject persistent,
+                                              PersistenceContext context)
+                    {
+                        persistent.setPersistentOnly(client.getName());
+                        return super.copyClient(client, persistent, context);
+                    }
+                };
+        hooked.init();
+        Assert.assertNull(hooked.buildBulkUpdate(clientObject, context));
+
+        hooked = new DefaultTranslator<SimpleClientObject,SimplePersistentObject>(SimpleClientObject.class,
+                SimplePersistentObject.class)
+        {
+            @Override
+            protected ObjectWrapper<SimplePersistentObject> createPersistentObjectWrapper(
+                    SimplePersistentObject persistent, PersistenceContext context)
+            {
+                return super.createPersistentObjectWrapper(persistent, context);
+            }
+        };
+        hooked.init();
+        Assert.assertNull(hooked.buildBulkUpdate(clientObject, context));
+    }
+
+    @Test
+    public void testBuildBulkUpdate_Disabled()
+    {
+        SimpleClientObject clientObject = new SimpleClientObject();
+        clientObject.setName("name");
+
+        translator.setBulkUpdateEnabled(false);
+        Assert.assertNull(translator.buildBulkUpdate(clientObject, context));
+    }
+
+    @Test
+    public void testGetProjection()
+    {
+        Assert.assertNull(translator.getProjection(context));
+
+        context.setRequestedFields(new HashSet<String>(Arrays.asList("name")));
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("id","name")), translator.getProjection(context));
+    }
+
+    @Test
+    public void testGetProjection_RowAuthorization()
+    {
+        context.setRequestedFields(new HashSet<String>(Arrays.asList("id","name","number")));
+        context.setAuthorizationContext(new NoOpAuthorizationContext(null)
+        {
+            @Override
+            public Boolean isReadable(String propertyName)
+            {
+                return propertyName.equals("number") ? null : Boolean.TRUE;
+            }
+        });
+
+        Assert.assertNull(translator.getProjection(context));
+    }
+
+    @Test
+    public void testGetProjection_ConvertHook()
+    {
+        BaseTranslator<SimpleClientObject,SimplePersistentObject> hooked =
+                new DefaultTranslator<SimpleClientObject,SimplePersistentObject>(SimpleClientObject.class,
+                        SimplePersistentObject.class)
+                {
+                    @Override
+                    protected void convertPersistent(SimpleClientObject client, SimplePersistentObject persistent,
+                                                     PersistenceContext context)
+                    {
+                        client.setClientOnly(persistent.getName());
+                    }
+                };
+        hooked.init();
+
+        context.setRequestedFields(new HashSet<String>(Arrays.asList("id","clientOnly")));
+        Assert.assertNull(hooked.getProjection(context));
+    }
+
+    @Test
+    public void testGetFetchPaths()
+    {
+        DefaultTranslator<SimpleClientObject,SimplePersistentObject> associated =
+                new DefaultTranslator<SimpleClientObject,SimplePersistentObject>(SimpleClientObject.class,
+                        SimplePersistentObject.class);
+        associated.setFieldMappers(Collections.<FieldMapper>singletonList(new ChildrenFieldMapper()));
+        associated.init();
+
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("children","children.parent")),
+                associated.getFetchPaths(context));
+
+        context.setRequestedFields(new HashSet<String>(Arrays.asList("id","name")));
+        Assert.assertTrue(associated.getFetchPaths(context).isEmpty());
+    }
+
+    private static class ChildrenFieldMapper
+            implements AssociationFieldMapper<SimpleClientObject,SimplePersistentObject>
+    {
+        @Override
+        public String[] getAssociationPaths()
+        {
+            return new String[]{"children", "children.parent"};
+        }
+
+        @Override
+        public String getClientFieldName()
+        {
+            return "clientOnly";
+        }
+
+        @Override
+        public void convertToClient(ObjectWrapper<SimplePersistentObject> persistentObjectWrapper,
+                                    ObjectWrapper<SimpleClientObject> clientObjectWrapper, PersistenceContext context)
+        {
+        }
+
+        @Override
+        public boolean convertToPersistent(ObjectWrapper<SimpleClientObject> clientObjectWrapper,
+                                           ObjectWrapper<SimplePersistentObject> persistentObjectWrapper,
+                                           PersistenceContext context)
+        {
+            return false;
+        }
+    }
 }
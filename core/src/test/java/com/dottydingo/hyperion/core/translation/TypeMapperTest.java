@@ -1,8 +1,10 @@
 package com.dottydingo.hyperion.core.translation;
 
+import com.dottydingo.hyperion.core.model.PersistentObject;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.Serializable;
 import java.util.Set;
 
 /**
@@ -70,4 +72,121 @@ public class TypeMapperTest
         Assert.assertEquals("type",clientObject.getDifferentType());
     }
 
+    @Test
+    public void testAccessor()
+    {
+        TypeMapper typeMapper = new TypeMapper(SimpleClientObject.class);
+        SimpleClientObject clientObject = new SimpleClientObject();
+
+        PropertyAccessor accessor = typeMapper.getAccessor("name");
+        Assert.assertNotNull(accessor);
+        Assert.assertEquals("name",accessor.getName());
+
+        accessor.setValue(clientObject,"value");
+        Assert.assertEquals("value",clientObject.getName());
+        Assert.assertEquals("value",accessor.getValue(clientObject));
+
+        Assert.assertNull(typeMapper.getAccessor("unknown"));
+        Assert.assertNull(typeMapper.getValue(clientObject,"unknown"));
+    }
+
+    @Test
+    public void testGenericIdAccessors()
+    {
+        // the compiler adds bridge methods for the id accessors of PersistentObject<Long>
+        TypeMapper typeMapper = new TypeMapper(SimplePersistentObject.class);
+        SimplePersistentObject persistentObject = new SimplePersistentObject();
+
+        typeMapper.setValue(persistentObject,"id",3L);
+        typeMapper.setValue(persistentObject,"name","name");
+        Assert.assertEquals(new Long(3),persistentObject.getId());
+        Assert.assertEquals(3L,typeMapper.getValue(persistentObject,"id"));
+        Assert.assertEquals("name",typeMapper.getValue(persistentObject,"name"));
+    }
+
+    @Test
+    public void testInheritedGenericId()
+    {
+        TypeMapper typeMapper = new TypeMapper(GenericEntity.class);
+        Assert.assertEquals(Long.class, typeMapper.getFieldType("id"));
+
+        GenericEntity entity = new GenericEntity();
+        typeMapper.getAccessor("id").setValue(entity,4L);
+        typeMapper.getAccessor("name").setValue(entity,"name");
+
+        Assert.assertEquals(new Long(4),entity.getId());
+        Assert.assertEquals(4L,typeMapper.getAccessor("id").getValue(entity));
+        Assert.assertEquals("name",typeMapper.getAccessor("name").getValue(entity));
+    }
+
+    @Test
+    public void testPrimitiveAndFailingAccessors()
+    {
+        TypeMapper typeMapper = new TypeMapper(AccessorBean.class);
+        AccessorBean bean = new AccessorBean();
+
+        typeMapper.setValue(bean,"count",5);
+        Assert.assertEquals(5,typeMapper.getValue(bean,"count"));
+
+        // exceptions thrown by the accessor are not wrapped
+        try
+        {
+            typeMapper.getValue(bean,"failing");
+            Assert.fail("Expected the getter to fail");
+        }
+        catch (IllegalStateException e)
+        {
+            Assert.assertEquals("failing",e.getMessage());
+        }
+    }
+
+    private static class AccessorBean
+    {
+        private int count;
+
+        public int getCount()
+        {
+            return count;
+        }
+
+        public void setCount(int count)
+        {
+            this.count = count;
+        }
+
+        public String getFailing()
+        {
+            throw new IllegalStateException("failing");
+        }
+    }
+
+    public static class GenericBase<ID extends Serializable> implements PersistentObject<ID>
+    {
+        private ID id;
+
+        public ID getId()
+        {
+            return id;
+        }
+
+        public void setId(ID id)
+        {
+            this.id = id;
+        }
+    }
+
+    public static class GenericEntity extends GenericBase<Long>
+    {
+        private String name;
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public void setName(String name)
+        {
+            this.name = name;
+        }
+    }
 }
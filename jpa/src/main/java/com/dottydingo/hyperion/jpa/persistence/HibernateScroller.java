@@ -0,0 +1,45 @@
+package com.dottydingo.hyperion.jpa.persistence;
+
+import com.dottydingo.hyperion.core.persistence.ResultHandler;
+import org.hibernate.Query;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+
+/**
+ * Streams query results using a forward only Hibernate cursor. This is kept separate from JpaDao so
+ * that Hibernate is only required on the classpath when it is actually used.
+ */
+class HibernateScroller
+{
+    @SuppressWarnings("unchecked")
+    static <P> int scroll(EntityManager em, TypedQuery<P> query, int fetchSize, ResultHandler<P> resultHandler)
+    {
+        Query hibernateQuery = query.unwrap(Query.class);
+        hibernateQuery.setFetchSize(fetchSize);
+        hibernateQuery.setReadOnly(true);
+
+        int handled = 0;
+        ScrollableResults results = hibernateQuery.scroll(ScrollMode.FORWARD_ONLY);
+        try
+        {
+            while (results.next())
+            {
+                P item = (P) results.get(0);
+                resultHandler.handleResult(item);
+
+                // release the row so the persistence context does not grow with the result
+                em.detach(item);
+                handled++;
+            }
+        }
+        finally
+        {
+            results.close();
+        }
+
+        return handled;
+    }
+}
@@ -0,0 +1,19 @@
+package com.dottydingo.hyperion.jpa.persistence;
+
+import org.hibernate.Session;
+import org.hibernate.stat.SessionStatistics;
+
+import javax.persistence.EntityManager;
+
+/**
+ * Reads the size of the Hibernate persistence context. This is kept separate from JpaDao so that Hibernate is only
+ * required on the classpath when it is actually used.
+ */
+class HibernateStatistics
+{
+    static long getLoadedCount(EntityManager em)
+    {
+        SessionStatistics statistics = em.unwrap(Session.class).getStatistics();
+        return statistics.getEntityCount() + statistics.getCollectionCount();
+    }
+}
@@ -1,76 +1,554 @@
 package com.dottydingo.hyperion.jpa.persistence;
 
+import com.dottydingo.hyperion.core.model.DatabaseGenerated;
 import com.dottydingo.hyperion.core.model.PersistentHistoryEntry;
 import com.dottydingo.hyperion.jpa.persistence.query.JpaPersistentQueryBuilder;
+import com.dottydingo.hyperion.jpa.persistence.query.ParameterizedQueryBuilder;
+import com.dottydingo.hyperion.jpa.persistence.query.QueryParameters;
 import com.dottydingo.hyperion.jpa.persistence.sort.JpaPersistentOrderBuilder;
 import com.dottydingo.hyperion.core.model.PersistentObject;
+import com.dottydingo.hyperion.core.persistence.dao.AssociationFetchDao;
 import com.dottydingo.hyperion.core.persistence.dao.Dao;
+import com.dottydingo.hyperion.core.persistence.dao.DatabaseClock;
+import com.dottydingo.hyperion.core.persistence.dao.ManagedInstanceDao;
+import com.dottydingo.hyperion.core.persistence.ResultHandler;
 import com.dottydingo.hyperion.core.persistence.dao.PersistentQueryResult;
+import com.dottydingo.hyperion.core.persistence.dao.ProjectionDao;
+import com.dottydingo.hyperion.core.persistence.dao.SeekValueException;
+import com.dottydingo.hyperion.core.persistence.dao.SetOperationDao;
+import com.dottydingo.hyperion.core.translation.PropertyAccessor;
+import com.dottydingo.hyperion.core.translation.TypeMapper;
 
+import javax.persistence.CascadeType;
 import javax.persistence.EntityManager;
+import javax.persistence.ManyToMany;
+import javax.persistence.ManyToOne;
+import javax.persistence.OneToMany;
+import javax.persistence.OneToOne;
 import javax.persistence.PersistenceContext;
+import javax.persistence.PersistenceUnitUtil;
 import javax.persistence.Query;
+import javax.persistence.Tuple;
 import javax.persistence.TypedQuery;
 import javax.persistence.criteria.*;
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.Bindable;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.ManagedType;
+import javax.persistence.metamodel.PluralAttribute;
+import javax.persistence.metamodel.SingularAttribute;
 import java.io.Serializable;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  */
 public class JpaDao<P extends PersistentObject<ID>,ID extends Serializable>
-        implements Dao<P,ID,JpaPersistentQueryBuilder,JpaPersistentOrderBuilder>
+        implements Dao<P,ID,JpaPersistentQueryBuilder,JpaPersistentOrderBuilder>, ManagedInstanceDao,
+        ProjectionDao<P,JpaPersistentQueryBuilder,JpaPersistentOrderBuilder>, AssociationFetchDao<P>,
+        SetOperationDao
 {
+    private static final String HIBERNATE_GENERATED = "org.hibernate.annotations.Generated";
+    private static final String HIBERNATE_CASCADE = "org.hibernate.annotations.Cascade";
+    private static boolean hibernateDetected = detectHibernate();
+    private static final ConcurrentMap<Class<?>,Boolean> authoritativeTypes = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<Class<?>,Boolean> setDeleteTypes = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<Class<?>,EntityMetadata> entityMetadata = new ConcurrentHashMap<>();
+
     @PersistenceContext(unitName = "hyperionEntityManager")
     protected EntityManager em;
 
+    protected int streamFetchSize = 100;
+    protected int writeBatchSize = 50;
+    protected int maxInListSize = 512;
+    protected boolean nullsFirst = false;
+    protected DatabaseClock clock = new DatabaseClock(this);
+
     public void setEm(EntityManager em)
     {
         this.em = em;
     }
 
+    /**
+     * Set the number of rows fetched from the database at a time when streaming query results. Defaults to 100.
+     * @param streamFetchSize the fetch size
+     */
+    public void setStreamFetchSize(int streamFetchSize)
+    {
+        this.streamFetchSize = streamFetchSize;
+    }
+
+    /**
+     * Set the number of entities written between flushes when creating or updating a list of entities. This should
+     * match the hibernate.jdbc.batch_size setting so that each flush is sent as a single JDBC batch. Defaults to 50.
+     * @param writeBatchSize the batch size
+     */
+    public void setWriteBatchSize(int writeBatchSize)
+    {
+        this.writeBatchSize = writeBatchSize;
+    }
+
+    /**
+     * Set the maximum number of values in a single IN list. Longer lists are split into chunks of this size and each
+     * chunk is padded to a power of two so that only a few distinct statements are produced. Defaults to 512.
+     * @param maxInListSize the maximum size, must be greater than 0
+     */
+    public void setMaxInListSize(int maxInListSize)
+    {
+        if(maxInListSize <= 0)
+            throw new IllegalArgumentException("maxInListSize must be greater than 0");
+        this.maxInListSize = maxInListSize;
+    }
+
+    /**
+     * Set whether the database sorts nulls before all other values in ascending order. This is the case for MySQL,
+     * SQL Server and H2, while PostgreSQL and Oracle sort them after. Used to page over nullable sort keys.
+     * Defaults to false.
+     * @param nullsFirst true if nulls sort first
+     */
+    public void setNullsFirst(boolean nullsFirst)
+    {
+        this.nullsFirst = nullsFirst;
+    }
+
+    /**
+     * Set the interval in milliseconds between reads of the database time used for the current timestamp. A value
+     * of 0 reads the database time on every call. Defaults to 0.
+     * @param clockSyncInterval the interval in milliseconds
+     */
+    public void setClockSyncInterval(long clockSyncInterval)
+    {
+        clock.setSyncInterval(clockSyncInterval);
+    }
+
+    /**
+     * Set the drift in milliseconds between the local and database clocks that is tolerated before the database
+     * time is read more often. Defaults to 100.
+     * @param clockMaxDrift the maximum drift in milliseconds
+     */
+    public void setClockMaxDrift(long clockMaxDrift)
+    {
+        clock.setMaxDrift(clockMaxDrift);
+    }
+
+    public DatabaseClock getClock()
+    {
+        return clock;
+    }
+
+    /**
+     * The ids are loaded in chunks of at most maxInListSize. The results are returned in the order of the requested
+     * ids, once per id, whatever the order the chunks were loaded in.
+     */
     @Override
     public List<P> findAll(Class<P> entityClass, List<ID> ids)
     {
+        List<Object> distinct = new ArrayList<Object>(new LinkedHashSet<Object>(ids));
+
         CriteriaBuilder cb = em.getCriteriaBuilder();
-        CriteriaQuery<P> criteriaQuery = cb.createQuery(entityClass);
-        Root<P> root = criteriaQuery.from(entityClass);
-        Path<?> id = root.get("id");
-        Predicate predicate = id.in(ids);
-        criteriaQuery.where(predicate).orderBy(cb.asc(id));
+        Map<Object,P> found = new HashMap<Object,P>();
+        for (List<Object> chunk : chunkInList(distinct, maxInListSize))
+        {
+            CriteriaQuery<P> criteriaQuery = cb.createQuery(entityClass);
+            Root<P> root = criteriaQuery.from(entityClass);
+            QueryParameters parameters = new QueryParameters();
+            criteriaQuery.where(buildInPredicate(cb, root.get("id"), chunk, parameters));
 
-        TypedQuery<P> query = em.createQuery(criteriaQuery);
-        return query.getResultList();
+            TypedQuery<P> query = em.createQuery(criteriaQuery);
+            parameters.bind(query);
+            for (P p : query.getResultList())
+            {
+                found.put(p.getId(), p);
+            }
+        }
+
+        List<P> results = new ArrayList<P>(found.size());
+        for (Object id : distinct)
+        {
+            P p = found.get(id);
+            if(p != null)
+                results.add(p);
+        }
+        return results;
+    }
+
+    /**
+     * Build an IN predicate with a parameter for each value
+     */
+    protected Predicate buildInPredicate(CriteriaBuilder cb, Path<?> path, List<Object> values,
+                                         QueryParameters parameters)
+    {
+        Expression<?>[] expressions = new Expression<?>[values.size()];
+        for (int i = 0; i < expressions.length; i++)
+        {
+            expressions[i] = parameters.add(cb, values.get(i));
+        }
+        return path.in(expressions);
+    }
+
+    /**
+     * Split values into chunks of at most maxSize. Each chunk is padded to the next power of two, or maxSize if that
+     * is smaller, by repeating its last value. This keeps the number of distinct IN list lengths, and so statements,
+     * small.
+     * @param values The values
+     * @param maxSize The maximum chunk size
+     * @return The chunks
+     */
+    static List<List<Object>> chunkInList(List<?> values, int maxSize)
+    {
+        List<List<Object>> chunks = new ArrayList<List<Object>>();
+        for (int start = 0; start < values.size(); start += maxSize)
+        {
+            List<Object> chunk = new ArrayList<Object>(values.subList(start, Math.min(values.size(), start + maxSize)));
+            int padded = Integer.highestOneBit(chunk.size());
+            if(padded < chunk.size())
+                padded = Math.min(padded << 1, maxSize);
+
+            Object last = chunk.get(chunk.size() - 1);
+            while (chunk.size() < padded)
+            {
+                chunk.add(last);
+            }
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    /**
+     * Each association is loaded with one query that selects its owners by id and fetch joins it. A path such as
+     * a.b loads a for all of the entities and then b for all of the loaded a. Entities that are not managed by the
+     * current persistence context and associations that are already loaded are skipped.
+     */
+    @Override
+    public void fetchAssociations(Class<P> entityClass, List<P> entities, Set<String> paths)
+    {
+        List<Object> managed = new ArrayList<Object>(entities.size());
+        for (P entity : entities)
+        {
+            if(em.contains(entity))
+                managed.add(entity);
+        }
+
+        FetchNode root = new FetchNode();
+        for (String path : paths)
+        {
+            root.add(PathIterator.split(path));
+        }
+
+        if(!managed.isEmpty())
+            fetchAssociations(entityClass, managed, root);
+    }
+
+    @Override
+    public long getLoadedCount()
+    {
+        return hibernateDetected ? HibernateStatistics.getLoadedCount(em) : -1;
+    }
+
+    private void fetchAssociations(Class<?> ownerClass, List<Object> owners, FetchNode node)
+    {
+        EntityType<?> entityType = em.getMetamodel().entity(ownerClass);
+        for (Map.Entry<String, FetchNode> entry : node.children.entrySet())
+        {
+            Attribute<?,?> attribute;
+            try
+            {
+                attribute = entityType.getAttribute(entry.getKey());
+            }
+            catch (IllegalArgumentException e)
+            {
+                throw new IllegalArgumentException(String.format("%s is not an attribute of %s.", entry.getKey(),
+                        ownerClass.getName()), e);
+            }
+
+            if(!attribute.isAssociation())
+                continue;
+
+            fetchAssociation(entityType, owners, attribute.getName());
+
+            if(!entry.getValue().children.isEmpty())
+            {
+                Class<?> targetClass = attribute.isCollection()
+                        ? ((PluralAttribute<?,?,?>) attribute).getElementType().getJavaType()
+                        : attribute.getJavaType();
+                List<Object> targets = collectAssociated(ownerClass, owners, attribute);
+                if(!targets.isEmpty())
+                    fetchAssociations(targetClass, targets, entry.getValue());
+            }
+        }
+    }
+
+    private void fetchAssociation(EntityType<?> entityType, List<Object> owners, String attributeName)
+    {
+        PersistenceUnitUtil unitUtil = em.getEntityManagerFactory().getPersistenceUnitUtil();
+        List<Object> ids = new ArrayList<Object>(owners.size());
+        for (Object owner : owners)
+        {
+            if(!unitUtil.isLoaded(owner, attributeName))
+                ids.add(unitUtil.getIdentifier(owner));
+        }
+        if(ids.isEmpty())
+            return;
+
+        String idName = null;
+        for (SingularAttribute<?,?> attribute : entityType.getSingularAttributes())
+        {
+            if(attribute.isId())
+                idName = attribute.getName();
+        }
+
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        for (List<Object> chunk : chunkInList(ids, maxInListSize))
+        {
+            CriteriaQuery<Object> criteriaQuery = cb.createQuery();
+            Root<?> root = criteriaQuery.from(entityType);
+            root.fetch(attributeName, JoinType.LEFT);
+            QueryParameters parameters = new QueryParameters();
+            criteriaQuery.select(root).distinct(true).where(buildInPredicate(cb, root.get(idName), chunk, parameters));
+
+            TypedQuery<Object> query = em.createQuery(criteriaQuery);
+            parameters.bind(query);
+            query.getResultList();
+        }
+    }
+
+    private List<Object> collectAssociated(Class<?> ownerClass, List<Object> owners, Attribute<?,?> attribute)
+    {
+        PropertyAccessor accessor = getEntityMetadata(ownerClass).typeMapper.getAccessor(attribute.getName());
+        if(accessor == null)
+            return Collections.emptyList();
+
+        Set<Object> targets = new LinkedHashSet<Object>();
+        for (Object owner : owners)
+        {
+            Object value = accessor.getValue(owner);
+            if(value instanceof Collection)
+                targets.addAll((Collection<?>) value);
+            else if(value instanceof Map)
+                targets.addAll(((Map<?,?>) value).values());
+            else if(value != null)
+                targets.add(value);
+        }
+        return new ArrayList<Object>(targets);
     }
 
     @Override
     public PersistentQueryResult<P> query(Class<P> entityClass, Integer start, Integer limit,
                                           JpaPersistentOrderBuilder orderBuilder,
-                                          List<JpaPersistentQueryBuilder> predicateBuilders)
+                                          List<JpaPersistentQueryBuilder> predicateBuilders,
+                                          boolean count, Integer maxCount)
     {
 
         PersistentQueryResult<P> result = new PersistentQueryResult<P>();
 
-        Long totalCount = getCount(entityClass,predicateBuilders);
-        result.setTotalCount(totalCount);
-        if(totalCount == 0)
-            return result;
+        TypedQuery<P> query = createQuery(entityClass, orderBuilder, predicateBuilders);
+        if(start != null)
+            query.setFirstResult(start);
+        if(limit != null)
+            query.setMaxResults(limit);
+
+        List<P> results = query.getResultList();
+        result.setResults(results);
+        result.setResultCount(results.size());
+
+        setTotalCount(result, entityClass, predicateBuilders, start, limit, count, maxCount);
+
+        return result;
+    }
+
+    /**
+     * Select only the supplied properties as a tuple and copy them onto new instances of the entity class. The
+     * instances are not managed. Whole entities are loaded if any property is not a basic attribute.
+     */
+    @Override
+    public PersistentQueryResult<P> queryProjection(Class<P> entityClass, Integer start, Integer limit,
+                                                    JpaPersistentOrderBuilder orderBuilder,
+                                                    List<JpaPersistentQueryBuilder> predicateBuilders,
+                                                    boolean count, Integer maxCount, Set<String> properties)
+    {
+        EntityMetadata metadata = getEntityMetadata(entityClass);
+        PropertyAccessor[] accessors = getProjectionAccessors(metadata, entityClass, properties);
+        if(accessors == null)
+            return query(entityClass, start, limit, orderBuilder, predicateBuilders, count, maxCount);
 
         CriteriaBuilder cb = em.getCriteriaBuilder();
-        CriteriaQuery<P> criteriaQuery = cb.createQuery(entityClass);
+        CriteriaQuery<Tuple> criteriaQuery = cb.createTupleQuery();
         Root<P> root = criteriaQuery.from(entityClass);
+        QueryParameters parameters = new QueryParameters();
 
-        Predicate[] predicateArray = null;
         if(predicateBuilders.size() > 0)
         {
-            List<Predicate> predicates = new ArrayList<Predicate>();
-            for (JpaPersistentQueryBuilder query : predicateBuilders)
+            List<Predicate> predicates = buildPredicates(predicateBuilders, root, criteriaQuery, cb, parameters);
+            criteriaQuery.where(predicates.toArray(new Predicate[predicates.size()]));
+        }
+
+        if(orderBuilder != null)
+        {
+            List<Order> orders = orderBuilder.buildOrders(root, cb);
+            if(orders.size() > 0)
+                criteriaQuery.orderBy(orders);
+        }
+
+        List<Selection<?>> selections = new ArrayList<Selection<?>>(accessors.length);
+        for (PropertyAccessor accessor : accessors)
+        {
+            selections.add(root.get(accessor.getName()));
+        }
+        criteriaQuery.multiselect(selections);
+
+        TypedQuery<Tuple> query = em.createQuery(criteriaQuery);
+        parameters.bind(query);
+        if(start != null)
+            query.setFirstResult(start);
+        if(limit != null)
+            query.setMaxResults(limit);
+
+        List<Tuple> tuples = query.getResultList();
+        List<P> results = new ArrayList<P>(tuples.size());
+        for (Tuple tuple : tuples)
+        {
+            P entity = metadata.createInstance();
+            for (int i = 0; i < accessors.length; i++)
             {
-                predicates.add(query.buildPredicate(root,criteriaQuery,cb));
+                accessors[i].setValue(entity, tuple.get(i));
+            }
+            results.add(entity);
+        }
+
+        PersistentQueryResult<P> result = new PersistentQueryResult<P>();
+        result.setResults(results);
+        result.setResultCount(results.size());
+
+        setTotalCount(result, entityClass, predicateBuilders, start, limit, count, maxCount);
+
+        return result;
+    }
+
+    private EntityMetadata getEntityMetadata(Class<?> entityClass)
+    {
+        EntityMetadata metadata = entityMetadata.get(entityClass);
+        if(metadata == null)
+        {
+            metadata = new EntityMetadata(entityClass);
+            EntityMetadata existing = entityMetadata.putIfAbsent(entityClass, metadata);
+            if(existing != null)
+                metadata = existing;
+        }
+        return metadata;
+    }
+
+    private PropertyAccessor[] getProjectionAccessors(EntityMetadata metadata, Class<P> entityClass,
+                                                      Set<String> properties)
+    {
+        EntityType<P> entityType = em.getMetamodel().entity(entityClass);
+        PropertyAccessor[] accessors = new PropertyAccessor[properties.size()];
+        int i = 0;
+        for (String property : properties)
+        {
+            Attribute<? super P,?> attribute;
+            try
+            {
+                attribute = entityType.getAttribute(property);
             }
+            catch (IllegalArgumentException e)
+            {
+                return null;
+            }
+
+            PropertyAccessor accessor = metadata.typeMapper.getAccessor(property);
+            if(accessor == null || attribute.getPersistentAttributeType() != Attribute.PersistentAttributeType.BASIC)
+                return null;
+
+            accessors[i++] = accessor;
+        }
+        return accessors;
+    }
+
+    @Override
+    public PersistentQueryResult<P> stream(Class<P> entityClass, Integer start, Integer limit,
+                                           JpaPersistentOrderBuilder orderBuilder,
+                                           List<JpaPersistentQueryBuilder> predicateBuilders,
+                                           boolean count, Integer maxCount, ResultHandler<P> resultHandler)
+    {
+        PersistentQueryResult<P> result = new PersistentQueryResult<P>();
+
+        TypedQuery<P> query = createQuery(entityClass, orderBuilder, predicateBuilders);
+        if(start != null)
+            query.setFirstResult(start);
+        if(limit != null)
+            query.setMaxResults(limit);
+
+        int handled;
+        if(hibernateDetected)
+            handled = HibernateScroller.scroll(em, query, streamFetchSize, resultHandler);
+        else
+            handled = streamPages(query, start == null ? 0 : start, limit, resultHandler);
+
+        result.setResultCount(handled);
+
+        setTotalCount(result, entityClass, predicateBuilders, start, limit, count, maxCount);
+
+        return result;
+    }
+
+    /**
+     * Fallback for providers that can not scroll, reads the rows in blocks of streamFetchSize and releases
+     * each block once it has been handled.
+     */
+    protected int streamPages(TypedQuery<P> query, int start, Integer limit, ResultHandler<P> resultHandler)
+    {
+        int handled = 0;
+        while (limit == null || handled < limit)
+        {
+            int blockSize = limit == null ? streamFetchSize : Math.min(streamFetchSize, limit - handled);
+            query.setFirstResult(start + handled);
+            query.setMaxResults(blockSize);
 
+            List<P> block = query.getResultList();
+            for (P item : block)
+            {
+                resultHandler.handleResult(item);
+                em.detach(item);
+            }
+
+            handled += block.size();
+            if(block.size() < blockSize)
+                break;
+        }
+
+        return handled;
+    }
+
+    protected TypedQuery<P> createQuery(Class<P> entityClass, JpaPersistentOrderBuilder orderBuilder,
+                                        List<JpaPersistentQueryBuilder> predicateBuilders)
+    {
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        CriteriaQuery<P> criteriaQuery = cb.createQuery(entityClass);
+        Root<P> root = criteriaQuery.from(entityClass);
+        QueryParameters parameters = new QueryParameters();
+
+        Predicate[] predicateArray = null;
+        if(predicateBuilders.size() > 0)
+        {
+            List<Predicate> predicates = buildPredicates(predicateBuilders, root, criteriaQuery, cb, parameters);
             predicateArray = predicates.toArray(new Predicate[predicates.size()]);
         }
 
@@ -87,32 +565,301 @@ public class JpaDao<P extends PersistentObject<ID>,ID extends Serializable>
                 criteriaQuery.orderBy(orders.toArray(new Order[orders.size()]));
         }
 
-
         TypedQuery<P> query = em.createQuery(criteriaQuery);
-        if(start != null)
-            query.setFirstResult(start);
+        parameters.bind(query);
+        return query;
+    }
+
+    /**
+     * Build the predicates for a query. Builders that support it add their arguments to the supplied parameters,
+     * which must be bound to the query once it is created.
+     */
+    @SuppressWarnings("unchecked")
+    protected List<Predicate> buildPredicates(List<JpaPersistentQueryBuilder> predicateBuilders, Root<P> root,
+                                              CriteriaQuery<?> criteriaQuery, CriteriaBuilder cb,
+                                              QueryParameters parameters)
+    {
+        List<Predicate> predicates = new ArrayList<Predicate>();
+        for (JpaPersistentQueryBuilder query : predicateBuilders)
+        {
+            if(query instanceof ParameterizedQueryBuilder)
+                predicates.add(((ParameterizedQueryBuilder) query).buildPredicate(root, criteriaQuery, cb, parameters));
+            else
+                predicates.add(query.buildPredicate(root,criteriaQuery,cb));
+        }
+        return predicates;
+    }
+
+    protected void setTotalCount(PersistentQueryResult<P> result, Class<P> entityClass,
+                                 List<JpaPersistentQueryBuilder> predicateBuilders, Integer start, Integer limit,
+                                 boolean count, Integer maxCount)
+    {
+        // a partial page tells us the total without needing to count
+        int offset = start == null ? 0 : start;
+        int resultCount = result.getResultCount();
+        if((limit == null || resultCount < limit) && (resultCount > 0 || offset == 0))
+        {
+            result.setTotalCount((long) (offset + resultCount));
+        }
+        else if(count)
+        {
+            if(maxCount != null)
+            {
+                Long totalCount = getCount(entityClass, predicateBuilders, maxCount + 1);
+                result.setTotalCount(Math.min(totalCount, maxCount));
+                result.setTotalCountExact(totalCount <= maxCount);
+            }
+            else
+                result.setTotalCount(getCount(entityClass, predicateBuilders));
+        }
+    }
+
+    @Override
+    public PersistentQueryResult<P> seek(Class<P> entityClass, List<Object> seekValues, Integer limit,
+                                         JpaPersistentOrderBuilder orderBuilder,
+                                         List<JpaPersistentQueryBuilder> predicateBuilders)
+    {
+        PersistentQueryResult<P> result = new PersistentQueryResult<P>();
+
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        CriteriaQuery<Tuple> criteriaQuery = cb.createTupleQuery();
+        Root<P> root = criteriaQuery.from(entityClass);
+        QueryParameters parameters = new QueryParameters();
+
+        List<Predicate> predicates = buildPredicates(predicateBuilders, root, criteriaQuery, cb, parameters);
+
+        List<Order> orders = orderBuilder.buildOrders(root, cb);
+        if(orders.isEmpty())
+            throw new IllegalArgumentException("A seek query requires at least one order.");
+
+        if(seekValues != null)
+            predicates.add(buildSeekPredicate(cb, orders, seekValues));
+
+        if(predicates.size() > 0)
+            criteriaQuery.where(predicates.toArray(new Predicate[predicates.size()]));
+
+        // select the sort keys along with the entity so the position of the last row can be captured
+        List<Selection<?>> selections = new ArrayList<Selection<?>>();
+        selections.add(root);
+        for (Order order : orders)
+        {
+            selections.add(order.getExpression());
+        }
+        criteriaQuery.multiselect(selections);
+        criteriaQuery.orderBy(orders);
+
+        TypedQuery<Tuple> query = em.createQuery(criteriaQuery);
+        parameters.bind(query);
+
+        // read one extra row to determine if there is another page
         if(limit != null)
-            query.setMaxResults(limit);
+            query.setMaxResults(limit + 1);
+
+        List<Tuple> tuples = query.getResultList();
+        boolean hasMore = limit != null && tuples.size() > limit;
+        if(hasMore)
+            tuples = tuples.subList(0, limit);
+
+        List<P> results = new ArrayList<P>(tuples.size());
+        for (Tuple tuple : tuples)
+        {
+            results.add(tuple.get(0, entityClass));
+        }
+        result.setResults(results);
+
+        if(hasMore)
+        {
+            Tuple last = tuples.get(tuples.size() - 1);
+            List<Object> lastValues = new ArrayList<Object>(orders.size());
+            for (int i = 1; i <= orders.size(); i++)
+            {
+                lastValues.add(last.get(i));
+            }
+            result.setSeekValues(lastValues);
+        }
 
-        result.setResults(query.getResultList());
         return result;
     }
 
+    /**
+     * Build the predicate selecting rows that sort after the supplied values. For orders (a,b,c) this produces
+     * (a > ?) or (a = ? and b > ?) or (a = ? and b = ? and c > ?) with the comparison reversed for descending orders.
+     * Nullable keys are compared according to where the database places nulls.
+     */
+    protected Predicate buildSeekPredicate(CriteriaBuilder cb, List<Order> orders, List<Object> seekValues)
+    {
+        if(seekValues.size() != orders.size())
+            throw new SeekValueException(String.format("Expected %d seek values but received %d.",
+                    orders.size(), seekValues.size()));
+
+        List<Object> values = new ArrayList<Object>(seekValues.size());
+        for (int i = 0; i < orders.size(); i++)
+        {
+            values.add(convertSeekValue(seekValues.get(i), orders.get(i).getExpression().getJavaType()));
+        }
+
+        List<Predicate> disjunction = new ArrayList<Predicate>();
+        for (int i = 0; i < orders.size(); i++)
+        {
+            Predicate after = buildAfterPredicate(cb, orders.get(i), values.get(i));
+            if(after == null)
+                continue;
+
+            List<Predicate> conjunction = new ArrayList<Predicate>();
+            for (int j = 0; j < i; j++)
+            {
+                Expression<?> previous = orders.get(j).getExpression();
+                Object previousValue = values.get(j);
+                conjunction.add(previousValue == null ? cb.isNull(previous) : cb.equal(previous, previousValue));
+            }
+            conjunction.add(after);
+
+            disjunction.add(cb.and(conjunction.toArray(new Predicate[conjunction.size()])));
+        }
+
+        // every key is already at its last position, nothing can follow
+        if(disjunction.isEmpty())
+            return cb.disjunction();
+
+        return cb.or(disjunction.toArray(new Predicate[disjunction.size()]));
+    }
+
+    /**
+     * Build the predicate selecting rows that sort after a value on a single order.
+     * @return The predicate, or null if no row can sort after the value
+     */
+    @SuppressWarnings("unchecked")
+    protected Predicate buildAfterPredicate(CriteriaBuilder cb, Order order, Object value)
+    {
+        Expression<Comparable> expression = (Expression<Comparable>) order.getExpression();
+
+        // nulls follow every value when they sort last in the direction of this order
+        boolean nullsAfter = order.isAscending() != nullsFirst;
+        if(value == null)
+            return nullsAfter ? null : cb.isNotNull(expression);
+
+        Predicate compare = order.isAscending() ? cb.greaterThan(expression, (Comparable) value)
+                : cb.lessThan(expression, (Comparable) value);
+
+        if(nullsAfter && isNullable(expression))
+            return cb.or(compare, cb.isNull(expression));
+
+        return compare;
+    }
+
+    /**
+     * Check if a sort expression can be null. Attribute paths are checked against the metamodel, any other
+     * expression is assumed to be nullable.
+     */
+    protected boolean isNullable(Expression<?> expression)
+    {
+        if(!(expression instanceof Path))
+            return true;
+
+        Path<?> path = (Path<?>) expression;
+        while (path != null)
+        {
+            Bindable<?> model = path.getModel();
+            if(model instanceof SingularAttribute && ((SingularAttribute<?,?>) model).isOptional())
+                return true;
+            path = path.getParentPath();
+        }
+        return false;
+    }
+
+    /**
+     * Convert a decoded seek value back to the java type of the sort expression.
+     */
+    @SuppressWarnings("unchecked")
+    protected Object convertSeekValue(Object value, Class<?> type)
+    {
+        if(value == null || type == null || type.isInstance(value))
+            return value;
+
+        try
+        {
+            if(Date.class.isAssignableFrom(type) && value instanceof Number)
+            {
+                long time = ((Number) value).longValue();
+                if(type.equals(java.sql.Timestamp.class))
+                    return new java.sql.Timestamp(time);
+                if(type.equals(java.sql.Date.class))
+                    return new java.sql.Date(time);
+                if(type.equals(java.sql.Time.class))
+                    return new java.sql.Time(time);
+                return new Date(time);
+            }
+
+            String stringValue = value.toString();
+            if(type.equals(String.class))
+                return stringValue;
+            if(type.equals(Long.class) || type.equals(long.class))
+                return Long.valueOf(stringValue);
+            if(type.equals(Integer.class) || type.equals(int.class))
+                return Integer.valueOf(stringValue);
+            if(type.equals(Short.class) || type.equals(short.class))
+                return Short.valueOf(stringValue);
+            if(type.equals(Byte.class) || type.equals(byte.class))
+                return Byte.valueOf(stringValue);
+            if(type.equals(Double.class) || type.equals(double.class))
+                return Double.valueOf(stringValue);
+            if(type.equals(Float.class) || type.equals(float.class))
+                return Float.valueOf(stringValue);
+            if(type.equals(BigDecimal.class))
+                return new BigDecimal(stringValue);
+            if(type.equals(BigInteger.class))
+                return new BigInteger(stringValue);
+            if(type.equals(Boolean.class) || type.equals(boolean.class))
+                return Boolean.valueOf(stringValue);
+            if((type.equals(Character.class) || type.equals(char.class)) && stringValue.length() == 1)
+                return stringValue.charAt(0);
+            if(type.isEnum())
+                return Enum.valueOf((Class<Enum>) type, stringValue);
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new SeekValueException(String.format("Could not convert %s to %s.", value, type.getName()), e);
+        }
+
+        throw new SeekValueException(String.format("Unsupported seek value type %s.", type.getName()));
+    }
+
+    /**
+     * Count the matching rows, reading at most limit rows. This avoids a full count on large tables
+     * when only a bounded count is needed.
+     */
+    protected Long getCount(Class<P> entityClass,List<JpaPersistentQueryBuilder> predicateBuilders, int limit)
+    {
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        CriteriaQuery<Object> cq = cb.createQuery(Object.class);
+        Root<P> root = cq.from(entityClass);
+        QueryParameters parameters = new QueryParameters();
+
+        if(predicateBuilders.size() > 0)
+        {
+            List<Predicate> predicates = buildPredicates(predicateBuilders, root, cq, cb, parameters);
+            cq.where(predicates.toArray(new Predicate[predicates.size()]));
+        }
+
+        cq.select(root.get("id"));
+
+        TypedQuery<Object> query = em.createQuery(cq);
+        parameters.bind(query);
+        query.setMaxResults(limit);
+        return (long) query.getResultList().size();
+    }
+
     protected Long getCount(Class<P> entityClass,List<JpaPersistentQueryBuilder> predicateBuilders)
     {
         CriteriaBuilder cb = em.getCriteriaBuilder();
         CriteriaQuery<Long> cq = cb.createQuery(Long.class);
         Root<P> root = cq.from(entityClass);
+        QueryParameters parameters = new QueryParameters();
 
         Predicate[] predicateArray = null;
         if(predicateBuilders.size() > 0)
         {
-            List<Predicate> predicates = new ArrayList<Predicate>();
-            for (JpaPersistentQueryBuilder query : predicateBuilders)
-            {
-                predicates.add(query.buildPredicate(root,cq,cb));
-            }
-
+            List<Predicate> predicates = buildPredicates(predicateBuilders, root, cq, cb, parameters);
             predicateArray = predicates.toArray(new Predicate[predicates.size()]);
         }
 
@@ -128,7 +875,9 @@ public class JpaDao<P extends PersistentObject<ID>,ID extends Serializable>
         else
             cq.select(cb.count(root));
 
-        return em.createQuery(cq).getSingleResult();
+        TypedQuery<Long> query = em.createQuery(cq);
+        parameters.bind(query);
+        return query.getSingleResult();
     }
 
     @Override
@@ -160,12 +909,171 @@ public class JpaDao<P extends PersistentObject<ID>,ID extends Serializable>
         return entity;
     }
 
+    @Override
+    public List<P> createAll(List<P> entities)
+    {
+        int count = 0;
+        for (P entity : entities)
+        {
+            em.persist(entity);
+
+            // flush each batch so it is sent as a single JDBC batch, the entities stay managed since the caller
+            // translates them and may hold other entities from the same session
+            if(writeBatchSize > 0 && ++count % writeBatchSize == 0 && count < entities.size())
+                em.flush();
+        }
+
+        em.flush();
+        return entities;
+    }
+
+    @Override
+    public List<P> updateAll(List<P> entities)
+    {
+        // the entities were loaded before being modified so clearing between batches would not save anything and
+        // would discard pending changes, a single flush lets the driver batch the updates
+        List<P> merged = new ArrayList<P>(entities.size());
+        for (P entity : entities)
+        {
+            // return the managed copy in case a subclass detached the entity, the caller may use it as written
+            merged.add(em.merge(entity));
+        }
+
+        em.flush();
+        return merged;
+    }
+
     @Override
     public void delete(P entity)
     {
         em.remove(entity);
     }
 
+    /**
+     * Rows are deleted in batches ordered by id. The ids of each batch are selected with the full query so that
+     * association paths can be used, then removed with a single CriteriaDelete.
+     */
+    @Override
+    public int deleteByQuery(Class<P> entityClass, List<JpaPersistentQueryBuilder> predicateBuilders, int batchSize)
+    {
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        int deleted = 0;
+        List<Object> ids = selectIdBatch(entityClass, predicateBuilders, null, batchSize);
+        while (!ids.isEmpty())
+        {
+            for (List<Object> chunk : chunkInList(ids, maxInListSize))
+            {
+                CriteriaDelete<P> delete = cb.createCriteriaDelete(entityClass);
+                Root<P> root = delete.from(entityClass);
+                QueryParameters parameters = new QueryParameters();
+                delete.where(buildInPredicate(cb, root.get("id"), chunk, parameters));
+
+                Query query = em.createQuery(delete);
+                parameters.bind(query);
+                deleted += query.executeUpdate();
+            }
+
+            if(ids.size() < batchSize)
+                break;
+            ids = selectIdBatch(entityClass, predicateBuilders, ids.get(ids.size() - 1), batchSize);
+        }
+
+        return deleted;
+    }
+
+    /**
+     * Rows are updated in batches ordered by id in the same way as {@link #deleteByQuery}. The version attribute,
+     * if the entity has one, is incremented so optimistic locking detects the change.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public int updateByQuery(Class<P> entityClass, List<JpaPersistentQueryBuilder> predicateBuilders,
+                             Map<String, Object> values, int batchSize)
+    {
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        SingularAttribute<? super P,?> versionAttribute = findVersionAttribute(entityClass);
+
+        int updated = 0;
+        List<Object> ids = selectIdBatch(entityClass, predicateBuilders, null, batchSize);
+        while (!ids.isEmpty())
+        {
+            CriteriaUpdate<P> update = cb.createCriteriaUpdate(entityClass);
+            Root<P> root = update.from(entityClass);
+            for (Map.Entry<String, Object> entry : values.entrySet())
+            {
+                update.set(root.<Object>get(entry.getKey()), entry.getValue());
+            }
+            if(versionAttribute != null)
+            {
+                Path<Number> version = root.get(versionAttribute.getName());
+                update.set(version, cb.sum(version, 1));
+            }
+            for (List<Object> chunk : chunkInList(ids, maxInListSize))
+            {
+                QueryParameters parameters = new QueryParameters();
+                update.where(buildInPredicate(cb, root.get("id"), chunk, parameters));
+
+                Query query = em.createQuery(update);
+                parameters.bind(query);
+                updated += query.executeUpdate();
+            }
+
+            if(ids.size() < batchSize)
+                break;
+            ids = selectIdBatch(entityClass, predicateBuilders, ids.get(ids.size() - 1), batchSize);
+        }
+
+        return updated;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Object> selectIdBatch(Class<P> entityClass, List<JpaPersistentQueryBuilder> predicateBuilders,
+                                       Object lastId, int batchSize)
+    {
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        CriteriaQuery<Object> idQuery = cb.createQuery();
+        Root<P> root = idQuery.from(entityClass);
+        Path<Comparable> id = root.get("id");
+        QueryParameters parameters = new QueryParameters();
+
+        List<Predicate> predicates = buildPredicates(predicateBuilders, root, idQuery, cb, parameters);
+        if(lastId != null)
+            predicates.add(cb.greaterThan(id, parameters.add(cb, (Comparable) lastId)));
+
+        idQuery.select(id).where(predicates.toArray(new Predicate[predicates.size()])).orderBy(cb.asc(id));
+        TypedQuery<Object> query = em.createQuery(idQuery);
+        parameters.bind(query);
+        return query.setMaxResults(batchSize).getResultList();
+    }
+
+    private SingularAttribute<? super P,?> findVersionAttribute(Class<P> entityClass)
+    {
+        for (SingularAttribute<? super P, ?> attribute : em.getMetamodel().entity(entityClass).getSingularAttributes())
+        {
+            if(attribute.isVersion() && Number.class.isAssignableFrom(wrap(attribute.getJavaType())))
+                return attribute;
+        }
+        return null;
+    }
+
+    private static Class<?> wrap(Class<?> type)
+    {
+        if(type == int.class)
+            return Integer.class;
+        if(type == long.class)
+            return Long.class;
+        if(type == short.class)
+            return Short.class;
+        return type;
+    }
+
+    @Override
+    public void flushBatch()
+    {
+        em.flush();
+        em.clear();
+    }
+
     @Override
     public void reset(P entity)
     {
@@ -217,8 +1125,251 @@ public class JpaDao<P extends PersistentObject<ID>,ID extends Serializable>
 
     @Override
     public Date getCurrentTimestamp()
+    {
+        return clock.now();
+    }
+
+    @Override
+    public Date getDatabaseTimestamp()
     {
         Query query = em.createNativeQuery("select CURRENT_TIMESTAMP");
         return (Date) query.getSingleResult();
     }
+
+    /**
+     * Written instances are authoritative unless a field or property of the entity is marked with
+     * {@link DatabaseGenerated} or the hibernate Generated annotation.
+     */
+    @Override
+    public boolean isManagedInstanceAuthoritative(Class<?> entityClass)
+    {
+        Boolean authoritative = authoritativeTypes.get(entityClass);
+        if(authoritative == null)
+        {
+            authoritative = !hasGeneratedValues(entityClass);
+            authoritativeTypes.putIfAbsent(entityClass, authoritative);
+        }
+        return authoritative;
+    }
+
+    private static boolean hasGeneratedValues(Class<?> entityClass)
+    {
+        for (Class<?> type = entityClass; type != null && type != Object.class; type = type.getSuperclass())
+        {
+            for (Field field : type.getDeclaredFields())
+            {
+                if(isGenerated(field.getAnnotations()))
+                    return true;
+            }
+            for (Method method : type.getDeclaredMethods())
+            {
+                if(isGenerated(method.getAnnotations()))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isGenerated(Annotation[] annotations)
+    {
+        for (Annotation annotation : annotations)
+        {
+            if(annotation instanceof DatabaseGenerated
+                    || annotation.annotationType().getName().equals(HIBERNATE_GENERATED))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Set based deletes are used unless the entity or one of its subclasses has an element collection, a collection
+     * it owns, or an association that cascades removal or removes orphans. Associations whose mapping can not be
+     * read from annotations are treated as cascading.
+     */
+    @Override
+    public boolean canDeleteBySet(Class<?> entityClass)
+    {
+        Boolean setDelete = setDeleteTypes.get(entityClass);
+        if(setDelete == null)
+        {
+            setDelete = true;
+            for (EntityType<?> entityType : em.getMetamodel().getEntities())
+            {
+                if(entityClass.isAssignableFrom(entityType.getJavaType()) && hasDependentRows(entityType))
+                    setDelete = false;
+            }
+            setDeleteTypes.putIfAbsent(entityClass, setDelete);
+        }
+        return setDelete;
+    }
+
+    /**
+     * Set based updates are used when every property is a basic attribute of the entity and any version attribute is
+     * numeric so it can be incremented. Writing an association, embedded value or collection this way would skip the
+     * cascades and collection tables maintained when the entity is merged.
+     */
+    @Override
+    public boolean canUpdateBySet(Class<?> entityClass, Set<String> properties)
+    {
+        EntityType<?> entityType = em.getMetamodel().entity(entityClass);
+        for (SingularAttribute<?,?> attribute : entityType.getSingularAttributes())
+        {
+            if(attribute.isVersion() && !Number.class.isAssignableFrom(wrap(attribute.getJavaType())))
+                return false;
+        }
+
+        for (String property : properties)
+        {
+            Attribute<?,?> attribute;
+            try
+            {
+                attribute = entityType.getAttribute(property);
+            }
+            catch (IllegalArgumentException e)
+            {
+                return false;
+            }
+
+            if(attribute.getPersistentAttributeType() != Attribute.PersistentAttributeType.BASIC)
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean hasDependentRows(ManagedType<?> managedType)
+    {
+        for (Attribute<?,?> attribute : managedType.getAttributes())
+        {
+            switch (attribute.getPersistentAttributeType())
+            {
+                case ELEMENT_COLLECTION:
+                    return true;
+                case EMBEDDED:
+                    if(hasDependentRows((ManagedType<?>) ((SingularAttribute<?,?>) attribute).getType()))
+                        return true;
+                    break;
+                case ONE_TO_MANY:
+                case MANY_TO_MANY:
+                case ONE_TO_ONE:
+                case MANY_TO_ONE:
+                    if(isDependent(attribute.getJavaMember()))
+                        return true;
+                    break;
+                default:
+                    break;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isDependent(Member member)
+    {
+        if(!(member instanceof AnnotatedElement))
+            return true;
+
+        AnnotatedElement element = (AnnotatedElement) member;
+        for (Annotation annotation : element.getAnnotations())
+        {
+            if(annotation.annotationType().getName().equals(HIBERNATE_CASCADE))
+                return true;
+        }
+
+        // an owned collection is kept in a join table or in foreign keys of the other table
+        OneToMany oneToMany = element.getAnnotation(OneToMany.class);
+        if(oneToMany != null)
+            return oneToMany.mappedBy().isEmpty() || oneToMany.orphanRemoval()
+                    || cascadesRemoval(oneToMany.cascade());
+
+        ManyToMany manyToMany = element.getAnnotation(ManyToMany.class);
+        if(manyToMany != null)
+            return manyToMany.mappedBy().isEmpty() || cascadesRemoval(manyToMany.cascade());
+
+        OneToOne oneToOne = element.getAnnotation(OneToOne.class);
+        if(oneToOne != null)
+            return oneToOne.orphanRemoval() || cascadesRemoval(oneToOne.cascade());
+
+        ManyToOne manyToOne = element.getAnnotation(ManyToOne.class);
+        if(manyToOne != null)
+            return cascadesRemoval(manyToOne.cascade());
+
+        return true;
+    }
+
+    private static boolean cascadesRemoval(CascadeType[] cascadeTypes)
+    {
+        for (CascadeType cascadeType : cascadeTypes)
+        {
+            if(cascadeType == CascadeType.ALL || cascadeType == CascadeType.REMOVE)
+                return true;
+        }
+        return false;
+    }
+
+    private static boolean detectHibernate()
+    {
+        try
+        {
+            JpaDao.class.getClassLoader().loadClass("org.hibernate.ScrollableResults");
+            return true;
+        }
+        catch (ClassNotFoundException e)
+        {
+            return false;
+        }
+    }
+
+    private static class EntityMetadata
+    {
+        private final TypeMapper typeMapper;
+        private final Constructor<?> constructor;
+
+        private EntityMetadata(Class<?> entityClass)
+        {
+            typeMapper = new TypeMapper(entityClass);
+            try
+            {
+                constructor = entityClass.getDeclaredConstructor();
+                constructor.setAccessible(true);
+            }
+            catch (NoSuchMethodException e)
+            {
+                throw new IllegalStateException(String.format("%s has no default constructor.",
+                        entityClass.getName()), e);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private <P> P createInstance()
+        {
+            try
+            {
+                return (P) constructor.newInstance();
+            }
+            catch (Exception e)
+            {
+                throw new IllegalStateException(String.format("Unable to create %s.",
+                        constructor.getDeclaringClass().getName()), e);
+            }
+        }
+    }
+
+    private static class FetchNode
+    {
+        private final Map<String,FetchNode> children = new LinkedHashMap<String, FetchNode>();
+
+        private void add(String[] path)
+        {
+            FetchNode node = this;
+            for (String name : path)
+            {
+                FetchNode child = node.children.get(name);
+                if(child == null)
+                {
+                    child = new FetchNode();
+                    node.children.put(name, child);
+                }
+                node = child;
+            }
+        }
+    }
 }
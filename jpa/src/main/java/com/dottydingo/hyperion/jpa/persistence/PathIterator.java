@@ -6,15 +6,23 @@ import java.util.Iterator;
  */
 public class PathIterator implements Iterator<String>
 {
+    private static final String[] EMPTY = new String[0];
+
     private String[] pathParts;
     int index = 0;
 
     public PathIterator(String path)
     {
-        if(path == null || path.length() == 0)
-            pathParts = new String[0];
-        else
-            pathParts = path.split("\\.");
+        this(split(path));
+    }
+
+    /**
+     * Create an iterator over a path that has already been split, the parts are not copied.
+     * @param pathParts The parts of the path
+     */
+    public PathIterator(String[] pathParts)
+    {
+        this.pathParts = pathParts;
     }
 
     @Override
@@ -42,4 +50,12 @@ public class PathIterator implements Iterator<String>
     {
         return new PathIterator(path);
     }
+
+    public static String[] split(String path)
+    {
+        if(path == null || path.length() == 0)
+            return EMPTY;
+
+        return path.split("\\.");
+    }
 }
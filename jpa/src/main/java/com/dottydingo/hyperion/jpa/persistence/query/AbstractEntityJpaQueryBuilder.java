@@ -9,6 +9,7 @@ import org.slf4j.LoggerFactory;
 
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Expression;
 import javax.persistence.criteria.Path;
 import javax.persistence.criteria.Predicate;
 import java.util.Collection;
@@ -86,7 +87,7 @@ public abstract class AbstractEntityJpaQueryBuilder<T> implements JpaEntityQuery
     }
 
     /**
-     * Apply an "equal" constraint to the named property.
+     * Apply an "equal" constraint to the named property, a null argument matches null values.
      *
      *
      * @param query
@@ -98,7 +99,10 @@ public abstract class AbstractEntityJpaQueryBuilder<T> implements JpaEntityQuery
     protected Predicate createEqual(Path root, CriteriaQuery<?> query, CriteriaBuilder cb, String propertyPath,
                                     Object argument, PersistenceContext context)
     {
-        return cb.equal(root.get(propertyPath), argument);
+        if(argument == null)
+            return cb.isNull(root.get(propertyPath));
+
+        return cb.equal(root.get(propertyPath), createArgument(cb, argument, context));
     }
 
     /**
@@ -118,11 +122,11 @@ public abstract class AbstractEntityJpaQueryBuilder<T> implements JpaEntityQuery
         String like = (String) argument;
         like = like.replace(LIKE_WILDCARD, '%');
 
-        return cb.like(cb.lower(root.get(propertyPath)), like.toLowerCase());
+        return cb.like(cb.lower(root.get(propertyPath)), createArgument(cb, like.toLowerCase(), context));
     }
 
     /**
-     * Apply a "not equal" constraint to the named property.
+     * Apply a "not equal" constraint to the named property, a null argument matches values that are not null.
      *
      *
      * @param query
@@ -134,7 +138,10 @@ public abstract class AbstractEntityJpaQueryBuilder<T> implements JpaEntityQuery
     protected Predicate createNotEqual(Path root, CriteriaQuery<?> query, CriteriaBuilder cb, String propertyPath, Object argument,
                                        PersistenceContext context)
     {
-        return cb.notEqual(root.get(propertyPath), argument);
+        if(argument == null)
+            return cb.isNotNull(root.get(propertyPath));
+
+        return cb.notEqual(root.get(propertyPath), createArgument(cb, argument, context));
     }
 
     /**
@@ -151,7 +158,10 @@ public abstract class AbstractEntityJpaQueryBuilder<T> implements JpaEntityQuery
     protected Predicate createNotLike(Path root, CriteriaQuery<?> query, CriteriaBuilder cb, String propertyPath, Object argument,
                                       PersistenceContext context)
     {
-        return cb.notLike(root.get(propertyPath), (String) argument);
+        String like = (String) argument;
+        like = like.replace(LIKE_WILDCARD, '%');
+
+        return cb.notLike(cb.lower(root.get(propertyPath)), createArgument(cb, like.toLowerCase(), context));
     }
 
     /**
@@ -171,7 +181,7 @@ public abstract class AbstractEntityJpaQueryBuilder<T> implements JpaEntityQuery
             throw new BadRequestException(context.getMessageSource().getErrorMessage(
                     INCOMPATIBLE_QUERY_OPERATION, context.getLocale(), "gt"));
 
-        return cb.greaterThan(root.get(propertyPath), (Comparable) argument);
+        return cb.greaterThan(root.get(propertyPath), createArgument(cb, (Comparable) argument, context));
     }
 
     /**
@@ -191,7 +201,7 @@ public abstract class AbstractEntityJpaQueryBuilder<T> implements JpaEntityQuery
             throw new BadRequestException(context.getMessageSource().getErrorMessage(
                     INCOMPATIBLE_QUERY_OPERATION, context.getLocale(), "ge"));
 
-        return cb.greaterThanOrEqualTo(root.get(propertyPath), (Comparable) argument);
+        return cb.greaterThanOrEqualTo(root.get(propertyPath), createArgument(cb, (Comparable) argument, context));
     }
 
     /**
@@ -211,7 +221,7 @@ public abstract class AbstractEntityJpaQueryBuilder<T> implements JpaEntityQuery
             throw new BadRequestException(context.getMessageSource().getErrorMessage(
                     INCOMPATIBLE_QUERY_OPERATION, context.getLocale(), "lt"));
 
-        return cb.lessThan(root.get(propertyPath), (Comparable) argument);
+        return cb.lessThan(root.get(propertyPath), createArgument(cb, (Comparable) argument, context));
     }
 
     /**
@@ -231,7 +241,7 @@ public abstract class AbstractEntityJpaQueryBuilder<T> implements JpaEntityQuery
             throw new BadRequestException(context.getMessageSource().getErrorMessage(
                     INCOMPATIBLE_QUERY_OPERATION,context.getLocale(),"le"));
 
-        return cb.lessThanOrEqualTo(root.get(propertyPath), (Comparable) argument);
+        return cb.lessThanOrEqualTo(root.get(propertyPath), createArgument(cb, (Comparable) argument, context));
     }
 
     protected Predicate createIn(Path root, CriteriaQuery<?> query, CriteriaBuilder cb, String propertyPath, Object argument,
@@ -242,7 +252,7 @@ public abstract class AbstractEntityJpaQueryBuilder<T> implements JpaEntityQuery
                     INCOMPATIBLE_QUERY_OPERATION, context.getLocale(), "in"));
 
         Path expression = root.get(propertyPath);
-        return expression.in((Collection)argument);
+        return expression.in(createArguments(cb, (Collection) argument, context));
     }
 
     protected Predicate createNotIn(Path root, CriteriaQuery<?> query, CriteriaBuilder cb, String propertyPath, Object argument,
@@ -253,7 +263,40 @@ public abstract class AbstractEntityJpaQueryBuilder<T> implements JpaEntityQuery
                     INCOMPATIBLE_QUERY_OPERATION, context.getLocale(), "not in"));
 
         Path expression = root.get(propertyPath);
-        return cb.not(expression.in((Collection)argument));
+        return cb.not(expression.in(createArguments(cb, (Collection) argument, context)));
+    }
+
+    /**
+     * Create the expression for an argument. When the query is built with {@link QueryParameters} the argument is
+     * added as a parameter, otherwise it is a literal. A null argument is created with nullLiteral since providers
+     * reject a null value passed to literal.
+     *
+     * @param cb       criteria builder
+     * @param argument the argument
+     * @param context  context
+     * @return Expression
+     */
+    @SuppressWarnings("unchecked")
+    protected <V> Expression<V> createArgument(CriteriaBuilder cb, V argument, PersistenceContext context)
+    {
+        if(argument == null)
+            return (Expression<V>) cb.nullLiteral(Object.class);
+
+        if(context instanceof ParameterizedPersistenceContext)
+            return ((ParameterizedPersistenceContext) context).getQueryParameters().add(cb, argument);
+
+        return cb.literal(argument);
+    }
+
+    protected Expression<?>[] createArguments(CriteriaBuilder cb, Collection<?> arguments, PersistenceContext context)
+    {
+        Expression<?>[] expressions = new Expression<?>[arguments.size()];
+        int i = 0;
+        for (Object argument : arguments)
+        {
+            expressions[i++] = createArgument(cb, argument, context);
+        }
+        return expressions;
     }
 
     /**
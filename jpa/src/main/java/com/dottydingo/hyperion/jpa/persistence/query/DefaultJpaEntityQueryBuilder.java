@@ -10,12 +10,12 @@ import java.util.List;
  */
 public class DefaultJpaEntityQueryBuilder<T> extends AbstractEntityJpaQueryBuilder<T>
 {
-    private String propertyPath;
+    private String[] propertyPath = PathIterator.split(null);
     private String propertyName;
 
     public void setPropertyPath(String propertyPath)
     {
-        this.propertyPath = propertyPath;
+        this.propertyPath = PathIterator.split(propertyPath);
     }
 
     public void setPropertyName(String propertyName)
@@ -28,7 +28,7 @@ public class DefaultJpaEntityQueryBuilder<T> extends AbstractEntityJpaQueryBuild
     public Predicate buildPredicate(From root, CriteriaQuery<?> query, CriteriaBuilder cb, ComparisonOperator operator,
                                     List<String> arguments, PersistenceContext persistenceContext)
     {
-        Path from = getFrom(root,PathIterator.getPath(propertyPath));
+        Path from = getFrom(root,new PathIterator(propertyPath));
 
         Object parsed = operator.supportsMultipleArguments()
                 ? argumentParser.parse(arguments,from.get(propertyName).getJavaType(), persistenceContext)
@@ -21,7 +21,7 @@ public class JpaPersistentQueryBuilderFactory implements PersistentQueryBuilderF
         return new InternalPredicateBuilder(persistenceContext,rootExpression);
     }
 
-    private class InternalPredicateBuilder<P> implements JpaPersistentQueryBuilder<P>
+    private class InternalPredicateBuilder<P> implements ParameterizedQueryBuilder<P>
     {
         private PersistenceContext context;
         private Node rootExpression;
@@ -38,5 +38,13 @@ public class JpaPersistentQueryBuilderFactory implements PersistentQueryBuilderF
             return rootExpression.accept(new RsqlVisitor(context, root,query, cb,
                     context.getApiVersionPlugin().getQueryBuilders()));
         }
+
+        @Override
+        public Predicate buildPredicate(Root<P> root, CriteriaQuery<?> query, CriteriaBuilder cb,
+                                        QueryParameters parameters)
+        {
+            return rootExpression.accept(new RsqlVisitor(new ParameterizedPersistenceContext(context, parameters),
+                    root, query, cb, context.getApiVersionPlugin().getQueryBuilders()));
+        }
     }
 }
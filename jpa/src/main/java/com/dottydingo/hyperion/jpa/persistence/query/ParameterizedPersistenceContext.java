@@ -0,0 +1,22 @@
+package com.dottydingo.hyperion.jpa.persistence.query;
+
+import com.dottydingo.hyperion.core.persistence.PersistenceContext;
+
+/**
+ * Carries the parameters of the query being built to the entity query builders.
+ */
+class ParameterizedPersistenceContext extends PersistenceContext
+{
+    private final QueryParameters queryParameters;
+
+    ParameterizedPersistenceContext(PersistenceContext other, QueryParameters queryParameters)
+    {
+        super(other);
+        this.queryParameters = queryParameters;
+    }
+
+    QueryParameters getQueryParameters()
+    {
+        return queryParameters;
+    }
+}
@@ -0,0 +1,15 @@
+package com.dottydingo.hyperion.jpa.persistence.query;
+
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+
+/**
+ * A query builder that can add its arguments as parameters instead of literals. The caller binds the parameters
+ * once the query has been created.
+ */
+public interface ParameterizedQueryBuilder<P> extends JpaPersistentQueryBuilder<P>
+{
+    Predicate buildPredicate(Root<P> root, CriteriaQuery<?> query, CriteriaBuilder cb, QueryParameters parameters);
+}
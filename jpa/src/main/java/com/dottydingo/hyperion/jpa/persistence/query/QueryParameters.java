@@ -0,0 +1,67 @@
+package com.dottydingo.hyperion.jpa.persistence.query;
+
+import javax.persistence.Query;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.ParameterExpression;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The parameters of a criteria query along with their values. Query arguments are added as parameters rather than
+ * literals so that queries of the same shape produce the same statement, which lets the provider's query plan cache
+ * and the JDBC statement cache be reused. The values are bound once the query has been created.
+ */
+public class QueryParameters
+{
+    private final List<ParameterExpression> parameters = new ArrayList<>();
+    private final List<Object> values = new ArrayList<>();
+
+    /**
+     * Add a parameter
+     * @param cb The criteria builder
+     * @param type The parameter type
+     * @param value The value to bind
+     * @return The parameter expression
+     */
+    public <T> ParameterExpression<T> add(CriteriaBuilder cb, Class<T> type, T value)
+    {
+        ParameterExpression<T> parameter = cb.parameter(type);
+        parameters.add(parameter);
+        values.add(value);
+        return parameter;
+    }
+
+    /**
+     * Add a parameter using the type of the value
+     * @param cb The criteria builder
+     * @param value The value to bind, must not be null
+     * @return The parameter expression
+     */
+    @SuppressWarnings("unchecked")
+    public <T> ParameterExpression<T> add(CriteriaBuilder cb, T value)
+    {
+        Class<T> type = (Class<T>) value.getClass();
+        if(value instanceof Enum)
+            type = (Class<T>) ((Enum) value).getDeclaringClass();
+
+        return add(cb, type, value);
+    }
+
+    public int size()
+    {
+        return parameters.size();
+    }
+
+    /**
+     * Bind the values to a query created from the criteria these parameters were added to
+     * @param query The query
+     */
+    @SuppressWarnings("unchecked")
+    public void bind(Query query)
+    {
+        for (int i = 0; i < parameters.size(); i++)
+        {
+            query.setParameter(parameters.get(i), values.get(i));
+        }
+    }
+}
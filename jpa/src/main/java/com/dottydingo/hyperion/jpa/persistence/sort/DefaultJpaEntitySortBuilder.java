@@ -10,12 +10,12 @@ import java.util.List;
  */
 public class DefaultJpaEntitySortBuilder implements JpaEntitySortBuilder
 {
-    private String propertyPath;
+    private String[] propertyPath = PathIterator.split(null);
     private String propertyName;
 
     public void setPropertyPath(String propertyPath)
     {
-        this.propertyPath = propertyPath;
+        this.propertyPath = PathIterator.split(propertyPath);
     }
 
     public void setPropertyName(String propertyName)
@@ -26,7 +26,7 @@ public class DefaultJpaEntitySortBuilder implements JpaEntitySortBuilder
     @Override
     public List<Order> buildOrder(boolean desc, CriteriaBuilder cb, From root)
     {
-        Path from = getFrom(root,PathIterator.getPath(propertyPath));
+        Path from = getFrom(root,new PathIterator(propertyPath));
         Path path = from.get(propertyName);
         Order order = desc ? cb.desc(path) : cb.asc(path);
         return Collections.singletonList(order);
@@ -0,0 +1,930 @@
+package com.dottydingo.hyperion.jpa.persistence;
+
+
+import com.dottydingo.hyperion.core.message.HyperionMessageSource;
+import com.dottydingo.hyperion.core.model.PersistentObject;
+import com.dottydingo.hyperion.core.persistence.PersistenceContext;
+import com.dottydingo.hyperion.core.persistence.dao.PersistentQueryResult;
+import com.dottydingo.hyperion.core.registry.ApiVersionPlugin;
+import com.dottydingo.hyperion.jpa.configuration.JpaEntityQueryBuilderFactoryBean;
+import com.dottydingo.hyperion.jpa.persistence.query.AbstractEntityJpaQueryBuilder;
+import com.dottydingo.hyperion.jpa.persistence.query.ComparisonOperator;
+import com.dottydingo.hyperion.jpa.persistence.query.JpaEntityQueryBuilder;
+import com.dottydingo.hyperion.jpa.persistence.query.JpaPersistentQueryBuilder;
+import com.dottydingo.hyperion.jpa.persistence.query.JpaPersistentQueryBuilderFactory;
+import com.dottydingo.hyperion.jpa.persistence.sort.JpaPersistentOrderBuilder;
+import cz.jirutka.rsql.parser.RSQLParser;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.persistence.CascadeType;
+import javax.persistence.ElementCollection;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import javax.persistence.Query;
+import javax.persistence.TypedQuery;
+import javax.persistence.ManyToMany;
+import javax.persistence.ManyToOne;
+import javax.persistence.OneToMany;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.CriteriaUpdate;
+import javax.persistence.criteria.From;
+import javax.persistence.criteria.Order;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.Metamodel;
+import javax.persistence.metamodel.SingularAttribute;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ */
+public class JpaDaoTest
+{
+    private static EntityManagerFactory entityManagerFactory;
+    private static EntityManager em;
+    private static JpaDao<QueryEntity,Long> queryDao;
+    private static PersistenceContext context;
+
+    @BeforeClass
+    @SuppressWarnings("unchecked")
+    public static void setUpDatabase() throws Exception
+    {
+        entityManagerFactory = Persistence.createEntityManagerFactory("hyperionTest");
+        em = entityManagerFactory.createEntityManager();
+
+        em.getTransaction().begin();
+        em.persist(new QueryEntity("alpha", 1, QueryEntity.Status.ACTIVE, date(1)));
+        em.persist(new QueryEntity("beta", 2, QueryEntity.Status.ACTIVE, date(2)));
+        em.persist(new QueryEntity("bravo", 3, QueryEntity.Status.RETIRED, date(3)));
+        em.persist(new QueryEntity(null, 4, QueryEntity.Status.RETIRED, date(4)));
+        em.persist(new QueryEntity("gamma", 5, QueryEntity.Status.ACTIVE, date(5)));
+        em.getTransaction().commit();
+        em.clear();
+
+        queryDao = new JpaDao<QueryEntity,Long>();
+        queryDao.setEm(em);
+
+        JpaEntityQueryBuilderFactoryBean factoryBean = new JpaEntityQueryBuilderFactoryBean();
+        factoryBean.setApiClass(QueryEntity.class);
+        factoryBean.setAdditionalFields(Collections.<String,JpaEntityQueryBuilder>singletonMap("unnamed",
+                new NullNameQueryBuilder()));
+
+        ApiVersionPlugin versionPlugin = new ApiVersionPlugin();
+        versionPlugin.setApiClass(QueryEntity.class);
+        versionPlugin.setQueryBuilders((Map) factoryBean.getObject());
+
+        context = new PersistenceContext();
+        context.setLocale(Locale.US);
+        context.setMessageSource(new HyperionMessageSource());
+        context.setApiVersionPlugin(versionPlugin);
+    }
+
+    @AfterClass
+    public static void tearDownDatabase()
+    {
+        em.close();
+        entityManagerFactory.close();
+    }
+
+    @Test
+    public void testChunkInList()
+    {
+        List<List<Object>> chunks = JpaDao.chunkInList(Arrays.asList(1L, 2L, 3L), 8);
+        Assert.assertEquals(1, chunks.size());
+        Assert.assertEquals(Arrays.<Object>asList(1L, 2L, 3L, 3L), chunks.get(0));
+
+        chunks = JpaDao.chunkInList(Arrays.asList(1L, 2L, 3L, 4L), 8);
+        Assert.assertEquals(Arrays.<Object>asList(1L, 2L, 3L, 4L), chunks.get(0));
+
+        chunks = JpaDao.chunkInList(Collections.singletonList(1L), 8);
+        Assert.assertEquals(Collections.<Object>singletonList(1L), chunks.get(0));
+
+        Assert.assertTrue(JpaDao.chunkInList(Collections.emptyList(), 8).isEmpty());
+    }
+
+    @Test
+    public void testChunkInListSplit()
+    {
+        List<Long> ids = new ArrayList<>();
+        for (long i = 1; i <= 11; i++)
+        {
+            ids.add(i);
+        }
+
+        List<List<Object>> chunks = JpaDao.chunkInList(ids, 4);
+        Assert.assertEquals(3, chunks.size());
+        Assert.assertEquals(Arrays.<Object>asList(1L, 2L, 3L, 4L), chunks.get(0));
+        Assert.assertEquals(Arrays.<Object>asList(5L, 6L, 7L, 8L), chunks.get(1));
+        Assert.assertEquals(Arrays.<Object>asList(9L, 10L, 11L, 11L), chunks.get(2));
+
+        // padding never exceeds the maximum size
+        chunks = JpaDao.chunkInList(ids, 6);
+        Assert.assertEquals(6, chunks.get(0).size());
+        Assert.assertEquals(Arrays.<Object>asList(7L, 8L, 9L, 10L, 11L, 11L), chunks.get(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMaxInListSize()
+    {
+        new JpaDao().setMaxInListSize(0);
+    }
+
+    @Test
+    public void testSeekPredicate()
+    {
+        JpaDao dao = new JpaDao();
+        List<Order> orders = Arrays.asList(order("name", String.class, true, true),
+                order("id", Long.class, false, true));
+
+        Assert.assertEquals("or(and(or(greaterThan(name,b),isNull(name))),and(equal(name,b),greaterThan(id,5)))",
+                dao.buildSeekPredicate(criteriaBuilder(), orders, Arrays.<Object>asList("b", 5L)).toString());
+    }
+
+    @Test
+    public void testSeekPredicateNullValues()
+    {
+        JpaDao dao = new JpaDao();
+        List<Order> orders = Arrays.asList(order("name", String.class, true, true),
+                order("id", Long.class, false, true));
+
+        // nulls sort last so only a later key can move past a null
+        Assert.assertEquals("or(and(isNull(name),greaterThan(id,5)))",
+                dao.buildSeekPredicate(criteriaBuilder(), orders, Arrays.<Object>asList(null, 5L)).toString());
+
+        Assert.assertEquals("disjunction()", dao.buildSeekPredicate(criteriaBuilder(), orders.subList(0, 1),
+                Collections.<Object>singletonList(null)).toString());
+
+        dao.setNullsFirst(true);
+        Assert.assertEquals("or(and(isNotNull(name)),and(isNull(name),greaterThan(id,5)))",
+                dao.buildSeekPredicate(criteriaBuilder(), orders, Arrays.<Object>asList(null, 5L)).toString());
+        Assert.assertEquals("or(and(greaterThan(name,b)),and(equal(name,b),greaterThan(id,5)))",
+                dao.buildSeekPredicate(criteriaBuilder(), orders, Arrays.<Object>asList("b", 5L)).toString());
+
+        // descending with nulls first in ascending order puts the nulls last
+        orders = Collections.singletonList(order("name", String.class, true, false));
+        Assert.assertEquals("or(and(or(lessThan(name,b),isNull(name))))",
+                dao.buildSeekPredicate(criteriaBuilder(), orders, Collections.<Object>singletonList("b")).toString());
+    }
+
+    @Test
+    public void testTotalCountFromPage()
+    {
+        CountingDao dao = new CountingDao(100);
+
+        // a partial page ends the results so the total is known without counting
+        PersistentQueryResult result = page(3);
+        dao.setTotalCount(result, null, null, 0, 10, true, null);
+        Assert.assertEquals(new Long(3), result.getTotalCount());
+
+        result = page(3);
+        dao.setTotalCount(result, null, null, 20, 10, false, null);
+        Assert.assertEquals(new Long(23), result.getTotalCount());
+
+        result = page(0);
+        dao.setTotalCount(result, null, null, 0, 10, true, null);
+        Assert.assertEquals(new Long(0), result.getTotalCount());
+        Assert.assertEquals(0, dao.counts);
+
+        // an empty page past the first could be anywhere past the end
+        result = page(0);
+        dao.setTotalCount(result, null, null, 200, 10, true, null);
+        Assert.assertEquals(new Long(100), result.getTotalCount());
+        Assert.assertEquals(1, dao.counts);
+    }
+
+    @Test
+    public void testTotalCount()
+    {
+        CountingDao dao = new CountingDao(100);
+
+        PersistentQueryResult result = page(10);
+        dao.setTotalCount(result, null, null, 0, 10, false, null);
+        Assert.assertNull(result.getTotalCount());
+        Assert.assertEquals(0, dao.counts);
+
+        dao.setTotalCount(result, null, null, 0, 10, true, null);
+        Assert.assertEquals(new Long(100), result.getTotalCount());
+        Assert.assertTrue(result.isTotalCountExact());
+        Assert.assertNull(dao.lastLimit);
+
+        // a limited count reads one row past the maximum to tell if it was reached
+        result = page(10);
+        dao.setTotalCount(result, null, null, 0, 10, true, 50);
+        Assert.assertEquals(new Long(50), result.getTotalCount());
+        Assert.assertFalse(result.isTotalCountExact());
+        Assert.assertEquals(new Integer(51), dao.lastLimit);
+
+        result = page(10);
+        dao.setTotalCount(result, null, null, 0, 10, true, 100);
+        Assert.assertEquals(new Long(100), result.getTotalCount());
+        Assert.assertTrue(result.isTotalCountExact());
+    }
+
+    @Test
+    public void testCreateAllBatches()
+    {
+        final List<String> calls = new ArrayList<>();
+        JpaDao dao = new JpaDao();
+        dao.setWriteBatchSize(2);
+        dao.setEm(proxy(EntityManager.class, new InvocationHandler()
+        {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+            {
+                calls.add(method.getName());
+                return null;
+            }
+        }));
+
+        List<Entity> entities = Arrays.asList(new Entity("a"), new Entity("b"), new Entity("c"), new Entity("d"),
+                new Entity("e"));
+        Assert.assertSame(entities, dao.createAll(entities));
+
+        // each full batch is flushed but nothing is detached, the caller still translates the created entities
+        Assert.assertEquals(Arrays.asList("persist", "persist", "flush", "persist", "persist", "flush", "persist",
+                "flush"), calls);
+    }
+
+    @Test
+    public void testUpdateAllReturnsManagedInstances()
+    {
+        final List<String> calls = new ArrayList<>();
+        JpaDao dao = new JpaDao();
+        dao.setEm(proxy(EntityManager.class, new InvocationHandler()
+        {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+            {
+                calls.add(method.getName());
+                return method.getName().equals("merge") ? new Entity("managed-" + ((Entity) args[0]).name) : null;
+            }
+        }));
+
+        List<Entity> merged = dao.updateAll(Arrays.asList(new Entity("a"), new Entity("b")));
+        Assert.assertEquals("managed-a", merged.get(0).name);
+        Assert.assertEquals("managed-b", merged.get(1).name);
+        Assert.assertEquals(Arrays.asList("merge", "merge", "flush"), calls);
+    }
+
+    @Test
+    public void testCanDeleteBySet()
+    {
+        JpaDao dao = new JpaDao();
+        dao.setEm(entityManager(Plain.class, Child.class, WithElements.class, WithOwnedCollection.class,
+                WithCascade.class, WithOrphans.class));
+
+        Assert.assertTrue(dao.canDeleteBySet(Plain.class));
+        Assert.assertTrue(dao.canDeleteBySet(Child.class));
+        Assert.assertFalse(dao.canDeleteBySet(WithElements.class));
+        Assert.assertFalse(dao.canDeleteBySet(WithOwnedCollection.class));
+        Assert.assertFalse(dao.canDeleteBySet(WithCascade.class));
+        Assert.assertFalse(dao.canDeleteBySet(WithOrphans.class));
+    }
+
+    @Test
+    public void testCanDeleteBySetChecksSubclasses()
+    {
+        JpaDao dao = new JpaDao();
+        dao.setEm(entityManager(Parent.class, CascadingParent.class));
+
+        // a set based delete of the parent type would also remove the subclass rows
+        Assert.assertFalse(dao.canDeleteBySet(Parent.class));
+    }
+
+    @Test
+    public void testCanUpdateBySet()
+    {
+        JpaDao dao = new JpaDao();
+        dao.setEm(entityManager(Plain.class, WithElements.class));
+
+        Assert.assertTrue(dao.canUpdateBySet(Plain.class, Collections.singleton("name")));
+        Assert.assertFalse(dao.canUpdateBySet(Plain.class, new HashSet<>(Arrays.asList("name", "other"))));
+        Assert.assertFalse(dao.canUpdateBySet(Plain.class, Collections.singleton("missing")));
+        Assert.assertFalse(dao.canUpdateBySet(WithElements.class, Collections.singleton("tags")));
+    }
+
+    @Test
+    public void testUpdateByQuery()
+    {
+        final List<String> calls = new ArrayList<>();
+        final CriteriaBuilder cb = recorder(CriteriaBuilder.class, "cb", calls);
+        final SingularAttribute version = proxy(SingularAttribute.class, new InvocationHandler()
+        {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+            {
+                switch (method.getName())
+                {
+                    case "isVersion":
+                        return true;
+                    case "getJavaType":
+                        return long.class;
+                    case "getName":
+                        return "version";
+                    default:
+                        return null;
+                }
+            }
+        });
+        final EntityType entityType = proxy(EntityType.class, new InvocationHandler()
+        {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+            {
+                return method.getName().equals("getSingularAttributes") ? Collections.singleton(version) : null;
+            }
+        });
+        final Metamodel metamodel = proxy(Metamodel.class, new InvocationHandler()
+        {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+            {
+                return method.getName().equals("entity") ? entityType : null;
+            }
+        });
+
+        JpaDao dao = new JpaDao();
+        dao.setEm(proxy(EntityManager.class, new InvocationHandler()
+        {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+            {
+                switch (method.getName())
+                {
+                    case "getCriteriaBuilder":
+                        return cb;
+                    case "getMetamodel":
+                        return metamodel;
+                    case "createQuery":
+                        return query(args[0] instanceof CriteriaUpdate, calls);
+                    default:
+                        return null;
+                }
+            }
+        }));
+
+        Assert.assertEquals(3, dao.updateByQuery(Entity.class, Collections.emptyList(),
+                Collections.<String,Object>singletonMap("name", "x"), 10));
+
+        // the values and the version increment are written to the selected ids in a single statement
+        Assert.assertTrue(calls.contains("update.set(get(name),x)"));
+        Assert.assertTrue(calls.contains("update.set(get(version),sum(get(version),1))"));
+        Assert.assertEquals(1, Collections.frequency(calls, "executeUpdate()"));
+    }
+
+    @Test
+    public void testFindAllKeepsRequestedOrder()
+    {
+        Assert.assertEquals(Arrays.asList(3L, 1L), ids(queryDao.findAll(QueryEntity.class, Arrays.asList(3L, 1L))));
+
+        // several chunks still come back in the requested order, once per id and without the missing ones
+        JpaDao<QueryEntity,Long> chunkingDao = new JpaDao<QueryEntity,Long>();
+        chunkingDao.setEm(em);
+        chunkingDao.setMaxInListSize(2);
+        List<QueryEntity> results = chunkingDao.findAll(QueryEntity.class, Arrays.asList(5L, 1L, 4L, 99L, 1L, 3L, 2L));
+        Assert.assertEquals(Arrays.asList(5L, 1L, 4L, 3L, 2L), ids(results));
+    }
+
+    @Test
+    public void testParameterizedQueriesMatchLiterals()
+    {
+        assertQuery("name==alpha", 1);
+        assertQuery("name==b*", 2);
+        assertQuery("name!=alpha", 3);
+        assertQuery("name!=b*", 2);
+        assertQuery("number=in=(1,3)", 2);
+        assertQuery("number=out=(1,3)", 3);
+        assertQuery("number=gt=2", 3);
+        assertQuery("number=le=2", 2);
+        assertQuery("status==active", 3);
+        assertQuery("status=in=(active,RETIRED)", 5);
+        assertQuery("created=gt=2015-01-02", 3);
+        assertQuery("created=le=2015-01-03T00:00:00", 3);
+        assertQuery("created=in=(2015-01-01,2015-01-05)", 2);
+        assertQuery("number=ge=2;status==retired", 2);
+        assertQuery("name==b*,number=lt=2", 3);
+    }
+
+    @Test
+    public void testNullArguments()
+    {
+        // a null argument matches null values rather than being compared with a null literal
+        assertQuery("unnamed==x", 1);
+        assertQuery("unnamed!=x", 4);
+    }
+
+    @Test
+    public void testParameterizedSeekMatchesLiterals()
+    {
+        assertSeek("status==active", 3);
+        assertSeek("created=ge=2015-01-02;number=out=(3)", 3);
+        assertSeek("name==*a*", 4);
+    }
+
+    private void assertQuery(String rsql, int expected)
+    {
+        List<Long> parameterized = ids(queryDao.query(QueryEntity.class, 0, 10, orderById(),
+                Collections.singletonList(parameterized(rsql)), false, null).getResults());
+        List<Long> literal = ids(queryDao.query(QueryEntity.class, 0, 10, orderById(),
+                Collections.singletonList(literal(rsql)), false, null).getResults());
+
+        Assert.assertEquals(rsql, expected, parameterized.size());
+        Assert.assertEquals(rsql, literal, parameterized);
+    }
+
+    private void assertSeek(String rsql, int expected)
+    {
+        List<Long> parameterized = seekAll(parameterized(rsql));
+        List<Long> literal = seekAll(literal(rsql));
+
+        Assert.assertEquals(rsql, expected, parameterized.size());
+        Assert.assertEquals(rsql, literal, parameterized);
+    }
+
+    private List<Long> seekAll(JpaPersistentQueryBuilder queryBuilder)
+    {
+        // sort on the date first so the seek bounds compare dates as well as ids
+        JpaPersistentOrderBuilder orderBuilder = new JpaPersistentOrderBuilder()
+        {
+            @Override
+            public List<Order> buildOrders(From root, CriteriaBuilder cb)
+            {
+                return Arrays.asList(cb.desc(root.get("created")), cb.asc(root.get("id")));
+            }
+        };
+
+        List<Long> ids = new ArrayList<>();
+        List<Object> seekValues = null;
+        do
+        {
+            PersistentQueryResult<QueryEntity> result = queryDao.seek(QueryEntity.class, seekValues, 1, orderBuilder,
+                    Collections.singletonList(queryBuilder));
+            ids.addAll(ids(result.getResults()));
+            seekValues = result.getSeekValues();
+        }
+        while (seekValues != null);
+        return ids;
+    }
+
+    private static JpaPersistentQueryBuilder parameterized(String rsql)
+    {
+        return new JpaPersistentQueryBuilderFactory().createQueryBuilder(new RSQLParser().parse(rsql), context);
+    }
+
+    /**
+     * Hide the parameterized variant of a builder so its arguments are added as literals.
+     */
+    private static JpaPersistentQueryBuilder literal(String rsql)
+    {
+        final JpaPersistentQueryBuilder<QueryEntity> queryBuilder = parameterized(rsql);
+        return new JpaPersistentQueryBuilder<QueryEntity>()
+        {
+            @Override
+            public Predicate buildPredicate(Root<QueryEntity> root, CriteriaQuery<?> query, CriteriaBuilder cb)
+            {
+                return queryBuilder.buildPredicate(root, query, cb);
+            }
+        };
+    }
+
+    private static JpaPersistentOrderBuilder orderById()
+    {
+        return new JpaPersistentOrderBuilder()
+        {
+            @Override
+            public List<Order> buildOrders(From root, CriteriaBuilder cb)
+            {
+                return Collections.singletonList(cb.asc(root.get("id")));
+            }
+        };
+    }
+
+    private static List<Long> ids(List<QueryEntity> entities)
+    {
+        List<Long> ids = new ArrayList<>();
+        for (QueryEntity entity : entities)
+        {
+            ids.add(entity.getId());
+        }
+        return ids;
+    }
+
+    private static Date date(int day)
+    {
+        return new GregorianCalendar(2015, 0, day).getTime();
+    }
+
+    private static PersistentQueryResult page(int size)
+    {
+        PersistentQueryResult result = new PersistentQueryResult();
+        result.setResultCount(size);
+        return result;
+    }
+
+    private static class Entity implements PersistentObject<Long>
+    {
+        private Long id;
+        private String name;
+
+        private Entity()
+        {
+        }
+
+        private Entity(String name)
+        {
+            this.name = name;
+        }
+
+        @Override
+        public Long getId()
+        {
+            return id;
+        }
+
+        @Override
+        public void setId(Long id)
+        {
+            this.id = id;
+        }
+    }
+
+    private static class Plain
+    {
+        private String name;
+        @ManyToOne
+        private Plain other;
+    }
+
+    private static class Child
+    {
+        // the inverse side of a collection is kept in the other table
+        @OneToMany(mappedBy = "other")
+        private List<Plain> plains;
+        @ManyToMany(mappedBy = "other")
+        private List<Plain> shared;
+    }
+
+    private static class WithElements
+    {
+        @ElementCollection
+        private List<String> tags;
+    }
+
+    private static class WithOwnedCollection
+    {
+        @ManyToMany
+        private List<Plain> plains;
+    }
+
+    private static class WithCascade
+    {
+        @ManyToOne(cascade = CascadeType.ALL)
+        private Plain plain;
+    }
+
+    private static class WithOrphans
+    {
+        @OneToMany(mappedBy = "other", orphanRemoval = true)
+        private List<Plain> plains;
+    }
+
+    private static class Parent
+    {
+        private String name;
+    }
+
+    private static class CascadingParent extends Parent
+    {
+        @OneToMany(mappedBy = "other", cascade = CascadeType.REMOVE)
+        private List<Plain> plains;
+    }
+
+    /**
+     * Matches the name against a null argument whatever the query argument is.
+     */
+    private static class NullNameQueryBuilder extends AbstractEntityJpaQueryBuilder
+    {
+        @Override
+        public Predicate buildPredicate(From root, CriteriaQuery<?> query, CriteriaBuilder cb,
+                                        ComparisonOperator operator, List<String> arguments,
+                                        PersistenceContext persistenceContext)
+        {
+            return createPredicate(root, query, cb, "name", operator, null, persistenceContext);
+        }
+    }
+
+    private static class CountingDao extends JpaDao
+    {
+        private final long total;
+        private int counts;
+        private Integer lastLimit;
+
+        private CountingDao(long total)
+        {
+            this.total = total;
+        }
+
+        @Override
+        protected Long getCount(Class entityClass, List predicateBuilders, int limit)
+        {
+            counts++;
+            lastLimit = limit;
+            return Math.min(total, limit);
+        }
+
+        @Override
+        protected Long getCount(Class entityClass, List predicateBuilders)
+        {
+            counts++;
+            lastLimit = null;
+            return total;
+        }
+    }
+
+    private static CriteriaBuilder criteriaBuilder()
+    {
+        return proxy(CriteriaBuilder.class, new InvocationHandler()
+        {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+            {
+                StringBuilder sb = new StringBuilder(method.getName()).append("(");
+                if(args != null)
+                {
+                    List<Object> values = new ArrayList<>();
+                    for (Object arg : args)
+                    {
+                        if(arg instanceof Object[])
+                            values.addAll(Arrays.asList((Object[]) arg));
+                        else
+                            values.add(arg);
+                    }
+                    for (int i = 0; i < values.size(); i++)
+                    {
+                        if(i > 0)
+                            sb.append(",");
+                        sb.append(values.get(i));
+                    }
+                }
+                final String description = sb.append(")").toString();
+
+                return proxy(method.getReturnType(), new InvocationHandler()
+                {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+                    {
+                        return method.getName().equals("toString") ? description : null;
+                    }
+                });
+            }
+        });
+    }
+
+    private static Order order(final String name, final Class<?> javaType, final boolean optional,
+                               final boolean ascending)
+    {
+        final SingularAttribute attribute = proxy(SingularAttribute.class, new InvocationHandler()
+        {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+            {
+                return method.getName().equals("isOptional") ? optional : null;
+            }
+        });
+
+        final Path path = proxy(Path.class, new InvocationHandler()
+        {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+            {
+                switch (method.getName())
+                {
+                    case "toString":
+                        return name;
+                    case "getJavaType":
+                        return javaType;
+                    case "getModel":
+                        return attribute;
+                    default:
+                        return null;
+                }
+            }
+        });
+
+        return proxy(Order.class, new InvocationHandler()
+        {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+            {
+                switch (method.getName())
+                {
+                    case "getExpression":
+                        return path;
+                    case "isAscending":
+                        return ascending;
+                    default:
+                        return null;
+                }
+            }
+        });
+    }
+
+    /**
+     * Build an entity manager whose metamodel describes the declared fields of the supplied classes
+     */
+    private static EntityManager entityManager(Class<?>... entityClasses)
+    {
+        final Map<Class<?>,EntityType<?>> entityTypes = new LinkedHashMap<>();
+        for (final Class<?> entityClass : entityClasses)
+        {
+            final Map<String,Attribute<?,?>> attributes = new LinkedHashMap<>();
+            for (Class<?> type = entityClass; type != Object.class; type = type.getSuperclass())
+            {
+                for (Field field : type.getDeclaredFields())
+                {
+                    if(!field.isSynthetic())
+                        attributes.put(field.getName(), attribute(field));
+                }
+            }
+
+            entityTypes.put(entityClass, proxy(EntityType.class, new InvocationHandler()
+            {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+                {
+                    switch (method.getName())
+                    {
+                        case "getJavaType":
+                            return entityClass;
+                        case "getAttributes":
+                            return identitySet(attributes.values());
+                        case "getSingularAttributes":
+                            return Collections.emptySet();
+                        case "getAttribute":
+                            if(!attributes.containsKey(args[0]))
+                                throw new IllegalArgumentException(String.valueOf(args[0]));
+                            return attributes.get(args[0]);
+                        default:
+                            return null;
+                    }
+                }
+            }));
+        }
+
+        final Metamodel metamodel = proxy(Metamodel.class, new InvocationHandler()
+        {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+            {
+                switch (method.getName())
+                {
+                    case "getEntities":
+                        return identitySet(entityTypes.values());
+                    case "entity":
+                        return entityTypes.get(args[0]);
+                    default:
+                        return null;
+                }
+            }
+        });
+
+        return proxy(EntityManager.class, new InvocationHandler()
+        {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+            {
+                return method.getName().equals("getMetamodel") ? metamodel : null;
+            }
+        });
+    }
+
+    /**
+     * The metamodel proxies do not implement equals so they are returned in identity sets
+     */
+    private static <T> Set<T> identitySet(Collection<T> values)
+    {
+        Set<T> set = Collections.newSetFromMap(new IdentityHashMap<T,Boolean>());
+        set.addAll(values);
+        return set;
+    }
+
+    private static Attribute<?,?> attribute(final Field field)
+    {
+        final Attribute.PersistentAttributeType attributeType;
+        if(field.isAnnotationPresent(ElementCollection.class))
+            attributeType = Attribute.PersistentAttributeType.ELEMENT_COLLECTION;
+        else if(field.isAnnotationPresent(OneToMany.class))
+            attributeType = Attribute.PersistentAttributeType.ONE_TO_MANY;
+        else if(field.isAnnotationPresent(ManyToMany.class))
+            attributeType = Attribute.PersistentAttributeType.MANY_TO_MANY;
+        else if(field.isAnnotationPresent(ManyToOne.class))
+            attributeType = Attribute.PersistentAttributeType.MANY_TO_ONE;
+        else
+            attributeType = Attribute.PersistentAttributeType.BASIC;
+
+        return proxy(Attribute.class, new InvocationHandler()
+        {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+            {
+                switch (method.getName())
+                {
+                    case "getPersistentAttributeType":
+                        return attributeType;
+                    case "getJavaMember":
+                        return field;
+                    case "getName":
+                        return field.getName();
+                    default:
+                        return null;
+                }
+            }
+        });
+    }
+
+    /**
+     * Build a query that selects three ids, or updates three rows
+     */
+    private static Query query(final boolean update, final List<String> calls)
+    {
+        return proxy(update ? Query.class : TypedQuery.class, new InvocationHandler()
+        {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+            {
+                switch (method.getName())
+                {
+                    case "executeUpdate":
+                        calls.add("executeUpdate()");
+                        return 3;
+                    case "getResultList":
+                        return Arrays.<Object>asList(1L, 2L, 3L);
+                    default:
+                        return proxy;
+                }
+            }
+        });
+    }
+
+    /**
+     * Build a criteria object that records the calls made on it and on the criteria objects it returns. Each result
+     * describes the call that produced it. Calls on a criteria update are prefixed with "update.".
+     */
+    private static <T> T recorder(Class<T> type, final String owner, final List<String> calls)
+    {
+        return proxy(type, new InvocationHandler()
+        {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+            {
+                if(method.getName().equals("toString"))
+                    return owner;
+
+                StringBuilder sb = new StringBuilder(method.getName()).append("(");
+                for (int i = 0; args != null && i < args.length; i++)
+                {
+                    if(i > 0)
+                        sb.append(",");
+                    sb.append(args[i] instanceof Object[] ? Arrays.toString((Object[]) args[i]) : args[i]);
+                }
+                String description = sb.append(")").toString();
+                calls.add(proxy instanceof CriteriaUpdate ? "update." + description : description);
+
+                Class<?> returnType = method.getReturnType();
+                if(!returnType.isInterface())
+                    return null;
+                return recorder(returnType, description.startsWith("createCriteriaUpdate") ? "update" : description,
+                        calls);
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler)
+    {
+        return (T) Proxy.newProxyInstance(JpaDaoTest.class.getClassLoader(), new Class[]{type}, handler);
+    }
+}
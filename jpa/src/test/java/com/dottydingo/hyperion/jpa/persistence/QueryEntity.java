@@ -0,0 +1,98 @@
+package com.dottydingo.hyperion.jpa.persistence;
+
+import com.dottydingo.hyperion.core.model.PersistentObject;
+
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+import java.util.Date;
+
+/**
+ */
+@Entity
+public class QueryEntity implements PersistentObject<Long>
+{
+    public enum Status
+    {
+        ACTIVE,
+        RETIRED
+    }
+
+    @Id
+    @GeneratedValue
+    private Long id;
+    private String name;
+    private Integer number;
+    @Enumerated(EnumType.STRING)
+    private Status status;
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date created;
+
+    public QueryEntity()
+    {
+    }
+
+    public QueryEntity(String name, Integer number, Status status, Date created)
+    {
+        this.name = name;
+        this.number = number;
+        this.status = status;
+        this.created = created;
+    }
+
+    @Override
+    public Long getId()
+    {
+        return id;
+    }
+
+    @Override
+    public void setId(Long id)
+    {
+        this.id = id;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public void setName(String name)
+    {
+        this.name = name;
+    }
+
+    public Integer getNumber()
+    {
+        return number;
+    }
+
+    public void setNumber(Integer number)
+    {
+        this.number = number;
+    }
+
+    public Status getStatus()
+    {
+        return status;
+    }
+
+    public void setStatus(Status status)
+    {
+        this.status = status;
+    }
+
+    public Date getCreated()
+    {
+        return created;
+    }
+
+    public void setCreated(Date created)
+    {
+        this.created = created;
+    }
+}